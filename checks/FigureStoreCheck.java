@@ -0,0 +1,346 @@
+package checks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import figures.AbstractFigure;
+import figures.StyleTable;
+import figures.enums.FigureType;
+import figures.enums.StoreType;
+import figures.stores.FigureStore;
+
+/**
+ * Vérification des différents stockages de figures ({@link StoreType}) :
+ * ajouts, retraits, versions figées et retours à une version figée. Pour
+ * chaque stockage, vérifie que :
+ * <ul>
+ * <li>les figures obtenues ont exactement la géométrie et le style des
+ * figures ajoutées</li>
+ * <li>une version figée ne change plus quelles que soient les modifications
+ * ultérieures du stockage (retraits, ajouts, effacement, retours)</li>
+ * <li>un ajout après un retour à une version figée ou un retrait ne copie
+ * pas tout le stockage (mesuré par les octets alloués par le thread dans le
+ * tas et hors du tas)</li>
+ * </ul>
+ * Lève une {@link AssertionError} à la première erreur.
+ * Usage : java checks.FigureStoreCheck
+ *
+ * @author davidroussel
+ */
+public class FigureStoreCheck
+{
+	/**
+	 * Nombre de figures ajoutées
+	 */
+	private static final int figureCount = 50000;
+
+	/**
+	 * Nombre d'octets alloués au plus par un ajout après un retour à une
+	 * version figée : la copie d'un bloc est permise, pas une copie complète
+	 * du stockage (plusieurs Mo)
+	 */
+	private static final long maxAddAllocation = 2 * 1024 * 1024;
+
+	/**
+	 * Point d'entrée de la vérification
+	 * @param args non utilisés
+	 */
+	public static void main(String[] args)
+	{
+		StyleTable styles = new StyleTable();
+		AbstractFigure[] figures = figures(styles, figureCount, new Random(1));
+		for (StoreType type : StoreType.values())
+		{
+			check(type, figures);
+			System.out.println(type + " figure store: ok");
+		}
+	}
+
+	/**
+	 * Vérification d'un stockage
+	 * @param type le type de stockage à vérifier
+	 * @param figures les figures à y ajouter
+	 */
+	private static void check(StoreType type, AbstractFigure[] figures)
+	{
+		FigureStore store = type.getStore();
+		int n = figures.length;
+		for (AbstractFigure figure : figures)
+		{
+			store.add(figure);
+		}
+		same(type + " after add", store, figures, n);
+
+		// Retraits et ajouts au dessus d'une version figée
+		FigureStore full = store.snapshot();
+		for (int i = 0; i < 10; i++)
+		{
+			store.removeLast();
+		}
+		FigureStore removed = store.snapshot();
+		same(type + " after removeLast", store, figures, n - 10);
+		AbstractFigure[] others = figures(new StyleTable(), 20,
+				new Random(2));
+		for (AbstractFigure figure : others)
+		{
+			store.add(figure);
+		}
+		same(type + " full snapshot after add", full, figures, n);
+		same(type + " removed snapshot after add", removed, figures, n - 10);
+		for (int i = 0; i < others.length; i++)
+		{
+			same(type + " add after removeLast", store.get(n - 10 + i),
+					others[i]);
+		}
+
+		// Retours aux versions figées
+		FigureStore branch = store.snapshot();
+		store.restore(removed);
+		same(type + " restore", store, figures, n - 10);
+		check(allocatedBytes(store, others[0]) < maxAddAllocation,
+				type + " add after restore copies the store");
+		same(type + " full snapshot after restore", full, figures, n);
+		check(branch.size() == n + 10, type + " branch size after restore");
+		for (int i = 0; i < n + 10; i++)
+		{
+			AbstractFigure expected = (i < n - 10 ? figures[i]
+					: others[i - (n - 10)]);
+			if (!equals(branch.get(i), expected))
+			{
+				same(type + " branch after restore [" + i + "]",
+						branch.get(i), expected);
+			}
+		}
+		store.restore(full);
+		same(type + " restore full", store, figures, n);
+		store.removeLast();
+		check(allocatedBytes(store, others[1]) < maxAddAllocation,
+				type + " add after removeLast copies the store");
+		same(type + " full snapshot after removeLast", full, figures, n);
+
+		// Cycles annulation / ajout : la mémoire utilisée ne doit pas croître
+		for (int i = 0; i < 1000; i++)
+		{
+			store.restore(full);
+			store.add(others[i % others.length]);
+			store.snapshot();
+		}
+		same(type + " full snapshot after cycles", full, figures, n);
+
+		// Effacement
+		store.clear();
+		check(store.size() == 0, type + " clear");
+		store.add(others[0]);
+		same(type + " add after clear", store.get(0), others[0]);
+		same(type + " full snapshot after clear", full, figures, n);
+		store.restore(full);
+		same(type + " restore after clear", store, figures, n);
+
+		// Une version figée ne peut pas être modifiée
+		try
+		{
+			full.add(others[0]);
+			check(false, type + " frozen store accepts add");
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// attendu
+		}
+	}
+
+	/**
+	 * Mesure des octets alloués par un ajout
+	 * @param store le stockage dans lequel ajouter
+	 * @param figure la figure à ajouter
+	 * @return le nombre d'octets alloués par le thread courant pendant
+	 * l'ajout, dans le tas et dans des tampons directs
+	 */
+	private static long allocatedBytes(FigureStore store, AbstractFigure figure)
+	{
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory
+						.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id) + directBytes();
+		store.add(figure);
+		return threads.getThreadAllocatedBytes(id) + directBytes() - before;
+	}
+
+	/**
+	 * Mesure de la mémoire utilisée par les tampons directs
+	 * @return le nombre d'octets des tampons directs alloués
+	 */
+	private static long directBytes()
+	{
+		long bytes = 0;
+		for (BufferPoolMXBean pool : ManagementFactory
+				.getPlatformMXBeans(BufferPoolMXBean.class))
+		{
+			if (pool.getName().equals("direct"))
+			{
+				bytes += pool.getMemoryUsed();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Création de figures aléatoires de tous types, aux coordonnées non
+	 * entières
+	 * @param styles la table des styles des figures
+	 * @param count le nombre de figures
+	 * @param random le générateur aléatoire
+	 * @return les figures
+	 */
+	static AbstractFigure[] figures(StyleTable styles, int count,
+			Random random)
+	{
+		int[] styleIds = new int[8];
+		for (int i = 0; i < styleIds.length; i++)
+		{
+			styleIds[i] = styles.intern(new BasicStroke(1 + i),
+					new Color(random.nextInt()), (i % 2 == 0 ? null
+							: new Color(random.nextInt())));
+		}
+		FigureType[] types = FigureType.values();
+		AbstractFigure[] figures = new AbstractFigure[count];
+		for (int i = 0; i < count; i++)
+		{
+			FigureType type = types[i % types.length];
+			int n;
+			switch (type)
+			{
+				case CIRCLE:
+					n = 3;
+					break;
+				case ROUNDED_RECTANGLE:
+					n = 7;
+					break;
+				case POLYGON:
+					n = 2 * (3 + random.nextInt(20));
+					break;
+				default:
+					n = 4;
+			}
+			double[] coords = new double[n];
+			for (int j = 0; j < n; j++)
+			{
+				coords[j] = 1000 * random.nextDouble() + 1;
+			}
+			figures[i] = type.getFigure(styles,
+					styleIds[random.nextInt(styleIds.length)], coords, 0, n);
+		}
+		return figures;
+	}
+
+	/**
+	 * Vérification du contenu d'un stockage
+	 * @param what la vérification effectuée
+	 * @param store le stockage
+	 * @param figures les figures attendues
+	 * @param count le nombre de figures attendues
+	 */
+	private static void same(String what, FigureStore store,
+			AbstractFigure[] figures, int count)
+	{
+		check(store.size() == count, what + ": size " + store.size()
+				+ " instead of " + count);
+		for (int i = 0; i < count; i++)
+		{
+			if (!equals(store.get(i), figures[i]))
+			{
+				same(what + " [" + i + "]", store.get(i), figures[i]);
+			}
+		}
+		ArrayList<AbstractFigure> iterated = new ArrayList<AbstractFigure>();
+		for (AbstractFigure figure : store)
+		{
+			iterated.add(figure);
+		}
+		check(iterated.size() == count, what + ": iteration");
+	}
+
+	/**
+	 * Vérification de l'égalité de deux figures
+	 * @param what la vérification effectuée
+	 * @param figure la figure obtenue
+	 * @param expected la figure attendue
+	 */
+	static void same(String what, AbstractFigure figure,
+			AbstractFigure expected)
+	{
+		if (!equals(figure, expected))
+		{
+			double[] coords = new double[figure.getCoordinateCount()];
+			figure.getCoordinates(coords, 0);
+			double[] expectedCoords =
+					new double[expected.getCoordinateCount()];
+			expected.getCoordinates(expectedCoords, 0);
+			throw new AssertionError(what + ": " + figure.getType() + " "
+					+ Arrays.toString(coords) + " instead of "
+					+ expected.getType() + " "
+					+ Arrays.toString(expectedCoords));
+		}
+	}
+
+	/**
+	 * Egalité de type, de géométrie et de style de deux figures
+	 * @param figure la figure obtenue
+	 * @param expected la figure attendue
+	 * @return true si les deux figures sont égales
+	 */
+	private static boolean equals(AbstractFigure figure,
+			AbstractFigure expected)
+	{
+		int n = figure.getCoordinateCount();
+		if ((figure.getType() != expected.getType())
+				|| (n != expected.getCoordinateCount()))
+		{
+			return false;
+		}
+		double[] coords = new double[2 * n];
+		figure.getCoordinates(coords, 0);
+		expected.getCoordinates(coords, n);
+		for (int i = 0; i < n; i++)
+		{
+			if (Double.compare(coords[i], coords[n + i]) != 0)
+			{
+				return false;
+			}
+		}
+		return equals(figure.getStroke(), expected.getStroke())
+				&& equals(figure.getEdge(), expected.getEdge())
+				&& equals(figure.getFill(), expected.getFill());
+	}
+
+	/**
+	 * Egalité de deux objets éventuellement null
+	 * @param a le premier objet
+	 * @param b le second objet
+	 * @return true si les deux objets sont null ou égaux
+	 */
+	private static boolean equals(Object a, Object b)
+	{
+		return (a == null ? b == null : a.equals(b));
+	}
+
+	/**
+	 * Vérification d'une condition
+	 * @param condition la condition à vérifier
+	 * @param message le message de l'erreur si la condition est fausse
+	 * @throws AssertionError si la condition est fausse
+	 */
+	static void check(boolean condition, String message)
+			throws AssertionError
+	{
+		if (!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package checks;
+
+import java.awt.geom.Point2D;
+
+import figures.AbstractFigure;
+import figures.Drawing;
+import figures.enums.FigureType;
+
+/**
+ * Vérification de l'historique d'un {@link Drawing} limité par
+ * {@link Drawing#setHistoryLimit(int)} : annulations, rétablissements et lots
+ * de modifications lorsque l'historique atteint sa limite.
+ * Lève une {@link AssertionError} à la première erreur.
+ * Usage : java checks.HistoryCheck
+ *
+ * @author davidroussel
+ */
+public class HistoryCheck
+{
+	/**
+	 * Point d'entrée de la vérification
+	 * @param args non utilisés
+	 */
+	public static void main(String[] args)
+	{
+		Drawing drawing = new Drawing();
+		check(drawing.getHistoryLimit() == Drawing.defaultHistoryLimit,
+				"default history limit");
+
+		// Ajouts au delà de la limite : seules les dernières versions sont
+		// annulables
+		drawing.setHistoryLimit(3);
+		for (int i = 0; i < 5; i++)
+		{
+			add(drawing, i);
+		}
+		check(undoAll(drawing) == 3, "undo count at limit");
+		count(drawing, 2, "oldest undoable version");
+		check(redoAll(drawing) == 3, "redo count at limit");
+		count(drawing, 5, "after redo");
+
+		// Un lot à la limite forme une seule entrée et chasse la plus
+		// ancienne
+		drawing.beginBatch();
+		for (int i = 5; i < 9; i++)
+		{
+			add(drawing, i);
+		}
+		drawing.commitBatch();
+		count(drawing, 9, "after batch");
+		check(drawing.undo(), "undo batch");
+		count(drawing, 5, "batch undone at once");
+		check(drawing.undo() && drawing.undo(), "undo before batch");
+		count(drawing, 3, "before batch");
+		check(!drawing.undo(), "oldest version dropped by the batch");
+		check(drawing.redo() && drawing.redo() && drawing.redo(),
+				"redo batch");
+		count(drawing, 9, "batch redone at once");
+		check(!drawing.redo(), "nothing left to redo");
+
+		// Réduction de la limite : les versions à rétablir partent d'abord
+		drawing.undo();
+		drawing.undo();
+		drawing.setHistoryLimit(2);
+		count(drawing, 4, "current version kept");
+		check(drawing.redo(), "redo kept after limit change");
+		count(drawing, 5, "redo after limit change");
+		check(!drawing.redo(), "last redo dropped by the limit");
+		check(drawing.undo() && drawing.undo() && !drawing.undo(),
+				"undo after limit change");
+		count(drawing, 3, "undo after limit change");
+
+		// Réduction de la limite pendant un lot
+		drawing.redo();
+		drawing.redo();
+		drawing.beginBatch();
+		add(drawing, 9);
+		drawing.setHistoryLimit(1);
+		add(drawing, 10);
+		drawing.commitBatch();
+		check(drawing.undo() && !drawing.undo(), "batch kept at limit 1");
+		count(drawing, 5, "batch undone at limit 1");
+
+		// Pas d'historique
+		drawing.setHistoryLimit(0);
+		add(drawing, 5);
+		check(!drawing.undo(), "no undo without history");
+		drawing.beginBatch();
+		add(drawing, 6);
+		add(drawing, 7);
+		drawing.commitBatch();
+		check(!drawing.undo(), "no batch undo without history");
+		count(drawing, 8, "modifications without history");
+
+		try
+		{
+			drawing.setHistoryLimit(-1);
+			check(false, "negative history limit accepted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// attendu
+		}
+		System.out.println("history limit: ok");
+	}
+
+	/**
+	 * Ajout d'une figure terminée reconnaissable à sa position
+	 * @param drawing le dessin
+	 * @param i le numéro de la figure
+	 */
+	private static void add(Drawing drawing, int i)
+	{
+		drawing.setType(FigureType.RECTANGLE);
+		AbstractFigure figure = drawing.initiateFigure(new Point2D.Double(
+				10 * i, 10 * i));
+		figure.setLastPoint(new Point2D.Double(10 * i + 5, 10 * i + 5));
+		drawing.terminateFigure();
+	}
+
+	/**
+	 * Annulation de toutes les versions de l'historique
+	 * @param drawing le dessin
+	 * @return le nombre de versions annulées
+	 */
+	private static int undoAll(Drawing drawing)
+	{
+		int n = 0;
+		while (drawing.undo())
+		{
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Rétablissement de toutes les versions annulées
+	 * @param drawing le dessin
+	 * @return le nombre de versions rétablies
+	 */
+	private static int redoAll(Drawing drawing)
+	{
+		int n = 0;
+		while (drawing.redo())
+		{
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Vérification des figures du dessin : les figures 0 à count - 1 ajoutées
+	 * par {@link #add(Drawing, int)}
+	 * @param drawing le dessin
+	 * @param count le nombre de figures attendu
+	 * @param what la vérification effectuée
+	 */
+	private static void count(Drawing drawing, int count, String what)
+	{
+		check(drawing.getTerminatedCount() == count, what + ": "
+				+ drawing.getTerminatedCount() + " figures instead of "
+				+ count);
+		for (int i = 0; i < count; i++)
+		{
+			check(drawing.get(i).getBounds2D().getX() == 10 * i, what
+					+ ": figure " + i);
+		}
+	}
+
+	/**
+	 * Vérification d'une condition
+	 * @param condition la condition à vérifier
+	 * @param message le message de l'erreur si la condition est fausse
+	 * @throws AssertionError si la condition est fausse
+	 */
+	private static void check(boolean condition, String message)
+			throws AssertionError
+	{
+		if (!condition)
+		{
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package checks;
+
+import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+
+import figures.AbstractFigure;
+import figures.StyleTable;
+import figures.enums.FigureType;
+import utils.VertexBuffer;
+
+/**
+ * Vérification de l'absence d'allocation lors du déplacement du dernier point
+ * d'une figure en cours de dessin ({@link AbstractFigure#setLastPoint(Point2D)},
+ * appelé à chaque glissement de la souris) et du dernier sommet d'un
+ * {@link VertexBuffer} ({@link VertexBuffer#setLast(double, double)}). Après
+ * une phase de chauffe (pour que le code soit compilé), les octets alloués par
+ * le thread courant pendant {@link #callCount} déplacements sont mesurés par
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} et
+ * doivent être nuls (à la marge de mesure près).
+ * Lève une {@link AssertionError} à la première erreur.
+ * Usage : java checks.SetLastPointCheck
+ *
+ * @author davidroussel
+ */
+public class SetLastPointCheck
+{
+	/**
+	 * Nombre de déplacements de chauffe
+	 */
+	private static final int warmUpCount = 200000;
+
+	/**
+	 * Nombre de déplacements mesurés
+	 */
+	private static final int callCount = 1000000;
+
+	/**
+	 * Nombre d'octets tolérés pour l'ensemble des déplacements mesurés (la
+	 * mesure elle même pouvant allouer quelques octets), soit bien moins d'un
+	 * octet par déplacement
+	 */
+	private static final long maxAllocation = 4096;
+
+	/**
+	 * Les points successifs du pointeur (deux points successifs sont
+	 * toujours différents afin que le polygone déplace son dernier sommet
+	 * plutôt que d'en fixer un)
+	 */
+	private static final Point2D[] points = new Point2D[1000];
+
+	static
+	{
+		for (int i = 0; i < points.length; i++)
+		{
+			points[i] = new Point2D.Double(100 + (i % 50) + 0.5,
+					100 + ((i * 7) % 60));
+		}
+	}
+
+	/**
+	 * Point d'entrée de la vérification
+	 * @param args non utilisés
+	 */
+	public static void main(String[] args)
+	{
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory
+						.getThreadMXBean();
+		FigureStoreCheck.check(threads.isThreadAllocatedMemorySupported(),
+				"thread allocated memory not supported");
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		StyleTable styles = new StyleTable();
+		int styleId = styles.intern(null, null, null);
+		for (FigureType type : FigureType.values())
+		{
+			AbstractFigure figure = type.getFigure(styles, styleId,
+					new Point2D.Double(10, 10));
+			check(threads, type.toString(), figure);
+			if (type == FigureType.ROUNDED_RECTANGLE)
+			{
+				// un second appel au même point passe au réglage des arrondis
+				Point2D corner = new Point2D.Double(60, 60);
+				figure.setLastPoint(corner);
+				figure.setLastPoint(corner);
+				check(threads, type + " arcs", figure);
+			}
+			else if (type == FigureType.POLYGON)
+			{
+				// déplacement du dernier sommet d'un polygone déjà grand
+				for (int i = 0; i < 10000; i++)
+				{
+					Point2D p = new Point2D.Double(i, i % 100);
+					figure.setLastPoint(p);
+					figure.setLastPoint(p);
+				}
+				check(threads, type + " with many vertices", figure);
+			}
+		}
+
+		VertexBuffer vertices = new VertexBuffer(4);
+		for (int i = 0; i < 10000; i++)
+		{
+			vertices.append(i, i % 100);
+		}
+		vertices.setIndexed(true);
+		long id = Thread.currentThread().getId();
+		for (int i = 0; i < warmUpCount; i++)
+		{
+			vertices.setLast(points[i % points.length].getX(),
+					points[i % points.length].getY());
+		}
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < callCount; i++)
+		{
+			vertices.setLast(points[i % points.length].getX(),
+					points[i % points.length].getY());
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		FigureStoreCheck.check(allocated < maxAllocation,
+				"vertex buffer setLast allocates " + allocated + " bytes");
+		System.out.println("vertex buffer setLast: ok");
+	}
+
+	/**
+	 * Vérification de l'absence d'allocation lors des déplacements du dernier
+	 * point d'une figure
+	 * @param threads les mesures des threads
+	 * @param what la figure vérifiée
+	 * @param figure la figure en cours de dessin
+	 */
+	private static void check(com.sun.management.ThreadMXBean threads,
+			String what, AbstractFigure figure)
+	{
+		long id = Thread.currentThread().getId();
+		for (int i = 0; i < warmUpCount; i++)
+		{
+			figure.setLastPoint(points[i % points.length]);
+		}
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < callCount; i++)
+		{
+			figure.setLastPoint(points[i % points.length]);
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		FigureStoreCheck.check(allocated < maxAllocation, what
+				+ " setLastPoint allocates " + allocated + " bytes");
+		System.out.println(what + " setLastPoint: ok");
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * Package contenant des vérifications exécutables (chacune par sa méthode
+ * main) du comportement et des performances des structures de l'éditeur.
+ * Chaque vérification lève une {@link java.lang.AssertionError} à la première
+ * erreur rencontrée et affiche "ok" pour chaque point vérifié sinon.
+ */
+package checks;
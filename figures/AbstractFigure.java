@@ -7,6 +7,8 @@ import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 
+import figures.enums.FigureType;
+
 /**
  * Classe commune à toutes les sortes de figures
  *
@@ -20,20 +22,16 @@ public abstract class AbstractFigure
 	protected Shape shape;
 
 	/**
-	 * Couleur du bord de la figure
-	 */
-	protected Paint edge;
-
-	/**
-	 * Couleur de remplissage de la figure
+	 * La table des styles dans laquelle est rangé le style de la figure
+	 * (caractéristiques de la bordure, couleur du bord et couleur de
+	 * remplissage)
 	 */
-	protected Paint fill;
+	protected final StyleTable styles;
 
 	/**
-	 * Caractéristiques de la bordure des figure : épaisseur, forme des
-	 * extremités et [evt] forme des jointures
+	 * L'identifiant du style de la figure dans {@link #styles}
 	 */
-	protected BasicStroke stroke;
+	protected final int styleId;
 
 	/**
 	 * Le numéro d'instance de cette figure.
@@ -42,21 +40,19 @@ public abstract class AbstractFigure
 	protected int instanceNumber;
 
 	/**
-	 * Constructeur d'une figure abstraite à partir d'un style de ligne d'une
-	 * couleur de bordure et d'une couleur de remplissage. Les styles de lignes
-	 * et les couleurs étant souvent les même entre les différentes figures ils
-	 * devront être fournis par un flyweight. Le stroke, le edge et le fill
-	 * peuvent chacun être null.
+	 * Constructeur d'une figure abstraite à partir d'un style (style de ligne,
+	 * couleur de bordure et couleur de remplissage). Les styles étant souvent
+	 * les même entre les différentes figures, la figure ne conserve que
+	 * l'identifiant de son style dans une {@link StyleTable}. Le stroke, le
+	 * edge et le fill du style peuvent chacun être null.
 	 *
-	 * @param stroke caractéristiques de la ligne de bordure
-	 * @param edge couleur de la ligne de bordure
-	 * @param fill couleur (ou gradient de couleurs) de remplissage
+	 * @param styles la table des styles contenant le style de la figure
+	 * @param styleId l'identifiant du style de la figure dans styles
 	 */
-	protected AbstractFigure(BasicStroke stroke, Paint edge, Paint fill)
+	protected AbstractFigure(StyleTable styles, int styleId)
 	{
-		this.stroke = stroke;
-		this.edge = edge;
-		this.fill = fill;
+		this.styles = styles;
+		this.styleId = styleId;
 		shape = null;
 	}
 
@@ -68,9 +64,97 @@ public abstract class AbstractFigure
 	 */
 	public abstract void setLastPoint(Point2D p);
 
+	/**
+	 * Obtention du type de la figure
+	 *
+	 * @return le type de la figure
+	 */
+	public abstract FigureType getType();
+
+	/**
+	 * Nombre de coordonnées nécessaires pour décrire la géométrie de la figure
+	 *
+	 * @return le nombre de coordonnées de la figure
+	 * @see #getCoordinates(double[], int)
+	 */
+	public abstract int getCoordinateCount();
+
+	/**
+	 * Copie des coordonnées décrivant la géométrie de la figure dans un
+	 * tableau. Permet de ranger la figure dans un stockage compact sans
+	 * conserver l'objet figure lui même.
+	 *
+	 * @param coords le tableau dans lequel copier les coordonnées
+	 * @param offset l'index à partir duquel copier les
+	 *            {@link #getCoordinateCount()} coordonnées
+	 */
+	public abstract void getCoordinates(double[] coords, int offset);
+
+	/**
+	 * Mise en place de la géométrie de la figure à partir de coordonnées
+	 * obtenues avec {@link #getCoordinates(double[], int)}
+	 *
+	 * @param coords le tableau contenant les coordonnées
+	 * @param offset l'index de la première coordonnée
+	 * @param count le nombre de coordonnées
+	 */
+	public abstract void setCoordinates(double[] coords, int offset, int count);
+
+	/**
+	 * Accès aux caractéristiques du trait de la figure
+	 *
+	 * @return les caractéristiques du trait (ou null)
+	 */
+	public BasicStroke getStroke()
+	{
+		return styles.getStroke(styleId);
+	}
+
+	/**
+	 * Accès à la couleur du trait de la figure
+	 *
+	 * @return la couleur du trait (ou null)
+	 */
+	public Paint getEdge()
+	{
+		return styles.getEdge(styleId);
+	}
+
+	/**
+	 * Accès à la couleur de remplissage de la figure
+	 *
+	 * @return la couleur de remplissage (ou null)
+	 */
+	public Paint getFill()
+	{
+		return styles.getFill(styleId);
+	}
+
+	/**
+	 * Accès à la table des styles contenant le style de la figure
+	 *
+	 * @return la table des styles de la figure
+	 */
+	public StyleTable getStyles()
+	{
+		return styles;
+	}
+
+	/**
+	 * Accès à l'identifiant du style de la figure dans {@link #getStyles()}
+	 * (les figures d'une même table partageant un identifiant se dessinent de
+	 * la même manière)
+	 *
+	 * @return l'identifiant du style de la figure
+	 */
+	public int getStyleId()
+	{
+		return styleId;
+	}
+
 	/**
 	 * Dessin de la figure dans un contexte graphique fournit par le système.
-	 * Met en place le stroke et les couleur, puis dessine la forme géométrique
+	 * Met en place le stroke et les couleur du style de la figure, puis dessine la forme géométrique
 	 * correspondant à la figure (figure remplie d'abord si le fill est non
 	 * null, puis bordure si le edge est non null)
 	 *
@@ -78,6 +162,9 @@ public abstract class AbstractFigure
 	 */
 	public final void draw(Graphics2D g2D)
 	{
+		Paint fill = styles.getFill(styleId);
+		Paint edge = styles.getEdge(styleId);
+		BasicStroke stroke = styles.getStroke(styleId);
 		if (fill != null)
 		{
 			g2D.setPaint(fill);
@@ -91,6 +178,73 @@ public abstract class AbstractFigure
 		}
 	}
 
+	/**
+	 * Remplissage de la forme de la figure avec la couleur courante du
+	 * contexte graphique (sans mettre en place le style de la figure)
+	 *
+	 * @param g2D le contexte graphique dont la couleur a déjà été mise en
+	 *            place
+	 */
+	public void fillShape(Graphics2D g2D)
+	{
+		g2D.fill(shape);
+	}
+
+	/**
+	 * Tracé de la bordure de la figure avec le trait et la couleur courants
+	 * du contexte graphique (sans mettre en place le style de la figure)
+	 *
+	 * @param g2D le contexte graphique dont le trait et la couleur ont déjà
+	 *            été mis en place
+	 */
+	public void drawShape(Graphics2D g2D)
+	{
+		g2D.draw(shape);
+	}
+
+	/**
+	 * Forme de la figure simplifiée pour être dessinée de loin. Par défaut la
+	 * forme n'est pas simplifiée.
+	 *
+	 * @param tolerance la distance (dans les coordonnées du dessin) en
+	 *            dessous de laquelle les détails de la forme peuvent être omis
+	 * @return la forme simplifiée de la figure
+	 */
+	protected Shape getShape(double tolerance)
+	{
+		return shape;
+	}
+
+	/**
+	 * Remplissage de la forme simplifiée de la figure avec la couleur
+	 * courante du contexte graphique
+	 *
+	 * @param g2D le contexte graphique dont la couleur a déjà été mise en
+	 *            place
+	 * @param tolerance la distance (dans les coordonnées du dessin) en
+	 *            dessous de laquelle les détails de la forme peuvent être omis
+	 * @see #getShape(double)
+	 */
+	public void fillShape(Graphics2D g2D, double tolerance)
+	{
+		g2D.fill(getShape(tolerance));
+	}
+
+	/**
+	 * Tracé de la bordure simplifiée de la figure avec le trait et la couleur
+	 * courants du contexte graphique
+	 *
+	 * @param g2D le contexte graphique dont le trait et la couleur ont déjà
+	 *            été mis en place
+	 * @param tolerance la distance (dans les coordonnées du dessin) en
+	 *            dessous de laquelle les détails de la forme peuvent être omis
+	 * @see #getShape(double)
+	 */
+	public void drawShape(Graphics2D g2D, double tolerance)
+	{
+		g2D.draw(getShape(tolerance));
+	}
+
 	/**
 	 * Obtention du nom de la figure. Le nom d'une figure est composé de son
 	 * type suivi par le numéro de l'instance de ce type
@@ -112,6 +266,27 @@ public abstract class AbstractFigure
 		return shape.getBounds2D();
 	}
 
+	/**
+	 * Obtention du rectangle englobant de la zone effectivement peinte par la
+	 * figure : le {@link #getBounds2D()} élargi de la demi épaisseur du trait
+	 * (s'il y en a un) et d'un pixel pour l'antialiasing.
+	 * @return le rectangle englobant de la figure et de sa bordure
+	 */
+	public Rectangle2D getOuterBounds2D()
+	{
+		Rectangle2D bounds = getBounds2D();
+		double margin = 1.0;
+		BasicStroke stroke = styles.getStroke(styleId);
+		if ((styles.getEdge(styleId) != null) && (stroke != null))
+		{
+			margin += stroke.getLineWidth() / 2.0;
+		}
+		return new Rectangle2D.Double(bounds.getX() - margin,
+				bounds.getY() - margin,
+				bounds.getWidth() + (2.0 * margin),
+				bounds.getHeight() + (2.0 * margin));
+	}
+
 	/**
 	 * Obtention du barycentre de la figure.
 	 * @return le point correspondant au barycentre de la figure
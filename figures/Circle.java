@@ -1,41 +1,80 @@
 package figures;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 
+import figures.enums.FigureType;
+
 public class Circle extends AbstractFigure {
 
-	private Double h;
-	private Point2D upper_left;
+	/**
+	 * Abscisse et ordonnée du coin supérieur gauche, diamètre
+	 */
+	private double x;
+	private double y;
+	private double h;
+
+	/**
+	 * La forme du cercle, modifiée sur place à chaque changement de
+	 * géométrie
+	 */
+	private final Ellipse2D.Double ellipse;
 	
 	
 	/**
-	 * @param stroke
-	 * @param edge
-	 * @param fill
+	 * @param styles
+	 * @param styleId
 	 * @param radius
 	 * @param center
 	 */
-	public Circle(BasicStroke stroke, Paint edge, Paint fill, Double h,
+	public Circle(StyleTable styles, int styleId, double h,
 			Point2D upper_left) {
-		super(stroke, edge, fill);
-		this.upper_left = upper_left;
+		super(styles, styleId);
+		x = upper_left.getX();
+		y = upper_left.getY();
 		this.h = h;
 		instanceNumber++;
-		shape = new Ellipse2D.Double(upper_left.getX(), upper_left.getY(), h, h);
+		ellipse = new Ellipse2D.Double(x, y, h, h);
+		shape = ellipse;
 	}
 
 	@Override
 	public void setLastPoint(Point2D p) {
-		h = Math.abs(p.getX() - upper_left.getX());
-		shape = new Ellipse2D.Double(upper_left.getX(), upper_left.getY(), h,h);
+		h = Math.abs(p.getX() - x);
+		ellipse.setFrame(x, y, h, h);
+	}
+
+	@Override
+	public FigureType getType() {
+		return FigureType.CIRCLE;
+	}
+
+	/**
+	 * Coordonnées : x et y du coin supérieur gauche puis diamètre
+	 */
+	@Override
+	public int getCoordinateCount() {
+		return 3;
+	}
+
+	@Override
+	public void getCoordinates(double[] coords, int offset) {
+		coords[offset] = x;
+		coords[offset + 1] = y;
+		coords[offset + 2] = h;
+	}
+
+	@Override
+	public void setCoordinates(double[] coords, int offset, int count) {
+		x = coords[offset];
+		y = coords[offset + 1];
+		h = coords[offset + 2];
+		ellipse.setFrame(x, y, h, h);
 	}
 
 	@Override
 	public Point2D getCenter() {
-		return new Point2D.Double(upper_left.getX()+(h/2), upper_left.getY()-(h/2));
+		return new Point2D.Double(x+(h/2), y-(h/2));
 	}
 
 }
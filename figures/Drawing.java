@@ -3,27 +3,184 @@ package figures;
 import java.awt.BasicStroke;
 import java.awt.Paint;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.ListIterator;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import utils.FlyweightFactory;
+import utils.RTree;
+import utils.SpatialIndex;
+import figures.enums.ChangeKind;
 import figures.enums.FigureType;
 import figures.enums.LineType;
+import figures.stores.FigureSource;
+import figures.stores.FigureStore;
+import figures.stores.LayeredFigureStore;
+import figures.events.AsyncDrawingListener;
+import figures.events.DrawingEvent;
+import figures.events.DrawingListener;
+import figures.stores.PersistentFigureStore;
 
 /**
- * Classe contenant l'ensemble des figures à dessiner (LE MODELE)
+ * Classe contenant l'ensemble des figures à dessiner (LE MODELE).
+ * Les modifications du dessin sont synchronisées et chacune d'elles publie
+ * une nouvelle version figée du dessin ({@link DrawingSnapshot}). Les
+ * lectures (parcours, accès aux figures, recherche sous un point) se font
+ * toujours sur la dernière version publiée, sans verrou : elles ne bloquent
+ * jamais les modifications faites depuis un autre thread (un chargement en
+ * tâche de fond par exemple) et ne sont jamais perturbées par celles ci.
+ * Chaque modification des figures terminées conserve aussi la version
+ * précédente dans un historique permettant d'annuler ({@link #undo()}) et de
+ * refaire ({@link #redo()}) les modifications : les versions partageant leur
+ * structure, conserver une version ne coûte que O(log n) et revenir à une
+ * version se fait en temps constant, même après un {@link #clear()}.
  * @author davidroussel
  *
  */
-public class Drawing extends Observable implements Iterable<AbstractFigure>
+public class Drawing implements Iterable<AbstractFigure>
 {
 	/**
-	 * Liste des figures à dessiner
+	 * Les figures terminées à dessiner
 	 */
-	private Vector<AbstractFigure> figures;
+	private FigureStore figures;
+
+	/**
+	 * La dernière version figée publiée du dessin
+	 * @see #snapshot()
+	 */
+	private volatile DrawingSnapshot snapshot;
+
+	/**
+	 * Index spatial des bornes extérieures
+	 * ({@link AbstractFigure#getOuterBounds2D()}) des figures terminées. Les
+	 * clés de l'index sont les indices des figures dans {@link #figures} ce qui
+	 * permet de retrouver directement la figure la plus haute sous un point.
+	 * L'index est persistant : chaque modification en produit une nouvelle
+	 * version, les précédentes restant utilisables par les versions figées
+	 * du dessin.
+	 */
+	private RTree index;
+
+	/**
+	 * La figure en cours de dessin (la plus haute du dessin) ou null si aucune
+	 * figure n'est en cours de dessin. Sa géométrie changeant à chaque
+	 * {@link AbstractFigure#setLastPoint(Point2D)} elle n'est ajoutée aux
+	 * {@link #figures} et à l'{@link #index} que lorsqu'elle est terminée.
+	 * @see #terminateFigure()
+	 */
+	private AbstractFigure editedFigure;
+
+	/**
+	 * Les bornes extérieures ({@link AbstractFigure#getOuterBounds2D()}) de la
+	 * figure en cours de dessin lors de la dernière notification. Permet de
+	 * déterminer la zone à redessiner lorsque celle-ci change.
+	 */
+	private Rectangle2D editedBounds;
+
+	/**
+	 * La zone modifiée depuis la dernière notification (ou null si aucune
+	 * zone n'a été modifiée)
+	 */
+	private Rectangle2D dirtyRegion;
+
+	/**
+	 * Indique que l'ensemble du dessin a changé depuis la dernière
+	 * notification (suite à un {@link #clear()} par exemple)
+	 */
+	private boolean dirtyAll;
+
+	/**
+	 * Les sortes de modifications survenues depuis la dernière notification
+	 */
+	private EnumSet<ChangeKind> changeKinds;
+
+	/**
+	 * L'indice de la première figure terminée modifiée depuis la dernière
+	 * notification
+	 */
+	private int changeFirst;
+
+	/**
+	 * L'indice suivant celui de la dernière figure terminée modifiée depuis
+	 * la dernière notification
+	 */
+	private int changeEnd;
+
+	/**
+	 * Les écouteurs des modifications du dessin
+	 */
+	private CopyOnWriteArrayList<DrawingListener> listeners;
+
+	/**
+	 * Génération des figures terminées : incrémentée à chaque fois que des
+	 * figures terminées sont retirées du dessin. Tant qu'elle ne change pas,
+	 * les figures terminées ne font que s'ajouter les unes aux autres.
+	 */
+	private int generation;
+
+	/**
+	 * Entrée de l'historique : une version du dessin et la zone modifiée pour
+	 * passer de cette version à la suivante (ou null si elle n'est pas
+	 * connue)
+	 */
+	private static class Version
+	{
+		final DrawingSnapshot state;
+		Rectangle2D change;
+
+		Version(DrawingSnapshot state, Rectangle2D change)
+		{
+			this.state = state;
+			this.change = change;
+		}
+	}
+
+	/**
+	 * Nombre maximum de versions conservées par défaut dans l'historique
+	 */
+	public static final int defaultHistoryLimit = 100;
+
+	/**
+	 * Nombre maximum de versions conservées dans l'historique (annulations et
+	 * rétablissements confondus) : au delà, les plus anciennes versions sont
+	 * oubliées
+	 */
+	private int historyLimit;
+
+	/**
+	 * Les versions précédentes du dessin, de la plus récente à la plus
+	 * ancienne
+	 */
+	private ArrayDeque<Version> undoHistory;
+
+	/**
+	 * Les versions annulées du dessin, de la plus récemment annulée à la plus
+	 * anciennement annulée
+	 */
+	private ArrayDeque<Version> redoHistory;
+
+	/**
+	 * Profondeur des lots de modifications en cours
+	 * @see #beginBatch()
+	 */
+	private int batchDepth;
+
+	/**
+	 * Indique qu'une nouvelle version du dessin doit être publiée à la fin du
+	 * lot de modifications en cours
+	 */
+	private boolean batchPending;
+
+	/**
+	 * L'entrée de l'historique regroupant les modifications du lot en cours
+	 * (ou null si aucune modification n'a encore été faite dans ce lot)
+	 */
+	private Version batchVersion;
 
 	/**
 	 * Le type de figure à créer
@@ -56,6 +213,12 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	 */
 	private BasicStroke stroke;
 
+	/**
+	 * La table des styles (trait, couleur de trait, couleur de remplissage)
+	 * des figures créées par ce dessin
+	 */
+	private final StyleTable styles;
+
 	/**
 	 * La factory des couleurs de remplissage
 	 */
@@ -72,11 +235,38 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	private FlyweightFactory<BasicStroke> edgeTypeFactory;
 
 	/**
-	 * Constructeur de modèle de dessin
+	 * Constructeur de modèle de dessin stockant ses figures dans un
+	 * {@link PersistentFigureStore}
 	 */
 	public Drawing()
 	{
-		figures = new Vector<AbstractFigure>();
+		this(new PersistentFigureStore());
+	}
+
+	/**
+	 * Constructeur de modèle de dessin à partir d'un stockage de figures
+	 * @param store le stockage (vide) dans lequel ranger les figures terminées
+	 */
+	public Drawing(FigureStore store)
+	{
+		figures = store;
+		index = RTree.EMPTY;
+		historyLimit = defaultHistoryLimit;
+		undoHistory = new ArrayDeque<Version>();
+		redoHistory = new ArrayDeque<Version>();
+		batchDepth = 0;
+		batchPending = false;
+		batchVersion = null;
+		editedFigure = null;
+		editedBounds = null;
+		dirtyRegion = null;
+		dirtyAll = false;
+		changeKinds = EnumSet.noneOf(ChangeKind.class);
+		changeFirst = Integer.MAX_VALUE;
+		changeEnd = 0;
+		listeners = new CopyOnWriteArrayList<DrawingListener>();
+		generation = 0;
+		styles = new StyleTable();
 		fillPaintFactory = new FlyweightFactory<Paint>();
 		edgePaintFactory = new FlyweightFactory<Paint>();
 		edgeTypeFactory = new FlyweightFactory<BasicStroke>();
@@ -86,6 +276,7 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 		edgeType = LineType.SOLID;
 		stroke = new BasicStroke(edgeWidth, BasicStroke.CAP_ROUND,
 		        BasicStroke.JOIN_ROUND);
+		publish();
 
 		System.out.println("Drawing model created");
 	}
@@ -98,18 +289,423 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	{
 		// Aide au GC
 		figures.clear();
+		index = RTree.EMPTY;
+		undoHistory.clear();
+		redoHistory.clear();
 		fillPaintFactory.clear();
 		edgePaintFactory.clear();
 	}
 
 	/**
-	 * Mise à jour du ou des {@link Observer} qui observent ce modèle. On place
-	 * le modèle dans un état "changé" puis on notifie les observateurs.
+	 * Ajout d'un écouteur des modifications du dessin, notifié dans le thread
+	 * qui appelle {@link #update()}
+	 * @param listener l'écouteur à ajouter
+	 */
+	public void addDrawingListener(DrawingListener listener)
+	{
+		if (listener != null)
+		{
+			listeners.add(listener);
+		}
+		else
+		{
+			System.err.println("Drawing.addDrawingListener(null)");
+		}
+	}
+
+	/**
+	 * Ajout d'un écouteur des modifications du dessin notifié de manière
+	 * asynchrone au travers d'un exécuteur. Les évènements survenant avant
+	 * que l'écouteur n'ait reçu le précédent sont fusionnés.
+	 * @param listener l'écouteur à ajouter
+	 * @param executor l'exécuteur dans lequel notifier l'écouteur
+	 * @see AsyncDrawingListener
+	 */
+	public void addDrawingListener(DrawingListener listener, Executor executor)
+	{
+		if (listener != null)
+		{
+			listeners.add(new AsyncDrawingListener(listener, executor));
+		}
+		else
+		{
+			System.err.println("Drawing.addDrawingListener(null, executor)");
+		}
+	}
+
+	/**
+	 * Retrait d'un écouteur des modifications du dessin (qu'il soit notifié
+	 * de manière synchrone ou asynchrone)
+	 * @param listener l'écouteur à retirer
+	 */
+	public void removeDrawingListener(DrawingListener listener)
+	{
+		for (DrawingListener registered : listeners)
+		{
+			if ((registered == listener)
+					|| ((registered instanceof AsyncDrawingListener)
+					&& (((AsyncDrawingListener) registered).getTarget() == listener)))
+			{
+				listeners.remove(registered);
+			}
+		}
+	}
+
+	/**
+	 * Notification des écouteurs ({@link DrawingListener}) de ce modèle avec
+	 * un {@link DrawingEvent} décrivant les modifications survenues depuis la
+	 * dernière notification : leurs sortes, les indices des figures terminées
+	 * concernées et la zone modifiée (les bornes précédentes et actuelles de
+	 * la figure en cours de dessin ainsi que celles des figures ajoutées ou
+	 * retirées entre temps). Lorsque cette zone n'est pas connue (après un
+	 * {@link #clear()} par exemple) elle vaut null et les écouteurs doivent
+	 * considérer que tout le dessin a changé. Aucune notification n'est faite
+	 * si rien n'a changé. Pendant un lot de modifications
+	 * ({@link #beginBatch()}) la notification est reportée à la fin du lot.
 	 */
 	public void update()
 	{
-		setChanged();
-		notifyObservers();
+		DrawingEvent event;
+		synchronized (this)
+		{
+			if (editedFigure != null)
+			{
+				Rectangle2D bounds = editedFigure.getOuterBounds2D();
+				markDirty(editedBounds);
+				markDirty(bounds);
+				editedBounds = bounds;
+				changeKinds.add(ChangeKind.EDITED);
+			}
+
+			if ((batchDepth > 0) || changeKinds.isEmpty())
+			{
+				// notification à la fin du lot ou rien à notifier
+				return;
+			}
+
+			event = new DrawingEvent(this, changeKinds,
+					Math.min(changeFirst, changeEnd), changeEnd,
+					(dirtyAll ? null : dirtyRegion), snapshot);
+			dirtyRegion = null;
+			dirtyAll = false;
+			changeKinds.clear();
+			changeFirst = Integer.MAX_VALUE;
+			changeEnd = 0;
+		}
+		// Les écouteurs sont notifiés hors du verrou
+		for (DrawingListener listener : listeners)
+		{
+			listener.drawingChanged(event);
+		}
+	}
+
+	/**
+	 * Enregistrement d'une modification à transmettre lors de la prochaine
+	 * notification
+	 * @param kind la sorte de modification
+	 * @param first l'indice de la première figure terminée concernée
+	 * @param end l'indice suivant celui de la dernière figure terminée
+	 * concernée
+	 */
+	private void noteChange(ChangeKind kind, int first, int end)
+	{
+		changeKinds.add(kind);
+		if (first < end)
+		{
+			changeFirst = Math.min(changeFirst, first);
+			changeEnd = Math.max(changeEnd, end);
+		}
+	}
+
+	/**
+	 * Publication d'une nouvelle version figée du dessin après une
+	 * modification. Doit être appelée en détenant le verrou du dessin.
+	 */
+	private void publish()
+	{
+		if (batchDepth > 0)
+		{
+			// publication à la fin du lot
+			batchPending = true;
+			return;
+		}
+		snapshot = new DrawingSnapshot(figures.snapshot(), index,
+				editedFigure, generation);
+	}
+
+	/**
+	 * Enregistrement dans l'historique de la version courante avant sa
+	 * modification (la version publiée n'est pas encore remplacée). Doit être
+	 * appelée en détenant le verrou du dessin, avant {@link #publish()}.
+	 * Toutes les modifications d'un lot forment une seule entrée de
+	 * l'historique.
+	 * @param change la zone modifiée, ou null si elle n'est pas connue
+	 */
+	private void record(Rectangle2D change)
+	{
+		if (batchVersion != null)
+		{
+			if (change == null)
+			{
+				batchVersion.change = null;
+			}
+			else if (batchVersion.change != null)
+			{
+				batchVersion.change.add(change);
+			}
+			return;
+		}
+
+		Version version = new Version(snapshot, (change != null
+				? (Rectangle2D) change.clone() : null));
+		undoHistory.addFirst(version);
+		redoHistory.clear();
+		trimHistory();
+		if (batchDepth > 0)
+		{
+			batchVersion = version;
+		}
+	}
+
+	/**
+	 * Début d'un lot de modifications : jusqu'au {@link #commitBatch()}
+	 * correspondant, les modifications du dessin ne sont ni publiées
+	 * ({@link #snapshot()}) ni notifiées aux écouteurs ({@link #update()})
+	 * et ne forment qu'une seule entrée de l'historique. Les lots peuvent être
+	 * imbriqués : seul le dernier {@link #commitBatch()} termine le lot.
+	 * Le lot concerne toutes les modifications du dessin, quel que soit le
+	 * thread qui les effectue.
+	 */
+	public synchronized void beginBatch()
+	{
+		batchDepth++;
+	}
+
+	/**
+	 * Fin d'un lot de modifications commencé par {@link #beginBatch()} : à la
+	 * fin du lot le plus externe, publication de la nouvelle version du dessin
+	 * et notification unique des écouteurs avec l'union des zones modifiées
+	 * pendant le lot.
+	 */
+	public void commitBatch()
+	{
+		synchronized (this)
+		{
+			if (batchDepth == 0)
+			{
+				System.err.println("Drawing.commitBatch: no batch in progress");
+				return;
+			}
+			batchDepth--;
+			if (batchDepth > 0)
+			{
+				return;
+			}
+			batchVersion = null;
+			if (batchPending)
+			{
+				batchPending = false;
+				publish();
+			}
+		}
+		update();
+	}
+
+	/**
+	 * Ajout d'un ensemble de figures terminées en un seul lot de modifications
+	 * : une seule publication, une seule notification des écouteurs et une
+	 * seule entrée dans l'historique quel que soit le nombre de figures.
+	 * @param newFigures les figures à ajouter dans l'ordre du dessin
+	 * @see #addFigure(AbstractFigure)
+	 */
+	public void addAll(Iterable<? extends AbstractFigure> newFigures)
+	{
+		beginBatch();
+		try
+		{
+			for (AbstractFigure figure : newFigures)
+			{
+				addFigure(figure);
+			}
+		}
+		finally
+		{
+			commitBatch();
+		}
+	}
+
+	/**
+	 * Retour des figures terminées à une version de l'historique
+	 * @param version la version à restaurer
+	 */
+	private void restore(Version version)
+	{
+		int previousCount = figures.size();
+		figures.restore(version.state.getFigures());
+		noteChange(ChangeKind.RESTORED, 0, Math.max(previousCount,
+				figures.size()));
+		index = version.state.getIndex();
+		generation++;
+		if (version.change != null)
+		{
+			markDirty(version.change);
+		}
+		else
+		{
+			dirtyRegion = null;
+			dirtyAll = true;
+		}
+		publish();
+	}
+
+	/**
+	 * Annulation de la dernière modification : abandon de la figure en cours
+	 * de dessin s'il y en a une, sinon retour des figures terminées à leur
+	 * version précédente. La zone modifiée sera transmise aux écouteurs
+	 * lors du prochain {@link #update()}
+	 * @return true si une modification a été annulée, false si l'historique
+	 * est vide
+	 */
+	public synchronized boolean undo()
+	{
+		if (editedFigure != null)
+		{
+			markDirty(editedBounds);
+			markDirty(editedFigure.getOuterBounds2D());
+			noteChange(ChangeKind.EDITED, 0, 0);
+			editedFigure = null;
+			editedBounds = null;
+			publish();
+			return true;
+		}
+
+		batchVersion = null;
+		Version previous = undoHistory.pollFirst();
+		if (previous == null)
+		{
+			return false;
+		}
+		redoHistory.addFirst(new Version(snapshot, previous.change));
+		restore(previous);
+		return true;
+	}
+
+	/**
+	 * Rétablissement de la dernière modification annulée par {@link #undo()}.
+	 * La zone modifiée sera transmise aux écouteurs lors du prochain
+	 * {@link #update()}
+	 * @return true si une modification a été rétablie, false s'il n'y a
+	 * aucune modification annulée à rétablir
+	 */
+	public synchronized boolean redo()
+	{
+		batchVersion = null;
+		Version next = redoHistory.pollFirst();
+		if (next == null)
+		{
+			return false;
+		}
+		undoHistory.addFirst(new Version(snapshot, next.change));
+		restore(next);
+		return true;
+	}
+
+	/**
+	 * Obtention du nombre maximum de versions conservées dans l'historique
+	 * @return le nombre maximum de versions de l'historique
+	 */
+	public synchronized int getHistoryLimit()
+	{
+		return historyLimit;
+	}
+
+	/**
+	 * Changement du nombre maximum de versions conservées dans l'historique
+	 * (annulations et rétablissements confondus). Lorsque l'historique
+	 * dépasse cette limite, les versions les plus éloignées de la version
+	 * courante sont oubliées : les plus anciennes versions à annuler au delà
+	 * de la limite, puis les dernières versions à rétablir. Un lot de
+	 * modifications en cours reste annulable tant que la limite n'est pas
+	 * nulle.
+	 * @param limit le nombre maximum de versions de l'historique (0 pour ne
+	 * conserver aucun historique)
+	 * @throws IllegalArgumentException si limit est négatif
+	 */
+	public synchronized void setHistoryLimit(int limit)
+			throws IllegalArgumentException
+	{
+		if (limit < 0)
+		{
+			throw new IllegalArgumentException("negative history limit "
+					+ limit);
+		}
+		historyLimit = limit;
+		trimHistory();
+	}
+
+	/**
+	 * Oubli des versions de l'historique au delà de {@link #historyLimit}
+	 * (libère les versions qu'il était seul à référencer)
+	 */
+	private void trimHistory()
+	{
+		while (undoHistory.size() + redoHistory.size() > historyLimit)
+		{
+			if (undoHistory.size() > historyLimit)
+			{
+				undoHistory.pollLast();
+			}
+			else
+			{
+				redoHistory.pollLast();
+			}
+		}
+		if ((batchVersion != null)
+				&& (batchVersion != undoHistory.peekFirst()))
+		{
+			// Le lot en cours n'est plus annulable
+			batchVersion = null;
+		}
+	}
+
+	/**
+	 * Oubli de l'historique des modifications (libère les versions qu'il
+	 * était seul à référencer)
+	 */
+	public synchronized void clearHistory()
+	{
+		undoHistory.clear();
+		redoHistory.clear();
+	}
+
+	/**
+	 * Obtention de la dernière version figée du dessin. Cette version ne
+	 * changera plus : elle peut être parcourue ou dessinée sans verrou,
+	 * depuis n'importe quel thread, pendant que le dessin est modifié.
+	 * @return la dernière version publiée du dessin
+	 */
+	public DrawingSnapshot snapshot()
+	{
+		return snapshot;
+	}
+
+	/**
+	 * Ajout d'une zone à la zone modifiée depuis la dernière notification
+	 * @param region la zone modifiée (ignorée si null)
+	 */
+	private void markDirty(Rectangle2D region)
+	{
+		if ((region != null) && !dirtyAll)
+		{
+			if (dirtyRegion == null)
+			{
+				dirtyRegion = (Rectangle2D) region.clone();
+			}
+			else
+			{
+				dirtyRegion.add(region);
+			}
+		}
 	}
 
 	/**
@@ -198,12 +794,44 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	}
 
 	/**
-	 * Initialisation d'une figure de type {@link #type} au point p et ajout
-	 * de cette figure à la liste des {@link #figures}
+	 * Initialisation d'une figure de type {@link #type} au point p. Cette
+	 * figure devient la figure en cours de dessin jusqu'à l'appel de
+	 * {@link #terminateFigure()}. Les écouteurs ne seront notifiés qu'au
+	 * prochain {@link #update()} (appelé par les créateurs de figures)
 	 * @param p le point où initialiser la figure
 	 * @return la nouvelle figure créée à x et y avec les paramètres courants
 	 */
-	public AbstractFigure initiateFigure(Point2D p)
+	public synchronized AbstractFigure initiateFigure(Point2D p)
+	{
+		// Une éventuelle figure précédente non terminée est indexée telle quelle
+		terminateFigure();
+
+		AbstractFigure f = createFigure(p);
+
+		/*
+		 * La figure devient la figure en cours de dessin si !null
+		 */
+		if (f != null) {
+			editedFigure = f;
+			editedBounds = null;
+			publish();
+		}
+		else {
+			System.out.println("null figure");
+		}
+		return f; 
+	}
+
+	/**
+	 * Création d'une figure de type {@link #type} au point p avec les
+	 * paramètres courants, sans l'ajouter au dessin : la figure peut être
+	 * construite en dehors du dessin (dans un
+	 * {@link figures.creationListeners.PreviewLayer} par exemple) puis ajoutée
+	 * une fois terminée avec {@link #addFigure(AbstractFigure)}
+	 * @param p le point où initialiser la figure
+	 * @return la nouvelle figure créée au point p avec les paramètres courants
+	 */
+	public synchronized AbstractFigure createFigure(Point2D p)
 	{
 		/*
 		 * Maintenant que l'on s'apprête effectivement à créer une figure
@@ -212,25 +840,136 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 		fillPaint = fillPaintFactory.get(fillPaint);
 		edgePaint = edgePaintFactory.get(edgePaint);
 		stroke = edgeTypeFactory.get(stroke);
+		int styleId = internStyle(stroke, edgePaint, fillPaint);
 
 		/*
 		 * Obtention de la figure correspondant au type de figure choisi
 		 * grâce à type.getFigure(...)
 		 */
 		
-		AbstractFigure f = type.getFigure(stroke, edgePaint, fillPaint, p);
+		return type.getFigure(styles, styleId, p);
+	}
 
-		/*
-		 * Ajout de la figure à #figures si !null et MAJ
-		 */
-		if (f != null) {
-			figures.add(f);
-			update();
-		}
-		else {
-			System.out.println("null figure");
+	/**
+	 * Obtention de l'identifiant d'un style dans la table des {@link #styles}
+	 * en partageant le trait et les couleurs avec ceux déjà utilisés par le
+	 * dessin (au travers des factories). Permet de construire des figures en
+	 * dehors du dessin (lors d'un chargement par exemple) avec un style qui
+	 * n'est pas le style courant. La table des styles ne retirant jamais un
+	 * style, les éléments ainsi partagés restent dans les factories aussi
+	 * longtemps que le dessin (même s'ils ne sont plus utilisés par aucune
+	 * figure).
+	 * @param stroke le trait (ou null)
+	 * @param edge la couleur du trait (ou null)
+	 * @param fill la couleur de remplissage (ou null)
+	 * @return l'identifiant du style dans {@link #getStyles()}
+	 */
+	public synchronized int internStyle(BasicStroke stroke, Paint edge,
+			Paint fill)
+	{
+		return styles.intern(edgeTypeFactory.get(stroke),
+				edgePaintFactory.get(edge), fillPaintFactory.get(fill));
+	}
+
+	/**
+	 * Terminaison de la figure en cours de dessin : sa géométrie ne changera
+	 * plus, elle peut donc être ajoutée aux {@link #figures} et à
+	 * l'{@link #index}. Ne fait rien si aucune figure n'est en cours de dessin.
+	 */
+	public synchronized void terminateFigure()
+	{
+		if (editedFigure != null)
+		{
+			Rectangle2D bounds = editedFigure.getOuterBounds2D();
+			noteChange(ChangeKind.ADDED, figures.size(), figures.size() + 1);
+			index = index.insert(figures.size(), bounds);
+			figures.add(editedFigure);
+			markDirty(editedBounds);
+			markDirty(bounds);
+			editedFigure = null;
+			editedBounds = null;
+			record(bounds);
+			publish();
 		}
-		return f; 
+	}
+
+	/**
+	 * Ajout d'une figure terminée au dessin (sous l'éventuelle figure en cours
+	 * de dessin). Peut être appelée depuis n'importe quel thread (lors d'un
+	 * chargement en tâche de fond par exemple). La zone occupée par la figure
+	 * sera transmise aux écouteurs lors du prochain {@link #update()}
+	 * @param figure la figure à ajouter
+	 */
+	public synchronized void addFigure(AbstractFigure figure)
+	{
+		Rectangle2D bounds = figure.getOuterBounds2D();
+		noteChange(ChangeKind.ADDED, figures.size(), figures.size() + 1);
+		index = index.insert(figures.size(), bounds);
+		figures.add(figure);
+		markDirty(bounds);
+		record(bounds);
+		publish();
+	}
+
+	/**
+	 * Obtention de la figure en cours de dessin
+	 * @return la figure en cours de dessin ou null si aucune figure n'est en
+	 * cours de dessin
+	 */
+	public AbstractFigure getEditedFigure()
+	{
+		return snapshot.getEditedFigure();
+	}
+
+	/**
+	 * Nombre de figures terminées. Les figures terminées sont les premières
+	 * figures du dessin, seule la dernière pouvant être en cours de dessin.
+	 * @return le nombre de figures terminées
+	 */
+	public int getTerminatedCount()
+	{
+		return snapshot.getTerminatedCount();
+	}
+
+	/**
+	 * Accès à la table des styles des figures créées par ce dessin
+	 * @return la table des styles des figures créées par ce dessin
+	 * @see AbstractFigure#getStyleId()
+	 */
+	public StyleTable getStyles()
+	{
+		return styles;
+	}
+
+	/**
+	 * Statistiques des factories de couleurs et de traits (nombre d'éléments
+	 * distincts, nombre d'éléments partagés et nombre d'éléments ajoutés)
+	 * @return une description des factories de couleurs et de traits
+	 */
+	public String getFlyweightStatistics()
+	{
+		return "fill paints " + fillPaintFactory + ", edge paints "
+				+ edgePaintFactory + ", strokes " + edgeTypeFactory;
+	}
+
+	/**
+	 * Génération courante des figures terminées
+	 * @return la génération courante des figures terminées
+	 * @see #generation
+	 */
+	public int getGeneration()
+	{
+		return snapshot.getGeneration();
+	}
+
+	/**
+	 * Accès à une figure par son index
+	 * @param i l'index de la figure (0 pour la figure la plus basse)
+	 * @return la figure d'index i
+	 */
+	public AbstractFigure get(int i)
+	{
+		return snapshot.get(i);
 	}
 
 	/**
@@ -240,7 +979,8 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	 */
 	public AbstractFigure getLastFigure()
 	{
-		return figures.lastElement();
+		DrawingSnapshot current = snapshot;
+		return current.get(current.size() - 1);
 	}
 
 	/**
@@ -251,50 +991,144 @@ public class Drawing extends Observable implements Iterable<AbstractFigure>
 	 */
 	public AbstractFigure getFigureAt(Point2D p)
 	{
-		for (ListIterator<AbstractFigure> it = reverseIterator(); it.hasPrevious();) {
-			AbstractFigure f = it.previous();
-			if (f.contains(p)) {
-				return f;
-			}
-		}
-		return null;
+		return snapshot.getFigureAt(p);
 	}
 
 	/**
-	 * Retrait de la dernière figure (sera déclencé par une action undo)
+	 * Recherche des figures terminées dont les bornes extérieures
+	 * intersectent une zone
+	 * @param area la zone dans laquelle chercher des figures
+	 * @return les indices des figures trouvées dans l'ordre du dessin (de la
+	 * plus basse à la plus haute)
+	 * @see #get(int)
 	 */
-	public void removeLastFigure()
+	public int[] findTerminatedFigures(Rectangle2D area)
 	{
-		if (!figures.isEmpty()) {
-			figures.remove(figures.size()-1);
+		return snapshot.findTerminatedFigures(area);
+	}
+
+	/**
+	 * Retrait de la dernière figure. La zone qu'elle occupait sera transmise
+	 * aux écouteurs lors du prochain {@link #update()}. Le retrait d'une
+	 * figure terminée peut être annulé par {@link #undo()}
+	 */
+	public synchronized void removeLastFigure()
+	{
+		if (editedFigure != null) {
+			markDirty(editedBounds);
+			markDirty(editedFigure.getOuterBounds2D());
+			noteChange(ChangeKind.EDITED, 0, 0);
+			editedFigure = null;
+			editedBounds = null;
+		}
+		else if (figures.size() > 0) {
+			int last = figures.size()-1;
+			noteChange(ChangeKind.REMOVED, last, last + 1);
+			AbstractFigure f = figures.removeLast();
+			Rectangle2D bounds = f.getOuterBounds2D();
+			markDirty(bounds);
+			index = index.remove(last);
+			generation++;
+			record(bounds);
 		}
+		publish();
 	}
 
 	/**
-	 * Effacement de toutes les figures (sera déclenché par une action clear)
+	 * Effacement de toutes les figures (sera déclenché par une action clear).
+	 * Le prochain {@link #update()} signalera aux écouteurs que tout le
+	 * dessin a changé. L'effacement peut être annulé par {@link #undo()}
 	 */
-	public void clear()
+	public synchronized void clear()
 	{
+		if (figures.size() > 0)
+		{
+			record(null);
+		}
+		if (editedFigure != null)
+		{
+			noteChange(ChangeKind.EDITED, 0, 0);
+		}
+		noteChange(ChangeKind.CLEARED, 0, figures.size());
 		figures.clear();
+		index = RTree.EMPTY;
+		editedFigure = null;
+		editedBounds = null;
+		dirtyRegion = null;
+		dirtyAll = true;
+		generation++;
+		publish();
 	}
 
 	/**
-	 * Accès aux figures
+	 * Remplacement de toutes les figures par celles d'une source en lecture
+	 * seule et de son index spatial, sans construire les figures : elles ne
+	 * le seront que lorsqu'elles seront demandées (pour être dessinées ou
+	 * testées sous le pointeur). Les figures ajoutées ensuite le sont au
+	 * dessus de la source, dans le stockage courant qui devient la couche
+	 * supérieure d'un {@link LayeredFigureStore}. Le remplacement peut être
+	 * annulé par {@link #undo()}
+	 * @param source la source des figures
+	 * @param sourceIndex l'index spatial des bornes extérieures des figures
+	 * de la source (les clés étant les indices des figures dans la source)
+	 */
+	public synchronized void open(FigureSource source, SpatialIndex sourceIndex)
+	{
+		record(null);
+		if (editedFigure != null)
+		{
+			noteChange(ChangeKind.EDITED, 0, 0);
+		}
+		int previousCount = figures.size();
+		if (!(figures instanceof LayeredFigureStore))
+		{
+			figures = new LayeredFigureStore(figures);
+		}
+		((LayeredFigureStore) figures).setBase(source);
+		noteChange(ChangeKind.RESTORED, 0, Math.max(previousCount,
+				figures.size()));
+		index = RTree.over(sourceIndex, source.size());
+		editedFigure = null;
+		editedBounds = null;
+		dirtyRegion = null;
+		dirtyAll = true;
+		generation++;
+		publish();
+	}
+
+	/**
+	 * Accès aux figures de la dernière version publiée du dessin : l'itérateur
+	 * n'est pas affecté par les modifications ultérieures du dessin
 	 * @return l'itérateur sur les figures du dessin
 	 */
 	@Override
 	public Iterator<AbstractFigure> iterator()
 	{
-		return figures.iterator();
+		return snapshot.iterator();
 	}
 
 	/**
-	 * Accès aux figures en commençant par la dernière
+	 * Accès aux figures de la dernière version publiée du dessin en commençant
+	 * par la dernière
 	 * @return un {@link ListIterator} permettant de parcourir les figures
 	 * à l'envers
 	 */
 	public ListIterator<AbstractFigure> reverseIterator()
 	{
-		return figures.listIterator(figures.size());
+		final DrawingSnapshot current = snapshot;
+		return new AbstractList<AbstractFigure>()
+		{
+			@Override
+			public AbstractFigure get(int i)
+			{
+				return current.get(i);
+			}
+
+			@Override
+			public int size()
+			{
+				return current.size();
+			}
+		}.listIterator(current.size());
 	}
 }
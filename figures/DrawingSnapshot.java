@@ -0,0 +1,238 @@
+package figures;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+import utils.RTree;
+import figures.stores.FigureStore;
+
+/**
+ * Version figée d'un {@link Drawing} : les figures terminées (sous forme
+ * d'une version figée de leur {@link FigureStore}), leur index spatial et la
+ * figure en cours de dessin à un instant donné. Une version ne change jamais
+ * une fois publiée par le dessin ({@link Drawing#snapshot()}) : elle peut donc
+ * être parcourue, dessinée ou interrogée depuis n'importe quel thread sans
+ * verrou, pendant que le dessin continue d'être modifié.
+ *
+ * @author davidroussel
+ */
+public final class DrawingSnapshot implements Iterable<AbstractFigure>
+{
+	/**
+	 * Les figures terminées
+	 */
+	private final FigureStore figures;
+
+	/**
+	 * L'index spatial des bornes extérieures des figures terminées
+	 */
+	private final RTree index;
+
+	/**
+	 * La figure en cours de dessin (ou null)
+	 */
+	private final AbstractFigure editedFigure;
+
+	/**
+	 * La génération des figures terminées
+	 * @see Drawing#getGeneration()
+	 */
+	private final int generation;
+
+	/**
+	 * Constructeur d'une version figée
+	 * @param figures les figures terminées (figées)
+	 * @param index l'index spatial des figures terminées
+	 * @param editedFigure la figure en cours de dessin (ou null)
+	 * @param generation la génération des figures terminées
+	 */
+	DrawingSnapshot(FigureStore figures,
+			RTree index,
+			AbstractFigure editedFigure,
+			int generation)
+	{
+		this.figures = figures;
+		this.index = index;
+		this.editedFigure = editedFigure;
+		this.generation = generation;
+	}
+
+	/**
+	 * Accès aux figures terminées (figées) de cette version
+	 * @return les figures terminées de cette version
+	 */
+	FigureStore getFigures()
+	{
+		return figures;
+	}
+
+	/**
+	 * Accès à l'index spatial des figures terminées de cette version (pour
+	 * l'enregistrer avec les figures par exemple)
+	 * @return l'index spatial des figures terminées de cette version
+	 */
+	public RTree getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * Nombre de figures (terminées ou en cours de dessin)
+	 * @return le nombre de figures de cette version
+	 */
+	public int size()
+	{
+		return figures.size() + (editedFigure != null ? 1 : 0);
+	}
+
+	/**
+	 * Nombre de figures terminées
+	 * @return le nombre de figures terminées
+	 */
+	public int getTerminatedCount()
+	{
+		return figures.size();
+	}
+
+	/**
+	 * Génération des figures terminées
+	 * @return la génération des figures terminées de cette version
+	 * @see Drawing#getGeneration()
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Obtention de la figure en cours de dessin
+	 * @return la figure en cours de dessin ou null
+	 */
+	public AbstractFigure getEditedFigure()
+	{
+		return editedFigure;
+	}
+
+	/**
+	 * Accès à une figure par son index
+	 * @param i l'index de la figure (0 pour la figure la plus basse)
+	 * @return la figure d'index i
+	 * @throws IndexOutOfBoundsException si i est hors limites
+	 */
+	public AbstractFigure get(int i) throws IndexOutOfBoundsException
+	{
+		if ((editedFigure != null) && (i == figures.size()))
+		{
+			return editedFigure;
+		}
+		return figures.get(i);
+	}
+
+	/**
+	 * Obtention de la dernière figure contenant le point p.
+	 * @param p le point sous lequel on cherche une figure
+	 * @return la dernière figure contenant le point p ou à défaut null.
+	 */
+	public AbstractFigure getFigureAt(final Point2D p)
+	{
+		// La figure en cours de dessin est toujours la plus haute
+		if ((editedFigure != null) && editedFigure.contains(p))
+		{
+			return editedFigure;
+		}
+
+		// Puis les figures terminées de la plus haute à la plus basse
+		return getTerminatedFigureAt(p);
+	}
+
+	/**
+	 * Obtention de la dernière figure terminée contenant le point p. Les
+	 * figures terminées ne changeant plus, cette recherche peut être faite
+	 * dans un autre thread que celui qui édite la figure en cours de dessin.
+	 * @param p le point sous lequel on cherche une figure
+	 * @return la dernière figure terminée contenant le point p ou à défaut
+	 * null.
+	 */
+	public AbstractFigure getTerminatedFigureAt(final Point2D p)
+	{
+		int i = findTerminatedFigureAt(p);
+		return (i >= 0 ? figures.get(i) : null);
+	}
+
+	/**
+	 * Recherche de la dernière figure terminée contenant le point p
+	 * @param p le point sous lequel on cherche une figure
+	 * @return l'indice de la dernière figure terminée contenant le point p ou
+	 * à défaut -1
+	 * @see #get(int)
+	 */
+	public int findTerminatedFigureAt(final Point2D p)
+	{
+		return index.findTopMost(p.getX(), p.getY(), new IntPredicate()
+		{
+			@Override
+			public boolean test(int key)
+			{
+				return figures.get(key).contains(p);
+			}
+		});
+	}
+
+	/**
+	 * Recherche des figures terminées dont les bornes extérieures
+	 * intersectent une zone
+	 * @param area la zone dans laquelle chercher des figures
+	 * @return les indices des figures trouvées dans l'ordre du dessin (de la
+	 * plus basse à la plus haute)
+	 * @see #get(int)
+	 */
+	public int[] findTerminatedFigures(Rectangle2D area)
+	{
+		return index.search(area);
+	}
+
+	/**
+	 * Itérateur sur les figures de cette version (de la plus basse à la plus
+	 * haute)
+	 * @return un itérateur sur les figures de cette version
+	 */
+	@Override
+	public Iterator<AbstractFigure> iterator()
+	{
+		return new Iterator<AbstractFigure>()
+		{
+			private Iterator<AbstractFigure> terminated = figures.iterator();
+			private boolean editedDone = (editedFigure == null);
+
+			@Override
+			public boolean hasNext()
+			{
+				return terminated.hasNext() || !editedDone;
+			}
+
+			@Override
+			public AbstractFigure next()
+			{
+				if (terminated.hasNext())
+				{
+					return terminated.next();
+				}
+				if (!editedDone)
+				{
+					editedDone = true;
+					return editedFigure;
+				}
+				throw new NoSuchElementException();
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
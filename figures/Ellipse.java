@@ -1,46 +1,86 @@
 package figures;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 
+import figures.enums.FigureType;
+
 public class Ellipse extends AbstractFigure {
 
-	private Point2D upper_left;
+	/**
+	 * Abscisse et ordonnée du coin supérieur gauche, largeur et hauteur
+	 */
+	private double x;
+	private double y;
 	private double w;
 	private double h;
+
+	/**
+	 * La forme de l'ellipse, modifiée sur place à chaque changement de
+	 * géométrie
+	 */
+	private final Ellipse2D.Double ellipse;
 	
 	
 
 	/**
-	 * @param stroke
-	 * @param edge
-	 * @param fill
+	 * @param styles
+	 * @param styleId
 	 * @param upper_left
 	 * @param w
 	 * @param h
 	 */
-	public Ellipse(BasicStroke stroke, Paint edge, Paint fill,
+	public Ellipse(StyleTable styles, int styleId,
 			Point2D upper_left, double w, double h) {
-		super(stroke, edge, fill);
-		this.upper_left = upper_left;
+		super(styles, styleId);
+		x = upper_left.getX();
+		y = upper_left.getY();
 		this.w = w;
 		this.h = h;
-		shape = new Ellipse2D.Double(upper_left.getX(), upper_left.getY(), w, h);
+		ellipse = new Ellipse2D.Double(x, y, w, h);
+		shape = ellipse;
 	}
 
 	@Override
 	public void setLastPoint(Point2D p) {
-		w = Math.abs(p.getX() - upper_left.getX());
-		h = Math.abs(p.getY() - upper_left.getY());
-		shape = new Ellipse2D.Double(upper_left.getX(), upper_left.getY(), w, h);
+		w = Math.abs(p.getX() - x);
+		h = Math.abs(p.getY() - y);
+		ellipse.setFrame(x, y, w, h);
+	}
+
+	@Override
+	public FigureType getType() {
+		return FigureType.ELLIPSE;
+	}
 
+	/**
+	 * Coordonnées : x et y du coin supérieur gauche, largeur et hauteur
+	 */
+	@Override
+	public int getCoordinateCount() {
+		return 4;
+	}
+
+	@Override
+	public void getCoordinates(double[] coords, int offset) {
+		coords[offset] = x;
+		coords[offset + 1] = y;
+		coords[offset + 2] = w;
+		coords[offset + 3] = h;
+	}
+
+	@Override
+	public void setCoordinates(double[] coords, int offset, int count) {
+		x = coords[offset];
+		y = coords[offset + 1];
+		w = coords[offset + 2];
+		h = coords[offset + 3];
+		ellipse.setFrame(x, y, w, h);
 	}
 
 	@Override
 	public Point2D getCenter() {
-		return new Point2D.Double(upper_left.getX()+w, upper_left.getY()-h);
+		return new Point2D.Double(x+w, y-h);
 	}
 
 }
@@ -1,54 +1,120 @@
 package figures;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
+import java.awt.Shape;
 import java.awt.geom.Point2D;
 
+import utils.VertexBuffer;
+import figures.enums.FigureType;
+
 public class Polygon extends AbstractFigure {
-	
-	protected int nbPoints;
-	protected int[] lx;
-	protected int[] ly;
-	
-	public Polygon(BasicStroke stroke, Paint edge, Paint fill,Point2D p) {
-		super(stroke, edge, fill);
-		lx = new int[30];
-		lx[0]=(int) p.getX();
-		ly = new int[30];
-		ly[0]=(int) p.getY();
-		nbPoints = 1;
-		shape = new java.awt.Polygon(lx, ly, 2);
+
+	/**
+	 * Nombre de sommets initialement réservés
+	 */
+	private static final int initialCapacity = 16;
+
+	/**
+	 * Les sommets du polygone, qui constituent aussi sa forme : ils sont
+	 * modifiés sur place au fil de l'édition
+	 */
+	protected final VertexBuffer vertices;
+
+	/**
+	 * Indique si le dernier sommet suit le pointeur (il n'est alors pas
+	 * encore fixé)
+	 */
+	protected boolean tracking;
+
+	public Polygon(StyleTable styles, int styleId, Point2D p) {
+		super(styles, styleId);
+		vertices = new VertexBuffer(initialCapacity);
+		vertices.append(p.getX(), p.getY());
+		tracking = false;
+		shape = vertices;
 	}
 
+	/**
+	 * Déplacement du sommet qui suit le pointeur (ajouté au besoin). Un
+	 * second appel au même point fixe ce sommet : le prochain déplacement
+	 * ajoutera un nouveau sommet.
+	 * @param p le point où placer le dernier sommet
+	 */
 	@Override
 	public void setLastPoint(Point2D p) {
-		int x = (int) p.getX();
-		int y = (int) p.getY();
-		if(nbPoints<2 || ((x!=lx[nbPoints])||(y!=ly[nbPoints-1]))){
-			if((x!=lx[nbPoints])||(y!=ly[nbPoints])){
-				lx[nbPoints]=x;
-				ly[nbPoints]=y;
-				shape= new java.awt.Polygon(lx, ly, nbPoints+1);
+		double x = p.getX();
+		double y = p.getY();
+		if (!tracking) {
+			vertices.append(x, y);
+			tracking = true;
+		} else {
+			int last = vertices.size() - 1;
+			if ((x != vertices.getX(last)) || (y != vertices.getY(last))) {
+				vertices.setLast(x, y);
 			} else {
-				lx[nbPoints]=x;
-				ly[nbPoints]=y;
-				nbPoints=nbPoints+1;
-				shape= new java.awt.Polygon(lx, ly, nbPoints);
+				tracking = false;
 			}
 		}
 	}
 
+	@Override
+	public FigureType getType() {
+		return FigureType.POLYGON;
+	}
+
+	/**
+	 * Coordonnées : x puis y de chacun des sommets de la forme
+	 */
+	@Override
+	public int getCoordinateCount() {
+		return 2 * vertices.size();
+	}
+
+	@Override
+	public void getCoordinates(double[] coords, int offset) {
+		for (int i = 0; i < vertices.size(); i++) {
+			coords[offset + (2 * i)] = vertices.getX(i);
+			coords[offset + (2 * i) + 1] = vertices.getY(i);
+		}
+	}
+
+	@Override
+	public void setCoordinates(double[] coords, int offset, int count) {
+		vertices.setAll(coords, offset, count / 2);
+		close();
+	}
+
+	/**
+	 * Fermeture du polygone une fois terminé : ses sommets ne changeront plus,
+	 * ses arêtes sont donc indexées afin d'accélérer {@link #contains(Point2D)}
+	 * sur les grands polygones. Tant que le polygone est en cours d'édition,
+	 * le test de contenance porte sur toutes ses arêtes.
+	 */
+	public void close() {
+		tracking = false;
+		vertices.setIndexed(true);
+	}
+
+	/**
+	 * Forme simplifiée : les sommets trop proches les uns des autres pour
+	 * être distingués sont omis (cf. {@link VertexBuffer#simplify(double)})
+	 */
+	@Override
+	protected Shape getShape(double tolerance) {
+		return vertices.simplify(tolerance);
+	}
+
 	@Override
 	public Point2D getCenter() {
 		double x=0;
 		double y=0;
-		for(int i=0; i <= nbPoints;i++){
-			x=x+(double)lx[i];
-			y=y+(double)ly[i];
+		int n = vertices.size();
+		for(int i=0; i < n;i++){
+			x=x+vertices.getX(i);
+			y=y+vertices.getY(i);
 		}
-		x=x/(nbPoints+1);
-		y=y/(nbPoints+1);
-		
+		x=x/n;
+		y=y/n;
+
 		return (new Point2D.Double(x,y));
 	}
 }
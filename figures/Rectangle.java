@@ -1,36 +1,73 @@
 package figures;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 
+import figures.enums.FigureType;
+
 public class Rectangle extends AbstractFigure {
 	
-	protected Double x;
-	protected Double y;
-	protected Double w;
-	protected Double h;
+	protected double x;
+	protected double y;
+	protected double w;
+	protected double h;
+
+	/**
+	 * La forme du rectangle, modifiée sur place à chaque changement de
+	 * géométrie
+	 */
+	protected final Rectangle2D.Double rectangle;
 	
 	/**
-	 * @param stroke
-	 * @param edge
-	 * @param fill
+	 * @param styles
+	 * @param styleId
 	 */
-	public Rectangle(BasicStroke stroke, Paint edge, Paint fill, Double x, Double y) {
-		super(stroke, edge, fill);
+	public Rectangle(StyleTable styles, int styleId, double x, double y) {
+		super(styles, styleId);
 		this.x = x;
 		this.y = y;
 		w = 0.0;
 		h = 0.0;
-		shape = new Rectangle2D.Double(x, y, 0,0);
+		rectangle = new Rectangle2D.Double(x, y, 0,0);
+		shape = rectangle;
 	}
 	
 	@Override
 	public void setLastPoint(Point2D p) {
 		w = Math.abs(p.getX() - x);
 		h = Math.abs(p.getY() - y);
-		shape = new Rectangle2D.Double(x,y,w,h);
+		rectangle.setRect(x,y,w,h);
+	}
+
+	@Override
+	public FigureType getType() {
+		return FigureType.RECTANGLE;
+	}
+
+	/**
+	 * Coordonnées : x et y du coin supérieur gauche, largeur et hauteur
+	 */
+	@Override
+	public int getCoordinateCount() {
+		return 4;
+	}
+
+	@Override
+	public void getCoordinates(double[] coords, int offset) {
+		coords[offset] = x;
+		coords[offset + 1] = y;
+		coords[offset + 2] = w;
+		coords[offset + 3] = h;
+	}
+
+	@Override
+	public void setCoordinates(double[] coords, int offset, int count) {
+		x = coords[offset];
+		y = coords[offset + 1];
+		w = coords[offset + 2];
+		h = coords[offset + 3];
+		rectangle.setRect(x, y, w, h);
+		shape = rectangle;
 	}
 
 	@Override
@@ -1,56 +1,85 @@
 package figures;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
 import java.awt.geom.Point2D;
 import java.awt.geom.RoundRectangle2D;
 
+import figures.enums.FigureType;
+
 public class RoundedRectangle extends Rectangle {
 	/**
-	 * @param stroke
-	 * @param edge
-	 * @param fill
+	 * @param styles
+	 * @param styleId
 	 * @param premierPoint
 	 */
 	int etat;
 	double arcWidth;
 	double arcHeight;
+
+	/**
+	 * La forme arrondie utilisée à partir de la seconde étape de construction,
+	 * modifiée sur place à chaque changement de géométrie
+	 */
+	private final RoundRectangle2D.Double roundRectangle;
 	
 	
-	public RoundedRectangle(BasicStroke stroke, Paint edge, Paint fill,
+	public RoundedRectangle(StyleTable styles, int styleId,
 			Point2D premierPoint) {
-		super(stroke, edge, fill, premierPoint.getX(), premierPoint.getY());
+		super(styles, styleId, premierPoint.getX(), premierPoint.getY());
 		etat=0;
 		arcWidth=0;
 		arcHeight=0;
+		roundRectangle = new RoundRectangle2D.Double();
 	}
 	
 	@Override
 	public void setLastPoint(Point2D p) {
-		Point2D firstPoint = new Point2D.Double(x, y);
-		Point2D secondPoint = new Point2D.Double(x+w, y+h);
+		// second point : coin inférieur droit (x+w, y+h)
 		if(etat==0){
-			if(! p.equals(secondPoint)){
+			if((p.getX() != x+w) || (p.getY() != y+h)){
 				super.setLastPoint(p);
 			}else{
 				etat=1;
 			}
 		}else{
-			arcWidth=Math.abs(p.getX()-secondPoint.getX());
-			arcHeight=Math.abs(p.getY()-secondPoint.getY());
-			double x = firstPoint.getX();
-			double y = firstPoint.getY();
-			double w = secondPoint.getX()-x;
-			double h = secondPoint.getY()-y;
-			if(w<0){
-				x = x + w;
-				w = Math.abs(w);
-			}
-			if(h<0){
-				y = y + h;
-				h = Math.abs(h);
-			}
-			shape = new RoundRectangle2D.Double(x, y, w, h, arcWidth, arcHeight);
+			arcWidth=Math.abs(p.getX()-(x+w));
+			arcHeight=Math.abs(p.getY()-(y+h));
+			roundRectangle.setRoundRect(x, y, w, h, arcWidth, arcHeight);
+			shape = roundRectangle;
+		}
+	}
+
+	@Override
+	public FigureType getType() {
+		return FigureType.ROUNDED_RECTANGLE;
+	}
+
+	/**
+	 * Coordonnées : celles du {@link Rectangle} suivies des dimensions des
+	 * arrondis et de l'étape de construction (0 tant que l'arrondi n'a pas
+	 * été commencé)
+	 */
+	@Override
+	public int getCoordinateCount() {
+		return 7;
+	}
+
+	@Override
+	public void getCoordinates(double[] coords, int offset) {
+		super.getCoordinates(coords, offset);
+		coords[offset + 4] = arcWidth;
+		coords[offset + 5] = arcHeight;
+		coords[offset + 6] = etat;
+	}
+
+	@Override
+	public void setCoordinates(double[] coords, int offset, int count) {
+		super.setCoordinates(coords, offset, 4);
+		arcWidth = coords[offset + 4];
+		arcHeight = coords[offset + 5];
+		etat = (int) coords[offset + 6];
+		if (etat != 0) {
+			roundRectangle.setRoundRect(x, y, w, h, arcWidth, arcHeight);
+			shape = roundRectangle;
 		}
-	}	
+	}
 }
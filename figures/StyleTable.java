@@ -0,0 +1,179 @@
+package figures;
+
+import java.awt.BasicStroke;
+import java.awt.Paint;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Table des styles (triplets trait, couleur de trait, couleur de remplissage)
+ * utilisés par les figures. Chaque triplet distinct reçoit un identifiant
+ * entier attribué dans l'ordre d'apparition (0, 1, 2, ...) ce qui permet de
+ * ne conserver qu'un entier par figure au lieu de trois références : le
+ * {@link Drawing} attribue ainsi un style à chaque figure qu'il crée
+ * ({@link AbstractFigure#getStyleId()}) et les stockages compacts rangent
+ * l'identifiant du style de chaque figure dans leur propre table.
+ * Les triplets ne sont jamais modifiés une fois dans la table et le tableau
+ * qui les contient est remplacé (et non modifié) lorsqu'il s'agrandit : un
+ * identifiant obtenu par {@link #intern(BasicStroke, Paint, Paint)} peut donc
+ * être lu depuis un autre thread sans verrou pendant que de nouveaux styles
+ * sont ajoutés, de même que le nombre de styles ({@link #size()}) qui n'est
+ * augmenté qu'après la publication du tableau contenant le nouveau style.
+ * Une table ne doit donc pas être vidée ({@link #clear()}) tant que des
+ * figures y lisent leur style. Les styles ne sont jamais retirés de la
+ * table (l'identifiant d'un style pouvant être conservé par n'importe quelle
+ * version d'un stockage de figures) : la table référence donc fortement les
+ * traits et couleurs de tous les styles qu'elle a reçus.
+ *
+ * @author davidroussel
+ */
+public class StyleTable
+{
+	/**
+	 * Clé d'un triplet dans la table : deux clés sont égales si leurs
+	 * éléments sont égaux au sens de equals
+	 */
+	private static class Key
+	{
+		final BasicStroke stroke;
+		final Paint edge;
+		final Paint fill;
+
+		Key(BasicStroke stroke, Paint edge, Paint fill)
+		{
+			this.stroke = stroke;
+			this.edge = edge;
+			this.fill = fill;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = (stroke != null ? stroke.hashCode() : 0);
+			hash = (31 * hash) + (edge != null ? edge.hashCode() : 0);
+			return (31 * hash) + (fill != null ? fill.hashCode() : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return (stroke == null ? other.stroke == null
+					: stroke.equals(other.stroke))
+					&& (edge == null ? other.edge == null
+							: edge.equals(other.edge))
+					&& (fill == null ? other.fill == null
+							: fill.equals(other.fill));
+		}
+	}
+
+	/**
+	 * Les identifiants des triplets déjà présents dans la table
+	 */
+	private HashMap<Key, Integer> ids;
+
+	/**
+	 * Les triplets de la table rangés par identifiant
+	 */
+	private volatile Key[] styles;
+
+	/**
+	 * Le nombre de triplets dans la table, écrit après {@link #styles} : un
+	 * thread qui lit ce nombre sans verrou voit donc au moins autant de
+	 * triplets dans {@link #styles}
+	 */
+	private volatile int count;
+
+	/**
+	 * Constructeur d'une table de styles vide
+	 */
+	public StyleTable()
+	{
+		ids = new HashMap<Key, Integer>();
+		styles = new Key[8];
+		count = 0;
+	}
+
+	/**
+	 * Obtention de l'identifiant d'un triplet (ajouté à la table s'il n'y
+	 * est pas encore)
+	 * @param stroke le trait (ou null)
+	 * @param edge la couleur du trait (ou null)
+	 * @param fill la couleur de remplissage (ou null)
+	 * @return l'identifiant du triplet dans la table
+	 */
+	public synchronized int intern(BasicStroke stroke, Paint edge, Paint fill)
+	{
+		Key key = new Key(stroke, edge, fill);
+		Integer id = ids.get(key);
+		if (id == null)
+		{
+			id = count;
+			Key[] current = styles;
+			if (count == current.length)
+			{
+				current = Arrays.copyOf(current, 2 * count);
+			}
+			current[count] = key;
+			styles = current;
+			count++;
+			ids.put(key, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Nombre de styles dans la table (peut être appelé depuis un autre thread
+	 * sans verrou : les styles d'identifiant inférieur à ce nombre sont tous
+	 * accessibles)
+	 * @return le nombre de styles dans la table
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Accès au trait d'un style
+	 * @param id l'identifiant du style
+	 * @return le trait du style (ou null)
+	 */
+	public BasicStroke getStroke(int id)
+	{
+		return styles[id].stroke;
+	}
+
+	/**
+	 * Accès à la couleur de trait d'un style
+	 * @param id l'identifiant du style
+	 * @return la couleur de trait du style (ou null)
+	 */
+	public Paint getEdge(int id)
+	{
+		return styles[id].edge;
+	}
+
+	/**
+	 * Accès à la couleur de remplissage d'un style
+	 * @param id l'identifiant du style
+	 * @return la couleur de remplissage du style (ou null)
+	 */
+	public Paint getFill(int id)
+	{
+		return styles[id].fill;
+	}
+
+	/**
+	 * Vidage de la table
+	 */
+	public synchronized void clear()
+	{
+		ids.clear();
+		styles = new Key[8];
+		count = 0;
+	}
+}
@@ -3,9 +3,12 @@ package figures.creationListeners;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
 import figures.AbstractFigure;
 import figures.Drawing;
@@ -16,7 +19,15 @@ import figures.Drawing;
  * suite de pressed/drag/release ou de clicks qui peut être différente pour
  * chaque type de figure. Aussi les classes filles devront implémenter leur
  * propre xxxCreationListener assurant la gestion de la création d'une nouvelle
- * figure.
+ * figure. Les figures sont créées avec le bouton gauche de la souris et les
+ * positions des évènements souris sont converties dans les coordonnées du
+ * dessin ({@link #modelPoint(MouseEvent)}) lorsque celui ci est zoomé ou
+ * déplacé dans la vue.
+ * La figure en cours de création n'appartient pas au dessin : elle est
+ * montrée dans le {@link PreviewLayer} de la vue pendant sa construction et
+ * n'est ajoutée au dessin qu'une fois terminée ({@link #endFigure(MouseEvent)})
+ * de sorte que les écouteurs et l'index du dessin ne voient qu'une
+ * modification par figure créée.
  *
  * @author davidroussel
  */
@@ -32,12 +43,17 @@ public abstract class AbstractCreationListener implements MouseListener,
 
 	/**
 	 * La figure en cours de dessin. Obtenue avec
-	 * {@link Drawing#initiateFigure(java.awt.geom.Point2D)}. Evite d'avoir à
-	 * appeler {@link Drawing#getLastFigure()} à chaque fois que la figure en
-	 * cours de construction est modifiée.
+	 * {@link Drawing#createFigure(java.awt.geom.Point2D)}, elle n'est ajoutée
+	 * au dessin qu'une fois terminée.
 	 */
 	protected AbstractFigure currentFigure;
 
+	/**
+	 * Le calque d'aperçu dans lequel montrer la figure en cours de dessin (ou
+	 * null)
+	 */
+	protected PreviewLayer previewLayer;
+
 	/**
 	 * Le label dans lequel afficher les instructions nécessaires à la
 	 * complétion de la figure
@@ -83,6 +99,12 @@ public abstract class AbstractCreationListener implements MouseListener,
 	 */
 	protected int currentStep;
 
+	/**
+	 * La transformation des coordonnées du dessin vers celles de la vue dans
+	 * laquelle les évènements souris sont produits (l'identité par défaut)
+	 */
+	protected AffineTransform viewTransform;
+
 	/**
 	 * Constructeur protégé (destiné à être utilisé par les classes filles)
 	 *
@@ -95,9 +117,11 @@ public abstract class AbstractCreationListener implements MouseListener,
 	{
 		drawingModel = model;
 		currentFigure = null;
+		previewLayer = null;
 		tipLabel = infoLabel;
 		this.nbSteps = nbSteps;
 		currentStep = 0;
+		viewTransform = new AffineTransform();
 
 		// Allocation du nombres de conseils utilisateurs nécessaires
 		tips = new String[(nbSteps > 0 ? nbSteps : 0)];
@@ -115,6 +139,103 @@ public abstract class AbstractCreationListener implements MouseListener,
 		}
 	}
 
+	/**
+	 * Mise en place de la transformation des coordonnées du dessin vers celles
+	 * de la vue dans laquelle les évènements souris sont produits. La
+	 * transformation n'est pas copiée : si elle est modifiée sur place par la
+	 * vue, les évènements suivants en tiennent compte.
+	 *
+	 * @param transform la transformation du dessin vers la vue (ou null pour
+	 *            l'identité)
+	 */
+	public void setViewTransform(AffineTransform transform)
+	{
+		viewTransform = (transform != null ? transform : new AffineTransform());
+	}
+
+	/**
+	 * Mise en place du calque d'aperçu dans lequel montrer la figure en cours
+	 * de dessin
+	 *
+	 * @param layer le calque d'aperçu (ou null pour ne montrer les figures
+	 *            qu'une fois terminées)
+	 */
+	public void setPreviewLayer(PreviewLayer layer)
+	{
+		previewLayer = layer;
+	}
+
+	/**
+	 * Signalement au {@link #previewLayer} (s'il y en a un) d'une modification
+	 * de la figure en cours de dessin. A appeler après chaque modification de
+	 * la {@link #currentFigure}.
+	 */
+	protected void previewChanged()
+	{
+		if (previewLayer != null)
+		{
+			previewLayer.previewChanged();
+		}
+	}
+
+	/**
+	 * Mise en place de la figure montrée dans le {@link #previewLayer} (s'il
+	 * y en a un)
+	 *
+	 * @param figure la figure à montrer ou null pour vider le calque
+	 */
+	private void setPreviewFigure(AbstractFigure figure)
+	{
+		if (previewLayer != null)
+		{
+			previewLayer.setPreviewFigure(figure);
+		}
+	}
+
+	/**
+	 * Position d'un évènement souris dans les coordonnées du dessin
+	 *
+	 * @param e l'évènement souris
+	 * @return la position de l'évènement dans les coordonnées du dessin
+	 */
+	protected Point2D modelPoint(MouseEvent e)
+	{
+		try
+		{
+			return viewTransform.inverseTransform(e.getPoint(), null);
+		}
+		catch (NoninvertibleTransformException ex)
+		{
+			System.err.println("AbstractCreationListener : " + ex);
+			return e.getPoint();
+		}
+	}
+
+	/**
+	 * Conversion d'une distance en pixels de la vue en distance dans le
+	 * dessin
+	 *
+	 * @param pixels la distance dans la vue
+	 * @return la distance correspondante dans le dessin
+	 */
+	protected double modelDistance(double pixels)
+	{
+		return pixels / Math.hypot(viewTransform.getScaleX(),
+				viewTransform.getShearY());
+	}
+
+	/**
+	 * Indique si un évènement souris concerne la création des figures (bouton
+	 * gauche), les autres boutons étant utilisés par la vue
+	 *
+	 * @param e l'évènement souris
+	 * @return true si l'évènement provient du bouton gauche de la souris
+	 */
+	protected boolean isCreationEvent(MouseEvent e)
+	{
+		return SwingUtilities.isLeftMouseButton(e);
+	}
+
 //	/**
 //	 * Mise en place du label dans lequel afficher les conseils d'utilisation
 //	 *
@@ -127,9 +248,9 @@ public abstract class AbstractCreationListener implements MouseListener,
 
 	/**
 	 * Initialisation de la création d'une nouvelle figure. détermine le point
-	 * de départ de la figure ({@link #startPoint}), initie une nouvelle figure
-	 * à la position de l'évènement ({@link Drawing#initiateFigure(Point2D)}),
-	 * met à jour le dessin {@link Drawing#update()}, puis passe à l'étape
+	 * de départ de la figure ({@link #startPoint}), crée une nouvelle figure
+	 * à la position de l'évènement ({@link Drawing#createFigure(Point2D)}),
+	 * la montre dans le {@link #previewLayer}, puis passe à l'étape
 	 * suivante en mettant à jour les conseils utilisateurs (
 	 * {@link #updateTip()}). Pour la plupart des figures la création commence
 	 * par un appui sur le bouton gauche de la souris. A utiliser dans
@@ -141,20 +262,20 @@ public abstract class AbstractCreationListener implements MouseListener,
 	 */
 	public void startFigure(MouseEvent e)
 	{
-		startPoint = e.getPoint();
-		currentFigure = drawingModel.initiateFigure(startPoint);
+		startPoint = modelPoint(e);
+		currentFigure = drawingModel.createFigure(startPoint);
+		setPreviewFigure(currentFigure);
 		nextStep();
-
-		drawingModel.update();
 	}
 
 	/**
 	 * Terminaison de la création d'une figure. remet l'étape courante à 0,
 	 * détermine la position du point de terminaison de la figure (
 	 * {@link #endPoint}), vérifie que la figure ainsi terminée n'est pas de
-	 * taille 0 ({@link #checkZeroSizeFigure()}), puis met à jour le dessin (
-	 * {@link Drawing#update()}) et les conseils utilisateurs (
-	 * {@link #updateTip()}). A utiliser dans un
+	 * taille 0 ({@link #checkZeroSizeFigure()}), ajoute la figure ainsi
+	 * terminée au dessin ({@link Drawing#addFigure(AbstractFigure)}) puis met
+	 * à jour le dessin ({@link Drawing#update()}), le {@link #previewLayer}
+	 * et les conseils utilisateurs ({@link #updateTip()}). A utiliser dans un
 	 * {@link MouseListener#mousePressed(MouseEvent)} ou bien dans un
 	 * {@link MouseListener#mouseClicked(MouseEvent)} suivant la figure à créer.
 	 *
@@ -166,11 +287,32 @@ public abstract class AbstractCreationListener implements MouseListener,
 		// listener sur une autre figure
 		nextStep();
 
-		endPoint = e.getPoint();
+		endPoint = modelPoint(e);
+
+		if (!checkZeroSizeFigure())
+		{
+			drawingModel.addFigure(currentFigure);
+			drawingModel.update();
+		}
 
-		checkZeroSizeFigure();
+		setPreviewFigure(null);
+		currentFigure = null;
+	}
 
-		drawingModel.update();
+	/**
+	 * Abandon de la figure en cours de dessin (lorsque ce creationListener est
+	 * retiré de la vue par exemple) : celle ci n'est pas ajoutée au dessin et
+	 * la création reprend à la première étape.
+	 */
+	public void cancelFigure()
+	{
+		if (currentFigure != null)
+		{
+			setPreviewFigure(null);
+			currentFigure = null;
+			currentStep = 0;
+			updateTip();
+		}
 	}
 
 	/**
@@ -209,16 +351,20 @@ public abstract class AbstractCreationListener implements MouseListener,
 
 	/**
 	 * Contrôle de la taille de la figure créée à effectuer à la fin de la
-	 * création afin d'éliminer les figures de taille 0;
+	 * création afin d'éliminer les figures de taille 0 (dont les points de
+	 * départ et de fin sont à moins d'un pixel de la vue l'un de l'autre);
+	 * @return true si la figure est de taille 0 et ne doit pas être ajoutée
+	 * au dessin
 	 * @see #startPoint
 	 * @see #endPoint
 	 */
-	protected void checkZeroSizeFigure()
+	protected boolean checkZeroSizeFigure()
 	{
-		if (startPoint.distance(endPoint) < 1.0)
+		if (startPoint.distance(endPoint) < modelDistance(1.0))
 		{
-			drawingModel.removeLastFigure();
 			System.err.println("Removed zero sized figure");
+			return true;
 		}
+		return false;
 	}
 }
@@ -6,6 +6,7 @@ import java.awt.geom.Point2D;
 import javax.swing.JLabel;
 
 import figures.Drawing;
+import figures.Polygon;
 
 public class PolygonShapeListener extends AbstractCreationListener {
 
@@ -27,30 +28,45 @@ public class PolygonShapeListener extends AbstractCreationListener {
 	
 	@Override
 	public void mouseClicked(MouseEvent arg0) {
+		if(!isCreationEvent(arg0)){
+			return;
+		}
 		switch(currentStep){
 		case 0:
 			startFigure(arg0);
-			lastCreate=arg0.getPoint();
+			lastCreate=modelPoint(arg0);
 			previousPoint=lastCreate;
 			break;
 		case 1:
 			currentFigure.setLastPoint(previousPoint);
 			lastCreate = previousPoint;
-			drawingModel.update();
+			previewChanged();
 			nextStep();
 			break;
 		case 2:
-			if(arg0.getPoint().distance(lastCreate)<distanceMini){
+			if(modelPoint(arg0).distance(lastCreate)<modelDistance(distanceMini)){
 				endFigure(arg0);
 			}else{
 				currentFigure.setLastPoint(previousPoint);
 				lastCreate = previousPoint;
-				drawingModel.update();
+				previewChanged();
 			}
 			break;
 		}
 	}
 
+	/**
+	 * Terminaison du polygone : celui ci est fermé ({@link Polygon#close()})
+	 * avant d'être signalé comme terminé au dessin.
+	 */
+	@Override
+	public void endFigure(MouseEvent e) {
+		if (currentFigure instanceof Polygon) {
+			((Polygon) currentFigure).close();
+		}
+		super.endFigure(e);
+	}
+
 	@Override
 	public void mouseEntered(MouseEvent arg0) {
 	}
@@ -74,17 +90,18 @@ public class PolygonShapeListener extends AbstractCreationListener {
 	@Override
 	public void mouseMoved(MouseEvent arg0) {
 		if(currentStep>=1){
-			if(arg0.getPoint().distance(lastCreate)<distanceMini){
+			Point2D p = modelPoint(arg0);
+			if(p.distance(lastCreate)<modelDistance(distanceMini)){
 				if(!previousPoint.equals(lastCreate)){
 					currentFigure.setLastPoint(lastCreate);
 					previousPoint=lastCreate;
-					drawingModel.update();
+					previewChanged();
 				}
 			}else{
-				if(!previousPoint.equals(arg0.getPoint())){
-					currentFigure.setLastPoint(arg0.getPoint());
-					previousPoint=arg0.getPoint();
-					drawingModel.update();
+				if(!previousPoint.equals(p)){
+					currentFigure.setLastPoint(p);
+					previousPoint=p;
+					previewChanged();
 				}
 			}
 		}
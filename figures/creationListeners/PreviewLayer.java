@@ -0,0 +1,28 @@
+package figures.creationListeners;
+
+import figures.AbstractFigure;
+
+/**
+ * Calque d'aperçu dans lequel un {@link AbstractCreationListener} montre la
+ * figure qu'il est en train de construire. La figure n'appartient pas au
+ * dessin tant qu'elle n'est pas terminée : ses modifications successives ne
+ * sont vues que par ce calque (typiquement la vue dans laquelle les évènements
+ * souris sont produits) et le dessin ne reçoit la figure qu'une fois terminée.
+ *
+ * @author davidroussel
+ */
+public interface PreviewLayer
+{
+	/**
+	 * Mise en place de la figure en cours de construction
+	 * @param figure la figure à montrer dans le calque, ou null pour vider le
+	 * calque
+	 */
+	public void setPreviewFigure(AbstractFigure figure);
+
+	/**
+	 * Signalement d'une modification de la géométrie de la figure en cours de
+	 * construction
+	 */
+	public void previewChanged();
+}
@@ -27,11 +27,11 @@ public class RoundedRectangleShapeListener extends AbstractCreationListener {
 
 	@Override
 	public void mouseClicked(MouseEvent e) {
-		if (currentStep== 2) {
+		if ((currentStep== 2) && isCreationEvent(e)) {
 			/*if (e.getButton() == MouseEvent.BUTTON3) {
 					RoundedRectangle rect = (RoundedRectangle) currentFigure;
 					rect.setArc(e.getPoint());
-					drawingModel.update();
+					previewChanged();
 					nextStep();*/
 				endFigure(e);
 			/*}*/
@@ -48,36 +48,37 @@ public class RoundedRectangleShapeListener extends AbstractCreationListener {
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-		if (currentStep==0) {
+		if ((currentStep==0) && isCreationEvent(e)) {
 			startFigure(e);
-			previousPoint = e.getPoint();
+			previousPoint = modelPoint(e);
 			updateTip();
 		}
 	}
 
 	@Override
 	public void mouseReleased(MouseEvent e) {
-		if(currentStep==1){
+		if((currentStep==1) && isCreationEvent(e)){
 			currentFigure.setLastPoint(previousPoint);
-			drawingModel.update();
+			previewChanged();
 			nextStep();
 		}
 	}
 
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		if(this.currentStep==1 && !(e.getPoint().equals(previousPoint))){
-			currentFigure.setLastPoint(e.getPoint());
-			previousPoint=e.getPoint();
-			drawingModel.update();
+		Point2D p = modelPoint(e);
+		if(this.currentStep==1 && isCreationEvent(e) && !(p.equals(previousPoint))){
+			currentFigure.setLastPoint(p);
+			previousPoint=p;
+			previewChanged();
 		}
 	}
 
 	@Override
 	public void mouseMoved(MouseEvent e) {
 		if(this.currentStep==2){
-			currentFigure.setLastPoint(e.getPoint());
-			drawingModel.update();
+			currentFigure.setLastPoint(modelPoint(e));
+			previewChanged();
 		}	
 	}
 
@@ -33,7 +33,7 @@ public class ShapeListener extends AbstractCreationListener {
 
 		@Override
 		public void mousePressed(MouseEvent e) {
-			if (currentStep==0) {
+			if ((currentStep==0) && isCreationEvent(e)) {
 				startFigure(e);
 				updateTip();
 			}
@@ -41,16 +41,16 @@ public class ShapeListener extends AbstractCreationListener {
 
 		@Override
 		public void mouseReleased(MouseEvent e) {
-			if (currentStep==1) {
+			if ((currentStep==1) && isCreationEvent(e)) {
 				endFigure(e);
 			}
 		}
 
 		@Override
 		public void mouseDragged(MouseEvent e) {
-			if (currentStep == 1) {
-				currentFigure.setLastPoint(e.getPoint());
-				drawingModel.update();
+			if ((currentStep == 1) && isCreationEvent(e)) {
+				currentFigure.setLastPoint(modelPoint(e));
+				previewChanged();
 				updateTip();
 			}
 		}
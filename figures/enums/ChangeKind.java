@@ -0,0 +1,41 @@
+package figures.enums;
+
+/**
+ * Les différentes sortes de modifications d'un dessin transmises aux
+ * écouteurs du dessin (voir {@link figures.events.DrawingEvent})
+ * @author davidroussel
+ */
+public enum ChangeKind
+{
+	/**
+	 * La figure en cours de dessin a été créée, modifiée ou abandonnée
+	 */
+	EDITED,
+	/**
+	 * Des figures terminées ont été ajoutées
+	 */
+	ADDED,
+	/**
+	 * Des figures terminées ont été retirées
+	 */
+	REMOVED,
+	/**
+	 * Toutes les figures ont été effacées
+	 */
+	CLEARED,
+	/**
+	 * Les figures terminées sont revenues à une autre version (annulation ou
+	 * rétablissement)
+	 */
+	RESTORED;
+
+	/**
+	 * Indique si cette sorte de modification concerne les figures terminées
+	 * (et donc les caches ou index construits à partir de celles ci)
+	 * @return true pour toutes les modifications sauf {@link #EDITED}
+	 */
+	public boolean affectsTerminated()
+	{
+		return this != EDITED;
+	}
+}
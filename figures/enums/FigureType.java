@@ -1,7 +1,5 @@
 package figures.enums;
 
-import java.awt.BasicStroke;
-import java.awt.Paint;
 import java.awt.geom.Point2D;
 
 import javax.swing.JLabel;
@@ -13,6 +11,7 @@ import figures.Ellipse;
 import figures.Polygon;
 import figures.Rectangle;
 import figures.RoundedRectangle;
+import figures.StyleTable;
 import figures.creationListeners.AbstractCreationListener;
 import figures.creationListeners.PolygonShapeListener;
 import figures.creationListeners.RoundedRectangleShapeListener;
@@ -33,38 +32,65 @@ public enum FigureType
 	/**
 	 * Obtention d'une instance de figure correspondant au type
 	 *
-	 * @param stroke la césure du trait (ou pas de trait si null)
-	 * @param edge la couleur du trait (ou pas de trait si null)
-	 * @param fill la couleur de remplissage (ou pas de remplissage si null)
+	 * @param styles la table des styles dans laquelle lire le style de la
+	 *            figure
+	 * @param styleId l'identifiant du style de la figure dans styles
 	 * @param p le premier point de la figure
 	 * @return une nouvelle instance de figure correspondant à la valeur de cet
 	 *         enum
 	 * @throws AssertionError si la valeur de cet enum n'est pas prévue
 	 */
-	public AbstractFigure getFigure(BasicStroke stroke,
-			Paint edge,
-			Paint fill,
+	public AbstractFigure getFigure(StyleTable styles,
+			int styleId,
 			Point2D p) throws AssertionError
 	{
 		switch (this)
 		{
 			case CIRCLE:
 				/** Créé un cercle de rayon null */
-				return new Circle(stroke, edge, fill, 0.0, p);
+				return new Circle(styles, styleId, 0.0, p);
 			case ELLIPSE:
 				/** Créé éllipse de demi grand et petit axe null */
-				return new Ellipse(stroke, edge, fill, p, 0, 0);
+				return new Ellipse(styles, styleId, p, 0, 0);
 			case RECTANGLE:
-				return new Rectangle(stroke, edge, fill, p.getX(), p.getY());
+				return new Rectangle(styles, styleId, p.getX(), p.getY());
 			case ROUNDED_RECTANGLE:
-				return new RoundedRectangle(stroke, edge, fill, p);
+				return new RoundedRectangle(styles, styleId, p);
 			case POLYGON:
-				return new Polygon(stroke, edge, fill, p);
+				return new Polygon(styles, styleId, p);
 		}
 
 		throw new AssertionError("FigureType unknown assertion: " + this);
 	}
 
+	/**
+	 * Obtention d'une instance de figure correspondant au type à partir des
+	 * coordonnées décrivant sa géométrie
+	 *
+	 * @param styles la table des styles dans laquelle lire le style de la
+	 *            figure
+	 * @param styleId l'identifiant du style de la figure dans styles
+	 * @param coords le tableau contenant les coordonnées de la figure
+	 * @param offset l'index de la première coordonnée (l'abcisse du premier
+	 *            point de la figure, suivie de son ordonnée)
+	 * @param count le nombre de coordonnées de la figure
+	 * @return une nouvelle instance de figure correspondant à la valeur de cet
+	 *         enum
+	 * @throws AssertionError si la valeur de cet enum n'est pas prévue
+	 * @see AbstractFigure#getCoordinates(double[], int)
+	 */
+	public AbstractFigure getFigure(StyleTable styles,
+			int styleId,
+			double[] coords,
+			int offset,
+			int count) throws AssertionError
+	{
+		AbstractFigure figure = getFigure(styles, styleId,
+				new Point2D.Double(coords[offset], coords[offset + 1]));
+		figure.setCoordinates(coords, offset, count);
+		return figure;
+	}
+
 	/**
 	 * Obtention d'un CreationListener adequat pour la valeur de cet enum
 	 *
@@ -0,0 +1,110 @@
+package figures.enums;
+
+import figures.stores.ColumnarFigureStore;
+import figures.stores.FigureStore;
+import figures.stores.OffHeapFigureStore;
+import figures.stores.PersistentFigureStore;
+
+/**
+ * Enumeration des différents stockages possibles des figures terminées d'un
+ * {@link figures.Drawing}. Le stockage utilisé par l'éditeur peut être choisi
+ * au lancement par la propriété système {@link #property} (par exemple
+ * <code>-Dfigures.store=columnar</code>).
+ *
+ * @author davidroussel
+ */
+public enum StoreType
+{
+	/**
+	 * Les figures elles mêmes dans un vecteur persistant (par défaut)
+	 */
+	PERSISTENT,
+	/**
+	 * Les figures en colonnes de types primitifs, reconstruites à la demande
+	 */
+	COLUMNAR,
+	/**
+	 * Les figures hors du tas Java, reconstruites à la demande
+	 */
+	OFF_HEAP;
+
+	/**
+	 * Nom de la propriété système permettant de choisir le stockage
+	 */
+	public static final String property = "figures.store";
+
+	/**
+	 * Obtention d'un nouveau stockage vide correspondant au type
+	 * @return un nouveau stockage vide
+	 * @throws AssertionError si la valeur de cet enum n'est pas prévue
+	 */
+	public FigureStore getStore() throws AssertionError
+	{
+		switch (this)
+		{
+			case PERSISTENT:
+				return new PersistentFigureStore();
+			case COLUMNAR:
+				return new ColumnarFigureStore();
+			case OFF_HEAP:
+				return new OffHeapFigureStore();
+		}
+
+		throw new AssertionError("StoreType unknown assertion: " + this);
+	}
+
+	/**
+	 * Représentation sous forme de chaine de caractères
+	 * @return une chaine de caractères représentant la valeur de cet enum
+	 * (telle qu'attendue dans la propriété {@link #property})
+	 */
+	@Override
+	public String toString() throws AssertionError
+	{
+		switch (this)
+		{
+			case PERSISTENT:
+				return new String("persistent");
+			case COLUMNAR:
+				return new String("columnar");
+			case OFF_HEAP:
+				return new String("offheap");
+		}
+
+		throw new AssertionError("StoreType unknown assertion: " + this);
+	}
+
+	/**
+	 * Conversion d'une chaine de caractères vers un {@link StoreType}
+	 * @param name le nom du type (sans tenir compte de la casse)
+	 * @return le StoreType correspondant ou {@link #PERSISTENT} si name est
+	 * null ou ne correspond à aucun type
+	 */
+	public static StoreType fromString(String name)
+	{
+		if (name != null)
+		{
+			for (StoreType type : StoreType.values())
+			{
+				if (type.toString().equalsIgnoreCase(name.trim()))
+				{
+					return type;
+				}
+			}
+			System.err.println("StoreType.fromString: unknown figure store "
+					+ name + ", using " + PERSISTENT);
+		}
+		return PERSISTENT;
+	}
+
+	/**
+	 * Obtention du type de stockage choisi par la propriété système
+	 * {@link #property}
+	 * @return le StoreType choisi ou {@link #PERSISTENT} si la propriété
+	 * n'est pas définie
+	 */
+	public static StoreType fromProperty()
+	{
+		return fromString(System.getProperty(property));
+	}
+}
@@ -1,6 +1,6 @@
 /**
  * Ce package contient les différents énumérations utilisée pour choisir un type
  * de figure ou un type de ligne, ou encore sur quoi (trait ou remplissage)
- * appliquer une couleur.
+ * appliquer une couleur, ou le stockage des figures d'un dessin.
  */
-package figures.enums;
\ No newline at end of file
+package figures.enums;
@@ -0,0 +1,87 @@
+package figures.events;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Ecouteur relayant les évènements d'un dessin à un autre écouteur au travers
+ * d'un {@link Executor} (le thread de Swing, un pool de threads, etc.) afin de
+ * ne pas ralentir le thread qui modifie le dessin. Les évènements arrivant
+ * alors qu'une livraison est déjà en attente sont fusionnés avec celle-ci
+ * ({@link DrawingEvent#coalesce(DrawingEvent)}) : un écouteur lent ne reçoit
+ * donc qu'un seul évènement pour toutes les modifications survenues pendant
+ * qu'il traitait le précédent.
+ *
+ * @author davidroussel
+ */
+public class AsyncDrawingListener implements DrawingListener
+{
+	/**
+	 * L'écouteur auquel livrer les évènements
+	 */
+	private final DrawingListener target;
+
+	/**
+	 * L'exécuteur dans lequel livrer les évènements
+	 */
+	private final Executor executor;
+
+	/**
+	 * L'évènement en attente de livraison (ou null)
+	 */
+	private DrawingEvent pending;
+
+	/**
+	 * Constructeur d'un écouteur asynchrone
+	 * @param target l'écouteur auquel livrer les évènements
+	 * @param executor l'exécuteur dans lequel livrer les évènements
+	 */
+	public AsyncDrawingListener(DrawingListener target, Executor executor)
+	{
+		this.target = target;
+		this.executor = executor;
+		pending = null;
+	}
+
+	/**
+	 * L'écouteur auquel sont livrés les évènements
+	 * @return l'écouteur auquel sont livrés les évènements
+	 */
+	public DrawingListener getTarget()
+	{
+		return target;
+	}
+
+	/**
+	 * Réception d'un évènement : fusion avec l'évènement en attente s'il y en
+	 * a un, ou programmation de sa livraison dans l'{@link #executor}
+	 * @param event l'évènement reçu
+	 */
+	@Override
+	public void drawingChanged(DrawingEvent event)
+	{
+		synchronized (this)
+		{
+			if (pending != null)
+			{
+				pending = pending.coalesce(event);
+				return;
+			}
+			pending = event;
+		}
+
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				DrawingEvent delivered;
+				synchronized (AsyncDrawingListener.this)
+				{
+					delivered = pending;
+					pending = null;
+				}
+				target.drawingChanged(delivered);
+			}
+		});
+	}
+}
@@ -0,0 +1,208 @@
+package figures.events;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.EventObject;
+import java.util.Set;
+
+import figures.Drawing;
+import figures.DrawingSnapshot;
+import figures.enums.ChangeKind;
+
+/**
+ * Evènement décrivant les modifications d'un {@link Drawing} depuis la
+ * notification précédente :
+ * <ul>
+ * <li>les sortes de modifications ({@link ChangeKind})</li>
+ * <li>l'intervalle des indices des figures terminées concernées
+ * [{@link #getFirstIndex()}, {@link #getEndIndex()}[</li>
+ * <li>la zone modifiée (ou null si tout le dessin a changé)</li>
+ * <li>la version du dessin après modification</li>
+ * </ul>
+ * Les évènements sont immuables.
+ *
+ * @author davidroussel
+ */
+public class DrawingEvent extends EventObject
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Les sortes de modifications
+	 */
+	private final Set<ChangeKind> kinds;
+
+	/**
+	 * L'indice de la première figure terminée concernée
+	 */
+	private final int firstIndex;
+
+	/**
+	 * L'indice suivant celui de la dernière figure terminée concernée
+	 */
+	private final int endIndex;
+
+	/**
+	 * La zone modifiée ou null si tout le dessin a changé
+	 */
+	private final Rectangle2D bounds;
+
+	/**
+	 * La version du dessin après modification
+	 */
+	private final transient DrawingSnapshot snapshot;
+
+	/**
+	 * Constructeur d'un évènement
+	 * @param source le dessin modifié
+	 * @param kinds les sortes de modifications (copiées)
+	 * @param firstIndex l'indice de la première figure terminée concernée
+	 * @param endIndex l'indice suivant celui de la dernière figure terminée
+	 * concernée (égal à firstIndex si aucune figure terminée n'est concernée)
+	 * @param bounds la zone modifiée ou null si tout le dessin a changé
+	 * (copiée)
+	 * @param snapshot la version du dessin après modification
+	 */
+	public DrawingEvent(Drawing source,
+			Set<ChangeKind> kinds,
+			int firstIndex,
+			int endIndex,
+			Rectangle2D bounds,
+			DrawingSnapshot snapshot)
+	{
+		super(source);
+		this.kinds = Collections.unmodifiableSet(kinds.isEmpty()
+				? EnumSet.noneOf(ChangeKind.class) : EnumSet.copyOf(kinds));
+		this.firstIndex = firstIndex;
+		this.endIndex = Math.max(firstIndex, endIndex);
+		this.bounds = (bounds != null ? (Rectangle2D) bounds.clone() : null);
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Le dessin modifié
+	 * @return le dessin modifié
+	 */
+	public Drawing getDrawing()
+	{
+		return (Drawing) getSource();
+	}
+
+	/**
+	 * Les sortes de modifications
+	 * @return l'ensemble (non modifiable) des sortes de modifications
+	 */
+	public Set<ChangeKind> getKinds()
+	{
+		return kinds;
+	}
+
+	/**
+	 * Test de la présence d'une sorte de modification
+	 * @param kind la sorte de modification
+	 * @return true si l'évènement comprend une modification de cette sorte
+	 */
+	public boolean hasKind(ChangeKind kind)
+	{
+		return kinds.contains(kind);
+	}
+
+	/**
+	 * Indique si les figures terminées ont changé (et donc les caches ou
+	 * index construits à partir de celles ci)
+	 * @return true si l'une des modifications concerne les figures terminées
+	 * @see ChangeKind#affectsTerminated()
+	 */
+	public boolean affectsTerminated()
+	{
+		for (ChangeKind kind : kinds)
+		{
+			if (kind.affectsTerminated())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indice de la première figure terminée concernée
+	 * @return l'indice de la première figure terminée concernée
+	 */
+	public int getFirstIndex()
+	{
+		return firstIndex;
+	}
+
+	/**
+	 * Indice suivant celui de la dernière figure terminée concernée
+	 * @return l'indice suivant celui de la dernière figure terminée concernée
+	 * (égal à {@link #getFirstIndex()} si aucune n'est concernée)
+	 */
+	public int getEndIndex()
+	{
+		return endIndex;
+	}
+
+	/**
+	 * Zone modifiée
+	 * @return une copie de la zone modifiée ou null si tout le dessin a
+	 * changé
+	 */
+	public Rectangle2D getBounds()
+	{
+		return (bounds != null ? (Rectangle2D) bounds.clone() : null);
+	}
+
+	/**
+	 * Version du dessin après modification
+	 * @return la version du dessin après modification
+	 */
+	public DrawingSnapshot getSnapshot()
+	{
+		return snapshot;
+	}
+
+	/**
+	 * Fusion de cet évènement avec un évènement ultérieur du même dessin
+	 * @param later l'évènement ultérieur
+	 * @return un évènement équivalent aux deux évènements successifs
+	 */
+	public DrawingEvent coalesce(DrawingEvent later)
+	{
+		EnumSet<ChangeKind> allKinds = EnumSet.noneOf(ChangeKind.class);
+		allKinds.addAll(kinds);
+		allKinds.addAll(later.kinds);
+
+		int first = firstIndex;
+		int end = endIndex;
+		if (first == end)
+		{
+			first = later.firstIndex;
+			end = later.endIndex;
+		}
+		else if (later.firstIndex < later.endIndex)
+		{
+			first = Math.min(first, later.firstIndex);
+			end = Math.max(end, later.endIndex);
+		}
+
+		Rectangle2D region = null;
+		if ((bounds != null) && (later.bounds != null))
+		{
+			region = (Rectangle2D) bounds.clone();
+			region.add(later.bounds);
+		}
+
+		return new DrawingEvent(getDrawing(), allKinds, first, end, region,
+				later.snapshot);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + kinds + " [" + firstIndex + ", "
+				+ endIndex + "[ " + bounds;
+	}
+}
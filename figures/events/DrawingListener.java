@@ -0,0 +1,17 @@
+package figures.events;
+
+import java.util.EventListener;
+
+/**
+ * Ecouteur des modifications d'un {@link figures.Drawing}
+ * @author davidroussel
+ * @see figures.Drawing#addDrawingListener(DrawingListener)
+ */
+public interface DrawingListener extends EventListener
+{
+	/**
+	 * Notification d'une modification du dessin
+	 * @param event l'évènement décrivant la modification
+	 */
+	public void drawingChanged(DrawingEvent event);
+}
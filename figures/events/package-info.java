@@ -0,0 +1,9 @@
+/**
+ * Package contenant les évènements émis par un {@link figures.Drawing}
+ * lorsqu'il est modifié ({@link figures.events.DrawingEvent}) ainsi que
+ * l'interface des écouteurs de ces évènements
+ * ({@link figures.events.DrawingListener}) et un écouteur permettant de les
+ * recevoir de manière asynchrone
+ * ({@link figures.events.AsyncDrawingListener}).
+ */
+package figures.events;
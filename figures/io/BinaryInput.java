@@ -0,0 +1,200 @@
+package figures.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Lecture de valeurs binaires écrites par un {@link BinaryOutput} depuis un
+ * canal au travers d'un tampon de taille fixe : le tampon est rempli depuis
+ * le canal chaque fois que les octets qu'il contient ne suffisent plus, la
+ * mémoire utilisée ne dépend donc pas de la quantité de données lues.
+ *
+ * @author davidroussel
+ */
+final class BinaryInput
+{
+	/**
+	 * Le canal depuis lequel lire
+	 */
+	private final ReadableByteChannel channel;
+
+	/**
+	 * Le tampon de lecture
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Constructeur d'une lecture depuis un canal
+	 * @param channel le canal depuis lequel lire
+	 * @param capacity la taille du tampon de lecture (en octets)
+	 */
+	BinaryInput(ReadableByteChannel channel, int capacity)
+	{
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(capacity);
+		buffer.limit(0);
+	}
+
+	/**
+	 * Constructeur d'une lecture depuis un tampon déjà rempli (une partie d'un
+	 * fichier projeté en mémoire par exemple) : la lecture commence à la
+	 * position du tampon et s'arrête à sa limite
+	 * @param buffer le tampon depuis lequel lire
+	 */
+	BinaryInput(ByteBuffer buffer)
+	{
+		channel = null;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Vérification du nombre d'octets disponibles dans le tampon : le tampon
+	 * est complété depuis le canal s'il contient moins de size octets
+	 * @param size le nombre d'octets à lire
+	 * @throws EOFException si le canal (ou le tampon lorsqu'il n'y a pas de
+	 * canal) se termine avant size octets
+	 * @throws IOException si la lecture dans le canal échoue
+	 */
+	private void ensure(int size) throws IOException
+	{
+		if (buffer.remaining() < size)
+		{
+			if (channel == null)
+			{
+				throw new EOFException("unexpected end of drawing record");
+			}
+			buffer.compact();
+			while (buffer.position() < size)
+			{
+				if (channel.read(buffer) < 0)
+				{
+					buffer.flip();
+					throw new EOFException("unexpected end of drawing file");
+				}
+			}
+			buffer.flip();
+		}
+	}
+
+	/**
+	 * Nombre d'octets restant à lire lorsqu'il est connu
+	 * @return le nombre d'octets restant dans le tampon pour une lecture
+	 * depuis un tampon, ou {@link Long#MAX_VALUE} pour une lecture depuis un
+	 * canal
+	 */
+	long remaining()
+	{
+		return (channel == null ? buffer.remaining() : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Lecture d'un octet
+	 * @return l'octet lu (entre 0 et 255)
+	 * @throws IOException si la lecture échoue
+	 */
+	int readByte() throws IOException
+	{
+		ensure(1);
+		return buffer.get() & 0xFF;
+	}
+
+	/**
+	 * Lecture d'une suite d'octets
+	 * @param values le tableau à remplir avec les octets lus
+	 * @throws IOException si la lecture échoue
+	 */
+	void readBytes(byte[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = (byte) readByte();
+		}
+	}
+
+	/**
+	 * Lecture d'un entier sur 4 octets
+	 * @return l'entier lu
+	 * @throws IOException si la lecture échoue
+	 */
+	int readInt() throws IOException
+	{
+		ensure(4);
+		return buffer.getInt();
+	}
+
+	/**
+	 * Lecture d'un flottant sur 4 octets
+	 * @return le flottant lu
+	 * @throws IOException si la lecture échoue
+	 */
+	float readFloat() throws IOException
+	{
+		ensure(4);
+		return buffer.getFloat();
+	}
+
+	/**
+	 * Lecture d'un flottant double précision sur 8 octets
+	 * @return le flottant lu
+	 * @throws IOException si la lecture échoue
+	 */
+	double readDouble() throws IOException
+	{
+		ensure(8);
+		return buffer.getDouble();
+	}
+
+	/**
+	 * Lecture d'un entier positif de taille variable
+	 * @return l'entier lu
+	 * @throws StreamCorruptedException si l'entier occupe plus de
+	 * {@link BinaryOutput#maxVarLongSize} octets
+	 * @throws IOException si la lecture échoue
+	 */
+	long readVarLong() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("malformed varint in drawing file");
+	}
+
+	/**
+	 * Lecture d'un entier signé de taille variable (codage zigzag)
+	 * @return l'entier lu
+	 * @throws IOException si la lecture échoue
+	 */
+	long readSignedVarLong() throws IOException
+	{
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Lecture d'un entier positif de taille variable tenant dans un int
+	 * @param max la valeur maximum attendue
+	 * @return l'entier lu
+	 * @throws StreamCorruptedException si l'entier dépasse max
+	 * @throws IOException si la lecture échoue
+	 */
+	int readVarInt(int max) throws IOException
+	{
+		long value = readVarLong();
+		if ((value < 0) || (value > max))
+		{
+			throw new StreamCorruptedException("value " + value
+					+ " out of range [0, " + max + "] in drawing file");
+		}
+		return (int) value;
+	}
+}
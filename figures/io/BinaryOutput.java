@@ -0,0 +1,184 @@
+package figures.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Ecriture de valeurs binaires dans un canal au travers d'un tampon de taille
+ * fixe : le tampon est vidé dans le canal chaque fois qu'il est plein, la
+ * mémoire utilisée ne dépend donc pas de la quantité de données écrites.
+ * Les entiers peuvent être écrits sous forme d'entiers de taille variable
+ * (varint : 7 bits par octet, le bit de poids fort indiquant qu'un octet
+ * suit) et les entiers signés sont alors d'abord transformés en entiers
+ * positifs (zigzag : 0, -1, 1, -2, ... deviennent 0, 1, 2, 3, ...) afin que
+ * les petites valeurs négatives occupent peu d'octets.
+ *
+ * @author davidroussel
+ */
+final class BinaryOutput
+{
+	/**
+	 * Nombre maximum d'octets d'un entier long de taille variable
+	 */
+	static final int maxVarLongSize = 10;
+
+	/**
+	 * Le canal dans lequel écrire
+	 */
+	private final WritableByteChannel channel;
+
+	/**
+	 * Le tampon d'écriture
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Le nombre d'octets déjà vidés dans le canal
+	 */
+	private long flushed;
+
+	/**
+	 * Constructeur d'une écriture dans un canal
+	 * @param channel le canal dans lequel écrire
+	 * @param capacity la taille du tampon d'écriture (en octets)
+	 */
+	BinaryOutput(WritableByteChannel channel, int capacity)
+	{
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(capacity);
+		flushed = 0;
+	}
+
+	/**
+	 * Position courante de l'écriture
+	 * @return le nombre d'octets écrits depuis la création
+	 */
+	long position()
+	{
+		return flushed + buffer.position();
+	}
+
+	/**
+	 * Vérification de la place disponible dans le tampon : le tampon est
+	 * vidé s'il ne peut contenir size octets de plus
+	 * @param size le nombre d'octets à écrire
+	 * @throws IOException si le tampon n'a pu être vidé
+	 */
+	private void ensure(int size) throws IOException
+	{
+		if (buffer.remaining() < size)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Ecriture d'un octet
+	 * @param value l'octet à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeByte(int value) throws IOException
+	{
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Ecriture d'une suite d'octets
+	 * @param values les octets à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeBytes(byte[] values) throws IOException
+	{
+		for (byte value : values)
+		{
+			writeByte(value);
+		}
+	}
+
+	/**
+	 * Ecriture d'un entier sur 4 octets
+	 * @param value l'entier à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeInt(int value) throws IOException
+	{
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	/**
+	 * Ecriture d'un entier long sur 8 octets
+	 * @param value l'entier à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeLong(long value) throws IOException
+	{
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Ecriture d'un flottant sur 4 octets
+	 * @param value le flottant à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeFloat(float value) throws IOException
+	{
+		ensure(4);
+		buffer.putFloat(value);
+	}
+
+	/**
+	 * Ecriture d'un flottant double précision sur 8 octets
+	 * @param value le flottant à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeDouble(double value) throws IOException
+	{
+		ensure(8);
+		buffer.putDouble(value);
+	}
+
+	/**
+	 * Ecriture d'un entier positif (ou considéré comme non signé) de taille
+	 * variable
+	 * @param value l'entier à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeVarLong(long value) throws IOException
+	{
+		ensure(maxVarLongSize);
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Ecriture d'un entier signé de taille variable (codage zigzag)
+	 * @param value l'entier à écrire
+	 * @throws IOException si l'écriture échoue
+	 */
+	void writeSignedVarLong(long value) throws IOException
+	{
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Vidage du tampon dans le canal
+	 * @throws IOException si l'écriture dans le canal échoue
+	 */
+	void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			flushed += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,940 @@
+package figures.io;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Paint;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import figures.AbstractFigure;
+import figures.Drawing;
+import figures.DrawingSnapshot;
+import figures.StyleTable;
+import figures.enums.FigureType;
+import figures.stores.FigureSource;
+import utils.SpatialIndex;
+
+/**
+ * Format de fichier natif des dessins. Un fichier contient les figures
+ * terminées d'un dessin dans l'ordre du dessin :
+ * <pre>
+ * entête     : "JDRW" (4 octets), version (varint)
+ * styles     : nombre de styles (varint), puis pour chaque style
+ *              trait, couleur du trait, couleur de remplissage
+ * figures    : nombre de figures (varint), puis pour chaque figure
+ *              code (varint) = ordinal du FigureType * 2 + codage,
+ *              style (varint, index dans les styles du fichier),
+ *              nombre n de coordonnées (varint), n coordonnées
+ * </pre>
+ * Un trait est un octet 0 (pas de trait) ou 1 suivi de sa largeur (float),
+ * de ses terminaisons et jointures (varints), de sa limite d'onglet (float),
+ * du nombre de pointillés + 1 (varint, 0 pour un trait plein), des
+ * pointillés (floats) et du décalage des pointillés (float). Une couleur est
+ * un octet 0 (pas de couleur) ou 1 suivi de sa valeur ARGB (int) : seules les
+ * {@link Color} peuvent être enregistrées.
+ * Lorsque toutes les coordonnées d'une figure sont des multiples de
+ * 1/{@link #quantum} (codage 1, le cas des figures dessinées à la souris
+ * sans zoom), elles sont enregistrées en nombres de 1/{@link #quantum}
+ * sous forme de varints signés (zigzag) : les deux premières directement, les
+ * suivantes d'un polygone par différence avec le sommet précédent et celles
+ * des autres figures (dimensions) directement. Sinon (codage 0) elles sont
+ * enregistrées telles quelles (doubles). Chaque figure ne dépend donc que de
+ * son propre enregistrement.
+ * L'écriture et la lecture se font en flux au travers de tampons de
+ * {@link #bufferSize} octets : la mémoire utilisée en plus du dessin ne
+ * dépend pas de la taille du fichier.
+ * Les figures sont suivies des positions de leurs enregistrements et de
+ * l'index spatial du dessin (voir {@link #write(DrawingSnapshot,
+ * WritableByteChannel)}) qui permettent d'ouvrir un fichier sans en lire les
+ * figures ({@link #open(Path, Drawing)}) : le fichier est alors projeté en
+ * mémoire et ses figures ne sont reconstruites que lorsqu'elles sont
+ * demandées. Ces sections sont facultatives : la lecture en flux les ignore.
+ *
+ * @author davidroussel
+ */
+public final class DrawingFormat
+{
+	/**
+	 * Extension des fichiers de dessin
+	 */
+	public static final String extension = "drw";
+
+	/**
+	 * Version courante du format
+	 */
+	public static final int version = 1;
+
+	/**
+	 * Taille (en octets) des tampons de lecture et d'écriture
+	 */
+	public static final int bufferSize = 1 << 16;
+
+	/**
+	 * Nombre de subdivisions de l'unité pour le codage des coordonnées en
+	 * entiers
+	 */
+	public static final double quantum = 64.0;
+
+	/**
+	 * Entête des fichiers de dessin
+	 */
+	private static final byte[] magic = { 'J', 'D', 'R', 'W' };
+
+	/**
+	 * Fin des fichiers de dessin contenant les sections de positions et
+	 * d'index
+	 */
+	private static final byte[] footerMagic = { 'J', 'D', 'R', 'I' };
+
+	/**
+	 * Taille de la fin des fichiers de dessin : position des positions,
+	 * position des racines et {@link #footerMagic}
+	 */
+	private static final int footerSize = 20;
+
+	/**
+	 * Plus grande coordonnée (en nombre de 1/{@link #quantum}) codée en
+	 * entier : au delà les doubles ne représentent plus tous les entiers
+	 */
+	private static final double maxQuantized = (double) (1L << 52);
+
+	/**
+	 * Plus grand nombre de coordonnées d'une figure accepté à la lecture
+	 */
+	private static final int maxCoordinates = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Les fichiers projetés en mémoire par {@link #open(Path, Drawing)}
+	 * (indexés par leur chemin réel) : une projection reste en place tant que
+	 * son {@link MappedFile} est utilisé par un dessin ou son historique
+	 */
+	private static final HashMap<Path, WeakReference<MappedFile>> mapped =
+			new HashMap<Path, WeakReference<MappedFile>>();
+
+	/**
+	 * Classe utilitaire : pas d'instances
+	 */
+	private DrawingFormat()
+	{
+	}
+
+	/**
+	 * Enregistrement des figures terminées d'une version d'un dessin dans un
+	 * fichier. Le dessin est d'abord écrit dans un fichier temporaire qui ne
+	 * remplace le fichier qu'une fois complet : un enregistrement qui échoue
+	 * ne détruit pas le fichier précédent.
+	 * Si le fichier est projeté en mémoire par un dessin ouvert avec
+	 * {@link #open(Path, Drawing)} ({@link #isMapped(Path)}, typiquement pour
+	 * enregistrer un dessin dans le fichier dont il provient), il est
+	 * remplacé par un renommage atomique : sur les systèmes qui le permettent
+	 * (Unix), la projection continue de lire l'ancien contenu qui n'est
+	 * libéré qu'avec elle. Les systèmes qui interdisent de remplacer un
+	 * fichier projeté (Windows) font échouer l'enregistrement : le fichier
+	 * n'est pas modifié et le dessin enregistré est conservé dans le fichier
+	 * temporaire indiqué par l'erreur.
+	 * @param snapshot la version du dessin à enregistrer
+	 * @param path le fichier à écrire
+	 * @throws IOException si l'écriture échoue, si le fichier projeté ne peut
+	 * pas être remplacé ou si le dessin contient une couleur qui n'est pas
+	 * une {@link Color}
+	 */
+	public static void save(DrawingSnapshot snapshot, Path path)
+			throws IOException
+	{
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(snapshot, channel);
+			channel.force(false);
+		}
+		catch (IOException e)
+		{
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		if (!isMapped(path))
+		{
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			return;
+		}
+		try
+		{
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (FileSystemException e)
+		{
+			throw new IOException(path + " is mapped by an open drawing and "
+					+ "cannot be replaced, the drawing was saved to " + temp,
+					e);
+		}
+	}
+
+	/**
+	 * Indique si un fichier est projeté en mémoire par un dessin ouvert avec
+	 * {@link #open(Path, Drawing)}. Une projection n'étant libérée que
+	 * lorsque plus aucun dessin (ni historique) n'en utilise les figures, un
+	 * fichier peut être considéré comme projeté quelque temps après que son
+	 * dessin a été fermé.
+	 * @param path le fichier
+	 * @return true si le fichier est projeté en mémoire
+	 */
+	public static boolean isMapped(Path path)
+	{
+		Path real;
+		try
+		{
+			real = path.toRealPath();
+		}
+		catch (IOException e)
+		{
+			// fichier inexistant ou inaccessible : il n'est pas projeté
+			return false;
+		}
+		synchronized (mapped)
+		{
+			WeakReference<MappedFile> file = mapped.get(real);
+			if ((file != null) && (file.get() == null))
+			{
+				mapped.remove(real);
+				file = null;
+			}
+			return file != null;
+		}
+	}
+
+	/**
+	 * Chargement d'un fichier dans un dessin
+	 * @param path le fichier à lire
+	 * @param drawing le dessin dont les figures sont remplacées par celles du
+	 * fichier
+	 * @return le nombre de figures lues
+	 * @throws IOException si la lecture échoue ou si le fichier n'est pas un
+	 * fichier de dessin valide
+	 * @see #read(ReadableByteChannel, Drawing)
+	 */
+	public static int load(Path path, Drawing drawing) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ))
+		{
+			return read(channel, drawing);
+		}
+	}
+
+	/**
+	 * Projection d'un fichier en mémoire dans un dessin : les figures du
+	 * dessin sont remplacées par celles du fichier
+	 * ({@link Drawing#open(FigureSource, SpatialIndex)}) sans qu'aucune figure
+	 * ne soit construite. Seuls l'entête et les styles sont lus, les figures
+	 * étant reconstruites depuis le fichier projeté lorsqu'elles sont
+	 * demandées et l'index spatial étant lu directement dans le fichier : le
+	 * temps d'ouverture ne dépend pas de la taille du fichier. Si le fichier
+	 * ne contient pas les sections de positions et d'index, il est chargé
+	 * entièrement ({@link #load(Path, Drawing)}).
+	 * Le fichier ne doit pas être modifié tant que le dessin (ou son
+	 * historique) contient ses figures : un enregistrement par
+	 * {@link #save(DrawingSnapshot, Path)} remplace le fichier sans le
+	 * modifier (voir {@link #isMapped(Path)}).
+	 * @param path le fichier à ouvrir
+	 * @param drawing le dessin dont les figures sont remplacées par celles du
+	 * fichier
+	 * @return le nombre de figures du fichier
+	 * @throws IOException si la lecture échoue ou si le fichier n'est pas un
+	 * fichier de dessin valide
+	 */
+	public static int open(Path path, Drawing drawing) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ))
+		{
+			MappedFile file = new MappedFile(channel);
+			long size = file.size();
+			boolean indexed = size >= footerSize;
+			for (int i = 0; indexed && (i < footerMagic.length); i++)
+			{
+				indexed = file.get(size - footerMagic.length + i)
+						== footerMagic[i];
+			}
+			if (!indexed)
+			{
+				return read(channel, drawing);
+			}
+			long offsetsPosition = file.getLong(size - footerSize);
+			long rootsPosition = file.getLong(size - footerSize + 8);
+
+			BinaryInput in = new BinaryInput(channel, bufferSize);
+			int[] styleIds = readHeader(in, drawing);
+			int count = in.readVarInt(Integer.MAX_VALUE);
+			if ((offsetsPosition < 0)
+					|| (rootsPosition < offsetsPosition + (8L * count))
+					|| (rootsPosition > size - footerSize - 4))
+			{
+				throw new StreamCorruptedException("invalid drawing file "
+						+ "sections");
+			}
+			MappedDrawing source = new MappedDrawing(file, count,
+					offsetsPosition, rootsPosition,
+					new RecordReader(styleIds, drawing.getStyles()));
+			synchronized (mapped)
+			{
+				mapped.put(path.toRealPath(),
+						new WeakReference<MappedFile>(file));
+			}
+			drawing.open(source, source);
+			return count;
+		}
+	}
+
+	/**
+	 * Ecriture des figures terminées d'une version d'un dessin dans un canal.
+	 * Les figures sont suivies de deux sections permettant de projeter le
+	 * fichier en mémoire ({@link #open(Path, Drawing)}) :
+	 * <pre>
+	 * positions  : position dans le fichier (long) de chaque figure
+	 * index      : noeuds de l'index spatial des figures, puis nombre de
+	 *              racines (int) et position de chaque racine (long)
+	 * fin        : position des positions (long), position des racines
+	 *              (long), "JDRI" (4 octets)
+	 * </pre>
+	 * Un noeud de l'index est un octet (1 pour une feuille), le nombre
+	 * d'entrées (1 octet) et pour chaque entrée ses bornes (4 floats arrondis
+	 * vers l'extérieur), sa clé (int, la plus grande clé du sous-arbre pour
+	 * un noeud interne) et pour un noeud interne la position du sous-arbre
+	 * (long). Les noeuds sont écrits après leurs sous-arbres.
+	 * @param snapshot la version du dessin à écrire
+	 * @param channel le canal dans lequel écrire (il n'est pas fermé)
+	 * @throws IOException si l'écriture échoue ou si le dessin contient une
+	 * couleur qui n'est pas une {@link Color}
+	 */
+	public static void write(DrawingSnapshot snapshot,
+			WritableByteChannel channel) throws IOException
+	{
+		final BinaryOutput out = new BinaryOutput(channel, bufferSize);
+		int count = snapshot.getTerminatedCount();
+
+		/*
+		 * Premier passage : numérotation des styles utilisés par les figures
+		 * dans l'ordre de leur première apparition
+		 */
+		IdentityHashMap<StyleTable, int[]> fileIds =
+				new IdentityHashMap<StyleTable, int[]>();
+		ArrayList<StyleTable> styleTables = new ArrayList<StyleTable>();
+		ArrayList<Integer> styleIds = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++)
+		{
+			AbstractFigure figure = snapshot.get(i);
+			int[] ids = fileIds(fileIds, figure);
+			int id = figure.getStyleId();
+			if (ids[id] < 0)
+			{
+				ids[id] = styleTables.size();
+				styleTables.add(figure.getStyles());
+				styleIds.add(id);
+			}
+		}
+
+		out.writeBytes(magic);
+		out.writeVarLong(version);
+		out.writeVarLong(styleTables.size());
+		for (int i = 0; i < styleTables.size(); i++)
+		{
+			StyleTable styles = styleTables.get(i);
+			int id = styleIds.get(i);
+			writeStroke(out, styles.getStroke(id));
+			writePaint(out, styles.getEdge(id));
+			writePaint(out, styles.getFill(id));
+		}
+
+		/*
+		 * Second passage : les figures
+		 */
+		out.writeVarLong(count);
+		RecordWriter records = new RecordWriter(fileIds);
+		long recordsPosition = out.position();
+		for (int i = 0; i < count; i++)
+		{
+			records.write(out, snapshot.get(i));
+		}
+
+		/*
+		 * Troisième passage : les positions des figures, obtenues en
+		 * mesurant à nouveau leurs enregistrements plutôt qu'en les
+		 * conservant
+		 */
+		long offsetsPosition = out.position();
+		BinaryOutput measure = new BinaryOutput(new Counter(), bufferSize);
+		for (int i = 0; i < count; i++)
+		{
+			out.writeLong(recordsPosition + measure.position());
+			records.write(measure, snapshot.get(i));
+		}
+
+		long[] roots = snapshot.getIndex().write(new SpatialIndex.NodeWriter()
+		{
+			@Override
+			public long writeNode(boolean leaf,
+					int count,
+					double[] minX,
+					double[] minY,
+					double[] maxX,
+					double[] maxY,
+					int[] keys,
+					long[] children) throws IOException
+			{
+				long position = out.position();
+				out.writeByte(leaf ? 1 : 0);
+				out.writeByte(count);
+				for (int i = 0; i < count; i++)
+				{
+					out.writeFloat(floor(minX[i]));
+					out.writeFloat(floor(minY[i]));
+					out.writeFloat(ceil(maxX[i]));
+					out.writeFloat(ceil(maxY[i]));
+					out.writeInt(keys[i]);
+					if (!leaf)
+					{
+						out.writeLong(children[i]);
+					}
+				}
+				return position;
+			}
+		});
+		long rootsPosition = out.position();
+		out.writeInt(roots.length);
+		for (long root : roots)
+		{
+			out.writeLong(root);
+		}
+
+		out.writeLong(offsetsPosition);
+		out.writeLong(rootsPosition);
+		out.writeBytes(footerMagic);
+		out.flush();
+	}
+
+	/**
+	 * Lecture d'un dessin depuis un canal. Les figures du dessin sont
+	 * remplacées par celles lues en un seul lot de modifications
+	 * ({@link Drawing#beginBatch()}) : les écouteurs ne sont notifiés qu'à la
+	 * fin de la lecture et le chargement forme une seule entrée de
+	 * l'historique (il peut être annulé). Peut être appelée depuis n'importe
+	 * quel thread.
+	 * En cas d'erreur de lecture, le dessin contient les figures lues jusque
+	 * là.
+	 * @param channel le canal depuis lequel lire (il n'est pas fermé)
+	 * @param drawing le dessin dont les figures sont remplacées par celles du
+	 * fichier
+	 * @return le nombre de figures lues
+	 * @throws IOException si la lecture échoue ou si le canal ne contient pas
+	 * un dessin valide
+	 */
+	public static int read(ReadableByteChannel channel, Drawing drawing)
+			throws IOException
+	{
+		BinaryInput in = new BinaryInput(channel, bufferSize);
+		RecordReader records = new RecordReader(readHeader(in, drawing),
+				drawing.getStyles());
+		int count = in.readVarInt(Integer.MAX_VALUE);
+		drawing.beginBatch();
+		try
+		{
+			drawing.clear();
+			for (int i = 0; i < count; i++)
+			{
+				drawing.addFigure(records.read(in, i));
+			}
+		}
+		finally
+		{
+			drawing.commitBatch();
+		}
+		return count;
+	}
+
+	/**
+	 * Lecture de l'entête et des styles d'un fichier
+	 * @param in la lecture depuis laquelle lire
+	 * @param drawing le dessin dans lequel ajouter les styles
+	 * @return les identifiants dans les styles du dessin des styles du
+	 * fichier
+	 * @throws IOException si la lecture échoue ou si le fichier n'est pas un
+	 * fichier de dessin valide
+	 */
+	private static int[] readHeader(BinaryInput in, Drawing drawing)
+			throws IOException
+	{
+		byte[] header = new byte[magic.length];
+		in.readBytes(header);
+		if (!Arrays.equals(header, magic))
+		{
+			throw new StreamCorruptedException("not a drawing file");
+		}
+		long fileVersion = in.readVarLong();
+		if (fileVersion != version)
+		{
+			throw new IOException("unsupported drawing file version "
+					+ fileVersion);
+		}
+
+		int styleCount = in.readVarInt(Integer.MAX_VALUE);
+		int[] styleIds = new int[styleCount];
+		for (int i = 0; i < styleCount; i++)
+		{
+			BasicStroke stroke = readStroke(in);
+			Paint edge = readPaint(in);
+			Paint fill = readPaint(in);
+			styleIds[i] = drawing.internStyle(stroke, edge, fill);
+		}
+		return styleIds;
+	}
+
+	/**
+	 * Ecriture des enregistrements des figures
+	 */
+	private static final class RecordWriter
+	{
+		/**
+		 * Les identifiants dans le fichier des styles des tables de styles
+		 */
+		private final IdentityHashMap<StyleTable, int[]> fileIds;
+
+		/**
+		 * Les coordonnées de la figure en cours d'écriture
+		 */
+		private double[] coords;
+
+		/**
+		 * Les coordonnées en nombres de 1/{@link #quantum}
+		 */
+		private long[] quantized;
+
+		/**
+		 * Constructeur
+		 * @param fileIds les identifiants dans le fichier des styles des
+		 * tables de styles
+		 */
+		RecordWriter(IdentityHashMap<StyleTable, int[]> fileIds)
+		{
+			this.fileIds = fileIds;
+			coords = new double[8];
+			quantized = new long[8];
+		}
+
+		/**
+		 * Ecriture de l'enregistrement d'une figure
+		 * @param out l'écriture dans laquelle écrire
+		 * @param figure la figure
+		 * @throws IOException si l'écriture échoue
+		 */
+		void write(BinaryOutput out, AbstractFigure figure) throws IOException
+		{
+			FigureType type = figure.getType();
+			int n = figure.getCoordinateCount();
+			if (n > coords.length)
+			{
+				coords = new double[Math.max(n, 2 * coords.length)];
+				quantized = new long[coords.length];
+			}
+			figure.getCoordinates(coords, 0);
+			boolean fixed = quantize(coords, quantized, n);
+			out.writeVarLong((type.ordinal() << 1) | (fixed ? 1 : 0));
+			out.writeVarLong(fileIds(fileIds, figure)[figure.getStyleId()]);
+			out.writeVarLong(n);
+			if (fixed)
+			{
+				boolean delta = type == FigureType.POLYGON;
+				for (int j = 0; j < n; j++)
+				{
+					out.writeSignedVarLong(delta && (j >= 2)
+							? quantized[j] - quantized[j - 2] : quantized[j]);
+				}
+			}
+			else
+			{
+				for (int j = 0; j < n; j++)
+				{
+					out.writeDouble(coords[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lecture des enregistrements des figures. Une lecture n'est pas prévue
+	 * pour être utilisée depuis plusieurs threads à la fois.
+	 */
+	static final class RecordReader
+	{
+		/**
+		 * Les types de figures indexés par leur ordinal
+		 */
+		private static final FigureType[] types = FigureType.values();
+
+		/**
+		 * Le nombre de coordonnées des figures de chaque type (indexé par
+		 * ordinal), ou -1 pour les polygones dont le nombre de sommets varie
+		 */
+		private static final int[] coordinateCounts = new int[types.length];
+
+		static
+		{
+			StyleTable styles = new StyleTable();
+			int styleId = styles.intern(null, null, null);
+			for (FigureType type : types)
+			{
+				coordinateCounts[type.ordinal()] = (type == FigureType.POLYGON
+						? -1 : type.getFigure(styles, styleId,
+								new Point2D.Double()).getCoordinateCount());
+			}
+		}
+
+		/**
+		 * Les identifiants dans les styles du dessin des styles du fichier
+		 */
+		private final int[] styleIds;
+
+		/**
+		 * Les styles du dessin
+		 */
+		private final StyleTable styles;
+
+		/**
+		 * Les coordonnées de la figure en cours de lecture
+		 */
+		private double[] coords;
+
+		/**
+		 * Le premier point de la figure en cours de lecture
+		 */
+		private final Point2D.Double origin;
+
+		/**
+		 * Constructeur
+		 * @param styleIds les identifiants dans styles des styles du fichier
+		 * @param styles les styles du dessin
+		 */
+		RecordReader(int[] styleIds, StyleTable styles)
+		{
+			this.styleIds = styleIds;
+			this.styles = styles;
+			coords = new double[8];
+			origin = new Point2D.Double();
+		}
+
+		/**
+		 * Copie d'une lecture, utilisable dans un autre thread
+		 * @return une nouvelle lecture utilisant les mêmes styles
+		 */
+		RecordReader copy()
+		{
+			return new RecordReader(styleIds, styles);
+		}
+
+		/**
+		 * Lecture de l'enregistrement d'une figure. Le nombre de coordonnées
+		 * lu est vérifié avant toute allocation : il doit correspondre au type
+		 * de la figure, et celui d'un polygone ne peut dépasser le nombre
+		 * d'octets restant à lire (le tableau des coordonnées n'est agrandi
+		 * qu'au fur et à mesure de la lecture lorsque ce nombre n'est pas
+		 * connu). Un enregistrement corrompu provoque donc une
+		 * {@link StreamCorruptedException} plutôt qu'une allocation démesurée.
+		 * @param in la lecture depuis laquelle lire
+		 * @param i l'index de la figure (pour les messages d'erreur)
+		 * @return la figure lue
+		 * @throws IOException si la lecture échoue ou si l'enregistrement est
+		 * invalide
+		 */
+		AbstractFigure read(BinaryInput in, int i) throws IOException
+		{
+			int code = in.readVarInt((types.length << 1) - 1);
+			FigureType type = types[code >> 1];
+			int styleId = styleIds[in.readVarInt(styleIds.length - 1)];
+			int n = in.readVarInt(maxCoordinates);
+			int expected = coordinateCounts[type.ordinal()];
+			// au moins un octet par coordonnée entière, huit sinon
+			long size = ((code & 1) != 0 ? n : 8L * n);
+			if ((n < 2) || ((expected >= 0) && (n != expected))
+					|| ((expected < 0) && ((n & 1) != 0))
+					|| (size > in.remaining()))
+			{
+				throw new StreamCorruptedException("figure " + i + " (" + type
+						+ ") has " + n + " coordinates");
+			}
+			if ((code & 1) != 0)
+			{
+				boolean delta = type == FigureType.POLYGON;
+				long previousX = 0;
+				long previousY = 0;
+				for (int j = 0; j < n; j++)
+				{
+					ensureCapacity(j);
+					long value = in.readSignedVarLong();
+					if ((j & 1) == 0)
+					{
+						value += (delta && (j >= 2) ? previousX : 0);
+						previousX = value;
+					}
+					else
+					{
+						value += (delta && (j >= 2) ? previousY : 0);
+						previousY = value;
+					}
+					coords[j] = value / quantum;
+				}
+			}
+			else
+			{
+				for (int j = 0; j < n; j++)
+				{
+					ensureCapacity(j);
+					coords[j] = in.readDouble();
+				}
+			}
+			origin.setLocation(coords[0], coords[1]);
+			AbstractFigure figure = type.getFigure(styles, styleId, origin);
+			figure.setCoordinates(coords, 0, n);
+			return figure;
+		}
+
+		/**
+		 * Agrandissement (par doublement) du tableau des coordonnées afin
+		 * qu'il puisse contenir la coordonnée j
+		 * @param j l'index de la prochaine coordonnée lue
+		 */
+		private void ensureCapacity(int j)
+		{
+			if (j == coords.length)
+			{
+				coords = Arrays.copyOf(coords,
+						(int) Math.min(2L * coords.length, maxCoordinates));
+			}
+		}
+	}
+
+	/**
+	 * Canal ne conservant rien de ce qui y est écrit, permettant de mesurer
+	 * la taille des enregistrements
+	 */
+	private static final class Counter implements WritableByteChannel
+	{
+		@Override
+		public int write(ByteBuffer src)
+		{
+			int written = src.remaining();
+			src.position(src.limit());
+			return written;
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return true;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	/**
+	 * Arrondi vers le bas d'une borne minimum en float
+	 * @param value la borne
+	 * @return le plus grand float inférieur ou égal à la borne
+	 */
+	private static float floor(double value)
+	{
+		float f = (float) value;
+		return (f > value ? Math.nextDown(f) : f);
+	}
+
+	/**
+	 * Arrondi vers le haut d'une borne maximum en float
+	 * @param value la borne
+	 * @return le plus petit float supérieur ou égal à la borne
+	 */
+	private static float ceil(double value)
+	{
+		float f = (float) value;
+		return (f < value ? Math.nextUp(f) : f);
+	}
+
+	/**
+	 * Table de correspondance entre les identifiants de style d'une table de
+	 * styles et ceux du fichier
+	 * @param fileIds les tables de correspondance déjà créées
+	 * @param figure la figure dont on cherche le style
+	 * @return la table de correspondance (-1 pour un style pas encore
+	 * numéroté) couvrant au moins le style de la figure
+	 */
+	private static int[] fileIds(IdentityHashMap<StyleTable, int[]> fileIds,
+			AbstractFigure figure)
+	{
+		StyleTable styles = figure.getStyles();
+		int[] ids = fileIds.get(styles);
+		if ((ids == null) || (ids.length <= figure.getStyleId()))
+		{
+			int previous = (ids == null ? 0 : ids.length);
+			ids = (ids == null ? new int[0] : ids);
+			ids = Arrays.copyOf(ids, Math.max(styles.size(),
+					figure.getStyleId() + 1));
+			Arrays.fill(ids, previous, ids.length, -1);
+			fileIds.put(styles, ids);
+		}
+		return ids;
+	}
+
+	/**
+	 * Conversion des coordonnées d'une figure en nombres de 1/{@link #quantum}
+	 * @param coords les coordonnées
+	 * @param quantized le tableau à remplir avec les coordonnées converties
+	 * @param n le nombre de coordonnées
+	 * @return true si toutes les coordonnées sont exactement représentées par
+	 * les coordonnées converties
+	 */
+	private static boolean quantize(double[] coords, long[] quantized, int n)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			double q = Math.rint(coords[i] * quantum);
+			if ((q / quantum != coords[i]) || (Math.abs(q) > maxQuantized))
+			{
+				return false;
+			}
+			quantized[i] = (long) q;
+		}
+		return true;
+	}
+
+	/**
+	 * Ecriture d'un trait
+	 * @param out l'écriture dans laquelle écrire le trait
+	 * @param stroke le trait (ou null)
+	 * @throws IOException si l'écriture échoue
+	 */
+	private static void writeStroke(BinaryOutput out, BasicStroke stroke)
+			throws IOException
+	{
+		if (stroke == null)
+		{
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		out.writeFloat(stroke.getLineWidth());
+		out.writeVarLong(stroke.getEndCap());
+		out.writeVarLong(stroke.getLineJoin());
+		out.writeFloat(stroke.getMiterLimit());
+		float[] dash = stroke.getDashArray();
+		out.writeVarLong(dash == null ? 0 : dash.length + 1);
+		if (dash != null)
+		{
+			for (float d : dash)
+			{
+				out.writeFloat(d);
+			}
+		}
+		out.writeFloat(stroke.getDashPhase());
+	}
+
+	/**
+	 * Lecture d'un trait
+	 * @param in la lecture depuis laquelle lire le trait
+	 * @return le trait lu (ou null)
+	 * @throws IOException si la lecture échoue ou si le trait est invalide
+	 */
+	private static BasicStroke readStroke(BinaryInput in) throws IOException
+	{
+		if (in.readByte() == 0)
+		{
+			return null;
+		}
+		float width = in.readFloat();
+		int cap = in.readVarInt(Integer.MAX_VALUE);
+		int join = in.readVarInt(Integer.MAX_VALUE);
+		float miter = in.readFloat();
+		int dashCount = in.readVarInt(Integer.MAX_VALUE);
+		float[] dash = null;
+		if (dashCount > 0)
+		{
+			dash = new float[dashCount - 1];
+			for (int i = 0; i < dash.length; i++)
+			{
+				dash[i] = in.readFloat();
+			}
+		}
+		float phase = in.readFloat();
+		try
+		{
+			return new BasicStroke(width, cap, join, miter, dash, phase);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new StreamCorruptedException("invalid stroke: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Ecriture d'une couleur
+	 * @param out l'écriture dans laquelle écrire la couleur
+	 * @param paint la couleur (ou null)
+	 * @throws IOException si l'écriture échoue ou si la couleur n'est pas une
+	 * {@link Color}
+	 */
+	private static void writePaint(BinaryOutput out, Paint paint)
+			throws IOException
+	{
+		if (paint == null)
+		{
+			out.writeByte(0);
+		}
+		else if (paint instanceof Color)
+		{
+			out.writeByte(1);
+			out.writeInt(((Color) paint).getRGB());
+		}
+		else
+		{
+			throw new IOException("unsupported paint "
+					+ paint.getClass().getName());
+		}
+	}
+
+	/**
+	 * Lecture d'une couleur
+	 * @param in la lecture depuis laquelle lire la couleur
+	 * @return la couleur lue (ou null)
+	 * @throws IOException si la lecture échoue ou si la couleur est invalide
+	 */
+	private static Paint readPaint(BinaryInput in) throws IOException
+	{
+		switch (in.readByte())
+		{
+			case 0:
+				return null;
+			case 1:
+				return new Color(in.readInt(), true);
+			default:
+				throw new StreamCorruptedException("invalid paint");
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package figures.io;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import figures.AbstractFigure;
+import figures.stores.FigureSource;
+import utils.SpatialIndex;
+
+/**
+ * Figures et index spatial d'un fichier de dessin projeté en mémoire
+ * ({@link DrawingFormat#open(java.nio.file.Path, figures.Drawing)}). Aucune
+ * figure n'est construite à l'ouverture : la position de l'enregistrement de
+ * chaque figure est lue dans la section des positions du fichier et la figure
+ * n'est reconstruite que lorsqu'elle est demandée (les dernières figures
+ * reconstruites sont conservées dans un petit cache). Les recherches
+ * spatiales parcourent directement les noeuds de l'index enregistrés dans le
+ * fichier.
+ * Le contenu du fichier n'est pas vérifié à l'ouverture (ce qui demanderait
+ * de le parcourir entièrement) mais à chaque lecture : un enregistrement ou
+ * un noeud invalide provoque une {@link UncheckedIOException} contenant une
+ * {@link StreamCorruptedException}. Les sous-arbres d'un noeud étant écrits
+ * avant lui, leurs positions doivent être inférieures à la sienne, ce qui
+ * exclut les cycles, et la profondeur de l'index est limitée à
+ * {@link #maxDepth}.
+ *
+ * @author davidroussel
+ */
+final class MappedDrawing implements FigureSource, SpatialIndex
+{
+	/**
+	 * Nombre de figures reconstruites conservées (puissance de 2)
+	 */
+	private static final int cacheSize = 1 << 12;
+
+	/**
+	 * Taille de l'entête d'un noeud : type de noeud et nombre d'entrées
+	 */
+	private static final int nodeHeaderSize = 2;
+
+	/**
+	 * Taille d'une entrée de feuille : bornes et clé
+	 */
+	private static final int leafEntrySize = 20;
+
+	/**
+	 * Taille d'une entrée de noeud interne : bornes, clé et position du
+	 * sous-arbre
+	 */
+	private static final int nodeEntrySize = 28;
+
+	/**
+	 * Profondeur maximum de l'index : un {@link utils.RTree} d'au plus
+	 * 2^31 clés dont les noeuds (hors racine) ont au moins deux entrées est
+	 * moins profond
+	 */
+	private static final int maxDepth = 32;
+
+	/**
+	 * Figure reconstruite conservée dans le {@link MappedDrawing#cache}
+	 */
+	private static final class Cached
+	{
+		final int index;
+		final AbstractFigure figure;
+
+		Cached(int index, AbstractFigure figure)
+		{
+			this.index = index;
+			this.figure = figure;
+		}
+	}
+
+	/**
+	 * Le fichier projeté
+	 */
+	private final MappedFile file;
+
+	/**
+	 * Le nombre de figures du fichier
+	 */
+	private final int count;
+
+	/**
+	 * La position de la section des positions des enregistrements
+	 */
+	private final long offsetsPosition;
+
+	/**
+	 * La position du début de la section de l'index (fin des positions des
+	 * enregistrements)
+	 */
+	private final long nodesPosition;
+
+	/**
+	 * La position de la liste des racines de l'index (fin des noeuds)
+	 */
+	private final long rootsPosition;
+
+	/**
+	 * Les positions des racines de l'index, par clés croissantes
+	 */
+	private final long[] roots;
+
+	/**
+	 * La lecture des enregistrements, copiée pour chaque reconstruction
+	 */
+	private final DrawingFormat.RecordReader records;
+
+	/**
+	 * Les dernières figures reconstruites, rangées par index modulo
+	 * {@link #cacheSize}
+	 */
+	private final AtomicReferenceArray<Cached> cache;
+
+	/**
+	 * Constructeur
+	 * @param file le fichier projeté
+	 * @param count le nombre de figures du fichier
+	 * @param offsetsPosition la position de la section des positions des
+	 * enregistrements
+	 * @param rootsPosition la position de la liste des racines de l'index
+	 * @param records la lecture des enregistrements
+	 * @throws StreamCorruptedException si la liste des racines de l'index est
+	 * invalide
+	 */
+	MappedDrawing(MappedFile file,
+			int count,
+			long offsetsPosition,
+			long rootsPosition,
+			DrawingFormat.RecordReader records)
+			throws StreamCorruptedException
+	{
+		this.file = file;
+		this.count = count;
+		this.offsetsPosition = offsetsPosition;
+		this.rootsPosition = rootsPosition;
+		this.records = records;
+		nodesPosition = offsetsPosition + (8L * count);
+		int rootCount = file.getInt(rootsPosition);
+		if ((rootCount < 0)
+				|| (rootCount > (file.size() - rootsPosition - 4) / 8))
+		{
+			throw new StreamCorruptedException("invalid index root count "
+					+ rootCount);
+		}
+		roots = new long[rootCount];
+		for (int i = 0; i < roots.length; i++)
+		{
+			roots[i] = file.getLong(rootsPosition + 4 + (8L * i));
+			if ((roots[i] < nodesPosition) || (roots[i] >= rootsPosition))
+			{
+				throw new StreamCorruptedException("invalid index root "
+						+ "position " + roots[i]);
+			}
+		}
+		cache = new AtomicReferenceArray<Cached>(cacheSize);
+	}
+
+	@Override
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Reconstruction d'une figure depuis son enregistrement
+	 * @param index l'index de la figure
+	 * @return la figure (éventuellement déjà reconstruite)
+	 * @throws IndexOutOfBoundsException si index est hors limites
+	 * @throws UncheckedIOException si l'enregistrement est invalide
+	 */
+	@Override
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException
+	{
+		if ((index < 0) || (index >= count))
+		{
+			throw new IndexOutOfBoundsException("index " + index);
+		}
+		int slot = index & (cacheSize - 1);
+		Cached cached = cache.get(slot);
+		if ((cached != null) && (cached.index == index))
+		{
+			return cached.figure;
+		}
+
+		long start = file.getLong(offsetsPosition + (8L * index));
+		long end = (index + 1 < count ? file.getLong(offsetsPosition
+				+ (8L * (index + 1))) : offsetsPosition);
+		AbstractFigure figure;
+		try
+		{
+			if ((start < 0) || (end < start) || (end > offsetsPosition)
+					|| (end - start > Integer.MAX_VALUE))
+			{
+				throw new StreamCorruptedException("invalid position of "
+						+ "record " + index);
+			}
+			figure = records.copy().read(new BinaryInput(file.slice(start,
+					(int) (end - start))), index);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		cache.set(slot, new Cached(index, figure));
+		return figure;
+	}
+
+	@Override
+	public int findTopMost(double x, double y, int limit, IntPredicate filter)
+	{
+		int best = -1;
+		for (int i = roots.length - 1; i >= 0; i--)
+		{
+			best = topMost(roots[i], 0, x, y, limit, filter, best);
+		}
+		return best;
+	}
+
+	/**
+	 * Recherche récursive de
+	 * {@link #findTopMost(double, double, int, IntPredicate)} : comme dans un
+	 * {@link utils.RTree}, les entrées sont explorées par clé décroissante
+	 * (limitée à limit - 1)
+	 */
+	private int topMost(long node, int depth, double x, double y, int limit,
+			IntPredicate filter, int best)
+	{
+		boolean leaf = isLeaf(node);
+		int n = entryCount(node, depth, leaf);
+		int entrySize = (leaf ? leafEntrySize : nodeEntrySize);
+		long entries = node + nodeHeaderSize;
+		int visited = 0;
+		while (true)
+		{
+			// Entrée non visitée contenant le point avec la plus grande clé
+			int next = -1;
+			int nextKey = best;
+			for (int i = 0; i < n; i++)
+			{
+				long entry = entries + ((long) i * entrySize);
+				int key = file.getInt(entry + 16);
+				if (leaf ? key >= limit : key >= limit - 1)
+				{
+					key = (leaf ? -1 : limit - 1);
+				}
+				if (((visited & (1 << i)) == 0) && (key > nextKey)
+						&& contains(entry, x, y))
+				{
+					next = i;
+					nextKey = key;
+				}
+			}
+			if (next < 0)
+			{
+				return best;
+			}
+			visited |= 1 << next;
+
+			if (leaf)
+			{
+				if ((filter == null) || filter.test(nextKey))
+				{
+					// les entrées suivantes ont toutes des clés inférieures
+					return nextKey;
+				}
+			}
+			else
+			{
+				long child = child(node, entries + ((long) next * entrySize));
+				best = topMost(child, depth + 1, x, y, limit, filter, best);
+			}
+		}
+	}
+
+	@Override
+	public void search(Rectangle2D area, int limit, IntConsumer found)
+	{
+		for (long root : roots)
+		{
+			search(root, 0, area.getMinX(), area.getMinY(), area.getMaxX(),
+					area.getMaxY(), limit, found);
+		}
+	}
+
+	/**
+	 * Recherche récursive de {@link #search(Rectangle2D, int, IntConsumer)}
+	 */
+	private void search(long node, int depth, double x0, double y0,
+			double x1, double y1, int limit, IntConsumer found)
+	{
+		boolean leaf = isLeaf(node);
+		int n = entryCount(node, depth, leaf);
+		int entrySize = (leaf ? leafEntrySize : nodeEntrySize);
+		long entry = node + nodeHeaderSize;
+		for (int i = 0; i < n; i++, entry += entrySize)
+		{
+			if (intersects(entry, x0, y0, x1, y1))
+			{
+				if (leaf)
+				{
+					int key = file.getInt(entry + 16);
+					if (key < limit)
+					{
+						found.accept(key);
+					}
+				}
+				else
+				{
+					search(child(node, entry), depth + 1, x0, y0, x1, y1,
+							limit, found);
+				}
+			}
+		}
+	}
+
+	@Override
+	public long[] write(NodeWriter writer, int limit) throws IOException
+	{
+		long[] written = new long[roots.length];
+		int n = 0;
+		try
+		{
+			for (long root : roots)
+			{
+				long copy = write(root, 0, writer, limit);
+				if (copy >= 0)
+				{
+					written[n++] = copy;
+				}
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		return Arrays.copyOf(written, n);
+	}
+
+	/**
+	 * Copie récursive de {@link #write(SpatialIndex.NodeWriter, int)} : les
+	 * clés de feuille supérieures ou égales à limit sont omises et celles des
+	 * noeuds internes limitées à limit - 1
+	 * @return la référence du noeud écrit ou -1 si le noeud ne contient
+	 * aucune clé inférieure à limit
+	 */
+	private long write(long node, int depth, NodeWriter writer, int limit)
+			throws IOException
+	{
+		boolean leaf = isLeaf(node);
+		int n = entryCount(node, depth, leaf);
+		int entrySize = (leaf ? leafEntrySize : nodeEntrySize);
+		double[] minX = new double[n];
+		double[] minY = new double[n];
+		double[] maxX = new double[n];
+		double[] maxY = new double[n];
+		int[] keys = new int[n];
+		long[] children = new long[n];
+		int kept = 0;
+		long entry = node + nodeHeaderSize;
+		for (int i = 0; i < n; i++, entry += entrySize)
+		{
+			int key = file.getInt(entry + 16);
+			if (leaf)
+			{
+				if (key >= limit)
+				{
+					continue;
+				}
+			}
+			else
+			{
+				children[kept] = write(child(node, entry), depth + 1, writer,
+						limit);
+				if (children[kept] < 0)
+				{
+					continue;
+				}
+				key = Math.min(key, limit - 1);
+			}
+			minX[kept] = file.getFloat(entry);
+			minY[kept] = file.getFloat(entry + 4);
+			maxX[kept] = file.getFloat(entry + 8);
+			maxY[kept] = file.getFloat(entry + 12);
+			keys[kept] = key;
+			kept++;
+		}
+		return (kept == 0 ? -1 : writer.writeNode(leaf, kept, minX, minY,
+				maxX, maxY, keys, children));
+	}
+
+	/**
+	 * Lecture du type d'un noeud
+	 * @param node la position du noeud
+	 * @return true si le noeud est une feuille
+	 * @throws UncheckedIOException si le type du noeud est invalide
+	 */
+	private boolean isLeaf(long node)
+	{
+		int leaf = file.get(node);
+		if (leaf > 1)
+		{
+			throw corrupted("invalid index node type at " + node);
+		}
+		return leaf != 0;
+	}
+
+	/**
+	 * Lecture et vérification du nombre d'entrées d'un noeud : le noeud doit
+	 * avoir entre 1 et {@link SpatialIndex#maxNodeEntries} entrées, être
+	 * contenu dans la section de l'index et ne pas dépasser
+	 * {@link #maxDepth}
+	 * @param node la position du noeud
+	 * @param depth la profondeur du noeud
+	 * @param leaf indique si le noeud est une feuille
+	 * @return le nombre d'entrées du noeud
+	 * @throws UncheckedIOException si le noeud est invalide
+	 */
+	private int entryCount(long node, int depth, boolean leaf)
+	{
+		int n = file.get(node + 1);
+		if ((n < 1) || (n > maxNodeEntries))
+		{
+			throw corrupted("invalid index node entry count " + n + " at "
+					+ node);
+		}
+		if (node + nodeHeaderSize
+				+ ((long) n * (leaf ? leafEntrySize : nodeEntrySize))
+				> rootsPosition)
+		{
+			throw corrupted("truncated index node at " + node);
+		}
+		if (depth >= maxDepth)
+		{
+			throw corrupted("index too deep at " + node);
+		}
+		return n;
+	}
+
+	/**
+	 * Lecture et vérification de la position du sous-arbre d'une entrée
+	 * d'un noeud interne : les sous-arbres étant écrits avant leur noeud,
+	 * elle doit être comprise entre le début de la section de l'index et la
+	 * position du noeud
+	 * @param node la position du noeud
+	 * @param entry la position de l'entrée
+	 * @return la position du sous-arbre
+	 * @throws UncheckedIOException si la position est invalide
+	 */
+	private long child(long node, long entry)
+	{
+		long child = file.getLong(entry + 20);
+		if ((child < nodesPosition) || (child >= node))
+		{
+			throw corrupted("invalid index child position " + child + " at "
+					+ node);
+		}
+		return child;
+	}
+
+	/**
+	 * Erreur de lecture d'un fichier invalide
+	 * @param message le message de l'erreur
+	 * @return une {@link UncheckedIOException} contenant une
+	 * {@link StreamCorruptedException}
+	 */
+	private static UncheckedIOException corrupted(String message)
+	{
+		return new UncheckedIOException(new StreamCorruptedException(message));
+	}
+
+	/**
+	 * Test de contenance d'un point dans les bornes d'une entrée
+	 * @param entry la position de l'entrée
+	 * @param x l'abcisse du point
+	 * @param y l'ordonnée du point
+	 * @return true si les bornes de l'entrée contiennent le point
+	 */
+	private boolean contains(long entry, double x, double y)
+	{
+		return (file.getFloat(entry) <= x) && (x <= file.getFloat(entry + 8))
+				&& (file.getFloat(entry + 4) <= y)
+				&& (y <= file.getFloat(entry + 12));
+	}
+
+	/**
+	 * Test d'intersection d'une zone avec les bornes d'une entrée
+	 * @param entry la position de l'entrée
+	 * @param x0 l'abcisse minimum de la zone
+	 * @param y0 l'ordonnée minimum de la zone
+	 * @param x1 l'abcisse maximum de la zone
+	 * @param y1 l'ordonnée maximum de la zone
+	 * @return true si les bornes de l'entrée intersectent la zone
+	 */
+	private boolean intersects(long entry, double x0, double y0, double x1,
+			double y1)
+	{
+		return (file.getFloat(entry) <= x1) && (x0 <= file.getFloat(entry + 8))
+				&& (file.getFloat(entry + 4) <= y1)
+				&& (y0 <= file.getFloat(entry + 12));
+	}
+}
@@ -0,0 +1,165 @@
+package figures.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fichier projeté en mémoire en lecture seule. Un {@link MappedByteBuffer} ne
+ * pouvant dépasser 2 Go, le fichier est projeté par blocs consécutifs de
+ * {@link #chunkSize} octets et les valeurs qui chevauchent deux blocs sont
+ * reconstituées octet par octet. Les lectures se font à des positions
+ * absolues (sans modifier les tampons) : un fichier projeté peut donc être lu
+ * depuis plusieurs threads à la fois. La projection reste valide après la
+ * fermeture du canal.
+ *
+ * @author davidroussel
+ */
+final class MappedFile
+{
+	/**
+	 * Nombre de bits de la taille des blocs
+	 */
+	private static final int chunkBits = 30;
+
+	/**
+	 * Taille (en octets) des blocs projetés
+	 */
+	private static final long chunkSize = 1L << chunkBits;
+
+	/**
+	 * Les blocs projetés
+	 */
+	private final MappedByteBuffer[] chunks;
+
+	/**
+	 * La taille du fichier
+	 */
+	private final long size;
+
+	/**
+	 * Constructeur d'une projection de tout le contenu d'un fichier
+	 * @param channel le canal du fichier à projeter
+	 * @throws IOException si la projection échoue
+	 */
+	MappedFile(FileChannel channel) throws IOException
+	{
+		size = channel.size();
+		chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+		for (int i = 0; i < chunks.length; i++)
+		{
+			long start = i * chunkSize;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.min(chunkSize, size - start));
+		}
+	}
+
+	/**
+	 * Taille du fichier
+	 * @return la taille du fichier en octets
+	 */
+	long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Lecture d'un octet
+	 * @param position la position de l'octet dans le fichier
+	 * @return l'octet lu (entre 0 et 255)
+	 */
+	int get(long position)
+	{
+		return chunks[(int) (position >>> chunkBits)]
+				.get((int) (position & (chunkSize - 1))) & 0xFF;
+	}
+
+	/**
+	 * Lecture d'un entier sur 4 octets
+	 * @param position la position de l'entier dans le fichier
+	 * @return l'entier lu
+	 */
+	int getInt(long position)
+	{
+		int offset = (int) (position & (chunkSize - 1));
+		MappedByteBuffer chunk = chunks[(int) (position >>> chunkBits)];
+		if (offset + 4 <= chunk.limit())
+		{
+			return chunk.getInt(offset);
+		}
+		return (int) getBytes(position, 4);
+	}
+
+	/**
+	 * Lecture d'un entier long sur 8 octets
+	 * @param position la position de l'entier dans le fichier
+	 * @return l'entier lu
+	 */
+	long getLong(long position)
+	{
+		int offset = (int) (position & (chunkSize - 1));
+		MappedByteBuffer chunk = chunks[(int) (position >>> chunkBits)];
+		if (offset + 8 <= chunk.limit())
+		{
+			return chunk.getLong(offset);
+		}
+		return getBytes(position, 8);
+	}
+
+	/**
+	 * Lecture d'un flottant sur 4 octets
+	 * @param position la position du flottant dans le fichier
+	 * @return le flottant lu
+	 */
+	float getFloat(long position)
+	{
+		return Float.intBitsToFloat(getInt(position));
+	}
+
+	/**
+	 * Lecture octet par octet d'une valeur chevauchant deux blocs (octets de
+	 * poids fort en premier comme dans les {@link ByteBuffer})
+	 * @param position la position de la valeur dans le fichier
+	 * @param count le nombre d'octets de la valeur
+	 * @return la valeur lue
+	 */
+	private long getBytes(long position, int count)
+	{
+		long value = 0;
+		for (int i = 0; i < count; i++)
+		{
+			value = (value << 8) | get(position + i);
+		}
+		return value;
+	}
+
+	/**
+	 * Accès à une partie du fichier sous forme de tampon. Le tampon partage
+	 * la projection lorsque la partie est contenue dans un seul bloc et
+	 * contient une copie de la partie sinon.
+	 * @param position la position du début de la partie
+	 * @param length la longueur de la partie
+	 * @return un tampon dont le contenu entre la position et la limite est la
+	 * partie du fichier
+	 */
+	ByteBuffer slice(long position, int length)
+	{
+		int offset = (int) (position & (chunkSize - 1));
+		MappedByteBuffer chunk = chunks[(int) (position >>> chunkBits)];
+		if (offset + length <= chunk.limit())
+		{
+			ByteBuffer part = chunk.duplicate();
+			part.limit(offset + length);
+			part.position(offset);
+			return part;
+		}
+		ByteBuffer copy = ByteBuffer.allocate(length);
+		for (int i = 0; i < length; i++)
+		{
+			copy.put((byte) get(position + i));
+		}
+		copy.flip();
+		return copy;
+	}
+}
@@ -0,0 +1,6 @@
+/**
+ * Package contenant la lecture et l'écriture des dessins ({@link figures.Drawing})
+ * dans le format de fichier natif de l'éditeur décrit par
+ * {@link DrawingFormat}.
+ */
+package figures.io;
@@ -5,6 +5,9 @@
  * s'applique une couleur (trait ou remplissage). Ce package contient également
  * un sous-package creationListeners contenant les différents
  * MouseListener/MouseMotionListener utilisés pour construire chaque type de
- * figure à partir d'évènements souris.
+ * figure à partir d'évènements souris, un sous-package stores contenant les
+ * différents stockages des figures terminées, un sous-package events
+ * contenant les évènements émis par le dessin lorsqu'il est modifié et un
+ * sous-package io contenant l'enregistrement et le chargement des dessins.
  */
 package figures;
\ No newline at end of file
@@ -0,0 +1,103 @@
+package figures.stores;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import figures.AbstractFigure;
+
+/**
+ * Cache des dernières figures reconstruites par un stockage qui ne conserve
+ * pas ses figures sous forme d'objets ({@link ColumnarFigureStore},
+ * {@link OffHeapFigureStore}) : une figure reconstruite est rangée à l'index
+ * de la figure (modulo {@link #size}) avec l'emplacement de son
+ * enregistrement (un bloc de stockage et une position dans ce bloc). Un même cache est partagé par un
+ * stockage et ses versions figées : une figure n'y est retrouvée que si son
+ * index et l'emplacement de son enregistrement correspondent, et le stockage
+ * retire l'entrée d'un index avant de réécrire un enregistrement. Les
+ * figures reconstruites (et par exemple l'index des arêtes d'un
+ * {@link figures.Polygon}) sont ainsi réutilisées d'un accès à l'autre. Peut
+ * être utilisé depuis plusieurs threads à la fois.
+ *
+ * @author davidroussel
+ */
+final class FigureCache
+{
+	/**
+	 * Nombre de figures reconstruites conservées (puissance de 2)
+	 */
+	private static final int size = 1 << 12;
+
+	/**
+	 * Figure reconstruite conservée dans le cache
+	 */
+	private static final class Entry
+	{
+		final int index;
+		final Object block;
+		final int position;
+		final AbstractFigure figure;
+
+		Entry(int index, Object block, int position, AbstractFigure figure)
+		{
+			this.index = index;
+			this.block = block;
+			this.position = position;
+			this.figure = figure;
+		}
+	}
+
+	/**
+	 * Les dernières figures reconstruites, rangées par index modulo
+	 * {@link #size}
+	 */
+	private final AtomicReferenceArray<Entry> entries;
+
+	/**
+	 * Constructeur d'un cache vide
+	 */
+	FigureCache()
+	{
+		entries = new AtomicReferenceArray<Entry>(size);
+	}
+
+	/**
+	 * Recherche d'une figure reconstruite
+	 * @param index l'index de la figure
+	 * @param block le bloc contenant l'enregistrement de la figure
+	 * @param position la position de l'enregistrement dans le bloc
+	 * @return la figure reconstruite depuis cet enregistrement ou null si
+	 * elle n'est pas dans le cache
+	 */
+	AbstractFigure get(int index, Object block, int position)
+	{
+		Entry entry = entries.get(index & (size - 1));
+		if ((entry != null) && (entry.index == index)
+				&& (entry.block == block) && (entry.position == position))
+		{
+			return entry.figure;
+		}
+		return null;
+	}
+
+	/**
+	 * Ajout d'une figure reconstruite
+	 * @param index l'index de la figure
+	 * @param block le bloc contenant l'enregistrement de la figure
+	 * @param position la position de l'enregistrement dans le bloc
+	 * @param figure la figure reconstruite depuis cet enregistrement
+	 */
+	void put(int index, Object block, int position, AbstractFigure figure)
+	{
+		entries.set(index & (size - 1), new Entry(index, block, position,
+				figure));
+	}
+
+	/**
+	 * Retrait de la figure rangée pour un index, à appeler avant de réécrire
+	 * l'enregistrement de cette figure
+	 * @param index l'index de la figure
+	 */
+	void remove(int index)
+	{
+		entries.set(index & (size - 1), null);
+	}
+}
@@ -0,0 +1,29 @@
+package figures.stores;
+
+import figures.AbstractFigure;
+
+/**
+ * Source de figures en lecture seule (un fichier par exemple) dont les
+ * figures peuvent servir de base à un {@link LayeredFigureStore}. Les figures
+ * obtenues par {@link #get(int)} peuvent être reconstruites à chaque appel :
+ * elles ne doivent pas être modifiées. Une source peut être lue depuis
+ * n'importe quel thread.
+ *
+ * @author davidroussel
+ */
+public interface FigureSource
+{
+	/**
+	 * Nombre de figures de la source
+	 * @return le nombre de figures de la source
+	 */
+	public int size();
+
+	/**
+	 * Accès à une figure
+	 * @param index l'index de la figure (0 pour la plus basse)
+	 * @return la figure d'index index
+	 * @throws IndexOutOfBoundsException si index est hors limites
+	 */
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException;
+}
@@ -0,0 +1,72 @@
+package figures.stores;
+
+import figures.AbstractFigure;
+
+/**
+ * Stockage des figures terminées d'un dessin. Les figures sont rangées dans
+ * l'ordre du dessin (de la plus basse à la plus haute) et ne peuvent être
+ * ajoutées ou retirées qu'à la fin. Suivant l'implémentation, les figures
+ * obtenues par {@link #get(int)} ou par itération peuvent être les figures
+ * ajoutées elles mêmes ou bien des figures équivalentes reconstruites à la
+ * demande.
+ * Un stockage n'est pas prévu pour être modifié depuis plusieurs threads à la
+ * fois, mais ses {@link #snapshot()} peuvent être lus depuis n'importe quel
+ * thread pendant qu'il est modifié.
+ *
+ * @author davidroussel
+ */
+public interface FigureStore extends Iterable<AbstractFigure>
+{
+	/**
+	 * Nombre de figures stockées
+	 * @return le nombre de figures stockées
+	 */
+	public int size();
+
+	/**
+	 * Accès à une figure
+	 * @param index l'index de la figure (0 pour la plus basse)
+	 * @return la figure d'index index
+	 * @throws IndexOutOfBoundsException si index est hors limites
+	 */
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException;
+
+	/**
+	 * Ajout d'une figure à la fin du stockage
+	 * @param figure la figure à ajouter
+	 */
+	public void add(AbstractFigure figure);
+
+	/**
+	 * Retrait de la dernière figure
+	 * @return la figure retirée (ou une figure équivalente)
+	 * @throws IndexOutOfBoundsException si le stockage est vide
+	 */
+	public AbstractFigure removeLast() throws IndexOutOfBoundsException;
+
+	/**
+	 * Retrait de toutes les figures
+	 */
+	public void clear();
+
+	/**
+	 * Obtention d'une version figée du stockage : les figures qu'elle contient
+	 * ne changeront plus, quelles que soient les modifications ultérieures du
+	 * stockage, et elle peut être lue sans verrou depuis n'importe quel thread.
+	 * Ses méthodes de modification lèvent une
+	 * {@link UnsupportedOperationException}.
+	 * @return une version figée du stockage dans son état actuel
+	 */
+	public FigureStore snapshot();
+
+	/**
+	 * Retour du stockage à l'état d'une de ses versions figées. Les figures
+	 * de la version sont partagées et non copiées : le retour se fait en temps
+	 * constant quel que soit le nombre de figures.
+	 * @param snapshot une version figée obtenue par {@link #snapshot()} sur ce
+	 * stockage
+	 * @throws IllegalArgumentException si snapshot n'est pas une version figée
+	 * d'un stockage de ce type
+	 */
+	public void restore(FigureStore snapshot) throws IllegalArgumentException;
+}
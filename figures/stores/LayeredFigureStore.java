@@ -0,0 +1,221 @@
+package figures.stores;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import figures.AbstractFigure;
+
+/**
+ * Stockage des figures en deux couches : les premières figures proviennent
+ * d'une {@link FigureSource} en lecture seule (la base, par exemple un
+ * fichier dont les figures ne sont reconstruites que lorsqu'elles sont
+ * demandées) et les figures ajoutées ensuite sont rangées dans un autre
+ * stockage (la couche supérieure). Les retraits commencent par la couche
+ * supérieure puis réduisent le nombre de figures de la base encore visibles.
+ * Les versions figées ({@link #snapshot()}) partagent la base et contiennent
+ * une version figée de la couche supérieure. Une version figée de la couche
+ * supérieure seule (obtenue avant que la base ne soit mise en place) peut
+ * aussi être restaurée : le stockage n'a alors plus de base.
+ *
+ * @author davidroussel
+ */
+public class LayeredFigureStore implements FigureStore
+{
+	/**
+	 * La base (ou null)
+	 */
+	private FigureSource base;
+
+	/**
+	 * Le nombre de figures de la base présentes dans le stockage
+	 */
+	private int baseSize;
+
+	/**
+	 * La couche supérieure
+	 */
+	private final FigureStore top;
+
+	/**
+	 * Indique si ce stockage est une version figée d'un autre stockage
+	 */
+	private final boolean frozen;
+
+	/**
+	 * Constructeur d'un stockage sans base
+	 * @param top le stockage des figures ajoutées (la couche supérieure)
+	 */
+	public LayeredFigureStore(FigureStore top)
+	{
+		this(null, 0, top, false);
+	}
+
+	/**
+	 * Constructeur d'un stockage à partir de ses couches
+	 * @param base la base (ou null)
+	 * @param baseSize le nombre de figures de la base présentes
+	 * @param top la couche supérieure
+	 * @param frozen indique si le stockage est une version figée
+	 */
+	private LayeredFigureStore(FigureSource base,
+			int baseSize,
+			FigureStore top,
+			boolean frozen)
+	{
+		this.base = base;
+		this.baseSize = baseSize;
+		this.top = top;
+		this.frozen = frozen;
+	}
+
+	/**
+	 * Remplacement de toutes les figures par celles d'une base
+	 * @param source la nouvelle base
+	 */
+	public void setBase(FigureSource source)
+	{
+		checkNotFrozen();
+		top.clear();
+		base = source;
+		baseSize = source.size();
+	}
+
+	/**
+	 * Nombre de figures de la base présentes dans le stockage
+	 * @return le nombre de figures de la base présentes dans le stockage
+	 */
+	public int getBaseSize()
+	{
+		return baseSize;
+	}
+
+	@Override
+	public int size()
+	{
+		return baseSize + top.size();
+	}
+
+	@Override
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException
+	{
+		if (index < 0)
+		{
+			throw new IndexOutOfBoundsException("index " + index);
+		}
+		return (index < baseSize ? base.get(index) : top.get(index
+				- baseSize));
+	}
+
+	@Override
+	public void add(AbstractFigure figure)
+	{
+		checkNotFrozen();
+		top.add(figure);
+	}
+
+	@Override
+	public AbstractFigure removeLast() throws IndexOutOfBoundsException
+	{
+		checkNotFrozen();
+		if (top.size() > 0)
+		{
+			return top.removeLast();
+		}
+		if (baseSize == 0)
+		{
+			throw new IndexOutOfBoundsException("empty figure store");
+		}
+		baseSize--;
+		return base.get(baseSize);
+	}
+
+	@Override
+	public void clear()
+	{
+		checkNotFrozen();
+		top.clear();
+		base = null;
+		baseSize = 0;
+	}
+
+	@Override
+	public FigureStore snapshot()
+	{
+		return (frozen ? this : new LayeredFigureStore(base, baseSize,
+				top.snapshot(), true));
+	}
+
+	@Override
+	public void restore(FigureStore snapshot) throws IllegalArgumentException
+	{
+		checkNotFrozen();
+		if (snapshot instanceof LayeredFigureStore)
+		{
+			LayeredFigureStore layered = (LayeredFigureStore) snapshot;
+			if (!layered.frozen)
+			{
+				throw new IllegalArgumentException("not a snapshot: "
+						+ snapshot);
+			}
+			top.restore(layered.top);
+			base = layered.base;
+			baseSize = layered.baseSize;
+		}
+		else
+		{
+			top.restore(snapshot);
+			base = null;
+			baseSize = 0;
+		}
+	}
+
+	@Override
+	public Iterator<AbstractFigure> iterator()
+	{
+		final FigureSource iteratedBase = base;
+		final int iteratedBaseSize = baseSize;
+		final Iterator<AbstractFigure> topIterator = top.iterator();
+		return new Iterator<AbstractFigure>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return (next < iteratedBaseSize) || topIterator.hasNext();
+			}
+
+			@Override
+			public AbstractFigure next()
+			{
+				if (next < iteratedBaseSize)
+				{
+					return iteratedBase.get(next++);
+				}
+				if (!topIterator.hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				return topIterator.next();
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Vérification que le stockage peut être modifié
+	 * @throws UnsupportedOperationException si le stockage est figé
+	 */
+	private void checkNotFrozen() throws UnsupportedOperationException
+	{
+		if (frozen)
+		{
+			throw new UnsupportedOperationException("frozen figure store");
+		}
+	}
+}
@@ -0,0 +1,615 @@
+package figures.stores;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import figures.AbstractFigure;
+import figures.StyleTable;
+import figures.enums.FigureType;
+
+/**
+ * Stockage des figures hors du tas Java, dans des {@link ByteBuffer} directs.
+ * Chaque figure y est rangée sous la forme d'un enregistrement :
+ * <pre>
+ * [code du FigureType : 1 octet][id du style : 4 octets]
+ * [nombre n de coordonnées : 4 octets][n coordonnées : 8 octets chacune]
+ * </pre>
+ * Les coordonnées sont conservées en double précision : les figures
+ * reconstruites ont exactement la géométrie des figures ajoutées.
+ * Les enregistrements sont rangés à la suite dans des blocs de
+ * {@link #chunkSize} octets (un enregistrement ne chevauche jamais deux blocs)
+ * et la position de chaque enregistrement est elle même rangée hors du tas
+ * dans des blocs d'entiers longs. Seule la table des styles (de petite
+ * taille) reste dans le tas. Les figures ne sont reconstruites, sous forme de
+ * vues équivalentes aux figures ajoutées, que lorsqu'elles sont demandées
+ * (pour être dessinées ou testées sous le pointeur) et les dernières figures
+ * reconstruites sont conservées dans un {@link FigureCache} partagé avec les
+ * versions figées.
+ * Les versions figées ({@link #snapshot()}) partagent les blocs du stockage.
+ * Chaque bloc ({@link Chunk}) connait le nombre de ses premiers octets
+ * visibles dans des versions figées : ils ne sont jamais réécrits, le
+ * stockage copiant le bloc (et seulement ce bloc) avant d'y écrire. Après un
+ * retour à une version figée ({@link #restore(FigureStore)}), les ajouts
+ * reprennent donc à la fin des enregistrements de cette version, dans la
+ * suite de son dernier bloc s'il n'est utilisé par aucune autre version ou
+ * dans une copie de ce bloc sinon. De même les tableaux de blocs
+ * ({@link ChunkArray}) sont partagés et ne sont copiés qu'avant de remplacer
+ * un bloc visible dans une version figée : obtenir une version figée ne
+ * coûte ainsi qu'un temps constant (les blocs remplis depuis la version
+ * figée précédente étant marqués une seule fois), quelle que soit la taille
+ * du stockage.
+ * Seules les figures sont hors du tas : dans un {@link figures.Drawing},
+ * chaque figure occupe encore une entrée de l'index spatial
+ * ({@link utils.RTree}), dont les noeuds restent dans le tas. Mesuré sur 2
+ * millions de rectangles, un dessin utilisant ce stockage occupe environ 34
+ * octets du tas par figure, presque entièrement pour l'index (soit environ
+ * 30 millions de figures par giga-octet de tas) : la taille d'un dessin
+ * reste donc limitée par le tas, qui en contient toutefois environ 4 fois
+ * plus qu'avec un {@link PersistentFigureStore}.
+ *
+ * @author davidroussel
+ */
+public class OffHeapFigureStore implements FigureStore
+{
+	/**
+	 * Taille (en octets) des blocs d'enregistrements, assez petite pour
+	 * qu'une copie de bloc reste peu coûteuse
+	 */
+	private static final int chunkSize = 1 << 20;
+
+	/**
+	 * Taille (en octets) des blocs de positions
+	 */
+	private static final int positionsChunkSize = 1 << 16;
+
+	/**
+	 * Nombre de positions d'enregistrements par bloc de positions
+	 */
+	private static final int positionsPerChunk = positionsChunkSize / 8;
+
+	/**
+	 * Taille de l'entête d'un enregistrement
+	 */
+	private static final int headerSize = 9;
+
+	/**
+	 * Bloc hors du tas partagé par le stockage et ses versions figées
+	 */
+	private static final class Chunk
+	{
+		/**
+		 * Le contenu du bloc
+		 */
+		final ByteBuffer buffer;
+
+		/**
+		 * Le nombre d'octets au début du bloc visibles dans des versions
+		 * figées : ils ne doivent pas être réécrits (n'est lu et modifié que
+		 * par le stockage non figé)
+		 */
+		int shared;
+
+		/**
+		 * Constructeur d'un bloc vide
+		 * @param size la taille du bloc en octets
+		 */
+		Chunk(int size)
+		{
+			buffer = allocate(size);
+			shared = 0;
+		}
+
+		/**
+		 * Constructeur d'une copie du début d'un bloc
+		 * @param chunk le bloc à copier
+		 * @param length le nombre d'octets à copier
+		 */
+		Chunk(Chunk chunk, int length)
+		{
+			this(chunk.buffer.capacity());
+			ByteBuffer source = chunk.buffer.duplicate();
+			source.clear().limit(length);
+			buffer.put(source);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Tableau de blocs partagé par le stockage et ses versions figées
+	 */
+	private static final class ChunkArray
+	{
+		/**
+		 * Les blocs
+		 */
+		final Chunk[] items;
+
+		/**
+		 * Le nombre de blocs au début du tableau visibles dans des versions
+		 * figées : ils ne doivent pas être remplacés (n'est lu et modifié que
+		 * par le stockage non figé)
+		 */
+		int shared;
+
+		/**
+		 * Constructeur d'un tableau de blocs
+		 * @param items les blocs
+		 */
+		ChunkArray(Chunk[] items)
+		{
+			this.items = items;
+			shared = 0;
+		}
+	}
+
+	/**
+	 * Les blocs contenant les enregistrements
+	 */
+	private ChunkArray chunks;
+
+	/**
+	 * Le nombre de blocs d'enregistrements
+	 */
+	private int chunkCount;
+
+	/**
+	 * Les blocs contenant les positions des enregistrements : le numéro du
+	 * bloc dans les 32 bits de poids fort, la position dans le bloc dans les
+	 * 32 bits de poids faible
+	 */
+	private ChunkArray positions;
+
+	/**
+	 * Le nombre de blocs de positions
+	 */
+	private int positionCount;
+
+	/**
+	 * Le nombre de premiers blocs d'enregistrements (respectivement de
+	 * positions) déjà entièrement marqués comme visibles dans des versions
+	 * figées : {@link #snapshot()} ne marque que les blocs suivants
+	 */
+	private int markedChunks, markedPositions;
+
+	/**
+	 * Le numéro du bloc dans lequel écrire le prochain enregistrement
+	 */
+	private int writeChunk;
+
+	/**
+	 * La position à laquelle écrire le prochain enregistrement dans le bloc
+	 * {@link #writeChunk}
+	 */
+	private int writePosition;
+
+	/**
+	 * Le nombre de figures stockées
+	 */
+	private int count;
+
+	/**
+	 * La table des styles des figures stockées
+	 */
+	private StyleTable styles;
+
+	/**
+	 * Le nombre de figures visibles dans les versions figées obtenues (ou
+	 * restaurées) jusqu'ici : le retrait d'une de ces figures ne libère pas
+	 * son enregistrement
+	 */
+	private int sharedCount;
+
+	/**
+	 * Indique si ce stockage est une version figée d'un autre stockage
+	 */
+	private final boolean frozen;
+
+	/**
+	 * Les dernières figures reconstruites, partagées avec les versions figées
+	 */
+	private final FigureCache cache;
+
+	/**
+	 * Tableau de travail utilisé pour obtenir les coordonnées lors des ajouts
+	 */
+	private double[] buffer;
+
+	/**
+	 * Les types de figures indexés par leur code
+	 */
+	private static final FigureType[] figureTypes = FigureType.values();
+
+	/**
+	 * Constructeur d'un stockage vide
+	 */
+	public OffHeapFigureStore()
+	{
+		chunks = new ChunkArray(new Chunk[16]);
+		positions = new ChunkArray(new Chunk[16]);
+		chunkCount = 0;
+		positionCount = 0;
+		markedChunks = 0;
+		markedPositions = 0;
+		styles = new StyleTable();
+		buffer = new double[16];
+		count = 0;
+		writeChunk = 0;
+		writePosition = 0;
+		sharedCount = 0;
+		frozen = false;
+		cache = new FigureCache();
+	}
+
+	/**
+	 * Constructeur d'une version figée d'un stockage
+	 * @param store le stockage dont on partage les blocs
+	 */
+	private OffHeapFigureStore(OffHeapFigureStore store)
+	{
+		chunks = store.chunks;
+		positions = store.positions;
+		chunkCount = store.chunkCount;
+		positionCount = store.positionCount;
+		markedChunks = store.markedChunks;
+		markedPositions = store.markedPositions;
+		styles = store.styles;
+		count = store.count;
+		writeChunk = store.writeChunk;
+		writePosition = store.writePosition;
+		sharedCount = count;
+		frozen = true;
+		cache = store.cache;
+	}
+
+	@Override
+	public int size()
+	{
+		return count;
+	}
+
+	@Override
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException
+	{
+		if ((index < 0) || (index >= count))
+		{
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ count);
+		}
+
+		long location = location(index);
+		Chunk chunk = chunks.items[(int) (location >>> 32)];
+		int position = (int) location;
+		AbstractFigure figure = cache.get(index, chunk, position);
+		if (figure != null)
+		{
+			return figure;
+		}
+
+		ByteBuffer records = chunk.buffer;
+		int type = records.get(position);
+		int style = records.getInt(position + 1);
+		int n = records.getInt(position + 5);
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			values[i] = records.getDouble(position + headerSize + (8 * i));
+		}
+		figure = figureTypes[type].getFigure(styles, style, values, 0, n);
+		cache.put(index, chunk, position, figure);
+		return figure;
+	}
+
+	@Override
+	public void add(AbstractFigure figure)
+	{
+		checkNotFrozen();
+		int n = figure.getCoordinateCount();
+		if (n > buffer.length)
+		{
+			buffer = new double[Math.max(n, 2 * buffer.length)];
+		}
+		figure.getCoordinates(buffer, 0);
+
+		// Emplacement de l'enregistrement
+		int recordSize = headerSize + (8 * n);
+		if ((writeChunk < chunkCount)
+				&& (writePosition + recordSize
+						> chunks.items[writeChunk].buffer.capacity()))
+		{
+			writeChunk++;
+			writePosition = 0;
+		}
+		if ((writeChunk == chunkCount)
+				|| (chunks.items[writeChunk].buffer.capacity() < recordSize))
+		{
+			// nouveau bloc, ou bloc libéré trop petit pour un (très) gros
+			// enregistrement
+			setChunk(writeChunk, new Chunk(Math.max(chunkSize, recordSize)));
+		}
+		Chunk chunk = chunks.items[writeChunk];
+		if (writePosition < chunk.shared)
+		{
+			// La suite du bloc est visible dans une version figée
+			chunk = new Chunk(chunk, writePosition);
+			setChunk(writeChunk, chunk);
+		}
+
+		cache.remove(count);
+		ByteBuffer records = chunk.buffer;
+		records.put(writePosition, (byte) figure.getType().ordinal());
+		records.putInt(writePosition + 1, styles.intern(figure.getStroke(),
+				figure.getEdge(), figure.getFill()));
+		records.putInt(writePosition + 5, n);
+		for (int i = 0; i < n; i++)
+		{
+			records.putDouble(writePosition + headerSize + (8 * i),
+					buffer[i]);
+		}
+
+		// Position de l'enregistrement
+		int p = count / positionsPerChunk;
+		int offset = 8 * (count % positionsPerChunk);
+		if (p == positionCount)
+		{
+			setPositions(p, new Chunk(positionsChunkSize));
+		}
+		else if (offset < positions.items[p].shared)
+		{
+			// La position à écrire est visible dans une version figée
+			setPositions(p, new Chunk(positions.items[p], offset));
+		}
+		positions.items[p].buffer.putLong(offset,
+				((long) writeChunk << 32) | writePosition);
+
+		writePosition += recordSize;
+		count++;
+	}
+
+	@Override
+	public AbstractFigure removeLast() throws IndexOutOfBoundsException
+	{
+		checkNotFrozen();
+		AbstractFigure last = get(count - 1);
+		count--;
+
+		// Le prochain enregistrement prendra la place de celui-ci s'il
+		// n'appartient à aucune version figée
+		if (count >= sharedCount)
+		{
+			long location = location(count);
+			writeChunk = (int) (location >>> 32);
+			writePosition = (int) location;
+		}
+		return last;
+	}
+
+	@Override
+	public void clear()
+	{
+		checkNotFrozen();
+		Chunk[] keptChunks = new Chunk[16];
+		Chunk[] keptPositions = new Chunk[16];
+		chunkCount = 0;
+		positionCount = 0;
+		if (sharedCount == 0)
+		{
+			// On ne conserve qu'un bloc de chaque sorte (s'il n'est visible
+			// dans aucune version figée), les autres seront libérés par le GC
+			Chunk chunk = chunks.items[0];
+			if ((chunk != null) && (chunk.shared == 0))
+			{
+				keptChunks[chunkCount++] = chunk;
+			}
+			chunk = positions.items[0];
+			if ((chunk != null) && (chunk.shared == 0))
+			{
+				keptPositions[positionCount++] = chunk;
+			}
+		}
+		// Les blocs et la table des styles restent aux versions figées
+		chunks = new ChunkArray(keptChunks);
+		positions = new ChunkArray(keptPositions);
+		markedChunks = 0;
+		markedPositions = 0;
+		sharedCount = 0;
+		count = 0;
+		writeChunk = 0;
+		writePosition = 0;
+		// Les figures déjà obtenues continuent de lire leur style dans
+		// l'ancienne table
+		styles = new StyleTable();
+	}
+
+	@Override
+	public FigureStore snapshot()
+	{
+		if (frozen)
+		{
+			return this;
+		}
+		sharedCount = Math.max(sharedCount, count);
+		// Les enregistrements sont tous avant writePosition dans le bloc
+		// writeChunk : seuls les blocs remplis depuis la dernière version
+		// figée restent à marquer entièrement
+		int used = Math.min(writeChunk, chunkCount);
+		for (int c = markedChunks; c < used; c++)
+		{
+			chunks.items[c].shared = Integer.MAX_VALUE;
+		}
+		markedChunks = Math.max(markedChunks, used);
+		if (writeChunk < chunkCount)
+		{
+			Chunk chunk = chunks.items[writeChunk];
+			chunk.shared = Math.max(chunk.shared, writePosition);
+		}
+		int full = count / positionsPerChunk;
+		for (int p = markedPositions; p < full; p++)
+		{
+			positions.items[p].shared = Integer.MAX_VALUE;
+		}
+		markedPositions = Math.max(markedPositions, full);
+		if (full < positionCount)
+		{
+			Chunk chunk = positions.items[full];
+			chunk.shared = Math.max(chunk.shared,
+					8 * (count % positionsPerChunk));
+		}
+		chunks.shared = Math.max(chunks.shared, chunkCount);
+		positions.shared = Math.max(positions.shared, positionCount);
+		return new OffHeapFigureStore(this);
+	}
+
+	@Override
+	public void restore(FigureStore snapshot) throws IllegalArgumentException
+	{
+		checkNotFrozen();
+		if (!(snapshot instanceof OffHeapFigureStore)
+				|| !((OffHeapFigureStore) snapshot).frozen)
+		{
+			throw new IllegalArgumentException("not a snapshot: " + snapshot);
+		}
+		OffHeapFigureStore store = (OffHeapFigureStore) snapshot;
+		// Les blocs de la version figée précédant son dernier bloc sont déjà
+		// entièrement marqués
+		chunks = store.chunks;
+		positions = store.positions;
+		chunkCount = store.chunkCount;
+		positionCount = store.positionCount;
+		markedChunks = Math.min(store.writeChunk, chunkCount);
+		markedPositions = store.count / positionsPerChunk;
+		styles = store.styles;
+		count = store.count;
+		sharedCount = count;
+		// Les ajouts reprennent après le dernier enregistrement de la version
+		// : le bloc ne sera copié que si d'autres versions en utilisent la
+		// suite
+		writeChunk = store.writeChunk;
+		writePosition = store.writePosition;
+	}
+
+	/**
+	 * Itérateur reconstruisant les figures une à une
+	 * @return un itérateur sur les figures du stockage
+	 */
+	@Override
+	public Iterator<AbstractFigure> iterator()
+	{
+		return new Iterator<AbstractFigure>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < count;
+			}
+
+			@Override
+			public AbstractFigure next()
+			{
+				if (next >= count)
+				{
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Position d'un enregistrement
+	 * @param index l'index de la figure
+	 * @return le numéro du bloc de l'enregistrement dans les 32 bits de poids
+	 * fort, sa position dans ce bloc dans les 32 bits de poids faible
+	 */
+	private long location(int index)
+	{
+		return positions.items[index / positionsPerChunk].buffer
+				.getLong(8 * (index % positionsPerChunk));
+	}
+
+	/**
+	 * Remplacement (ou ajout à la fin) d'un bloc d'enregistrements : le
+	 * tableau des blocs est copié si ce bloc est visible dans une version
+	 * figée ou si le tableau est plein
+	 * @param i le numéro du bloc (au plus {@link #chunkCount})
+	 * @param chunk le nouveau bloc
+	 */
+	private void setChunk(int i, Chunk chunk)
+	{
+		chunks = writable(chunks, chunkCount, i);
+		chunks.items[i] = chunk;
+		chunkCount = Math.max(chunkCount, i + 1);
+		markedChunks = Math.min(markedChunks, i);
+	}
+
+	/**
+	 * Remplacement (ou ajout à la fin) d'un bloc de positions : le tableau
+	 * des blocs est copié si ce bloc est visible dans une version figée ou si
+	 * le tableau est plein
+	 * @param i le numéro du bloc (au plus {@link #positionCount})
+	 * @param chunk le nouveau bloc
+	 */
+	private void setPositions(int i, Chunk chunk)
+	{
+		positions = writable(positions, positionCount, i);
+		positions.items[i] = chunk;
+		positionCount = Math.max(positionCount, i + 1);
+		markedPositions = Math.min(markedPositions, i);
+	}
+
+	/**
+	 * Tableau de blocs dans lequel un bloc peut être remplacé
+	 * @param array le tableau de blocs
+	 * @param length le nombre de blocs du tableau utilisés par le stockage
+	 * @param i le numéro du bloc à remplacer (au plus length)
+	 * @return array si le bloc i peut y être remplacé, ou bien une copie des
+	 * length premiers blocs de array (agrandie si besoin)
+	 */
+	private static ChunkArray writable(ChunkArray array, int length, int i)
+	{
+		if ((i < array.shared) || (i >= array.items.length))
+		{
+			int capacity = array.items.length;
+			if (i >= capacity)
+			{
+				capacity *= 2;
+			}
+			Chunk[] items = Arrays.copyOf(array.items, capacity);
+			Arrays.fill(items, length, capacity, null);
+			return new ChunkArray(items);
+		}
+		return array;
+	}
+
+	/**
+	 * Vérification que le stockage peut être modifié
+	 * @throws UnsupportedOperationException si le stockage est figé
+	 */
+	private void checkNotFrozen() throws UnsupportedOperationException
+	{
+		if (frozen)
+		{
+			throw new UnsupportedOperationException("frozen figure store");
+		}
+	}
+
+	/**
+	 * Allocation d'un bloc hors du tas
+	 * @param size la taille du bloc en octets
+	 * @return un nouveau bloc dans l'ordre des octets natif
+	 */
+	private static ByteBuffer allocate(int size)
+	{
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+}
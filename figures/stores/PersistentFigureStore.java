@@ -0,0 +1,119 @@
+package figures.stores;
+
+import java.util.Iterator;
+
+import utils.PersistentVector;
+import figures.AbstractFigure;
+
+/**
+ * Stockage des figures dans un {@link PersistentVector} : les figures ajoutées
+ * sont conservées telles quelles et chaque modification produit une nouvelle
+ * version du vecteur qui partage l'essentiel de sa structure avec la
+ * précédente. Une version figée ({@link #snapshot()}) est donc obtenue en temps
+ * constant et sans copie, et ne peut jamais être modifiée par le stockage.
+ *
+ * @author davidroussel
+ */
+public class PersistentFigureStore implements FigureStore
+{
+	/**
+	 * La version courante des figures stockées
+	 */
+	private PersistentVector<AbstractFigure> figures;
+
+	/**
+	 * Indique si ce stockage est une version figée d'un autre stockage
+	 */
+	private final boolean frozen;
+
+	/**
+	 * Constructeur d'un stockage vide
+	 */
+	public PersistentFigureStore()
+	{
+		this(PersistentVector.<AbstractFigure> empty(), false);
+	}
+
+	/**
+	 * Constructeur d'un stockage à partir d'une version des figures
+	 * @param figures la version des figures
+	 * @param frozen indique si le stockage est une version figée
+	 */
+	private PersistentFigureStore(PersistentVector<AbstractFigure> figures,
+			boolean frozen)
+	{
+		this.figures = figures;
+		this.frozen = frozen;
+	}
+
+	@Override
+	public int size()
+	{
+		return figures.size();
+	}
+
+	@Override
+	public AbstractFigure get(int index) throws IndexOutOfBoundsException
+	{
+		return figures.get(index);
+	}
+
+	@Override
+	public void add(AbstractFigure figure)
+	{
+		checkNotFrozen();
+		figures = figures.append(figure);
+	}
+
+	@Override
+	public AbstractFigure removeLast() throws IndexOutOfBoundsException
+	{
+		checkNotFrozen();
+		AbstractFigure last = figures.get(figures.size() - 1);
+		figures = figures.removeLast();
+		return last;
+	}
+
+	@Override
+	public void clear()
+	{
+		checkNotFrozen();
+		figures = PersistentVector.empty();
+	}
+
+	@Override
+	public FigureStore snapshot()
+	{
+		return (frozen ? this : new PersistentFigureStore(figures, true));
+	}
+
+	@Override
+	public void restore(FigureStore snapshot) throws IllegalArgumentException
+	{
+		checkNotFrozen();
+		if (!(snapshot instanceof PersistentFigureStore)
+				|| !((PersistentFigureStore) snapshot).frozen)
+		{
+			throw new IllegalArgumentException("not a snapshot: " + snapshot);
+		}
+		figures = ((PersistentFigureStore) snapshot).figures;
+	}
+
+	@Override
+	public Iterator<AbstractFigure> iterator()
+	{
+		return figures.iterator();
+	}
+
+	/**
+	 * Vérification que le stockage peut être modifié
+	 * @throws UnsupportedOperationException si le stockage est figé
+	 */
+	private void checkNotFrozen() throws UnsupportedOperationException
+	{
+		if (frozen)
+		{
+			throw new UnsupportedOperationException("frozen figure store");
+		}
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * Package contenant les différents stockages possibles des figures terminées
+ * d'un {@link figures.Drawing} : tous implémentent {@link FigureStore}. Le
+ * {@link LayeredFigureStore} place les figures ajoutées au dessus d'une
+ * {@link FigureSource} en lecture seule (un fichier par exemple).
+ */
+package figures.stores;
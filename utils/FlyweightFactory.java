@@ -2,72 +2,205 @@ package utils;
 
 import java.awt.BasicStroke;
 import java.awt.Paint;
-import java.util.HashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Flyweight gérant les différents éléments utilisés dans la zone de dessin.
  * Utilisable avec les {@link Paint} et avec les {@link BasicStroke} des figures
- * Gère les éléments dans une HashMap<Integer, T> dont la clé correspond au
- * hashCode de l'élément correspondant. Lorsque l'on demande un élément au
- * Factory, celui ci le recherche dans sa table de hachage : Si l'élément n'est
- * pas déjà présent dans la table de hachage il est ajouté, puis renvoyé, s'il
- * est déjà présent dans la table de hachage il est directement renvoyé et celui
- * demandé est alors destructible par le garbage collector.
+ * Lorsque l'on demande un élément au Factory, celui ci recherche un élément
+ * égal (au sens de equals) dans sa table : s'il en existe un, c'est cet
+ * élément canonique qui est renvoyé et celui demandé est alors destructible
+ * par le garbage collector, sinon l'élément demandé est ajouté à la table
+ * puis renvoyé.
+ * La table ne référence ses éléments que faiblement : un élément qui n'est
+ * plus utilisé par aucune figure est récupéré par le garbage collector et son
+ * entrée est retirée de la table lors des accès suivants. La table peut être
+ * utilisée simultanément par plusieurs threads (threads de chargement par
+ * exemple).
+ * Cette récupération ne concerne que les éléments qui ne sont référencés
+ * nulle part ailleurs : les factories d'un {@link figures.Drawing} rangent
+ * leurs éléments canoniques dans la {@link figures.StyleTable} du dessin, qui
+ * ne retire jamais un style, et leurs éléments restent donc dans la table
+ * aussi longtemps que le dessin. Seules les factories utilisées en dehors
+ * d'un dessin voient leurs éléments inutilisés disparaître.
  *
  * @author davidroussel
  */
 public class FlyweightFactory<T>
 {
 	/**
-	 * La table de hachage contenant les différentes paires <hashcode,elt> et
-	 * dont les clés sont les hashCode des différents élements.
+	 * Entrée de la table : référence faible vers un élément. Deux entrées
+	 * sont égales si leurs éléments sont égaux au sens de equals. Une entrée
+	 * dont l'élément a été récupéré n'est plus égale qu'à elle même.
 	 */
-	protected HashMap<Integer, T> map;
+	private static final class Entry<T> extends WeakReference<T>
+	{
+		/**
+		 * Le hashCode de l'élément (conservé après sa récupération afin de
+		 * pouvoir retirer l'entrée de la table)
+		 */
+		private final int hash;
+
+		Entry(T element, ReferenceQueue<? super T> queue)
+		{
+			super(element, queue);
+			hash = element.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof Entry))
+			{
+				return false;
+			}
+			Object element = get();
+			return (element != null) && element.equals(((Entry<?>) obj).get());
+		}
+	}
+
+	/**
+	 * La table contenant les différents éléments, dont les clés et les
+	 * valeurs sont les mêmes entrées
+	 */
+	protected ConcurrentHashMap<Entry<T>, Entry<T>> map;
+
+	/**
+	 * File des entrées dont l'élément a été récupéré par le garbage collector
+	 */
+	private final ReferenceQueue<T> queue;
+
+	/**
+	 * Nombre de demandes ayant obtenu un élément déjà présent dans la table
+	 */
+	private final AtomicLong hits;
+
+	/**
+	 * Nombre de demandes ayant ajouté un nouvel élément à la table
+	 */
+	private final AtomicLong misses;
 
 	/**
 	 * Constructeur d'un FlyweightFactory.
-	 * Initialise la {@link HashMap}
+	 * Initialise la table
 	 */
 	public FlyweightFactory()
 	{
-		map = new HashMap<Integer, T>();
+		map = new ConcurrentHashMap<Entry<T>, Entry<T>>();
+		queue = new ReferenceQueue<T>();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
 	}
 
 	/**
-	 * Obtention d'un élément (nouveau ou pas) : Lorsque l'élément demandé est
-	 * déjà présent dans la table on le renvoie directement sinon celui ci est
-	 * ajouté à la table avant d'être renvoyé
+	 * Obtention d'un élément (nouveau ou pas) : Lorsqu'un élément égal à celui
+	 * demandé est déjà présent dans la table on le renvoie directement sinon
+	 * celui demandé est ajouté à la table avant d'être renvoyé
 	 *
 	 * @param element l'élément demandé [celui ci pourra être détruit par le
 	 *            garbage collector si il en existe déjà un équivalent dans la
 	 *            table]
-	 * @return l'élément demandé en provenance de la table
+	 * @return l'élément canonique égal à l'élément demandé
 	 */
 	public T get(T element)
 	{
-		if (element != null)
+		if (element == null)
 		{
-			int hash = 0;
-			hash = element.hashCode();
-			if (map.containsKey(hash)) {
+			return null;
+		}
+
+		expungeStaleEntries();
+
+		Entry<T> entry = new Entry<T>(element, queue);
+		while (true)
+		{
+			Entry<T> existing = map.putIfAbsent(entry, entry);
+			if (existing == null)
+			{
+				misses.incrementAndGet();
 				return element;
 			}
-			else {
-				map.put(hash, element);
-				return element;
+			T canonical = existing.get();
+			if (canonical != null)
+			{
+				hits.incrementAndGet();
+				return canonical;
 			}
+			// Elément récupéré entre temps : on retire son entrée et on
+			// recommence
+			map.remove(existing, existing);
 		}
-		else
+	}
+
+	/**
+	 * Retrait des entrées dont l'élément a été récupéré par le garbage
+	 * collector
+	 */
+	private void expungeStaleEntries()
+	{
+		Reference<? extends T> stale;
+		while ((stale = queue.poll()) != null)
 		{
-			return null;
+			map.remove(stale, stale);
 		}
 	}
 
 	/**
-	 * Nettyage de tous les éléments
+	 * Nombre d'éléments distincts actuellement dans la table
+	 * @return le nombre d'éléments distincts encore utilisés
+	 */
+	public int size()
+	{
+		expungeStaleEntries();
+		return map.size();
+	}
+
+	/**
+	 * Nombre de demandes ayant obtenu un élément déjà présent dans la table
+	 * (et donc partagé)
+	 * @return le nombre de demandes satisfaites par la table
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Nombre de demandes ayant ajouté un nouvel élément à la table
+	 * @return le nombre de demandes non satisfaites par la table
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Nettyage de tous les éléments (les compteurs sont conservés)
 	 */
 	public void clear()
 	{
 		map.clear();
+		expungeStaleEntries();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " [size=" + size() + ", hits="
+				+ getHits() + ", misses=" + getMisses() + "]";
 	}
 }
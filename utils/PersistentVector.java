@@ -0,0 +1,321 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Vecteur persistant (immuable) : un arbre de tableaux de 32 éléments
+ * complété par un tableau "queue" contenant les derniers éléments. Les ajouts
+ * et retraits en fin de vecteur renvoient un nouveau vecteur qui partage avec
+ * le précédent tous les tableaux non modifiés : seuls la queue et au plus un
+ * tableau par niveau de l'arbre (log32(n) niveaux) sont copiés. Un vecteur
+ * peut donc être conservé et lu depuis plusieurs threads sans verrou pendant
+ * que de nouvelles versions sont construites.
+ *
+ * @param <T> le type des éléments
+ * @author davidroussel
+ */
+public final class PersistentVector<T> implements Iterable<T>
+{
+	/**
+	 * Nombre de bits d'index traités par niveau de l'arbre
+	 */
+	private static final int bits = 5;
+
+	/**
+	 * Nombre d'éléments par tableau
+	 */
+	private static final int width = 1 << bits;
+
+	/**
+	 * Masque permettant d'obtenir l'index dans un tableau
+	 */
+	private static final int mask = width - 1;
+
+	/**
+	 * Noeud racine vide
+	 */
+	private static final Object[] emptyNode = new Object[width];
+
+	/**
+	 * Le vecteur vide
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final PersistentVector EMPTY = new PersistentVector(0,
+			bits, emptyNode, new Object[0]);
+
+	/**
+	 * Le nombre d'éléments
+	 */
+	private final int size;
+
+	/**
+	 * Le décalage à appliquer à l'index à la racine de l'arbre
+	 */
+	private final int shift;
+
+	/**
+	 * La racine de l'arbre
+	 */
+	private final Object[] root;
+
+	/**
+	 * Les derniers éléments (de 1 à 32 éléments lorsque le vecteur est non
+	 * vide)
+	 */
+	private final Object[] tail;
+
+	/**
+	 * Constructeur privé d'une version du vecteur
+	 */
+	private PersistentVector(int size, int shift, Object[] root, Object[] tail)
+	{
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+
+	/**
+	 * Obtention du vecteur vide
+	 * @param <T> le type des éléments
+	 * @return le vecteur vide
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> PersistentVector<T> empty()
+	{
+		return EMPTY;
+	}
+
+	/**
+	 * Nombre d'éléments du vecteur
+	 * @return le nombre d'éléments du vecteur
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Accès à un élément
+	 * @param index l'index de l'élément
+	 * @return l'élément d'index index
+	 * @throws IndexOutOfBoundsException si index est hors limites
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) throws IndexOutOfBoundsException
+	{
+		return (T) arrayFor(index)[index & mask];
+	}
+
+	/**
+	 * Ajout d'un élément en fin de vecteur
+	 * @param element l'élément à ajouter
+	 * @return le nouveau vecteur contenant l'élément en plus
+	 */
+	public PersistentVector<T> append(T element)
+	{
+		// Il reste de la place dans la queue
+		if ((size - tailOffset()) < width)
+		{
+			Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+			newTail[tail.length] = element;
+			return new PersistentVector<T>(size + 1, shift, root, newTail);
+		}
+
+		// La queue est pleine : elle est rangée dans l'arbre
+		Object[] newRoot;
+		int newShift = shift;
+		if ((size >>> bits) > (1 << shift))
+		{
+			// La racine est pleine : l'arbre grandit d'un niveau
+			newRoot = new Object[width];
+			newRoot[0] = root;
+			newRoot[1] = newPath(shift, tail);
+			newShift += bits;
+		}
+		else
+		{
+			newRoot = pushTail(shift, root, tail);
+		}
+		return new PersistentVector<T>(size + 1, newShift, newRoot,
+				new Object[] { element });
+	}
+
+	/**
+	 * Retrait du dernier élément
+	 * @return le nouveau vecteur sans son dernier élément
+	 * @throws IndexOutOfBoundsException si le vecteur est vide
+	 */
+	public PersistentVector<T> removeLast() throws IndexOutOfBoundsException
+	{
+		if (size == 0)
+		{
+			throw new IndexOutOfBoundsException("empty vector");
+		}
+		if (size == 1)
+		{
+			return empty();
+		}
+
+		// Il reste des éléments dans la queue
+		if ((size - tailOffset()) > 1)
+		{
+			return new PersistentVector<T>(size - 1, shift, root,
+					Arrays.copyOf(tail, tail.length - 1));
+		}
+
+		// La queue devient le dernier tableau de l'arbre
+		Object[] newTail = arrayFor(size - 2);
+		Object[] newRoot = popTail(shift, root);
+		int newShift = shift;
+		if (newRoot == null)
+		{
+			newRoot = emptyNode;
+		}
+		if ((shift > bits) && (newRoot[1] == null))
+		{
+			newRoot = (Object[]) newRoot[0];
+			newShift -= bits;
+		}
+		return new PersistentVector<T>(size - 1, newShift, newRoot, newTail);
+	}
+
+	/**
+	 * Itérateur sur les éléments du vecteur (du premier au dernier)
+	 * @return un itérateur sur les éléments du vecteur
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		return new Iterator<T>()
+		{
+			private int next = 0;
+			private Object[] array = null;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < size;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public T next()
+			{
+				if (next >= size)
+				{
+					throw new NoSuchElementException();
+				}
+				if ((next & mask) == 0)
+				{
+					array = arrayFor(next);
+				}
+				return (T) array[next++ & mask];
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Index du premier élément de la queue
+	 */
+	private int tailOffset()
+	{
+		return (size < width ? 0 : ((size - 1) >>> bits) << bits);
+	}
+
+	/**
+	 * Tableau contenant l'élément d'index index
+	 */
+	private Object[] arrayFor(int index)
+	{
+		if ((index < 0) || (index >= size))
+		{
+			throw new IndexOutOfBoundsException("index " + index + " size "
+					+ size);
+		}
+		if (index >= tailOffset())
+		{
+			return tail;
+		}
+		Object[] node = root;
+		for (int level = shift; level > 0; level -= bits)
+		{
+			node = (Object[]) node[(index >>> level) & mask];
+		}
+		return node;
+	}
+
+	/**
+	 * Copie du chemin vers le dernier tableau de l'arbre pour y ranger la
+	 * queue
+	 */
+	private Object[] pushTail(int level, Object[] parent, Object[] tailNode)
+	{
+		int subIndex = ((size - 1) >>> level) & mask;
+		Object[] result = parent.clone();
+		Object[] insert;
+		if (level == bits)
+		{
+			insert = tailNode;
+		}
+		else
+		{
+			Object[] child = (Object[]) parent[subIndex];
+			insert = (child != null ? pushTail(level - bits, child, tailNode)
+					: newPath(level - bits, tailNode));
+		}
+		result[subIndex] = insert;
+		return result;
+	}
+
+	/**
+	 * Copie du chemin vers le dernier tableau de l'arbre en retirant ce
+	 * dernier
+	 * @return le nouveau noeud ou null s'il devient vide
+	 */
+	private Object[] popTail(int level, Object[] node)
+	{
+		int subIndex = ((size - 2) >>> level) & mask;
+		if (level > bits)
+		{
+			Object[] newChild = popTail(level - bits,
+					(Object[]) node[subIndex]);
+			if ((newChild == null) && (subIndex == 0))
+			{
+				return null;
+			}
+			Object[] result = node.clone();
+			result[subIndex] = newChild;
+			return result;
+		}
+		if (subIndex == 0)
+		{
+			return null;
+		}
+		Object[] result = node.clone();
+		result[subIndex] = null;
+		return result;
+	}
+
+	/**
+	 * Création d'un chemin de noeuds menant à un tableau
+	 */
+	private static Object[] newPath(int level, Object[] node)
+	{
+		if (level == 0)
+		{
+			return node;
+		}
+		Object[] result = new Object[width];
+		result[0] = newPath(level - bits, node);
+		return result;
+	}
+}
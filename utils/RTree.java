@@ -0,0 +1,836 @@
+package utils;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Index spatial de type R-Tree (Guttman, découpage quadratique) associant des
+ * clés entières à des rectangles englobants. Les clés servent également
+ * d'ordre : chaque noeud interne conserve la plus grande clé de chacun de ses
+ * sous-arbres, ce qui permet lors d'une recherche ponctuelle d'explorer les
+ * entrées par clé décroissante et de s'arrêter dès que la première entrée
+ * acceptée est trouvée (par exemple la figure dessinée en dernier, donc la
+ * plus haute, sous un point).
+ * <p>
+ * Un RTree est immuable : les ajouts et retraits renvoient un nouvel index
+ * qui partage avec le précédent tous les noeuds non modifiés (seuls les
+ * noeuds du chemin vers la feuille modifiée sont copiés). Un index peut donc
+ * être lu depuis plusieurs threads sans verrou pendant que de nouvelles
+ * versions sont construites.
+ * <p>
+ * Les bornes sont conservées en simple précision, arrondies vers l'extérieur,
+ * et les noeuds n'ont que la place de leurs entrées : l'index occupe ainsi
+ * environ 34 octets du tas par clé (mesuré sur 2 millions de rectangles, au
+ * lieu d'environ 76 octets avec des bornes en double précision dans des
+ * noeuds de taille fixe). Les recherches peuvent donc renvoyer en plus
+ * quelques clés dont le rectangle englobant ne touche la zone ou le point
+ * recherché qu'à l'arrondi près.
+ * <p>
+ * Un RTree peut être construit au dessus d'un index de base en lecture seule
+ * ({@link #over(SpatialIndex, int)}) contenant les clés 0 à n - 1 : les clés
+ * ajoutées ensuite (supérieures ou égales à n) sont rangées dans l'arbre et
+ * seules les plus grandes clés de la base peuvent en être retirées.
+ *
+ * @author davidroussel
+ */
+public final class RTree
+{
+	/**
+	 * Nombre maximum d'entrées par noeud (au plus
+	 * {@link SpatialIndex#maxNodeEntries})
+	 */
+	private static final int maxEntries = 16;
+
+	/**
+	 * Nombre minimum d'entrées par noeud (hors racine)
+	 */
+	private static final int minEntries = 6;
+
+	/**
+	 * L'index vide
+	 */
+	public static final RTree EMPTY = new RTree(new Node(true), 0, null, 0);
+
+	/**
+	 * Noeud de l'arbre. Les bornes des entrées sont rangées à la suite (minX,
+	 * minY, maxX, maxY pour chaque entrée) dans un tableau parallèle à celui
+	 * des clés. Les noeuds sont compacts : les bornes sont en simple précision
+	 * (arrondies vers l'extérieur, elles englobent toujours les bornes
+	 * exactes) et une copie de noeud n'a qu'une case de plus que les entrées
+	 * qu'elle contient, pour pouvoir accueillir temporairement l'entrée qui
+	 * provoque un découpage. Un noeud n'est modifié que pendant la
+	 * construction d'une nouvelle version de l'index, avant d'être partagé.
+	 */
+	private static class Node
+	{
+		/**
+		 * Indique si ce noeud est une feuille
+		 */
+		final boolean leaf;
+
+		/**
+		 * Nombre d'entrées de ce noeud
+		 */
+		int count;
+
+		/**
+		 * Bornes des entrées
+		 */
+		final float[] bounds;
+
+		/**
+		 * Clés des entrées : la clé elle même dans une feuille, la plus
+		 * grande clé du sous-arbre dans un noeud interne
+		 */
+		final int[] keys;
+
+		/**
+		 * Sous-arbres (null dans une feuille)
+		 */
+		final Node[] children;
+
+		/**
+		 * Constructeur d'un noeud vide
+		 * @param leaf indique si le noeud est une feuille
+		 */
+		Node(boolean leaf)
+		{
+			this.leaf = leaf;
+			count = 0;
+			bounds = new float[4 * (maxEntries + 1)];
+			keys = new int[maxEntries + 1];
+			children = leaf ? null : new Node[maxEntries + 1];
+		}
+
+		/**
+		 * Constructeur de copie (la copie n'a de place que pour une entrée
+		 * supplémentaire)
+		 * @param node le noeud à copier
+		 */
+		Node(Node node)
+		{
+			leaf = node.leaf;
+			count = node.count;
+			bounds = Arrays.copyOf(node.bounds, 4 * (count + 1));
+			keys = Arrays.copyOf(node.keys, count + 1);
+			children = leaf ? null : Arrays.copyOf(node.children, count + 1);
+		}
+
+		/**
+		 * Abcisse minimum de l'entrée i
+		 */
+		double minX(int i)
+		{
+			return bounds[4 * i];
+		}
+
+		/**
+		 * Ordonnée minimum de l'entrée i
+		 */
+		double minY(int i)
+		{
+			return bounds[4 * i + 1];
+		}
+
+		/**
+		 * Abcisse maximum de l'entrée i
+		 */
+		double maxX(int i)
+		{
+			return bounds[4 * i + 2];
+		}
+
+		/**
+		 * Ordonnée maximum de l'entrée i
+		 */
+		double maxY(int i)
+		{
+			return bounds[4 * i + 3];
+		}
+
+		/**
+		 * Modification des bornes de l'entrée i
+		 */
+		void setBounds(int i, double x0, double y0, double x1, double y1)
+		{
+			bounds[4 * i] = floor(x0);
+			bounds[4 * i + 1] = floor(y0);
+			bounds[4 * i + 2] = ceil(x1);
+			bounds[4 * i + 3] = ceil(y1);
+		}
+
+		/**
+		 * Ajout d'une entrée à la fin de ce noeud
+		 */
+		void add(int key, double x0, double y0, double x1, double y1,
+				Node child)
+		{
+			setBounds(count, x0, y0, x1, y1);
+			keys[count] = key;
+			if (child != null)
+			{
+				children[count] = child;
+			}
+			count++;
+		}
+
+		/**
+		 * Retrait de l'entrée i (remplacée par la dernière entrée)
+		 */
+		void remove(int i)
+		{
+			int last = count - 1;
+			System.arraycopy(bounds, 4 * last, bounds, 4 * i, 4);
+			keys[i] = keys[last];
+			if (children != null)
+			{
+				children[i] = children[last];
+				children[last] = null;
+			}
+			count = last;
+		}
+	}
+
+	/**
+	 * Liste extensible de clés utilisée pour collecter les résultats d'une
+	 * recherche
+	 */
+	private static class Keys
+	{
+		int[] data = new int[16];
+		int count = 0;
+
+		void add(int key)
+		{
+			if (count == data.length)
+			{
+				data = Arrays.copyOf(data, 2 * count);
+			}
+			data[count++] = key;
+		}
+	}
+
+	/**
+	 * La racine de l'arbre
+	 */
+	private final Node root;
+
+	/**
+	 * Le nombre de clés contenues dans l'index (arbre et base)
+	 */
+	private final int size;
+
+	/**
+	 * L'index de base contenant les clés inférieures à {@link #baseSize} (ou
+	 * null)
+	 */
+	private final SpatialIndex base;
+
+	/**
+	 * Le nombre de clés de l'index de base encore présentes dans l'index
+	 */
+	private final int baseSize;
+
+	/**
+	 * Constructeur privé d'une version de l'index
+	 * @param root la racine
+	 * @param size le nombre de clés
+	 * @param base l'index de base (ou null)
+	 * @param baseSize le nombre de clés de l'index de base
+	 */
+	private RTree(Node root, int size, SpatialIndex base, int baseSize)
+	{
+		this.root = root;
+		this.size = size;
+		this.base = base;
+		this.baseSize = baseSize;
+	}
+
+	/**
+	 * Index contenant les clés 0 à baseSize - 1 d'un index de base. L'index de
+	 * base n'est jamais modifié : il n'est lu que lors des recherches.
+	 * @param base l'index de base
+	 * @param baseSize le nombre de clés de l'index de base
+	 * @return un nouvel index contenant les clés de l'index de base
+	 */
+	public static RTree over(SpatialIndex base, int baseSize)
+	{
+		return new RTree(new Node(true), baseSize, base, baseSize);
+	}
+
+	/**
+	 * Nombre de clés contenues dans l'index
+	 * @return le nombre de clés de l'index
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Ajout d'une clé à l'index
+	 * @param key la clé à ajouter
+	 * @param bounds le rectangle englobant associé à cette clé
+	 * @return le nouvel index contenant cette clé en plus
+	 */
+	public RTree insert(int key, Rectangle2D bounds)
+	{
+		return new RTree(insert(root, key, bounds.getMinX(), bounds.getMinY(),
+				bounds.getMaxX(), bounds.getMaxY()), size + 1, base, baseSize);
+	}
+
+	/**
+	 * Retrait d'une clé de l'index. La recherche de la clé n'explore que les
+	 * sous-arbres dont la clé maximum est supérieure ou égale à la clé
+	 * recherchée : le retrait des plus grandes clés (les dernières figures)
+	 * est donc rapide.
+	 * @param key la clé à retirer
+	 * @return le nouvel index sans cette clé (ou cet index si la clé n'y
+	 * était pas)
+	 * @throws UnsupportedOperationException si la clé appartient à l'index de
+	 * base sans en être la plus grande clé
+	 */
+	public RTree remove(int key) throws UnsupportedOperationException
+	{
+		if ((key < baseSize) && (key >= 0))
+		{
+			if (key != baseSize - 1)
+			{
+				throw new UnsupportedOperationException("key " + key
+						+ " is not the last key of the base index");
+			}
+			return new RTree(root, size - 1, base, key);
+		}
+
+		ArrayList<Node> orphans = new ArrayList<Node>();
+		Node newRoot = remove(root, key, orphans);
+		if (newRoot == null)
+		{
+			return this;
+		}
+
+		// Raccourcissement de l'arbre si la racine n'a plus qu'un fils
+		while (!newRoot.leaf && (newRoot.count <= 1))
+		{
+			newRoot = (newRoot.count == 0 ? new Node(true)
+					: newRoot.children[0]);
+		}
+
+		// Réinsertion des entrées des noeuds devenus sous-remplis
+		for (Node orphan : orphans)
+		{
+			newRoot = reinsert(newRoot, orphan);
+		}
+
+		return new RTree(newRoot, size - 1, base, baseSize);
+	}
+
+	/**
+	 * Recherche de la plus grande clé acceptée par filter dont le rectangle
+	 * englobant contient le point (x, y). Les entrées sont explorées par clé
+	 * décroissante et les sous-arbres dont la clé maximum est inférieure à la
+	 * meilleure clé déjà trouvée sont ignorés.
+	 * @param x l'abcisse du point
+	 * @param y l'ordonnée du point
+	 * @param filter le test à appliquer aux clés candidates (par exemple un
+	 * test de contenance exact), ou null pour accepter toutes les clés
+	 * @return la plus grande clé acceptée ou -1 s'il n'y en a pas
+	 */
+	public int findTopMost(double x, double y, IntPredicate filter)
+	{
+		int best = topMost(root, x, y, filter, -1);
+		if ((best < 0) && (baseSize > 0))
+		{
+			// les clés de la base sont toutes inférieures à celles de l'arbre
+			best = base.findTopMost(x, y, baseSize, filter);
+		}
+		return best;
+	}
+
+	/**
+	 * Recherche récursive de {@link #findTopMost(double, double, IntPredicate)}
+	 */
+	private static int topMost(Node node, double x, double y,
+			IntPredicate filter, int best)
+	{
+		int visited = 0;
+		while (true)
+		{
+			// Entrée non visitée contenant le point avec la plus grande clé
+			int next = -1;
+			for (int i = 0; i < node.count; i++)
+			{
+				if (((visited & (1 << i)) == 0) && (node.keys[i] > best)
+						&& (node.minX(i) <= x) && (x <= node.maxX(i))
+						&& (node.minY(i) <= y) && (y <= node.maxY(i))
+						&& ((next < 0) || (node.keys[i] > node.keys[next])))
+				{
+					next = i;
+				}
+			}
+			if (next < 0)
+			{
+				return best;
+			}
+			visited |= 1 << next;
+
+			if (node.leaf)
+			{
+				if ((filter == null) || filter.test(node.keys[next]))
+				{
+					// les entrées suivantes ont toutes des clés inférieures
+					return node.keys[next];
+				}
+			}
+			else
+			{
+				best = topMost(node.children[next], x, y, filter, best);
+			}
+		}
+	}
+
+	/**
+	 * Recherche de toutes les clés dont le rectangle englobant intersecte une
+	 * zone (à l'arrondi des bornes près)
+	 * @param area la zone recherchée
+	 * @return les clés trouvées triées par ordre croissant
+	 */
+	public int[] search(Rectangle2D area)
+	{
+		final Keys found = new Keys();
+		if (baseSize > 0)
+		{
+			base.search(area, baseSize, new IntConsumer()
+			{
+				@Override
+				public void accept(int key)
+				{
+					found.add(key);
+				}
+			});
+		}
+		search(root, area.getMinX(), area.getMinY(), area.getMaxX(),
+				area.getMaxY(), found);
+		int[] keys = Arrays.copyOf(found.data, found.count);
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Ecriture des noeuds de l'index : ceux de l'index de base (limités aux
+	 * clés encore présentes) puis ceux de l'arbre
+	 * @param writer l'écriture des noeuds
+	 * @return les références des racines écrites, par clés croissantes : la
+	 * ou les racines de l'index de base puis celle de l'arbre (aucune racine
+	 * si l'index est vide)
+	 * @throws IOException si l'écriture échoue
+	 */
+	public long[] write(SpatialIndex.NodeWriter writer) throws IOException
+	{
+		long[] roots = (baseSize > 0 ? base.write(writer, baseSize)
+				: new long[0]);
+		if (root.count > 0)
+		{
+			roots = Arrays.copyOf(roots, roots.length + 1);
+			roots[roots.length - 1] = write(root, writer);
+		}
+		return roots;
+	}
+
+	/**
+	 * Ecriture récursive de {@link #write(SpatialIndex.NodeWriter)}
+	 */
+	private static long write(Node node, SpatialIndex.NodeWriter writer)
+			throws IOException
+	{
+		long[] children = new long[node.count];
+		if (!node.leaf)
+		{
+			for (int i = 0; i < node.count; i++)
+			{
+				children[i] = write(node.children[i], writer);
+			}
+		}
+		double[] minX = new double[node.count];
+		double[] minY = new double[node.count];
+		double[] maxX = new double[node.count];
+		double[] maxY = new double[node.count];
+		for (int i = 0; i < node.count; i++)
+		{
+			minX[i] = node.minX(i);
+			minY[i] = node.minY(i);
+			maxX[i] = node.maxX(i);
+			maxY[i] = node.maxY(i);
+		}
+		return writer.writeNode(node.leaf, node.count, minX, minY, maxX, maxY,
+				node.keys, children);
+	}
+
+	/**
+	 * Recherche récursive de {@link #search(Rectangle2D)}
+	 */
+	private static void search(Node node, double x0, double y0, double x1,
+			double y1, Keys found)
+	{
+		for (int i = 0; i < node.count; i++)
+		{
+			if ((node.minX(i) <= x1) && (x0 <= node.maxX(i))
+					&& (node.minY(i) <= y1) && (y0 <= node.maxY(i)))
+			{
+				if (node.leaf)
+				{
+					found.add(node.keys[i]);
+				}
+				else
+				{
+					search(node.children[i], x0, y0, x1, y1, found);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Insertion d'une entrée de feuille dans une nouvelle version du
+	 * sous-arbre node : on descend dans le sous-arbre dont l'aire doit le moins
+	 * augmenter (puis le plus petit en cas d'égalité) en copiant les noeuds
+	 * traversés et on découpe les copies devenues trop pleines.
+	 * @return la nouvelle racine (qui aura grandi d'un niveau si l'ancienne a
+	 * du être découpée)
+	 */
+	private static Node insert(Node root, int key, double x0, double y0,
+			double x1, double y1)
+	{
+		Node copy = new Node(root);
+		Node sibling = insertInCopy(copy, key, x0, y0, x1, y1);
+		if (sibling == null)
+		{
+			return copy;
+		}
+
+		// Découpage de la racine : l'arbre grandit d'un niveau
+		Node newRoot = new Node(false);
+		addChild(newRoot, copy);
+		addChild(newRoot, sibling);
+		return newRoot;
+	}
+
+	/**
+	 * Insertion d'une entrée de feuille dans un noeud déjà copié
+	 * @return le noeud frère issu du découpage du noeud s'il a fallu le
+	 * découper, null sinon
+	 */
+	private static Node insertInCopy(Node node, int key, double x0, double y0,
+			double x1, double y1)
+	{
+		if (node.leaf)
+		{
+			node.add(key, x0, y0, x1, y1, null);
+		}
+		else
+		{
+			int best = 0;
+			double bestGrowth = Double.POSITIVE_INFINITY;
+			double bestArea = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < node.count; i++)
+			{
+				double area = area(node.minX(i), node.minY(i), node.maxX(i),
+						node.maxY(i));
+				double growth = area(Math.min(node.minX(i), x0),
+						Math.min(node.minY(i), y0),
+						Math.max(node.maxX(i), x1),
+						Math.max(node.maxY(i), y1)) - area;
+				if ((growth < bestGrowth)
+						|| ((growth == bestGrowth) && (area < bestArea)))
+				{
+					best = i;
+					bestGrowth = growth;
+					bestArea = area;
+				}
+			}
+
+			Node child = new Node(node.children[best]);
+			Node sibling = insertInCopy(child, key, x0, y0, x1, y1);
+			node.children[best] = child;
+			refresh(node, best);
+			if (sibling != null)
+			{
+				addChild(node, sibling);
+			}
+		}
+
+		return (node.count > maxEntries ? split(node) : null);
+	}
+
+	/**
+	 * Ajout d'un sous-arbre dans un noeud interne
+	 */
+	private static void addChild(Node parent, Node child)
+	{
+		parent.add(0, 0, 0, 0, 0, child);
+		refresh(parent, parent.count - 1);
+	}
+
+	/**
+	 * Recalcul des bornes et de la clé maximum de l'entrée i d'un noeud
+	 * interne à partir du contenu de son sous-arbre.
+	 */
+	private static void refresh(Node parent, int i)
+	{
+		Node child = parent.children[i];
+		double x0 = Double.POSITIVE_INFINITY;
+		double y0 = Double.POSITIVE_INFINITY;
+		double x1 = Double.NEGATIVE_INFINITY;
+		double y1 = Double.NEGATIVE_INFINITY;
+		int key = -1;
+		for (int j = 0; j < child.count; j++)
+		{
+			x0 = Math.min(x0, child.minX(j));
+			y0 = Math.min(y0, child.minY(j));
+			x1 = Math.max(x1, child.maxX(j));
+			y1 = Math.max(y1, child.maxY(j));
+			key = Math.max(key, child.keys[j]);
+		}
+		parent.setBounds(i, x0, y0, x1, y1);
+		parent.keys[i] = key;
+	}
+
+	/**
+	 * Découpage quadratique d'un noeud trop plein. Les entrées sont réparties
+	 * entre le noeud lui même (qui doit être une copie non partagée) et un
+	 * nouveau noeud frère qui est renvoyé.
+	 */
+	private static Node split(Node node)
+	{
+		int n = node.count;
+		double[] minX = new double[n];
+		double[] minY = new double[n];
+		double[] maxX = new double[n];
+		double[] maxY = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			minX[i] = node.minX(i);
+			minY[i] = node.minY(i);
+			maxX[i] = node.maxX(i);
+			maxY[i] = node.maxY(i);
+		}
+		int[] keys = node.keys.clone();
+		Node[] children = node.leaf ? null : node.children.clone();
+
+		// Choix des deux germes gaspillant le plus de place ensemble
+		int seedA = 0;
+		int seedB = 1;
+		double worst = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = i + 1; j < n; j++)
+			{
+				double waste = area(Math.min(minX[i], minX[j]),
+						Math.min(minY[i], minY[j]),
+						Math.max(maxX[i], maxX[j]),
+						Math.max(maxY[i], maxY[j]))
+						- area(minX[i], minY[i], maxX[i], maxY[i])
+						- area(minX[j], minY[j], maxX[j], maxY[j]);
+				if (waste > worst)
+				{
+					worst = waste;
+					seedA = i;
+					seedB = j;
+				}
+			}
+		}
+
+		Node sibling = new Node(node.leaf);
+		node.count = 0;
+		if (children != null)
+		{
+			Arrays.fill(node.children, null);
+		}
+		node.add(keys[seedA], minX[seedA], minY[seedA], maxX[seedA],
+				maxY[seedA], children == null ? null : children[seedA]);
+		sibling.add(keys[seedB], minX[seedB], minY[seedB], maxX[seedB],
+				maxY[seedB], children == null ? null : children[seedB]);
+		double[] boundsA = { minX[seedA], minY[seedA], maxX[seedA], maxY[seedA] };
+		double[] boundsB = { minX[seedB], minY[seedB], maxX[seedB], maxY[seedB] };
+
+		boolean[] assigned = new boolean[n];
+		assigned[seedA] = true;
+		assigned[seedB] = true;
+		int remaining = n - 2;
+
+		while (remaining > 0)
+		{
+			Node target;
+			double[] targetBounds;
+			int pick = -1;
+
+			if (node.count + remaining <= minEntries)
+			{
+				target = node;
+				targetBounds = boundsA;
+			}
+			else if (sibling.count + remaining <= minEntries)
+			{
+				target = sibling;
+				targetBounds = boundsB;
+			}
+			else
+			{
+				// Entrée ayant la plus forte préférence pour un des groupes
+				double maxDiff = Double.NEGATIVE_INFINITY;
+				double growA = 0;
+				double growB = 0;
+				for (int i = 0; i < n; i++)
+				{
+					if (!assigned[i])
+					{
+						double ga = growth(boundsA, minX[i], minY[i], maxX[i],
+								maxY[i]);
+						double gb = growth(boundsB, minX[i], minY[i], maxX[i],
+								maxY[i]);
+						double diff = Math.abs(ga - gb);
+						if (diff > maxDiff)
+						{
+							maxDiff = diff;
+							pick = i;
+							growA = ga;
+							growB = gb;
+						}
+					}
+				}
+				if ((growA < growB) || ((growA == growB)
+						&& (node.count <= sibling.count)))
+				{
+					target = node;
+					targetBounds = boundsA;
+				}
+				else
+				{
+					target = sibling;
+					targetBounds = boundsB;
+				}
+			}
+
+			for (int i = 0; i < n; i++)
+			{
+				if (!assigned[i] && ((pick < 0) || (pick == i)))
+				{
+					target.add(keys[i], minX[i], minY[i], maxX[i], maxY[i],
+							children == null ? null : children[i]);
+					targetBounds[0] = Math.min(targetBounds[0], minX[i]);
+					targetBounds[1] = Math.min(targetBounds[1], minY[i]);
+					targetBounds[2] = Math.max(targetBounds[2], maxX[i]);
+					targetBounds[3] = Math.max(targetBounds[3], maxY[i]);
+					assigned[i] = true;
+					remaining--;
+				}
+			}
+		}
+
+		return sibling;
+	}
+
+	/**
+	 * Retrait d'une clé d'une nouvelle version du sous-arbre node. Les noeuds
+	 * devenus sous-remplis sont détachés de l'arbre et ajoutés aux orphans
+	 * afin que leurs entrées soient réinsérées.
+	 * @return la nouvelle version du sous-arbre ou null si la clé n'a pas été
+	 * trouvée dans ce sous-arbre
+	 */
+	private static Node remove(Node node, int key, ArrayList<Node> orphans)
+	{
+		for (int i = 0; i < node.count; i++)
+		{
+			if (node.leaf)
+			{
+				if (node.keys[i] == key)
+				{
+					Node copy = new Node(node);
+					copy.remove(i);
+					return copy;
+				}
+			}
+			else if (node.keys[i] >= key)
+			{
+				Node child = remove(node.children[i], key, orphans);
+				if (child != null)
+				{
+					Node copy = new Node(node);
+					if (child.count < minEntries)
+					{
+						copy.remove(i);
+						orphans.add(child);
+					}
+					else
+					{
+						copy.children[i] = child;
+						refresh(copy, i);
+					}
+					return copy;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Réinsertion de toutes les entrées de feuilles d'un sous-arbre détaché
+	 * @return la nouvelle racine
+	 */
+	private static Node reinsert(Node root, Node node)
+	{
+		for (int i = 0; i < node.count; i++)
+		{
+			if (node.leaf)
+			{
+				root = insert(root, node.keys[i], node.minX(i), node.minY(i),
+						node.maxX(i), node.maxY(i));
+			}
+			else
+			{
+				root = reinsert(root, node.children[i]);
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Arrondi en simple précision d'une borne minimum, par défaut
+	 */
+	private static float floor(double v)
+	{
+		float f = (float) v;
+		return (f > v ? Math.nextDown(f) : f);
+	}
+
+	/**
+	 * Arrondi en simple précision d'une borne maximum, par excès
+	 */
+	private static float ceil(double v)
+	{
+		float f = (float) v;
+		return (f < v ? Math.nextUp(f) : f);
+	}
+
+	/**
+	 * Aire d'un rectangle
+	 */
+	private static double area(double x0, double y0, double x1, double y1)
+	{
+		return (x1 - x0) * (y1 - y0);
+	}
+
+	/**
+	 * Augmentation d'aire des bornes b pour y inclure un rectangle
+	 */
+	private static double growth(double[] b, double x0, double y0, double x1,
+			double y1)
+	{
+		return area(Math.min(b[0], x0), Math.min(b[1], y0),
+				Math.max(b[2], x1), Math.max(b[3], y1))
+				- area(b[0], b[1], b[2], b[3]);
+	}
+}
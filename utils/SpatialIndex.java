@@ -0,0 +1,92 @@
+package utils;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Index spatial en lecture seule associant des clés entières à des rectangles
+ * englobants, pouvant servir de base à un {@link RTree}
+ * ({@link RTree#over(SpatialIndex, int)}) : par exemple un index enregistré
+ * dans un fichier et lu directement depuis ce fichier plutôt que reconstruit
+ * en mémoire. Comme pour le {@link RTree}, les clés servent également d'ordre
+ * et les noeuds internes conservent la plus grande clé de chacun de leurs
+ * sous-arbres. Toutes les méthodes ne considèrent que les clés inférieures à
+ * une limite, ce qui permet de retirer les plus grandes clés de l'index sans
+ * le modifier.
+ *
+ * @author davidroussel
+ */
+public interface SpatialIndex
+{
+	/**
+	 * Nombre maximum d'entrées d'un noeud transmis à un {@link NodeWriter}
+	 */
+	public static final int maxNodeEntries = 32;
+
+	/**
+	 * Ecriture des noeuds d'un index, des feuilles vers la racine (un noeud
+	 * n'est écrit qu'après tous ses sous-arbres)
+	 */
+	public interface NodeWriter
+	{
+		/**
+		 * Ecriture d'un noeud
+		 * @param leaf indique si le noeud est une feuille
+		 * @param count le nombre d'entrées du noeud (au plus
+		 * {@link SpatialIndex#maxNodeEntries})
+		 * @param minX les abcisses minimum des entrées
+		 * @param minY les ordonnées minimum des entrées
+		 * @param maxX les abcisses maximum des entrées
+		 * @param maxY les ordonnées maximum des entrées
+		 * @param keys les clés des entrées (la plus grande clé du sous-arbre
+		 * dans un noeud interne)
+		 * @param children les références (renvoyées par cette méthode) des
+		 * sous-arbres des entrées (ignoré dans une feuille)
+		 * @return la référence du noeud écrit
+		 * @throws IOException si l'écriture échoue
+		 */
+		public long writeNode(boolean leaf,
+				int count,
+				double[] minX,
+				double[] minY,
+				double[] maxX,
+				double[] maxY,
+				int[] keys,
+				long[] children) throws IOException;
+	}
+
+	/**
+	 * Recherche de la plus grande clé inférieure à limit acceptée par filter
+	 * dont le rectangle englobant contient le point (x, y)
+	 * @param x l'abcisse du point
+	 * @param y l'ordonnée du point
+	 * @param limit la limite (exclue) des clés considérées
+	 * @param filter le test à appliquer aux clés candidates, ou null pour
+	 * accepter toutes les clés
+	 * @return la plus grande clé acceptée ou -1 s'il n'y en a pas
+	 */
+	public int findTopMost(double x, double y, int limit, IntPredicate filter);
+
+	/**
+	 * Recherche de toutes les clés inférieures à limit dont le rectangle
+	 * englobant intersecte une zone
+	 * @param area la zone recherchée
+	 * @param limit la limite (exclue) des clés considérées
+	 * @param found le destinataire des clés trouvées (dans un ordre
+	 * quelconque)
+	 */
+	public void search(Rectangle2D area, int limit, IntConsumer found);
+
+	/**
+	 * Ecriture des noeuds de l'index ne contenant que les clés inférieures à
+	 * limit
+	 * @param writer l'écriture des noeuds
+	 * @param limit la limite (exclue) des clés à écrire
+	 * @return les références des racines écrites (aucune si aucune clé n'est
+	 * inférieure à limit)
+	 * @throws IOException si l'écriture échoue
+	 */
+	public long[] write(NodeWriter writer, int limit) throws IOException;
+}
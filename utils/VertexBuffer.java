@@ -0,0 +1,624 @@
+package utils;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Polygone fermé dont les sommets sont rangés à la suite (x0, y0, x1, y1, ...)
+ * dans un tableau de doubles qui grandit au besoin (ajout en O(1) amorti).
+ * Le polygone est lui même une {@link Shape} : son {@link PathIterator} lit
+ * directement le tableau des sommets, sans copie, et le dernier sommet peut
+ * être déplacé sur place ({@link #setLast(double, double)}) ce qui permet
+ * d'éditer interactivement un polygone de plusieurs milliers de sommets sans
+ * allocation. Les bornes des sommets autres que le dernier sont maintenues au
+ * fur et à mesure des ajouts : obtenir les bornes du polygone pendant que son
+ * dernier sommet se déplace ne coûte donc que O(1).
+ * Comme {@link java.awt.Polygon}, l'intérieur du polygone est défini par la
+ * règle pair-impair ({@link PathIterator#WIND_EVEN_ODD}).
+ * Lorsque le polygone ne doit plus changer ({@link #setIndexed(boolean)}), ses
+ * arêtes sont réparties dans des tranches horizontales : le test de contenance
+ * d'un point ne porte alors plus que sur les arêtes de la tranche du point au
+ * lieu de toutes les arêtes.
+ *
+ * @author davidroussel
+ */
+public final class VertexBuffer implements Shape
+{
+	/**
+	 * Les coordonnées des sommets : x puis y de chaque sommet
+	 */
+	private double[] coords;
+
+	/**
+	 * Le nombre de sommets
+	 */
+	private int size;
+
+	/**
+	 * Bornes des sommets autres que le dernier
+	 */
+	private double minX, minY, maxX, maxY;
+
+	/**
+	 * Nombre minimum de sommets pour que l'index des arêtes soit utilisé
+	 * (en deçà le test sur toutes les arêtes est plus rapide)
+	 */
+	private static final int minIndexedSize = 32;
+
+	/**
+	 * Indique que le polygone ne doit plus changer et que ses arêtes peuvent
+	 * être indexées
+	 */
+	private boolean indexed;
+
+	/**
+	 * L'index des arêtes (construit au premier test de contenance une fois le
+	 * polygone indexé, oublié à chaque modification)
+	 */
+	private EdgeIndex edgeIndex;
+
+	/**
+	 * La dernière version simplifiée du polygone (oubliée à chaque
+	 * modification)
+	 */
+	private VertexBuffer simplified;
+
+	/**
+	 * La tolérance avec laquelle {@link #simplified} a été obtenu
+	 */
+	private double simplifiedTolerance;
+
+	/**
+	 * Constructeur d'un polygone vide
+	 * @param capacity le nombre de sommets initialement réservés
+	 */
+	public VertexBuffer(int capacity)
+	{
+		coords = new double[2 * Math.max(capacity, 2)];
+		clear();
+	}
+
+	/**
+	 * Nombre de sommets
+	 * @return le nombre de sommets du polygone
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Abscisse d'un sommet
+	 * @param i l'index du sommet
+	 * @return l'abscisse du sommet i
+	 */
+	public double getX(int i)
+	{
+		return coords[2 * i];
+	}
+
+	/**
+	 * Ordonnée d'un sommet
+	 * @param i l'index du sommet
+	 * @return l'ordonnée du sommet i
+	 */
+	public double getY(int i)
+	{
+		return coords[(2 * i) + 1];
+	}
+
+	/**
+	 * Ajout d'un sommet à la fin du polygone
+	 * @param x l'abscisse du sommet
+	 * @param y l'ordonnée du sommet
+	 */
+	public void append(double x, double y)
+	{
+		modified();
+		if (size > 0)
+		{
+			// le dernier sommet n'est plus le dernier
+			include(coords[2 * (size - 1)], coords[(2 * size) - 1]);
+		}
+		if (2 * size == coords.length)
+		{
+			coords = Arrays.copyOf(coords, 2 * coords.length);
+		}
+		coords[2 * size] = x;
+		coords[(2 * size) + 1] = y;
+		size++;
+	}
+
+	/**
+	 * Déplacement du dernier sommet
+	 * @param x la nouvelle abscisse du dernier sommet
+	 * @param y la nouvelle ordonnée du dernier sommet
+	 * @throws IndexOutOfBoundsException si le polygone est vide
+	 */
+	public void setLast(double x, double y) throws IndexOutOfBoundsException
+	{
+		if (size == 0)
+		{
+			throw new IndexOutOfBoundsException("empty vertex buffer");
+		}
+		modified();
+		coords[2 * (size - 1)] = x;
+		coords[(2 * size) - 1] = y;
+	}
+
+	/**
+	 * Remplacement de tous les sommets
+	 * @param values les coordonnées des sommets (x puis y de chaque sommet)
+	 * @param offset l'index de la première coordonnée dans values
+	 * @param count le nombre de sommets
+	 */
+	public void setAll(double[] values, int offset, int count)
+	{
+		clear();
+		if (2 * count > coords.length)
+		{
+			coords = new double[2 * count];
+		}
+		for (int i = 0; i < count; i++)
+		{
+			append(values[offset + (2 * i)], values[offset + (2 * i) + 1]);
+		}
+	}
+
+	/**
+	 * Retrait de tous les sommets (la capacité est conservée)
+	 */
+	public void clear()
+	{
+		modified();
+		size = 0;
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		maxX = Double.NEGATIVE_INFINITY;
+		maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Indexation des arêtes du polygone. Lorsqu'elle est demandée, l'index des
+	 * arêtes est construit au premier test de contenance qui suit. Toute
+	 * modification ultérieure du polygone supprime l'indexation.
+	 * @param indexed true si le polygone ne doit plus changer et que ses
+	 * arêtes peuvent être indexées
+	 */
+	public void setIndexed(boolean indexed)
+	{
+		this.indexed = indexed;
+		if (!indexed)
+		{
+			edgeIndex = null;
+		}
+	}
+
+	/**
+	 * Indique si les arêtes du polygone sont indexées
+	 * @return true si les arêtes du polygone sont (ou seront) indexées
+	 */
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+
+	/**
+	 * Oubli de l'indexation des arêtes avant une modification
+	 */
+	private void modified()
+	{
+		indexed = false;
+		edgeIndex = null;
+		simplified = null;
+	}
+
+	/**
+	 * Version simplifiée du polygone pour le dessiner de loin : les sommets
+	 * situés à moins de tolerance du dernier sommet conservé sont omis (le
+	 * dernier sommet est toujours conservé). La dernière version simplifiée
+	 * est conservée jusqu'à la prochaine modification du polygone.
+	 * @param tolerance la distance en dessous de laquelle deux sommets
+	 * successifs sont confondus
+	 * @return le polygone simplifié, ou bien ce polygone lui même si la
+	 * simplification n'omet aucun sommet ou ne laisse pas au moins 3 sommets
+	 */
+	public VertexBuffer simplify(double tolerance)
+	{
+		if ((tolerance <= 0.0) || (size <= 3))
+		{
+			return this;
+		}
+		if ((simplified != null) && (simplifiedTolerance == tolerance))
+		{
+			return simplified;
+		}
+		double tolerance2 = tolerance * tolerance;
+		VertexBuffer result = new VertexBuffer(size);
+		double lastX = coords[0];
+		double lastY = coords[1];
+		result.append(lastX, lastY);
+		for (int i = 1; i < size; i++)
+		{
+			double x = coords[2 * i];
+			double y = coords[(2 * i) + 1];
+			double ddx = x - lastX;
+			double ddy = y - lastY;
+			if ((i == (size - 1)) || (((ddx * ddx) + (ddy * ddy)) >= tolerance2))
+			{
+				result.append(x, y);
+				lastX = x;
+				lastY = y;
+			}
+		}
+		if ((result.size == size) || (result.size < 3))
+		{
+			result = this;
+		}
+		simplified = result;
+		simplifiedTolerance = tolerance;
+		return result;
+	}
+
+	/**
+	 * Extension des bornes des sommets autres que le dernier
+	 */
+	private void include(double x, double y)
+	{
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+	}
+
+	@Override
+	public Rectangle getBounds()
+	{
+		return getBounds2D().getBounds();
+	}
+
+	@Override
+	public Rectangle2D getBounds2D()
+	{
+		if (size == 0)
+		{
+			return new Rectangle2D.Double();
+		}
+		double x = coords[2 * (size - 1)];
+		double y = coords[(2 * size) - 1];
+		double x0 = Math.min(minX, x);
+		double y0 = Math.min(minY, y);
+		return new Rectangle2D.Double(x0, y0, Math.max(maxX, x) - x0,
+				Math.max(maxY, y) - y0);
+	}
+
+	@Override
+	public boolean contains(double x, double y)
+	{
+		if (size <= 2)
+		{
+			return false;
+		}
+		// bornes (comme getBounds2D().contains(x, y) mais sans allocation)
+		double lastX = coords[2 * (size - 1)];
+		double lastY = coords[(2 * size) - 1];
+		double x0 = Math.min(minX, lastX);
+		double y0 = Math.min(minY, lastY);
+		if ((x < x0) || (y < y0) || (x >= x0 + (Math.max(maxX, lastX) - x0))
+				|| (y >= y0 + (Math.max(maxY, lastY) - y0)))
+		{
+			return false;
+		}
+		if (indexed && (size >= minIndexedSize))
+		{
+			EdgeIndex index = edgeIndex;
+			if (index == null)
+			{
+				index = new EdgeIndex(coords, size);
+				edgeIndex = index;
+			}
+			return index.contains(x, y);
+		}
+		return Path2D.contains(getPathIterator(null), x, y);
+	}
+
+	@Override
+	public boolean contains(Point2D p)
+	{
+		return contains(p.getX(), p.getY());
+	}
+
+	@Override
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		return (size > 0) && getBounds2D().intersects(x, y, w, h)
+				&& Path2D.intersects(getPathIterator(null), x, y, w, h);
+	}
+
+	@Override
+	public boolean intersects(Rectangle2D r)
+	{
+		return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	@Override
+	public boolean contains(double x, double y, double w, double h)
+	{
+		return (size > 2) && getBounds2D().contains(x, y, w, h)
+				&& Path2D.contains(getPathIterator(null), x, y, w, h);
+	}
+
+	@Override
+	public boolean contains(Rectangle2D r)
+	{
+		return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Itérateur sur le contour du polygone lisant directement les sommets
+	 * @param at la transformation à appliquer aux sommets (ou null)
+	 * @return un itérateur sur le contour (fermé) du polygone
+	 */
+	@Override
+	public PathIterator getPathIterator(AffineTransform at)
+	{
+		return new VertexIterator(coords, size, at);
+	}
+
+	@Override
+	public PathIterator getPathIterator(AffineTransform at, double flatness)
+	{
+		// Le contour ne contient que des segments de droite
+		return getPathIterator(at);
+	}
+
+	/**
+	 * Itérateur sur les sommets d'un polygone : MOVETO vers le premier sommet,
+	 * LINETO vers chacun des suivants, puis CLOSE. L'itérateur conserve le
+	 * tableau et le nombre de sommets lors de sa création, il n'est donc pas
+	 * affecté par les ajouts ultérieurs de sommets.
+	 */
+	private static class VertexIterator implements PathIterator
+	{
+		private final double[] coords;
+		private final int size;
+		private final AffineTransform transform;
+		private int index;
+
+		VertexIterator(double[] coords, int size, AffineTransform transform)
+		{
+			this.coords = coords;
+			this.size = size;
+			this.transform = transform;
+			index = 0;
+		}
+
+		@Override
+		public int getWindingRule()
+		{
+			return WIND_EVEN_ODD;
+		}
+
+		@Override
+		public boolean isDone()
+		{
+			return index > size || size == 0;
+		}
+
+		@Override
+		public void next()
+		{
+			index++;
+		}
+
+		@Override
+		public int currentSegment(float[] values)
+		{
+			if (index == size)
+			{
+				return SEG_CLOSE;
+			}
+			values[0] = (float) coords[2 * index];
+			values[1] = (float) coords[(2 * index) + 1];
+			if (transform != null)
+			{
+				transform.transform(values, 0, values, 0, 1);
+			}
+			return (index == 0 ? SEG_MOVETO : SEG_LINETO);
+		}
+
+		@Override
+		public int currentSegment(double[] values)
+		{
+			if (index == size)
+			{
+				return SEG_CLOSE;
+			}
+			values[0] = coords[2 * index];
+			values[1] = coords[(2 * index) + 1];
+			if (transform != null)
+			{
+				transform.transform(values, 0, values, 0, 1);
+			}
+			return (index == 0 ? SEG_MOVETO : SEG_LINETO);
+		}
+	}
+
+	/**
+	 * Index des arêtes d'un polygone : l'intervalle des ordonnées du polygone
+	 * est découpé en tranches horizontales de même hauteur et chaque arête est
+	 * rangée dans les tranches qu'elle traverse (sous forme de listes
+	 * contigües : les arêtes de la tranche s sont
+	 * edges[starts[s]] ... edges[starts[s + 1] - 1]). Une arête étant
+	 * recopiée dans chacune des tranches qu'elle traverse, le nombre de
+	 * tranches est réduit (de moitié en moitié) jusqu'à ce que l'index compte
+	 * au plus {@link #maxReplication} entrées par arête : avec une seule
+	 * tranche, le test parcourt toutes les arêtes comme
+	 * {@link Path2D#contains(PathIterator, double, double)}.
+	 */
+	private static final class EdgeIndex
+	{
+		/**
+		 * Nombre moyen maximum de tranches dans lesquelles une arête est
+		 * rangée
+		 */
+		private static final int maxReplication = 8;
+
+		private final double[] coords;
+		private final int size;
+		private final double y0;
+		private final double slabHeight;
+		private final int slabCount;
+		private final int[] starts;
+		private final int[] edges;
+
+		EdgeIndex(double[] coords, int size)
+		{
+			this.coords = coords;
+			this.size = size;
+
+			double yMin = Double.POSITIVE_INFINITY;
+			double yMax = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < size; i++)
+			{
+				yMin = Math.min(yMin, coords[(2 * i) + 1]);
+				yMax = Math.max(yMax, coords[(2 * i) + 1]);
+			}
+			y0 = yMin;
+			int count = Math.max(1, Math.min(size / 4, 4096));
+			while ((count > 1) && (entryCount(count, yMax - yMin)
+					> ((long) maxReplication * size)))
+			{
+				count /= 2;
+			}
+			slabCount = count;
+			slabHeight = height(slabCount, yMax - yMin);
+
+			// Nombre d'arêtes par tranche puis positions de début des tranches
+			starts = new int[slabCount + 1];
+			for (int i = 0; i < size; i++)
+			{
+				int s0 = slab(edgeMinY(i));
+				int s1 = slab(edgeMaxY(i));
+				for (int s = s0; s <= s1; s++)
+				{
+					starts[s + 1]++;
+				}
+			}
+			for (int s = 0; s < slabCount; s++)
+			{
+				starts[s + 1] += starts[s];
+			}
+
+			// Rangement des arêtes
+			edges = new int[starts[slabCount]];
+			int[] fill = Arrays.copyOf(starts, slabCount);
+			for (int i = 0; i < size; i++)
+			{
+				int s0 = slab(edgeMinY(i));
+				int s1 = slab(edgeMaxY(i));
+				for (int s = s0; s <= s1; s++)
+				{
+					edges[fill[s]++] = i;
+				}
+			}
+		}
+
+		/**
+		 * Hauteur des tranches
+		 * @param count le nombre de tranches
+		 * @param range l'étendue des ordonnées du polygone
+		 * @return la hauteur (non nulle) de chacune des tranches
+		 */
+		private static double height(int count, double range)
+		{
+			return Math.max(range / count, Double.MIN_VALUE);
+		}
+
+		/**
+		 * Nombre d'entrées de l'index pour un nombre de tranches donné
+		 * (avant sa construction)
+		 * @param count le nombre de tranches
+		 * @param range l'étendue des ordonnées du polygone
+		 * @return la somme du nombre de tranches traversées par chaque arête
+		 */
+		private long entryCount(int count, double range)
+		{
+			double height = height(count, range);
+			long entries = 0;
+			for (int i = 0; i < size; i++)
+			{
+				int s0 = slab(edgeMinY(i), height, count);
+				int s1 = slab(edgeMaxY(i), height, count);
+				entries += (s1 - s0) + 1;
+			}
+			return entries;
+		}
+
+		private double edgeMinY(int i)
+		{
+			int j = (i + 1) % size;
+			return Math.min(coords[(2 * i) + 1], coords[(2 * j) + 1]);
+		}
+
+		private double edgeMaxY(int i)
+		{
+			int j = (i + 1) % size;
+			return Math.max(coords[(2 * i) + 1], coords[(2 * j) + 1]);
+		}
+
+		private int slab(double y)
+		{
+			return slab(y, slabHeight, slabCount);
+		}
+
+		private int slab(double y, double height, int count)
+		{
+			int s = (int) ((y - y0) / height);
+			return Math.max(0, Math.min(s, count - 1));
+		}
+
+		/**
+		 * Test de contenance selon la règle pair-impair, avec les mêmes
+		 * conventions aux limites que {@link Path2D#contains(PathIterator,
+		 * double, double)}, en ne testant que les arêtes de la tranche du
+		 * point
+		 */
+		boolean contains(double px, double py)
+		{
+			int s = slab(py);
+			int crossings = 0;
+			for (int k = starts[s]; k < starts[s + 1]; k++)
+			{
+				int i = edges[k];
+				int j = (i + 1) % size;
+				double xa = coords[2 * i];
+				double ya = coords[(2 * i) + 1];
+				double xb = coords[2 * j];
+				double yb = coords[(2 * j) + 1];
+				if (((py < ya) && (py < yb)) || ((py >= ya) && (py >= yb))
+						|| ((px >= xa) && (px >= xb)))
+				{
+					continue;
+				}
+				if ((px < xa) && (px < xb))
+				{
+					crossings++;
+					continue;
+				}
+				double xIntercept = xa + (((py - ya) * (xb - xa)) / (yb - ya));
+				if (px < xIntercept)
+				{
+					crossings++;
+				}
+			}
+			return (crossings & 1) != 0;
+		}
+	}
+}
@@ -1,4 +1,7 @@
 /**
- * Package utilitaire contenant uniquement une usine à flyweight : {@link FlyweightFactory}
+ * Package utilitaire contenant une usine à flyweight : {@link FlyweightFactory},
+ * un index spatial : {@link RTree} (éventuellement construit au dessus d'un
+ * index en lecture seule : {@link SpatialIndex}), un vecteur persistant :
+ * {@link PersistentVector} et un polygone extensible : {@link VertexBuffer}
  */
-package utils;
\ No newline at end of file
+package utils;
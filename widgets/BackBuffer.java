@@ -0,0 +1,360 @@
+package widgets;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import figures.Drawing;
+import figures.DrawingSnapshot;
+
+/**
+ * Image tampon contenant le rendu des figures terminées d'un {@link Drawing}.
+ * Les figures terminées ne font que s'ajouter tant que la génération du
+ * dessin ({@link Drawing#getGeneration()}) ne change pas : le tampon est donc
+ * complété en ne dessinant que les nouvelles figures terminées et n'est
+ * entièrement reconstruit que lorsque des figures terminées ont été retirées
+ * ou que sa taille change. Seule la figure en cours de dessin reste à dessiner
+ * directement par dessus ce tampon. Lorsque la vue est déplacée (sans changer
+ * de niveau de zoom), le contenu du tampon est décalé et seules les bandes
+ * découvertes sont rendues. Les figures dont les bornes extérieures
+ * sont en dehors du tampon ne sont pas dessinées. Les figures sont rendues
+ * avec les indications de rendu du {@link QualityController} (s'il y en a
+ * un) : un tampon complété en qualité rapide pendant une interaction est
+ * entièrement reconstruit dès qu'il est affiché en haute qualité.
+ *
+ * @author davidroussel
+ */
+public class BackBuffer
+{
+	/**
+	 * L'image contenant le rendu des figures terminées
+	 */
+	private BufferedImage image;
+
+	/**
+	 * La couleur de fond de l'image
+	 */
+	private Color background;
+
+	/**
+	 * Le nombre de figures terminées déjà dessinées dans l'image
+	 */
+	private int bufferedCount;
+
+	/**
+	 * La génération du dessin à laquelle correspond le contenu de l'image
+	 */
+	private int bufferedGeneration;
+
+	/**
+	 * Le niveau de zoom auquel correspond le contenu de l'image
+	 */
+	private int bufferedLevel;
+
+	/**
+	 * Le décalage de la vue auquel correspond le contenu de l'image
+	 */
+	private int bufferedDx, bufferedDy;
+
+	/**
+	 * Le moteur de rendu des figures ajoutées au tampon
+	 */
+	private BatchRenderer renderer;
+
+	/**
+	 * Le contrôleur de la qualité du rendu du tampon (ou null pour un rendu
+	 * toujours en haute qualité)
+	 */
+	private QualityController quality;
+
+	/**
+	 * Indique qu'une partie du contenu de l'image a été rendue en qualité
+	 * rapide
+	 */
+	private boolean bufferedFast;
+
+	/**
+	 * Le nombre de figures dessinées lors de la dernière mise à jour
+	 */
+	private int drawnCount;
+
+	/**
+	 * Le nombre de figures plus petites qu'un pixel lors de la dernière mise
+	 * à jour
+	 */
+	private int subPixelCount;
+
+	/**
+	 * Constructeur d'un tampon vide
+	 */
+	public BackBuffer()
+	{
+		renderer = new BatchRenderer();
+		quality = null;
+		drawnCount = 0;
+		subPixelCount = 0;
+		image = null;
+		background = Color.WHITE;
+		bufferedCount = 0;
+		bufferedGeneration = -1;
+		bufferedLevel = 0;
+		bufferedDx = 0;
+		bufferedDy = 0;
+		bufferedFast = false;
+	}
+
+	/**
+	 * Mise en place de la politique de niveau de détail avec laquelle dessiner
+	 * les figures (le contenu déjà rendu est oublié)
+	 * @param policy la politique de niveau de détail
+	 */
+	public void setLodPolicy(LodPolicy policy)
+	{
+		renderer.setLodPolicy(policy);
+		invalidate();
+	}
+
+	/**
+	 * Mise en place du contrôleur de la qualité du rendu du tampon
+	 * @param quality le contrôleur dont les indications de rendu sont
+	 * appliquées au tampon (ou null pour un rendu toujours en haute qualité)
+	 */
+	public void setQualityController(QualityController quality)
+	{
+		this.quality = quality;
+	}
+
+	/**
+	 * Nombre de figures dessinées lors de la dernière mise à jour
+	 * @return le nombre de figures dessinées dans le tampon lors de la
+	 * dernière mise à jour (0 si celui ci était déjà à jour)
+	 */
+	public int getDrawnCount()
+	{
+		return drawnCount;
+	}
+
+	/**
+	 * Nombre de figures plus petites qu'un pixel lors de la dernière mise à
+	 * jour (voir {@link BatchRenderer#getSubPixelCount()})
+	 * @return le nombre de figures remplacées par un point, comptées dans la
+	 * couche de densité ou omises lors de la dernière mise à jour
+	 */
+	public int getSubPixelCount()
+	{
+		return subPixelCount;
+	}
+
+	/**
+	 * Oubli du contenu du tampon : il sera entièrement reconstruit lors du
+	 * prochain {@link #update(DrawingSnapshot, GraphicsConfiguration, int, int, Color, Viewport)}
+	 */
+	public void invalidate()
+	{
+		bufferedCount = 0;
+		bufferedGeneration = -1;
+		bufferedFast = false;
+	}
+
+	/**
+	 * Mise à jour du tampon à partir du dessin : dessin des figures terminées
+	 * depuis la dernière mise à jour, ou reconstruction complète si le dessin a
+	 * changé de génération ou si la taille, le fond ou le niveau de zoom ont
+	 * changé, ou encore si une partie du tampon a été rendue en qualité rapide
+	 * et que le rendu est repassé en haute qualité.
+	 *
+	 * @param drawing la version du dessin à rendre dans le tampon
+	 * @param gc la configuration graphique avec laquelle créer une image
+	 * compatible (ou null)
+	 * @param width la largeur du tampon
+	 * @param height la hauteur du tampon
+	 * @param background la couleur de fond
+	 * @param viewport la vue (niveau de zoom et décalage) à rendre
+	 * @return l'image à jour contenant les figures terminées
+	 */
+	public BufferedImage update(DrawingSnapshot drawing,
+			GraphicsConfiguration gc,
+			int width,
+			int height,
+			Color background,
+			Viewport viewport)
+	{
+		if ((image == null) || (image.getWidth() != width)
+				|| (image.getHeight() != height)
+				|| !background.equals(this.background))
+		{
+			if (gc != null)
+			{
+				image = gc.createCompatibleImage(width, height);
+			}
+			else
+			{
+				image = new BufferedImage(width, height,
+						BufferedImage.TYPE_INT_RGB);
+			}
+			this.background = background;
+			invalidate();
+		}
+
+		int count = drawing.getTerminatedCount();
+		if ((drawing.getGeneration() != bufferedGeneration)
+				|| (count < bufferedCount)
+				|| (viewport.getLevel() != bufferedLevel)
+				|| (bufferedFast && ((quality == null) || !quality.isFast())))
+		{
+			invalidate();
+		}
+
+		drawnCount = 0;
+		subPixelCount = 0;
+		int sx = viewport.getDx() - bufferedDx;
+		int sy = viewport.getDy() - bufferedDy;
+		if ((bufferedGeneration >= 0) && ((sx != 0) || (sy != 0)))
+		{
+			if ((Math.abs(sx) >= width) || (Math.abs(sy) >= height))
+			{
+				invalidate();
+			}
+			else
+			{
+				scroll(drawing, viewport, sx, sy);
+			}
+		}
+
+		if ((bufferedGeneration < 0) || (bufferedCount < count))
+		{
+			Graphics2D g2D = createGraphics(viewport);
+			if (bufferedGeneration < 0)
+			{
+				g2D.setColor(background);
+				g2D.fill(viewport.toModel(new Rectangle(0, 0, width, height)));
+			}
+			Rectangle2D area = modelArea(viewport, 0, 0, width, height);
+			int[] indices;
+			if (bufferedGeneration < 0)
+			{
+				// Reconstruction : seules les figures traversant le tampon
+				indices = drawing.findTerminatedFigures(area);
+			}
+			else
+			{
+				// Ajout des nouvelles figures traversant le tampon
+				indices = new int[count - bufferedCount];
+				int n = 0;
+				for (int i = bufferedCount; i < count; i++)
+				{
+					if (drawing.get(i).getOuterBounds2D().intersects(area))
+					{
+						indices[n++] = i;
+					}
+				}
+				indices = Arrays.copyOf(indices, n);
+			}
+			renderer.draw(g2D, drawing, indices);
+			drawnCount += renderer.getFigureCount();
+			subPixelCount += renderer.getSubPixelCount();
+			g2D.dispose();
+			bufferedCount = count;
+			bufferedGeneration = drawing.getGeneration();
+			bufferedLevel = viewport.getLevel();
+			bufferedDx = viewport.getDx();
+			bufferedDy = viewport.getDy();
+		}
+
+		return image;
+	}
+
+	/**
+	 * Décalage du contenu du tampon suite à un déplacement de la vue (au même
+	 * niveau de zoom) : le contenu déjà rendu est déplacé et seules les bandes
+	 * découvertes sont rendues à nouveau (avec les figures déjà présentes dans
+	 * le tampon, les nouvelles figures étant ajoutées ensuite)
+	 * @param drawing la version du dessin à rendre dans le tampon
+	 * @param viewport la nouvelle vue
+	 * @param sx le déplacement horizontal de la vue en pixels
+	 * @param sy le déplacement vertical de la vue en pixels
+	 */
+	private void scroll(DrawingSnapshot drawing, Viewport viewport, int sx,
+			int sy)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Graphics2D g2D = image.createGraphics();
+		g2D.copyArea(0, 0, width, height, sx, sy);
+		g2D.dispose();
+
+		// bandes découvertes : verticale puis horizontale
+		Rectangle[] strips = new Rectangle[] {
+				new Rectangle(sx > 0 ? 0 : width + sx, 0, Math.abs(sx), height),
+				new Rectangle(0, sy > 0 ? 0 : height + sy, width, Math.abs(sy))
+		};
+		for (Rectangle strip : strips)
+		{
+			if (strip.isEmpty())
+			{
+				continue;
+			}
+			g2D = createGraphics(viewport);
+			g2D.clip(viewport.toModel(strip));
+			g2D.setColor(background);
+			g2D.fill(viewport.toModel(strip));
+			int[] indices = drawing.findTerminatedFigures(modelArea(viewport,
+					strip.x, strip.y, strip.width, strip.height));
+			int n = 0;
+			while ((n < indices.length) && (indices[n] < bufferedCount))
+			{
+				n++;
+			}
+			renderer.draw(g2D, drawing, Arrays.copyOf(indices, n));
+			drawnCount += renderer.getFigureCount();
+			subPixelCount += renderer.getSubPixelCount();
+			g2D.dispose();
+		}
+
+		bufferedDx = viewport.getDx();
+		bufferedDy = viewport.getDy();
+	}
+
+	/**
+	 * Contexte graphique dessinant dans le tampon dans les coordonnées du
+	 * dessin, avec les indications de rendu du {@link #quality}
+	 * @param viewport la vue à appliquer
+	 * @return un nouveau contexte graphique (à libérer)
+	 */
+	private Graphics2D createGraphics(Viewport viewport)
+	{
+		Graphics2D g2D = image.createGraphics();
+		if (quality != null)
+		{
+			quality.applyHints(g2D);
+			bufferedFast |= quality.isFast();
+		}
+		else
+		{
+			QualityController.applyQualityHints(g2D);
+		}
+		g2D.transform(viewport.getTransform());
+		return g2D;
+	}
+
+	/**
+	 * Zone du dessin correspondant à une zone du tampon, élargie d'un pixel
+	 * pour l'antialiasing
+	 * @param viewport la vue
+	 * @param x l'abscisse de la zone du tampon
+	 * @param y l'ordonnée de la zone du tampon
+	 * @param width la largeur de la zone du tampon
+	 * @param height la hauteur de la zone du tampon
+	 * @return la zone du dessin correspondante
+	 */
+	private static Rectangle2D modelArea(Viewport viewport, int x, int y,
+			int width, int height)
+	{
+		return viewport.toModel(new Rectangle(x - 1, y - 1, width + 2,
+				height + 2));
+	}
+}
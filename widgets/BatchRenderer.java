@@ -0,0 +1,715 @@
+package widgets;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import figures.AbstractFigure;
+import figures.DrawingSnapshot;
+import figures.StyleTable;
+import figures.enums.FigureType;
+import widgets.LodPolicy.SubPixelMode;
+
+/**
+ * Rendu par lots des figures terminées d'un {@link DrawingSnapshot}. Plutôt
+ * que de mettre en place le trait et les couleurs de chaque figure
+ * ({@link AbstractFigure#draw(Graphics2D)}), les figures de même style sont
+ * regroupées dans des lots : le style d'un lot n'est mis en place qu'une fois,
+ * pour remplir toutes les formes du lot puis pour tracer toutes leurs
+ * bordures. Les formes restent dessinées une par une (plutôt que réunies dans
+ * un seul {@link java.awt.geom.Path2D}) afin de conserver les chemins rapides
+ * de Java2D pour les rectangles.
+ * Les lots sont dessinés dans leur ordre de création et une figure ne
+ * rejoint un lot existant que si cela ne change pas le rendu :
+ * <ul>
+ * <li>elle ne chevauche aucune figure de ce lot (sinon le tracé de l'une
+ * passerait sous le remplissage de l'autre)</li>
+ * <li>elle ne chevauche aucune figure des lots créés après celui ci (qu'elle
+ * doit recouvrir)</li>
+ * </ul>
+ * Les chevauchements sont déterminés à partir des bornes extérieures des
+ * figures ({@link AbstractFigure#getOuterBounds2D()}) : des figures dont les
+ * bornes extérieures sont disjointes ne partagent aucun pixel et le rendu
+ * obtenu est donc le même que celui des figures dessinées une par une. Ils
+ * sont cherchés parmi les seules figures déjà rangées lors du rendu, dans une
+ * grille uniforme construite une fois par rendu (voir {@link Overlaps})
+ * plutôt que par une recherche dans l'index spatial du dessin pour chaque
+ * figure.
+ * Lorsque le dessin est vu de loin, le niveau de détail des figures est
+ * réduit selon une {@link LodPolicy} : les figures plus petites qu'un pixel
+ * sont remplacées par des points (dans des lots de points), comptées dans une
+ * couche de densité ou omises, les polygones sont dessinés à partir de
+ * sommets simplifiés et les traits pointillés trop fins deviennent pleins.
+ *
+ * @author davidroussel
+ */
+public class BatchRenderer
+{
+	/**
+	 * Clé d'un lot : les figures d'un lot partagent la même table de styles,
+	 * le même style et le même type (dont dépend le niveau de détail) et sont
+	 * toutes dessinées, ou bien toutes remplacées par des points
+	 */
+	private static class Key
+	{
+		final StyleTable styles;
+		final int styleId;
+		final FigureType type;
+		final boolean dots;
+
+		Key(StyleTable styles, int styleId, FigureType type, boolean dots)
+		{
+			this.styles = styles;
+			this.styleId = styleId;
+			this.type = type;
+			this.dots = dots;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = (31 * System.identityHashCode(styles)) + styleId;
+			hash = (31 * hash) + type.ordinal();
+			return (2 * hash) + (dots ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return (styles == other.styles) && (styleId == other.styleId)
+					&& (type == other.type) && (dots == other.dots);
+		}
+	}
+
+	/**
+	 * Lot de figures de même style, deux à deux disjointes
+	 */
+	private static class Batch
+	{
+		final int number;
+		final Key key;
+		final ArrayList<AbstractFigure> figures;
+
+		Batch(int number, Key key, AbstractFigure first)
+		{
+			this.number = number;
+			this.key = key;
+			figures = new ArrayList<AbstractFigure>();
+			figures.add(first);
+		}
+	}
+
+	/**
+	 * Figures déjà rangées dans les lots lors d'un rendu, réparties dans une
+	 * grille uniforme couvrant les bornes de toutes les figures à ranger afin
+	 * de trouver le dernier lot contenant une figure chevauchée par une
+	 * nouvelle figure. La taille des cellules est choisie pour qu'il y ait
+	 * environ autant de cellules que de figures. Les figures couvrant plus de
+	 * {@link #maxSpan} cellules dans une direction ne sont pas réparties dans
+	 * les cellules mais comparées à chaque recherche, et les recherches
+	 * couvrant plus de {@link #maxSpan} cellules dans une direction parcourent
+	 * toutes les figures rangées, ce qui borne le travail de chaque figure au
+	 * parcours de {@link #maxSpan} x {@link #maxSpan} cellules.
+	 */
+	private static class Overlaps
+	{
+		/**
+		 * Nombre maximum de cellules couvertes (dans chaque direction) par une
+		 * figure répartie dans la grille
+		 */
+		static final int maxSpan = 8;
+
+		final double x0, y0;
+		final double cellSize;
+		final int columns, rows;
+		/**
+		 * Numéros (d'ajout) des figures de chaque cellule
+		 */
+		final int[][] cells;
+		final int[] cellCounts;
+		/**
+		 * Bornes (x0, y0, x1, y1) puis numéro de lot des figures ajoutées
+		 */
+		double[] bounds;
+		int[] batches;
+		int count;
+		/**
+		 * Numéros des figures couvrant trop de cellules
+		 */
+		int[] large;
+		int largeCount;
+
+		/**
+		 * Constructeur d'une grille vide
+		 * @param area la zone couvrant les bornes de toutes les figures
+		 * @param n le nombre de figures à ranger
+		 */
+		Overlaps(Rectangle2D area, int n)
+		{
+			n = Math.max(n, 1);
+			double width = area.getWidth();
+			double height = area.getHeight();
+			double size = Math.max(Math.sqrt((width * height) / n),
+					Math.max(width, height) / n);
+			cellSize = size > 0.0 ? size : 1.0;
+			x0 = area.getX();
+			y0 = area.getY();
+			columns = Math.min((int) (width / cellSize), n) + 1;
+			rows = Math.min((int) (height / cellSize), n) + 1;
+			cells = new int[columns * rows][];
+			cellCounts = new int[columns * rows];
+			bounds = new double[4 * Math.min(n, 1024)];
+			batches = new int[Math.min(n, 1024)];
+			count = 0;
+			large = new int[16];
+			largeCount = 0;
+		}
+
+		/**
+		 * Colonne (ou ligne) de la grille contenant une coordonnée
+		 * @param v la coordonnée
+		 * @param origin l'origine de la grille dans cette direction
+		 * @param size le nombre de colonnes (ou de lignes)
+		 * @return la colonne (ou la ligne) contenant v
+		 */
+		private int cell(double v, double origin, int size)
+		{
+			int i = (int) ((v - origin) / cellSize);
+			return Math.max(0, Math.min(i, size - 1));
+		}
+
+		/**
+		 * Dernier lot contenant une figure ajoutée chevauchant une zone
+		 * (bornes comprises)
+		 * @param r la zone
+		 * @return le plus grand numéro de lot des figures ajoutées dont les
+		 * bornes touchent r, ou -1 s'il n'y en a pas
+		 */
+		int lastBatch(Rectangle2D r)
+		{
+			double minX = r.getMinX();
+			double minY = r.getMinY();
+			double maxX = r.getMaxX();
+			double maxY = r.getMaxY();
+			int last = -1;
+			int i0 = cell(minX, x0, columns);
+			int i1 = cell(maxX, x0, columns);
+			int j0 = cell(minY, y0, rows);
+			int j1 = cell(maxY, y0, rows);
+			if ((i1 - i0 >= maxSpan) || (j1 - j0 >= maxSpan))
+			{
+				for (int f = 0; f < count; f++)
+				{
+					last = overlap(f, minX, minY, maxX, maxY, last);
+				}
+				return last;
+			}
+			for (int j = j0; j <= j1; j++)
+			{
+				for (int i = i0; i <= i1; i++)
+				{
+					int c = (j * columns) + i;
+					for (int k = 0; k < cellCounts[c]; k++)
+					{
+						last = overlap(cells[c][k], minX, minY, maxX, maxY,
+								last);
+					}
+				}
+			}
+			for (int k = 0; k < largeCount; k++)
+			{
+				last = overlap(large[k], minX, minY, maxX, maxY, last);
+			}
+			return last;
+		}
+
+		/**
+		 * Prise en compte d'une figure ajoutée dans une recherche
+		 * @param f le numéro de la figure ajoutée
+		 * @param minX l'abscisse minimale de la zone recherchée
+		 * @param minY l'ordonnée minimale de la zone recherchée
+		 * @param maxX l'abscisse maximale de la zone recherchée
+		 * @param maxY l'ordonnée maximale de la zone recherchée
+		 * @param last le dernier lot trouvé jusque là
+		 * @return le dernier lot trouvé en tenant compte de la figure f
+		 */
+		private int overlap(int f, double minX, double minY, double maxX,
+				double maxY, int last)
+		{
+			if ((batches[f] > last) && (bounds[4 * f] <= maxX)
+					&& (minX <= bounds[(4 * f) + 2])
+					&& (bounds[(4 * f) + 1] <= maxY)
+					&& (minY <= bounds[(4 * f) + 3]))
+			{
+				return batches[f];
+			}
+			return last;
+		}
+
+		/**
+		 * Ajout d'une figure rangée dans un lot
+		 * @param r les bornes de la figure
+		 * @param batch le numéro du lot de la figure
+		 */
+		void add(Rectangle2D r, int batch)
+		{
+			if (count == batches.length)
+			{
+				batches = Arrays.copyOf(batches, 2 * count);
+				bounds = Arrays.copyOf(bounds, 8 * count);
+			}
+			int f = count++;
+			bounds[4 * f] = r.getMinX();
+			bounds[(4 * f) + 1] = r.getMinY();
+			bounds[(4 * f) + 2] = r.getMaxX();
+			bounds[(4 * f) + 3] = r.getMaxY();
+			batches[f] = batch;
+
+			int i0 = cell(bounds[4 * f], x0, columns);
+			int i1 = cell(bounds[(4 * f) + 2], x0, columns);
+			int j0 = cell(bounds[(4 * f) + 1], y0, rows);
+			int j1 = cell(bounds[(4 * f) + 3], y0, rows);
+			if ((i1 - i0 >= maxSpan) || (j1 - j0 >= maxSpan))
+			{
+				if (largeCount == large.length)
+				{
+					large = Arrays.copyOf(large, 2 * largeCount);
+				}
+				large[largeCount++] = f;
+				return;
+			}
+			for (int j = j0; j <= j1; j++)
+			{
+				for (int i = i0; i <= i1; i++)
+				{
+					int c = (j * columns) + i;
+					if (cells[c] == null)
+					{
+						cells[c] = new int[4];
+					}
+					else if (cellCounts[c] == cells[c].length)
+					{
+						cells[c] = Arrays.copyOf(cells[c], 2 * cellCounts[c]);
+					}
+					cells[c][cellCounts[c]++] = f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opacité apportée à un pixel de la couche de densité par chacune des
+	 * figures qui y sont comptées
+	 */
+	private static final double densityAlpha = 0.25;
+
+	/**
+	 * La politique de niveau de détail
+	 */
+	private LodPolicy policy;
+
+	/**
+	 * Les versions pleines des traits pointillés
+	 */
+	private final HashMap<BasicStroke, BasicStroke> solidStrokes;
+
+	/**
+	 * Le nombre de figures dessinées (remplies et tracées, ou remplacées par
+	 * un point) lors du dernier rendu
+	 */
+	private int figureCount;
+
+	/**
+	 * Le nombre de lots dessinés lors du dernier rendu
+	 */
+	private int batchCount;
+
+	/**
+	 * Le nombre de figures plus petites qu'un pixel (remplacées par un point,
+	 * comptées dans la couche de densité ou omises) lors du dernier rendu
+	 */
+	private int subPixelCount;
+
+	/**
+	 * Constructeur d'un moteur de rendu par lots avec la politique de niveau
+	 * de détail par défaut
+	 */
+	public BatchRenderer()
+	{
+		policy = new LodPolicy();
+		solidStrokes = new HashMap<BasicStroke, BasicStroke>();
+		figureCount = 0;
+		batchCount = 0;
+		subPixelCount = 0;
+	}
+
+	/**
+	 * Politique de niveau de détail
+	 * @return la politique de niveau de détail utilisée
+	 */
+	public LodPolicy getLodPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Mise en place de la politique de niveau de détail
+	 * @param policy la politique de niveau de détail à utiliser
+	 */
+	public void setLodPolicy(LodPolicy policy)
+	{
+		this.policy = policy;
+	}
+
+	/**
+	 * Nombre de figures dessinées lors du dernier rendu : les figures omises
+	 * ou comptées dans la couche de densité par la {@link LodPolicy} n'en font
+	 * pas partie (voir {@link #getSubPixelCount()})
+	 * @return le nombre de figures remplies et tracées, ou remplacées par un
+	 * point, lors du dernier rendu
+	 */
+	public int getFigureCount()
+	{
+		return figureCount;
+	}
+
+	/**
+	 * Nombre de lots (et donc de mises en place d'un style) dessinés lors du
+	 * dernier rendu
+	 * @return le nombre de lots dessinés lors du dernier rendu
+	 */
+	public int getBatchCount()
+	{
+		return batchCount;
+	}
+
+	/**
+	 * Nombre de figures plus petites qu'un pixel lors du dernier rendu
+	 * @return le nombre de figures remplacées par un point, comptées dans la
+	 * couche de densité ou omises lors du dernier rendu
+	 */
+	public int getSubPixelCount()
+	{
+		return subPixelCount;
+	}
+
+	/**
+	 * Dessin d'un intervalle de figures terminées
+	 * @param g2D le contexte graphique dans lequel dessiner
+	 * @param drawing la version du dessin contenant les figures
+	 * @param first l'indice de la première figure à dessiner
+	 * @param end l'indice suivant celui de la dernière figure à dessiner
+	 */
+	public void draw(Graphics2D g2D, DrawingSnapshot drawing, int first,
+			int end)
+	{
+		int[] indices = new int[Math.max(end - first, 0)];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = first + i;
+		}
+		draw(g2D, drawing, indices);
+	}
+
+	/**
+	 * Dessin de figures terminées
+	 * @param g2D le contexte graphique dans lequel dessiner
+	 * @param drawing la version du dessin contenant les figures
+	 * @param indices les indices des figures à dessiner dans l'ordre du dessin
+	 * (croissants, tels que renvoyés par
+	 * {@link DrawingSnapshot#findTerminatedFigures(Rectangle2D)})
+	 */
+	public void draw(Graphics2D g2D, DrawingSnapshot drawing, int[] indices)
+	{
+		ArrayList<Batch> batches = new ArrayList<Batch>();
+		HashMap<Key, Batch> lastBatches = new HashMap<Key, Batch>();
+		AffineTransform transform = g2D.getTransform();
+		double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+		double margin = scale < 1.0 ? 1.0 / scale : 0.0;
+		// pixels (x puis y) de la couche de densité
+		int[] density = new int[0];
+		int densityCount = 0;
+		subPixelCount = 0;
+
+		// Figures à ranger dans les lots (null pour les figures omises ou
+		// comptées dans la couche de densité), leurs bornes extérieures et la
+		// zone dans laquelle chercher les figures qu'elles chevauchent. La
+		// marge d'antialiasing des bornes extérieures étant d'une unité du
+		// dessin, elle est complétée jusqu'à un pixel dans cette zone lorsque
+		// le dessin est vu de loin
+		AbstractFigure[] figures = new AbstractFigure[indices.length];
+		Rectangle2D[] figureBounds = new Rectangle2D[indices.length];
+		Rectangle2D[] searchBounds = new Rectangle2D[indices.length];
+		boolean[] dots = new boolean[indices.length];
+		Rectangle2D area = null;
+		int drawnFigures = 0;
+		for (int k = 0; k < indices.length; k++)
+		{
+			AbstractFigure figure = drawing.get(indices[k]);
+			Rectangle2D bounds = figure.getOuterBounds2D();
+			FigureType type = figure.getType();
+			SubPixelMode mode = SubPixelMode.DRAW;
+			if ((Math.max(bounds.getWidth(), bounds.getHeight()) * scale)
+					< policy.getSubPixelSize(type))
+			{
+				mode = policy.getSubPixelMode(type);
+				if (mode != SubPixelMode.DRAW)
+				{
+					subPixelCount++;
+				}
+			}
+			if ((mode == SubPixelMode.SKIP) || (mode == SubPixelMode.DENSITY))
+			{
+				if (mode == SubPixelMode.DENSITY)
+				{
+					if ((2 * densityCount) + 2 > density.length)
+					{
+						density = Arrays.copyOf(density,
+								Math.max(64, 2 * density.length));
+					}
+					Point2D p = transform.transform(new Point2D.Double(
+							bounds.getCenterX(), bounds.getCenterY()), null);
+					density[2 * densityCount] = (int) Math.floor(p.getX());
+					density[(2 * densityCount) + 1] = (int) Math.floor(p.getY());
+					densityCount++;
+				}
+				continue;
+			}
+
+			figures[k] = figure;
+			figureBounds[k] = bounds;
+			searchBounds[k] = bounds;
+			if (margin > 0.0)
+			{
+				searchBounds[k] = new Rectangle2D.Double(bounds.getX() - margin,
+						bounds.getY() - margin,
+						bounds.getWidth() + (2 * margin),
+						bounds.getHeight() + (2 * margin));
+			}
+			dots[k] = mode == SubPixelMode.DOT;
+			if (area == null)
+			{
+				area = new Rectangle2D.Double();
+				area.setRect(bounds);
+			}
+			else
+			{
+				area.add(bounds);
+			}
+			drawnFigures++;
+		}
+
+		// Dernier lot contenant une figure (déjà rangée) chevauchée par
+		// chacune des figures
+		Overlaps overlaps = (area != null ? new Overlaps(area, drawnFigures)
+				: null);
+		for (int k = 0; k < indices.length; k++)
+		{
+			AbstractFigure figure = figures[k];
+			if (figure == null)
+			{
+				continue;
+			}
+			int lastOverlapped = overlaps.lastBatch(searchBounds[k]);
+
+			Key key = new Key(figure.getStyles(), figure.getStyleId(),
+					figure.getType(), dots[k]);
+			Batch batch = lastBatches.get(key);
+			if ((batch != null) && (batch.number > lastOverlapped))
+			{
+				batch.figures.add(figure);
+			}
+			else
+			{
+				batch = new Batch(batches.size(), key, figure);
+				batches.add(batch);
+				lastBatches.put(key, batch);
+			}
+			overlaps.add(figureBounds[k], batch.number);
+		}
+
+		for (Batch batch : batches)
+		{
+			if (batch.key.dots)
+			{
+				drawDots(g2D, transform, batch);
+			}
+			else
+			{
+				drawBatch(g2D, scale, batch);
+			}
+		}
+		drawDensity(g2D, density, densityCount);
+
+		figureCount = drawnFigures;
+		batchCount = batches.size();
+	}
+
+	/**
+	 * Dessin d'un lot de figures : remplissage de toutes les formes puis tracé
+	 * de toutes les bordures, au niveau de détail de l'échelle courante
+	 * @param g2D le contexte graphique dans lequel dessiner
+	 * @param scale l'échelle du contexte graphique
+	 * @param batch le lot à dessiner
+	 */
+	private void drawBatch(Graphics2D g2D, double scale, Batch batch)
+	{
+		AbstractFigure first = batch.figures.get(0);
+		Paint fill = first.getFill();
+		Paint edge = first.getEdge();
+		BasicStroke stroke = first.getStroke();
+		double tolerance = policy.getSimplification(batch.key.type) / scale;
+		if (fill != null)
+		{
+			g2D.setPaint(fill);
+			for (AbstractFigure figure : batch.figures)
+			{
+				figure.fillShape(g2D, tolerance);
+			}
+		}
+		if ((edge != null) && (stroke != null))
+		{
+			g2D.setStroke(solidStroke(stroke,
+					policy.getSolidDashLength(batch.key.type) / scale));
+			g2D.setPaint(edge);
+			for (AbstractFigure figure : batch.figures)
+			{
+				figure.drawShape(g2D, tolerance);
+			}
+		}
+	}
+
+	/**
+	 * Trait plein remplaçant un trait pointillé dont les pointillés sont trop
+	 * courts pour être distingués
+	 * @param stroke le trait
+	 * @param minDash la longueur (dans les coordonnées du dessin) en dessous
+	 * de laquelle les pointillés ne sont plus distingués
+	 * @return le trait plein correspondant si les pointillés de stroke sont
+	 * tous plus courts que minDash, ou bien stroke sinon
+	 */
+	private BasicStroke solidStroke(BasicStroke stroke, double minDash)
+	{
+		float[] dashes = stroke.getDashArray();
+		if (dashes == null)
+		{
+			return stroke;
+		}
+		for (float dash : dashes)
+		{
+			if (dash >= minDash)
+			{
+				return stroke;
+			}
+		}
+		BasicStroke solid = solidStrokes.get(stroke);
+		if (solid == null)
+		{
+			solid = new BasicStroke(stroke.getLineWidth(), stroke.getEndCap(),
+					stroke.getLineJoin(), stroke.getMiterLimit());
+			solidStrokes.put(stroke, solid);
+		}
+		return solid;
+	}
+
+	/**
+	 * Dessin d'un lot de figures plus petites qu'un pixel : chacune est
+	 * remplacée par le pixel de son centre, de la couleur de son remplissage
+	 * (ou à défaut de sa bordure)
+	 * @param g2D le contexte graphique dans lequel dessiner
+	 * @param transform la transformation du contexte graphique
+	 * @param batch le lot à dessiner
+	 */
+	private void drawDots(Graphics2D g2D, AffineTransform transform,
+			Batch batch)
+	{
+		AbstractFigure first = batch.figures.get(0);
+		Paint paint = first.getFill() != null ? first.getFill()
+				: first.getEdge();
+		if (paint == null)
+		{
+			return;
+		}
+		Object antialiasing =
+				g2D.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+		g2D.setTransform(new AffineTransform());
+		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_OFF);
+		g2D.setPaint(paint);
+		Point2D.Double p = new Point2D.Double();
+		for (AbstractFigure figure : batch.figures)
+		{
+			Rectangle2D bounds = figure.getBounds2D();
+			p.setLocation(bounds.getCenterX(), bounds.getCenterY());
+			transform.transform(p, p);
+			g2D.fillRect((int) Math.floor(p.x), (int) Math.floor(p.y), 1, 1);
+		}
+		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+		g2D.setTransform(transform);
+	}
+
+	/**
+	 * Dessin de la couche de densité : chaque pixel est d'autant plus sombre
+	 * que le nombre de figures qui y sont comptées est grand (chaque figure y
+	 * apporte une opacité {@link #densityAlpha}, comme si elles y étaient
+	 * dessinées l'une après l'autre)
+	 * @param g2D le contexte graphique dans lequel dessiner
+	 * @param pixels les pixels (x puis y) de chacune des figures comptées
+	 * @param count le nombre de figures comptées
+	 */
+	private void drawDensity(Graphics2D g2D, int[] pixels, int count)
+	{
+		if (count == 0)
+		{
+			return;
+		}
+		int x0 = Integer.MAX_VALUE;
+		int y0 = Integer.MAX_VALUE;
+		int x1 = Integer.MIN_VALUE;
+		int y1 = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++)
+		{
+			x0 = Math.min(x0, pixels[2 * i]);
+			y0 = Math.min(y0, pixels[(2 * i) + 1]);
+			x1 = Math.max(x1, pixels[2 * i]);
+			y1 = Math.max(y1, pixels[(2 * i) + 1]);
+		}
+		int width = (x1 - x0) + 1;
+		int height = (y1 - y0) + 1;
+		int[] counts = new int[width * height];
+		for (int i = 0; i < count; i++)
+		{
+			counts[((pixels[(2 * i) + 1] - y0) * width)
+					+ (pixels[2 * i] - x0)]++;
+		}
+		BufferedImage layer = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		int[] argb = new int[counts.length];
+		for (int i = 0; i < counts.length; i++)
+		{
+			if (counts[i] > 0)
+			{
+				double alpha = 1.0 - Math.pow(1.0 - densityAlpha, counts[i]);
+				argb[i] = ((int) Math.round(alpha * 255)) << 24;
+			}
+		}
+		layer.setRGB(0, 0, width, height, argb, 0, width);
+		AffineTransform transform = g2D.getTransform();
+		g2D.setTransform(new AffineTransform());
+		g2D.drawImage(layer, x0, y0, null);
+		g2D.setTransform(transform);
+	}
+}
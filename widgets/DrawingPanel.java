@@ -7,27 +7,33 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
-import java.text.DecimalFormat;
-import java.util.Observable;
-import java.util.Observer;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.Executor;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import figures.AbstractFigure;
 import figures.Drawing;
+import figures.DrawingSnapshot;
 import figures.creationListeners.AbstractCreationListener;
+import figures.creationListeners.PreviewLayer;
+import figures.events.DrawingEvent;
+import figures.events.DrawingListener;
 
 /**
  * Panel de dessin des figures (Vue): mis à jour par modèle des figures (
- * {@link Drawing}) au travers d'un observateur. On attache des Listeners
+ * {@link Drawing}) au travers d'un écouteur ({@link DrawingListener}). On attache des Listeners
  * (Controleurs) à ce Panel pour :
  * <dl>
  * <dt>Attachements statiques :</dt>
@@ -35,17 +41,21 @@ import figures.creationListeners.AbstractCreationListener;
  * d'état : {@link #coordLabel}</dd>
  * <dd>Mettre à jour le panneau d'informations relatif aux figures située sous
  * le pointeur de la souris : {@link #infoPanel}.</dd>
+ * <dd>Zoomer avec la molette de la souris et déplacer la vue en tirant avec le
+ * bouton du milieu ou le bouton droit : {@link #viewport}.</dd>
  * <dt>Attachements dynamique :</dt>
  * <dd>Pour chaque type de figure à créer on attache un
  * {@link AbstractCreationListener} ou plus exactement un de ses descendants
  * pour traduire les évènements souris en instructions pour le modèle de dessin
- * lors de la création d'une nouvelle figure.
+ * lors de la création d'une nouvelle figure. La figure en cours de création
+ * est montrée dans le calque d'aperçu du panel ({@link PreviewLayer}) et
+ * n'est ajoutée au modèle qu'une fois terminée.
  * </dl>
  * 
  * @author davidroussel
  */
-public class DrawingPanel extends JPanel implements Observer, MouseListener,
-		MouseMotionListener {
+public class DrawingPanel extends JPanel implements DrawingListener, MouseListener,
+		MouseMotionListener, MouseWheelListener, PreviewLayer {
 	/**
 	 * 
 	 */
@@ -100,10 +110,10 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	public final static String defaultCoordString = new String("x: ___ y: ___");
 
 	/**
-	 * Le formatteur à utiliser pour formater les nombres dans le
-	 * {@link #coordLabel} et dans l'{@link #infoPanel}
+	 * Le suivi (en dehors du thread de Swing) de la figure sous le pointeur,
+	 * qui met à jour le {@link #coordLabel} et l'{@link #infoPanel}
 	 */
-	private final static DecimalFormat coordFormat = new DecimalFormat("000");
+	private HoverTracker hoverTracker;
 
 	/**
 	 * état indiquant s'il faut envoyer les coordonnées de la souris ou la
@@ -114,6 +124,90 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	private boolean sendInfoState;
 
+	/**
+	 * Mode de rendu des figures
+	 */
+	private RenderingMode renderingMode;
+
+	/**
+	 * Le tampon contenant le rendu des figures terminées (en mode
+	 * {@link RenderingMode#BUFFERED})
+	 */
+	private BackBuffer backBuffer;
+
+	/**
+	 * Le cache des tuiles contenant le rendu des figures terminées (en mode
+	 * {@link RenderingMode#TILED})
+	 */
+	private TileCache tileCache;
+
+	/**
+	 * Le moteur de rendu par lots des figures terminées (en mode
+	 * {@link RenderingMode#DIRECT})
+	 */
+	private BatchRenderer batchRenderer;
+
+	/**
+	 * La vue du dessin (niveau de zoom et décalage)
+	 */
+	private Viewport viewport;
+
+	/**
+	 * Le dernier point de la vue pendant un déplacement de la vue (ou null si
+	 * la vue n'est pas en cours de déplacement)
+	 */
+	private Point panPoint;
+
+	/**
+	 * Le nombre de figures dessinées lors de la dernière image (à l'écran, dans
+	 * le {@link #backBuffer} ou dans les tuiles du {@link #tileCache})
+	 */
+	private int drawnCount;
+
+	/**
+	 * Le nombre de figures plus petites qu'un pixel (remplacées par un point,
+	 * comptées dans la couche de densité ou omises) lors de la dernière image
+	 */
+	private int subPixelCount;
+
+	/**
+	 * La version du dessin affichée lors de la dernière image
+	 */
+	private DrawingSnapshot frameDrawing;
+
+	/**
+	 * La zone du dessin redessinée lors de la dernière image
+	 */
+	private Rectangle2D frameClip;
+
+	/**
+	 * La figure en cours de création montrée dans le calque d'aperçu (ou
+	 * null)
+	 */
+	private AbstractFigure previewFigure;
+
+	/**
+	 * Les bornes extérieures de la {@link #previewFigure} lors de son dernier
+	 * affichage
+	 */
+	private Rectangle2D previewBounds;
+
+	/**
+	 * Le contrôleur de la qualité du rendu en fonction du temps de dessin des
+	 * images
+	 */
+	private QualityController quality;
+
+	/**
+	 * Exécuteur livrant les évènements du modèle dans le thread de Swing
+	 */
+	private static final Executor swingExecutor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			SwingUtilities.invokeLater(command);
+		}
+	};
+
 	/**
 	 * Constructeur de la zone de dessin à partir d'un modèle de dessin.
 	 * 
@@ -136,10 +230,26 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 		setBackground(Color.WHITE);
 		setLayout(null);
 		setDoubleBuffered(true);
+		renderingMode = RenderingMode.TILED;
+		quality = new QualityController(this);
+		backBuffer = new BackBuffer();
+		backBuffer.setQualityController(quality);
+		tileCache = new TileCache(TileCache.defaultMaxTiles);
+		tileCache.setQualityController(quality);
+		batchRenderer = new BatchRenderer();
+		setLodPolicy(new LodPolicy());
+		viewport = new Viewport();
+		panPoint = null;
+		previewFigure = null;
+		previewBounds = null;
+		drawnCount = 0;
+		subPixelCount = 0;
+		frameDrawing = null;
+		frameClip = null;
 
 		drawingModel = drawing;
 		if (drawing != null) {
-			drawingModel.addObserver(this);
+			drawingModel.addDrawingListener(this, swingExecutor);
 		} else {
 			System.err.println("DrawingPanel caution: null drawing");
 		}
@@ -159,9 +269,12 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 		} else {
 			System.err.println("DrawingPanel : null infoPanel");
 		}
+		hoverTracker = new HoverTracker(coordLabel, infoPanel,
+				defaultCoordString);
 
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addMouseWheelListener(this);
 	}
 
 	/**
@@ -178,9 +291,43 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 		return size;
 	}
 
+	/**
+	 * Accès à la vue du dessin (niveau de zoom et décalage)
+	 * 
+	 * @return la vue du dessin
+	 */
+	public Viewport getViewport() {
+		return viewport;
+	}
+
+	/**
+	 * Accès à la politique de niveau de détail utilisée pour dessiner les
+	 * figures terminées
+	 * 
+	 * @return la politique de niveau de détail
+	 */
+	public LodPolicy getLodPolicy() {
+		return batchRenderer.getLodPolicy();
+	}
+
+	/**
+	 * Mise en place de la politique de niveau de détail utilisée pour
+	 * dessiner les figures terminées (à rappeler après avoir modifié la
+	 * politique afin que le contenu déjà rendu soit oublié)
+	 * 
+	 * @param policy
+	 *            la politique de niveau de détail
+	 */
+	public void setLodPolicy(LodPolicy policy) {
+		batchRenderer.setLodPolicy(policy);
+		backBuffer.setLodPolicy(policy);
+		tileCache.setLodPolicy(policy);
+		repaint();
+	}
+
 	/**
 	 * Mise en place du modèle de dessin. Met en place un nouveau modèle et s'il
-	 * est non null ajoute ce panel comme observateur du modèle
+	 * est non null ajoute ce panel comme écouteur du modèle
 	 * 
 	 * @param drawing
 	 *            le modèle de dessin à mettre en place
@@ -188,13 +335,15 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	public void setDrawing(Drawing drawing) {
 		// retrait du précédent modèle de dessin (s'il existe)
 		if (drawingModel != null) {
-			drawingModel.deleteObserver(this);
+			drawingModel.removeDrawingListener(this);
 		}
 
 		// Mise en place du nouveau modèle de dessin
 		drawingModel = drawing;
+		backBuffer.invalidate();
+		tileCache.invalidate(null);
 		if (drawingModel != null) {
-			drawingModel.addObserver(this);
+			drawingModel.addDrawingListener(this, swingExecutor);
 		}
 	}
 
@@ -208,6 +357,27 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	public void setCoordLabel(JLabel coordLabel) {
 		this.coordLabel = coordLabel;
+		hoverTracker.setCoordLabel(coordLabel);
+	}
+
+	/**
+	 * Mise en place du label dans lequel afficher le mode de rendu (rapide ou
+	 * haute qualité) ainsi que le budget et le temps de la dernière image
+	 * 
+	 * @param qualityLabel
+	 *            le label dans lequel afficher le mode de rendu
+	 */
+	public void setQualityLabel(JLabel qualityLabel) {
+		quality.setStatusLabel(qualityLabel);
+	}
+
+	/**
+	 * Accès au contrôleur de la qualité du rendu
+	 * 
+	 * @return le contrôleur de la qualité du rendu
+	 */
+	public QualityController getQualityController() {
+		return quality;
 	}
 
 	/**
@@ -219,10 +389,39 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	public void setInfoPanel(InfoPanel infoPanel) {
 		this.infoPanel = infoPanel;
+		hoverTracker.setInfoPanel(infoPanel);
+	}
+
+	/**
+	 * Mise en place du mode de rendu
+	 * 
+	 * @param mode
+	 *            le nouveau mode de rendu
+	 */
+	public void setRenderingMode(RenderingMode mode) {
+		if (renderingMode != mode) {
+			renderingMode = mode;
+			backBuffer.invalidate();
+			tileCache.invalidate(null);
+			repaint();
+		}
 	}
 
 	/**
-	 * Dessin du panel. Effacement ce celui-ci puis dessin des figures.
+	 * Dessin du panel. En mode {@link RenderingMode#BUFFERED} : mise à jour du
+	 * {@link #backBuffer}, copie de celui-ci dans la zone à redessiner (le
+	 * clip) puis dessin de la figure en cours de dessin. En mode
+	 * {@link RenderingMode#TILED} : dessin des tuiles du {@link #tileCache}
+	 * couvrant la zone à redessiner puis de la figure en cours de dessin.
+	 * Sinon effacement de la zone à redessiner puis dessin des figures dont
+	 * les bornes extérieures intersectent cette zone (par lots de même style,
+	 * voir {@link BatchRenderer}). Dans tous les cas le
+	 * dessin est fait à partir de la dernière version figée du modèle
+	 * ({@link Drawing#snapshot()}) et n'attend donc jamais après des
+	 * modifications du modèle faites par d'autres threads, et les figures sont
+	 * dessinées au travers de la {@link #viewport} (zoom et décalage).
+	 * Le temps de dessin de chaque image est transmis au {@link #quality}
+	 * qui choisit la qualité du rendu (antialiasing ou non).
 	 * 
 	 * @param g
 	 *            le contexte graphique
@@ -232,25 +431,154 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g); // Inutile
 
-		// caractéristiques graphiques : mise en place de l'antialiasing
+		long start = System.nanoTime();
+		// caractéristiques graphiques : qualité du rendu
 		Graphics2D g2D = (Graphics2D) g;
-		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
+		quality.applyHints(g2D);
+		paintFrame(g2D);
+		quality.frameDone(start);
+	}
+
+	/**
+	 * Dessin d'une image du panel (cf. {@link #paintComponent(Graphics)})
+	 * 
+	 * @param g2D
+	 *            le contexte graphique dont la qualité a été mise en place
+	 */
+	private void paintFrame(Graphics2D g2D) {
+		// zone à redessiner (toute la zone de dessin à défaut de clip)
+		Rectangle clip = g2D.getClipBounds();
+		if (clip == null) {
+			Dimension d = getSize();
+			clip = new Rectangle(0, 0, d.width, d.height);
+		}
+		DrawingSnapshot drawing = (drawingModel != null ?
+				drawingModel.snapshot() : null);
+		// zone du dessin correspondante, élargie d'un pixel pour l'antialiasing
+		Rectangle2D modelClip = viewport.toModel(new Rectangle(clip.x - 1,
+				clip.y - 1, clip.width + 2, clip.height + 2));
+		frameDrawing = drawing;
+		frameClip = modelClip;
+		drawnCount = 0;
+		subPixelCount = 0;
+		if ((renderingMode != RenderingMode.DIRECT) && (drawing != null)) {
+			// les figures terminées proviennent du tampon ou des tuiles
+			if (renderingMode == RenderingMode.BUFFERED) {
+				Dimension d = getSize();
+				g2D.drawImage(backBuffer.update(drawing,
+						getGraphicsConfiguration(), Math.max(d.width, 1),
+						Math.max(d.height, 1), getBackground(), viewport), 0,
+						0, null);
+				drawnCount = backBuffer.getDrawnCount();
+				subPixelCount = backBuffer.getSubPixelCount();
+			}
+			else {
+				tileCache.paint(g2D, clip, drawing, viewport,
+						getGraphicsConfiguration(), getBackground());
+				drawnCount = tileCache.getDrawnCount();
+				subPixelCount = tileCache.getSubPixelCount();
+			}
+
+			// puis on dessine les figures en cours de dessin
+			g2D.transform(viewport.getTransform());
+			drawnCount += drawEditedFigures(g2D, drawing, modelClip);
+			return;
+		}
 
-		// taille de la zone de dessin
-		Dimension d = getSize();
 		// on commence par effacer le fond
 		g2D.setColor(getBackground());
-		g2D.fillRect(0, 0, d.width, d.height);
+		g2D.fillRect(clip.x, clip.y, clip.width, clip.height);
 
-		// Puis on dessine l'ensemble des figures
-		if (drawingModel != null) {
-			for (AbstractFigure f : drawingModel) {
-				f.draw(g2D);
-			}
+		// Puis on dessine les figures visibles dans cette zone : les figures
+		// terminées par lots de même style puis les figures en cours de dessin
+		if (drawing != null) {
+			g2D.transform(viewport.getTransform());
+			batchRenderer.draw(g2D, drawing,
+					drawing.findTerminatedFigures(modelClip));
+			drawnCount = batchRenderer.getFigureCount();
+			subPixelCount = batchRenderer.getSubPixelCount();
+			drawnCount += drawEditedFigures(g2D, drawing, modelClip);
 		}
 	}
 
+	/**
+	 * Dessin (s'ils sont visibles) de la figure en cours de dessin du modèle
+	 * puis de la figure en cours de création du calque d'aperçu
+	 * 
+	 * @param g2D
+	 *            le contexte graphique dans lequel la transformation de la
+	 *            vue a été mise en place
+	 * @param drawing
+	 *            la version du dessin en cours d'affichage
+	 * @param modelClip
+	 *            la zone du dessin à redessiner
+	 * @return le nombre de figures dessinées
+	 */
+	private int drawEditedFigures(Graphics2D g2D, DrawingSnapshot drawing,
+			Rectangle2D modelClip) {
+		int count = 0;
+		AbstractFigure f = drawing.getEditedFigure();
+		if ((f != null) && f.getOuterBounds2D().intersects(modelClip)) {
+			f.draw(g2D);
+			count++;
+		}
+		if ((previewFigure != null)
+				&& previewFigure.getOuterBounds2D().intersects(modelClip)) {
+			previewFigure.draw(g2D);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Nombre de figures dessinées lors de la dernière image : figures
+	 * visibles dans la zone redessinée en mode {@link RenderingMode#DIRECT},
+	 * figures ajoutées au tampon ou aux nouvelles tuiles sinon (plus la
+	 * figure en cours de dessin si elle est visible). Les figures omises ou
+	 * comptées dans la couche de densité par la {@link LodPolicy} n'en font
+	 * pas partie, celles remplacées par un point oui.
+	 * 
+	 * @return le nombre de figures dessinées lors de la dernière image
+	 */
+	public int getDrawnCount() {
+		return drawnCount;
+	}
+
+	/**
+	 * Nombre de figures plus petites qu'un pixel lors de la dernière image,
+	 * dans les mêmes figures que {@link #getDrawnCount()} : figures remplacées
+	 * par un point (également comptées comme dessinées), comptées dans la
+	 * couche de densité ou omises
+	 * 
+	 * @return le nombre de figures plus petites qu'un pixel lors de la
+	 *         dernière image
+	 */
+	public int getSubPixelCount() {
+		return subPixelCount;
+	}
+
+	/**
+	 * Nombre de figures écartées lors de la dernière image car leurs bornes
+	 * extérieures n'intersectent pas la zone redessinée. Ce nombre n'est
+	 * calculé (grâce à l'index spatial du dessin) que lorsqu'il est demandé
+	 * afin de ne pas ralentir l'affichage.
+	 * 
+	 * @return le nombre de figures écartées lors de la dernière image
+	 */
+	public int getCulledCount() {
+		DrawingSnapshot drawing = frameDrawing;
+		Rectangle2D clip = frameClip;
+		if ((drawing == null) || (clip == null)) {
+			return 0;
+		}
+		int visible = drawing.findTerminatedFigures(clip).length;
+		AbstractFigure f = drawing.getEditedFigure();
+		if ((f != null) && f.getOuterBounds2D().intersects(clip)) {
+			visible++;
+		}
+		return drawing.size() - visible;
+	}
+
 	/**
 	 * Mise en place d'un nouveau creationListener
 	 * 
@@ -259,6 +587,8 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	public void addCreationListener(AbstractCreationListener cl) {
 		if (cl != null) {
+			cl.setViewTransform(viewport.getTransform());
+			cl.setPreviewLayer(this);
 			addMouseListener(cl);
 			addMouseMotionListener(cl);
 			// System.out.println("CreationListener " + cl + " added");
@@ -275,6 +605,8 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	public void removeCreationListener(AbstractCreationListener cl) {
 		if (cl != null) {
+			cl.cancelFigure();
+			cl.setPreviewLayer(null);
 			removeMouseListener(cl);
 			removeMouseMotionListener(cl);
 			// System.out.println("CreationListener " + cl + " removed");
@@ -282,20 +614,69 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	}
 
 	/**
-	 * Mise à jour déclenchée par un {@link Observable#notifyObservers()} : en
-	 * l'occurence le modèle de dessin ({@link Drawing}) lorsque celui ci est
-	 * modifié. Cette mise à jour déclenche une requête de redessin du panel.
+	 * Mise en place de la figure en cours de création dans le calque d'aperçu
+	 * 
+	 * @param figure
+	 *            la figure en cours de création, ou null pour vider le calque
+	 * @see PreviewLayer#setPreviewFigure(AbstractFigure)
+	 */
+	@Override
+	public void setPreviewFigure(AbstractFigure figure) {
+		previewFigure = figure;
+		previewChanged();
+	}
+
+	/**
+	 * Modification de la figure en cours de création : requête de redessin
+	 * des zones qu'elle occupait et qu'elle occupe désormais. Ces
+	 * modifications ne passent pas par le modèle : ni ses écouteurs ni son
+	 * index ne les voient.
 	 * 
-	 * @param observable
-	 *            l'observable ayant déclenché cette MAJ
-	 * @param data
-	 *            les données (evt) transmises par l'observable
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	 * @see PreviewLayer#previewChanged()
 	 */
 	@Override
-	public void update(Observable observable, Object data) {
-		if (observable instanceof Drawing) {
-			// Le modèle à changé il faut redessiner les figures
+	public void previewChanged() {
+		quality.interaction();
+		Rectangle2D bounds = (previewFigure != null ?
+				previewFigure.getOuterBounds2D() : null);
+		if (previewBounds != null) {
+			repaint(viewport.toView(previewBounds));
+		}
+		if (bounds != null) {
+			repaint(viewport.toView(bounds));
+		}
+		previewBounds = bounds;
+	}
+
+	/**
+	 * Mise à jour déclenchée par une modification du modèle de dessin
+	 * ({@link Drawing}). Les évènements sont livrés (et fusionnés s'ils
+	 * arrivent plus vite qu'ils ne sont traités) dans le thread de Swing. La
+	 * mise à jour déclenche une requête de redessin de la zone modifiée du
+	 * panel, ou de tout le panel si cette zone n'est pas connue. Lorsque les
+	 * figures terminées ont changé, les tuiles du {@link #tileCache}
+	 * traversées par la zone modifiée sont invalidées.
+	 * 
+	 * @param event
+	 *            l'évènement décrivant la modification du modèle
+	 * @see DrawingListener#drawingChanged(DrawingEvent)
+	 */
+	@Override
+	public void drawingChanged(DrawingEvent event) {
+		if (event.getDrawing() != drawingModel) {
+			// évènement d'un précédent modèle livré en retard
+			return;
+		}
+
+		Rectangle2D dirty = event.getBounds();
+		if (event.affectsTerminated()) {
+			tileCache.invalidate(dirty);
+		}
+
+		if (dirty != null) {
+			repaint(viewport.toView(dirty));
+		}
+		else {
 			repaint();
 		}
 	}
@@ -309,10 +690,18 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	 */
 	@Override
 	public void mouseDragged(MouseEvent e) {
+		quality.interaction();
+		if (panPoint != null) {
+			// Déplacement de la vue
+			Point p = e.getPoint();
+			if (viewport.pan(p.x - panPoint.x, p.y - panPoint.y)) {
+				repaint();
+			}
+			panPoint = p;
+		}
 		// Déplacement de la souris (btn enfoncé) : MAJ des coordonnées
 		// de la souris dans le coordLabel et infoPanel
-		refreshCoordLabel(e.getPoint());
-		refreshInfoPanel(e.getPoint());
+		refreshInfo(e.getPoint());
 	}
 
 	/**
@@ -326,8 +715,7 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	public void mouseMoved(MouseEvent e) {
 		// Déplacement de la souris : MAJ des coordonnées
 		// de la souris dans le coordLabel et infoPanel
-		refreshCoordLabel(e.getPoint());
-		refreshInfoPanel(e.getPoint());
+		refreshInfo(e.getPoint());
 	}
 
 	@Override
@@ -345,8 +733,7 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 	@Override
 	public void mouseEntered(MouseEvent e) {
 		sendInfoState = true;
-		refreshCoordLabel(e.getPoint());
-		refreshInfoPanel(e.getPoint());
+		refreshInfo(e.getPoint());
 	}
 
 	/**
@@ -361,68 +748,74 @@ public class DrawingPanel extends JPanel implements Observer, MouseListener,
 		// Rien si ce n'est de remettre les coordonnés dans la barre d'état
 		// à x = ___ y = ___ et effacer l'infoPanel
 		sendInfoState = false;
-		refreshCoordLabel(e.getPoint());
-		infoPanel.resetLabels();
+		hoverTracker.clear();
 	}
 
+	/**
+	 * Début du déplacement de la vue lorsque le bouton du milieu ou le bouton
+	 * droit est enfoncé (le bouton gauche est réservé à la création des
+	 * figures)
+	 * 
+	 * @param e
+	 *            l'évènement souris associé
+	 */
 	@Override
 	public void mousePressed(MouseEvent e) {
-		// Rien
+		if (SwingUtilities.isMiddleMouseButton(e)
+				|| SwingUtilities.isRightMouseButton(e)) {
+			panPoint = e.getPoint();
+			setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+		}
 	}
 
+	/**
+	 * Fin du déplacement de la vue
+	 * 
+	 * @param e
+	 *            l'évènement souris associé
+	 */
 	@Override
 	public void mouseReleased(MouseEvent e) {
-		// Rien
+		if ((panPoint != null) && !SwingUtilities.isLeftMouseButton(e)) {
+			panPoint = null;
+			setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+		}
 	}
 
 	/**
-	 * Rafraichissement du {@link #coordLabel} (s'il est non null) avec de
-	 * nouvelles coordonnées ou bien avec la {@link #defaultCoordString} si l'on
-	 * affiche pas les coordonnées
+	 * Zoom (molette vers le haut) ou dézoom (molette vers le bas) autour du
+	 * pointeur de la souris
 	 * 
-	 * @param x
-	 *            l'abcisse des coordonnées à afficher
-	 * @param y
-	 *            l'ordonnée des coordonnées à afficher
+	 * @param e
+	 *            l'évènement molette associé
 	 */
-	private void refreshCoordLabel(Point p) {
-		/*
-		 * remplissage du ccordLabel si sendInfoState est vrai avec les
-		 * coordonées du point p en utilisant le coordFormat pour formatter les
-		 * nombres : String chaine = coordFormat.format(nombre) Sinon mettre le
-		 * defaultCoordString dans le label
-		 */
-		if (sendInfoState) {
-			this.coordLabel.setText("x: " + coordFormat.format(p.x) + " y: "
-					+ coordFormat.format(p.y));
-		} else {
-			this.coordLabel.setText(defaultCoordString);
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		quality.interaction();
+		if (viewport.zoom(-e.getWheelRotation(), e.getPoint())) {
+			repaint();
+			refreshInfo(e.getPoint());
 		}
 	}
 
 	/**
-	 * Rafraichissement du panneau d'information {@link #infoPanel}
+	 * Rafraichissement du {@link #coordLabel} et de l'{@link #infoPanel} avec
+	 * les coordonnées (dans le dessin) du pointeur et les informations de la
+	 * figure située sous celui ci si sendInfoState est vrai, ou bien vidage de
+	 * ces labels sinon. La recherche de la figure et le formatage des
+	 * nombres sont faits par le {@link #hoverTracker} en dehors du thread de
+	 * Swing, au plus une fois par rafraichissement de l'écran.
 	 * 
-	 * @param p
-	 *            la position du curseur pour déclencher la recherche de figures
-	 *            sous ce curseur
-	 * @see DrawingModel#getFigureAt(Point2D)
-	 * @see InfoPanel#updateLabels(...)
-	 * @see InfoPanel#resetLabels()
+	 * @param viewPoint
+	 *            la position du pointeur dans le panel
+	 * @see HoverTracker#hover(DrawingSnapshot, AbstractFigure, Point2D)
 	 */
-	private void refreshInfoPanel(Point2D p) {
-		/*
-		 * remplissage de l'infoPanel avec les infos en provenance de la figure
-		 * sous le point p (s'il y en a une) si senInfoState est vrai
-		 */
-		if (sendInfoState){
-			AbstractFigure f = drawingModel.getFigureAt(p);
-			if ( f != null) {
-				infoPanel.updateLabels(f.getName(), f.getBounds2D(), f.getCenter());
-			}
-			else {
-				infoPanel.resetLabels();
-			}
+	private void refreshInfo(Point viewPoint) {
+		if (sendInfoState && (drawingModel != null)) {
+			hoverTracker.hover(drawingModel.snapshot(), previewFigure,
+					viewport.toModel(viewPoint));
+		} else {
+			hoverTracker.clear();
 		}
 	}
 }
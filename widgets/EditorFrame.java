@@ -8,26 +8,34 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ImageIcon;
 import javax.swing.JColorChooser;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JSpinner;
 import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import figures.Drawing;
+import figures.DrawingSnapshot;
 import figures.creationListeners.AbstractCreationListener;
 import figures.enums.FigureType;
 import figures.enums.LineType;
 import figures.enums.PaintToType;
+import figures.enums.StoreType;
+import figures.io.DrawingFormat;
 
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
@@ -221,6 +229,12 @@ public class EditorFrame extends JFrame
 	 */
 	private final Action undoAction = new UndoAction();
 
+	/**
+	 * Action déclenchée lorsque l'on clique sur le bouton redo ou sur l'item
+	 * de menu redo
+	 */
+	private final Action redoAction = new RedoAction();
+
 	/**
 	 * Action déclenchée lorsque l'on clique sur le bouton clear ou sur l'item
 	 * de menu clear
@@ -232,8 +246,30 @@ public class EditorFrame extends JFrame
 	 * de menu about
 	 */
 	private final Action aboutAction = new AboutAction();
+
+	/**
+	 * Action déclenchée lorsque l'on clique sur l'item de menu open
+	 */
+	private final Action openAction = new OpenAction();
+
+	/**
+	 * Action déclenchée lorsque l'on clique sur l'item de menu save
+	 */
+	private final Action saveAction = new SaveAction();
+
+	/**
+	 * Sélecteur des fichiers de dessin à ouvrir ou enregistrer
+	 */
+	private JFileChooser fileChooser;
+
+	/**
+	 * La dernière version du dessin enregistrée ou chargée, permettant de
+	 * savoir si le dessin a été modifié depuis
+	 */
+	private DrawingSnapshot savedSnapshot;
 	private JLabeledComboBox labeledComboBox;
 	private final JLabel coordLabel = new JLabel("coordLabel");
+	private final JLabel qualityLabel = new JLabel("qualityLabel");
 
 	/**
 	 * Constructeur de la fenètre de l'éditeur.
@@ -243,7 +279,9 @@ public class EditorFrame extends JFrame
 	 */
 	public EditorFrame() throws HeadlessException
 	{
-		drawingModel = new Drawing();
+		// Stockage des figures choisi au lancement (-Dfigures.store=...)
+		drawingModel = new Drawing(StoreType.fromProperty().getStore());
+		savedSnapshot = drawingModel.snapshot();
 		tipLabel = new JLabel();
 		tipLabel.setText("Conseil de création de figure");
 		
@@ -264,10 +302,22 @@ public class EditorFrame extends JFrame
 		mntmNewMenuItem.setAction(undoAction);
 		mnNewMenu.add(mntmNewMenuItem);
 		
+		JMenuItem mntmRedoMenuItem = new JMenuItem("Redo");
+		mntmRedoMenuItem.setAction(redoAction);
+		mnNewMenu.add(mntmRedoMenuItem);
+		
 		JMenuItem mntmNewMenuItem_1 = new JMenuItem("Clear");
 		mntmNewMenuItem_1.setAction(clearAction);
 		mnNewMenu.add(mntmNewMenuItem_1);
 		
+		JMenuItem mntmOpenMenuItem = new JMenuItem("Open");
+		mntmOpenMenuItem.setAction(openAction);
+		mnNewMenu.add(mntmOpenMenuItem);
+		
+		JMenuItem mntmSaveMenuItem = new JMenuItem("Save");
+		mntmSaveMenuItem.setAction(saveAction);
+		mnNewMenu.add(mntmSaveMenuItem);
+		
 		JMenuItem mntmNewMenuItem_2 = new JMenuItem("Quit");
 		mntmNewMenuItem_2.setAction(quitAction);
 		mnNewMenu.add(mntmNewMenuItem_2);
@@ -287,6 +337,10 @@ public class EditorFrame extends JFrame
 		btnNewButton.setAction(undoAction);
 		toolBar.add(btnNewButton);
 		
+		JButton btnRedoButton = new JButton("Redo");
+		btnRedoButton.setAction(redoAction);
+		toolBar.add(btnRedoButton);
+		
 		JButton btnNewButton_1 = new JButton("Clear");
 		btnNewButton_1.setAction(clearAction);
 		toolBar.add(btnNewButton_1);
@@ -354,17 +408,19 @@ public class EditorFrame extends JFrame
 		panel_1.add(tipLabel);
 		
 		Component horizontalGlue_1 = Box.createHorizontalGlue();
-		horizontalGlue_1.setPreferredSize(new Dimension(550, 10));
+		horizontalGlue_1.setPreferredSize(new Dimension(400, 10));
 		panel_1.add(horizontalGlue_1);
 		coordLabel.setHorizontalTextPosition(SwingConstants.RIGHT);
 		coordLabel.setHorizontalAlignment(SwingConstants.RIGHT);
 		coordLabel.setAlignmentX(Component.RIGHT_ALIGNMENT);
 		panel_1.add(coordLabel);
+		panel_1.add(qualityLabel);
 		
 		JScrollPane scrollPane = new JScrollPane();
 		getContentPane().add(scrollPane, BorderLayout.CENTER);
 		
 		drawingPanel.setInfoPanel(infoPanel);
+		drawingPanel.setQualityLabel(qualityLabel);
 		scrollPane.setViewportView(drawingPanel);
 		drawingPanel.setLayout(new BorderLayout(0, 0));
 		/*
@@ -491,12 +547,12 @@ public class EditorFrame extends JFrame
 		{
 			putValue(NAME, "Quit");
 			/*
-			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()
-			 * 	= InputEvent.CTRL_MASK on win/linux
-			 *  = InputEvent.META_MASK on mac os
+			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()
+			 * 	= InputEvent.CTRL_DOWN_MASK on win/linux
+			 *  = InputEvent.META_DOWN_MASK on mac os
 			 */
 			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_Q,
-					Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
 			putValue(LARGE_ICON_KEY,
 					new ImageIcon(EditorFrame.class
 							.getResource("/images/Quit.png")));
@@ -514,6 +570,40 @@ public class EditorFrame extends JFrame
 		@Override
 		public void actionPerformed(ActionEvent e)
 		{
+			/*
+			 * Proposer d'enregistrer le dessin s'il a été modifié depuis le
+			 * dernier enregistrement ou chargement
+			 */
+			if ((drawingModel.snapshot() != savedSnapshot)
+					&& (drawingModel.getTerminatedCount() > 0))
+			{
+				int answer = JOptionPane.showConfirmDialog(EditorFrame.this,
+						"Save the drawing before quitting ?", "Quit",
+						JOptionPane.YES_NO_CANCEL_OPTION);
+				if ((answer == JOptionPane.CANCEL_OPTION)
+						|| (answer == JOptionPane.CLOSED_OPTION))
+				{
+					return;
+				}
+				if (answer == JOptionPane.YES_OPTION)
+				{
+					File file = chooseFile(true);
+					if (file == null)
+					{
+						return;
+					}
+					try
+					{
+						DrawingFormat.save(drawingModel.snapshot(),
+								file.toPath());
+					}
+					catch (IOException ex)
+					{
+						showError("Unable to save " + file, ex);
+						return;
+					}
+				}
+			}
 			System.exit(0);
 			/*
 			 * Action à effectuer lorsque l'action "undo" est cliquée :
@@ -523,7 +613,186 @@ public class EditorFrame extends JFrame
 	}
 
 	/**
-	 * Action réalisée pour effacer la dernière figure du dessin.
+	 * Choix d'un fichier de dessin
+	 * @param save true pour choisir le fichier dans lequel enregistrer,
+	 * false pour choisir le fichier à ouvrir
+	 * @return le fichier choisi (complété par l'extension
+	 * {@link DrawingFormat#extension} lors d'un enregistrement) ou null si
+	 * aucun fichier n'a été choisi
+	 */
+	private File chooseFile(boolean save)
+	{
+		if (fileChooser == null)
+		{
+			fileChooser = new JFileChooser();
+			fileChooser.setFileFilter(new FileNameExtensionFilter(
+					"Drawings (*." + DrawingFormat.extension + ")",
+					DrawingFormat.extension));
+		}
+		int result = (save ? fileChooser.showSaveDialog(this)
+				: fileChooser.showOpenDialog(this));
+		if (result != JFileChooser.APPROVE_OPTION)
+		{
+			return null;
+		}
+		File file = fileChooser.getSelectedFile();
+		if (save && !file.getName().endsWith("." + DrawingFormat.extension))
+		{
+			file = new File(file.getPath() + "." + DrawingFormat.extension);
+		}
+		return file;
+	}
+
+	/**
+	 * Signalement d'une erreur de lecture ou d'écriture d'un fichier
+	 * @param message le message à afficher
+	 * @param e l'erreur survenue
+	 */
+	private void showError(String message, IOException e)
+	{
+		System.err.println(message + " : " + e);
+		JOptionPane.showMessageDialog(this, message + "\n" + e.getMessage(),
+				"Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Lecture ou écriture d'un fichier de dessin dans un thread séparé afin
+	 * de ne pas bloquer l'interface pendant le transfert. Les actions open et
+	 * save sont désactivées pendant le transfert.
+	 * @param file le fichier à lire ou à écrire
+	 * @param snapshot la version du dessin à écrire ou null pour lire le
+	 * fichier dans le dessin
+	 */
+	private void transfer(final File file, final DrawingSnapshot snapshot)
+	{
+		openAction.setEnabled(false);
+		saveAction.setEnabled(false);
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				IOException error = null;
+				try
+				{
+					if (snapshot != null)
+					{
+						DrawingFormat.save(snapshot, file.toPath());
+					}
+					else
+					{
+						DrawingFormat.open(file.toPath(), drawingModel);
+					}
+				}
+				catch (IOException e)
+				{
+					error = e;
+				}
+				final IOException failure = error;
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						openAction.setEnabled(true);
+						saveAction.setEnabled(true);
+						if (failure != null)
+						{
+							showError("Unable to " + (snapshot != null
+									? "save " : "open ") + file, failure);
+						}
+						else
+						{
+							savedSnapshot = (snapshot != null ? snapshot
+									: drawingModel.snapshot());
+						}
+					}
+				});
+			}
+		}, "Drawing I/O");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Action pour ouvrir un fichier de dessin
+	 */
+	private class OpenAction extends AbstractAction
+	{
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructeur de l'action pour ouvrir un fichier de dessin.
+		 * Met en place le raccourci clavier et la description de l'action
+		 */
+		public OpenAction()
+		{
+			putValue(NAME, "Open ...");
+			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_O,
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+			putValue(SHORT_DESCRIPTION, "Replaces the drawing by a file");
+		}
+
+		/**
+		 * Opérations réalisées par l'action
+		 * @param e l'évènement déclenchant l'action. Peut provenir d'un bouton
+		 *            ou d'un item de menu
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e)
+		{
+			File file = chooseFile(false);
+			if (file != null)
+			{
+				transfer(file, null);
+			}
+		}
+	}
+
+	/**
+	 * Action pour enregistrer le dessin dans un fichier
+	 */
+	private class SaveAction extends AbstractAction
+	{
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructeur de l'action pour enregistrer le dessin.
+		 * Met en place le raccourci clavier et la description de l'action
+		 */
+		public SaveAction()
+		{
+			putValue(NAME, "Save ...");
+			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_S,
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+			putValue(SHORT_DESCRIPTION, "Saves the drawing in a file");
+		}
+
+		/**
+		 * Opérations réalisées par l'action : la version courante du dessin
+		 * est enregistrée pendant que l'édition continue
+		 * @param e l'évènement déclenchant l'action. Peut provenir d'un bouton
+		 *            ou d'un item de menu
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e)
+		{
+			File file = chooseFile(true);
+			if (file != null)
+			{
+				transfer(file, drawingModel.snapshot());
+			}
+		}
+	}
+
+	/**
+	 * Action réalisée pour annuler la dernière modification du dessin.
 	 */
 	private class UndoAction extends AbstractAction
 	{
@@ -534,7 +803,7 @@ public class EditorFrame extends JFrame
 		private static final long serialVersionUID = _1L;
 
 		/**
-		 * Constructeur de l'action effacer la dernière figure du dessin
+		 * Constructeur de l'action annuler la dernière modification du dessin
 		 * Met en place le raccourci clavier, l'icône et la description
 		 * de l'action
 		 */
@@ -542,12 +811,12 @@ public class EditorFrame extends JFrame
 		{
 			putValue(NAME, "Undo");
 			/*
-			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()
-			 * 	= InputEvent.CTRL_MASK on win/linux
-			 *  = InputEvent.META_MASK on mac os
+			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()
+			 * 	= InputEvent.CTRL_DOWN_MASK on win/linux
+			 *  = InputEvent.META_DOWN_MASK on mac os
 			 */
 			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_Z,
-					Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
 			putValue(LARGE_ICON_KEY,
 					new ImageIcon(EditorFrame.class
 							.getResource("/images/Undo.png")));
@@ -567,10 +836,66 @@ public class EditorFrame extends JFrame
 		{
 			/*
 			 * Action à effectuer lorsque l'action "undo" est cliquée :
-			 * retirer la dernière figure dessinée dans drawingModel
+			 * annuler la dernière modification du drawingModel
+			 */
+			if (drawingModel.undo())
+			{
+				drawingModel.update();
+			}
+		}
+	}
+
+	/**
+	 * Action réalisée pour rétablir la dernière modification annulée du
+	 * dessin.
+	 */
+	private class RedoAction extends AbstractAction
+	{
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructeur de l'action rétablir la dernière modification annulée
+		 * Met en place le raccourci clavier, l'icône et la description
+		 * de l'action
+		 */
+		public RedoAction()
+		{
+			putValue(NAME, "Redo");
+			/*
+			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()
+			 * 	= InputEvent.CTRL_DOWN_MASK on win/linux
+			 *  = InputEvent.META_DOWN_MASK on mac os
+			 */
+			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+			putValue(LARGE_ICON_KEY,
+					new ImageIcon(EditorFrame.class
+							.getResource("/images/Redo.png")));
+			putValue(SMALL_ICON,
+					new ImageIcon(EditorFrame.class
+							.getResource("/images/Redo_small.png")));
+			putValue(SHORT_DESCRIPTION, "Redo last undone drawing");
+		}
+
+		/**
+		 * Opérations réalisées par l'action
+		 * @param e l'évènement déclenchant l'action. Peut provenir d'un bouton
+		 *            ou d'un item de menu
+		 */
+		@Override
+		public void actionPerformed(ActionEvent e)
+		{
+			/*
+			 * Action à effectuer lorsque l'action "redo" est cliquée :
+			 * rétablir la dernière modification annulée du drawingModel
 			 */
-			drawingModel.removeLastFigure();
-			drawingPanel.repaint();
+			if (drawingModel.redo())
+			{
+				drawingModel.update();
+			}
 		}
 	}
 
@@ -593,12 +918,12 @@ public class EditorFrame extends JFrame
 		{
 			putValue(NAME, "Clear");
 			/*
-			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()
-			 * 	= InputEvent.CTRL_MASK on win/linux
-			 *  = InputEvent.META_MASK on mac os
+			 * Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()
+			 * 	= InputEvent.CTRL_DOWN_MASK on win/linux
+			 *  = InputEvent.META_DOWN_MASK on mac os
 			 */
 			putValue(ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_D,
-					Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+					Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
 			putValue(LARGE_ICON_KEY, new ImageIcon(
 					EditorFrame.class.getResource("/images/Delete.png")));
 			putValue(SMALL_ICON, new ImageIcon(
@@ -619,7 +944,7 @@ public class EditorFrame extends JFrame
 			 * Effacer toutes les figures du drawingModel
 			 */
 			drawingModel.clear();
-			drawingPanel.repaint();
+			drawingModel.update();
 		}
 	}
 
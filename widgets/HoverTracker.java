@@ -0,0 +1,529 @@
+package widgets;
+
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.text.DecimalFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+
+import figures.AbstractFigure;
+import figures.DrawingSnapshot;
+
+/**
+ * Suivi de la figure située sous le pointeur de la souris en dehors du thread
+ * de Swing. Chaque déplacement du pointeur dépose une demande (une version
+ * figée du dessin et un point) qui remplace la précédente si celle ci n'a pas
+ * encore été traitée : un thread de fond ne traite que la dernière demande,
+ * au plus une fois par rafraichissement de l'écran. Il y recherche la figure
+ * terminée sous le point et prépare les informations à afficher, qui sont
+ * ensuite transmises au thread de Swing. Celui ci n'affiche un résultat que
+ * s'il est plus récent que le dernier affiché, et ne met à jour le label des
+ * coordonnées et l'{@link InfoPanel} que si leur contenu change.
+ * La figure en cours de dessin (ou de création dans le calque d'aperçu) étant
+ * modifiée sur place par le thread de Swing, elle est testée par celui ci
+ * lors du dépôt de la demande.
+ *
+ * @author davidroussel
+ */
+public class HoverTracker
+{
+	/**
+	 * Fréquence de rafraichissement utilisée lorsque celle de l'écran est
+	 * inconnue
+	 */
+	public static final int defaultRefreshRate = 60;
+
+	/**
+	 * Informations d'une figure à afficher dans l'{@link InfoPanel}
+	 */
+	private static class FigureInfo
+	{
+		final String name;
+		final Rectangle2D bounds;
+		final Point2D center;
+
+		FigureInfo(AbstractFigure figure)
+		{
+			name = figure.getName();
+			bounds = figure.getBounds2D();
+			center = figure.getCenter();
+		}
+
+		boolean sameAs(FigureInfo other)
+		{
+			if (other == this)
+			{
+				return true;
+			}
+			return (other != null) && name.equals(other.name)
+					&& bounds.equals(other.bounds)
+					&& center.equals(other.center);
+		}
+	}
+
+	/**
+	 * Demande de recherche de la figure sous le pointeur
+	 */
+	private static class Request
+	{
+		final long sequence;
+		final DrawingSnapshot drawing;
+		final Point2D point;
+		final FigureInfo edited;
+
+		Request(long sequence, DrawingSnapshot drawing, Point2D point,
+				FigureInfo edited)
+		{
+			this.sequence = sequence;
+			this.drawing = drawing;
+			this.point = point;
+			this.edited = edited;
+		}
+	}
+
+	/**
+	 * Informations à afficher pour une demande
+	 */
+	private static class Result
+	{
+		final long sequence;
+		final String coords;
+		final FigureInfo figure;
+
+		Result(long sequence, String coords, FigureInfo figure)
+		{
+			this.sequence = sequence;
+			this.coords = coords;
+			this.figure = figure;
+		}
+
+		boolean sameFigure(Result other)
+		{
+			return figure == null ? other.figure == null
+					: figure.sameAs(other.figure);
+		}
+	}
+
+	/**
+	 * Le formatteur des coordonnées (utilisé uniquement par le thread de
+	 * fond)
+	 */
+	private final DecimalFormat coordFormat = new DecimalFormat("000");
+
+	/**
+	 * Le thread de fond traitant les demandes
+	 */
+	private final ExecutorService worker;
+
+	/**
+	 * Le traitement des demandes
+	 */
+	private final Runnable task;
+
+	/**
+	 * La dernière demande déposée et pas encore traitée
+	 */
+	private final AtomicReference<Request> pending;
+
+	/**
+	 * Indique qu'un traitement des demandes est prévu ou en cours
+	 */
+	private final AtomicBoolean scheduled;
+
+	/**
+	 * Le numéro de la dernière demande déposée
+	 */
+	private final AtomicLong sequence;
+
+	/**
+	 * Le numéro de la dernière annulation : les demandes antérieures ne sont
+	 * ni traitées ni affichées
+	 */
+	private volatile long cancelled;
+
+	/**
+	 * Durée minimale (en nanosecondes) entre deux traitements
+	 */
+	private final long framePeriod;
+
+	/**
+	 * L'instant du dernier traitement (utilisé uniquement par le thread de
+	 * fond)
+	 */
+	private long lastRun;
+
+	/**
+	 * La dernière figure terminée trouvée sous le pointeur (ou null),
+	 * conservée par le thread de fond tant que les figures terminées ne
+	 * changent pas
+	 */
+	private AbstractFigure hitFigure;
+
+	/**
+	 * Les informations (nom, bornes et centre) de la {@link #hitFigure}
+	 */
+	private FigureInfo hitInfo;
+
+	/**
+	 * Les figures terminées au dessus de la {@link #hitFigure} dont les bornes
+	 * extérieures intersectent les siennes : tant que le pointeur reste dans la
+	 * {@link #hitFigure} sans entrer dans l'une d'elles, c'est toujours la
+	 * {@link #hitFigure} qui est sous le pointeur
+	 */
+	private AbstractFigure[] hitOccluders;
+
+	/**
+	 * La génération des figures terminées lorsque la {@link #hitFigure} a été
+	 * trouvée
+	 */
+	private int hitGeneration;
+
+	/**
+	 * Le nombre de figures terminées lorsque la {@link #hitFigure} a été
+	 * trouvée (les figures terminées ne sont qu'ajoutées au sein d'une même
+	 * génération)
+	 */
+	private int hitCount;
+
+	/**
+	 * Le label dans lequel afficher les coordonnées du pointeur (ou null)
+	 */
+	private JLabel coordLabel;
+
+	/**
+	 * Le panneau dans lequel afficher les informations de la figure sous le
+	 * pointeur (ou null)
+	 */
+	private InfoPanel infoPanel;
+
+	/**
+	 * Le texte à afficher dans le {@link #coordLabel} en dehors du panel
+	 */
+	private final String defaultCoords;
+
+	/**
+	 * Le dernier résultat affiché (ou null si les labels sont vides)
+	 */
+	private Result shown;
+
+	/**
+	 * Indique que les labels ont été vidés par {@link #clear()} et qu'aucune
+	 * demande n'a été déposée depuis
+	 */
+	private boolean cleared;
+
+	/**
+	 * Constructeur d'un suivi de la figure sous le pointeur
+	 * @param coordLabel le label dans lequel afficher les coordonnées du
+	 * pointeur (ou null)
+	 * @param infoPanel le panneau dans lequel afficher les informations de la
+	 * figure sous le pointeur (ou null)
+	 * @param defaultCoords le texte à afficher dans le label des coordonnées
+	 * lorsque le pointeur n'est pas dans le panel
+	 */
+	public HoverTracker(JLabel coordLabel, InfoPanel infoPanel,
+			String defaultCoords)
+	{
+		this.coordLabel = coordLabel;
+		this.infoPanel = infoPanel;
+		this.defaultCoords = defaultCoords;
+		shown = null;
+		cleared = false;
+		pending = new AtomicReference<Request>();
+		scheduled = new AtomicBoolean(false);
+		sequence = new AtomicLong(0);
+		cancelled = 0;
+		framePeriod = 1000000000L / refreshRate();
+		lastRun = System.nanoTime() - framePeriod;
+		hitFigure = null;
+		hitInfo = null;
+		hitOccluders = null;
+		hitGeneration = -1;
+		hitCount = -1;
+		worker = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "HoverTracker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		task = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				process();
+			}
+		};
+	}
+
+	/**
+	 * Fréquence de rafraichissement de l'écran
+	 * @return la fréquence de rafraichissement de l'écran principal ou
+	 * {@link #defaultRefreshRate} si elle est inconnue
+	 */
+	private static int refreshRate()
+	{
+		try
+		{
+			GraphicsDevice device = GraphicsEnvironment
+					.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+			int rate = device.getDisplayMode().getRefreshRate();
+			if (rate > 0)
+			{
+				return rate;
+			}
+		}
+		catch (HeadlessException e)
+		{
+			// pas d'écran
+		}
+		return defaultRefreshRate;
+	}
+
+	/**
+	 * Mise en place du label dans lequel afficher les coordonnées
+	 * @param coordLabel le label dans lequel afficher les coordonnées du
+	 * pointeur (ou null)
+	 */
+	public void setCoordLabel(JLabel coordLabel)
+	{
+		this.coordLabel = coordLabel;
+		shown = null;
+		cleared = false;
+	}
+
+	/**
+	 * Mise en place du panneau d'informations
+	 * @param infoPanel le panneau dans lequel afficher les informations de la
+	 * figure sous le pointeur (ou null)
+	 */
+	public void setInfoPanel(InfoPanel infoPanel)
+	{
+		this.infoPanel = infoPanel;
+		shown = null;
+		cleared = false;
+	}
+
+	/**
+	 * Dépôt d'une demande de recherche de la figure sous le pointeur (à
+	 * appeler depuis le thread de Swing)
+	 * @param drawing la version figée du dessin dans laquelle chercher
+	 * @param preview la figure en cours de création dans le calque d'aperçu
+	 * de la vue (ou null), qui est au dessus de toutes les figures du dessin
+	 * @param point la position du pointeur dans le dessin
+	 */
+	public void hover(DrawingSnapshot drawing, AbstractFigure preview,
+			Point2D point)
+	{
+		// Les figures en cours de dessin ne sont lues que dans ce thread
+		AbstractFigure edited = preview;
+		if ((edited == null) || !edited.contains(point))
+		{
+			edited = drawing.getEditedFigure();
+		}
+		FigureInfo editedInfo = null;
+		if ((edited != null) && edited.contains(point))
+		{
+			editedInfo = new FigureInfo(edited);
+		}
+		cleared = false;
+		pending.set(new Request(sequence.incrementAndGet(), drawing, point,
+				editedInfo));
+		if (scheduled.compareAndSet(false, true))
+		{
+			worker.execute(task);
+		}
+	}
+
+	/**
+	 * Annulation des demandes en cours et vidage des labels (à appeler depuis
+	 * le thread de Swing lorsque le pointeur quitte le panel)
+	 */
+	public void clear()
+	{
+		if (cleared)
+		{
+			return;
+		}
+		cleared = true;
+		cancelled = sequence.incrementAndGet();
+		pending.set(null);
+		if (coordLabel != null)
+		{
+			coordLabel.setText(defaultCoords);
+		}
+		if (infoPanel != null)
+		{
+			infoPanel.resetLabels();
+		}
+		shown = null;
+	}
+
+	/**
+	 * Traitement des demandes dans le thread de fond : seule la dernière
+	 * demande déposée est traitée, au plus une fois par
+	 * {@link #framePeriod}
+	 */
+	private void process()
+	{
+		while (true)
+		{
+			Request request;
+			while ((request = pending.getAndSet(null)) != null)
+			{
+				long wait = (lastRun + framePeriod) - System.nanoTime();
+				if (wait > 0)
+				{
+					LockSupport.parkNanos(wait);
+					// une demande plus récente a pu arriver entre temps
+					Request latest = pending.getAndSet(null);
+					if (latest != null)
+					{
+						request = latest;
+					}
+				}
+				lastRun = System.nanoTime();
+				if (request.sequence <= cancelled)
+				{
+					continue;
+				}
+				FigureInfo figure = request.edited;
+				if (figure == null)
+				{
+					figure = findTerminated(request.drawing, request.point);
+				}
+				final Result result = new Result(request.sequence,
+						"x: " + coordFormat.format(request.point.getX())
+								+ " y: "
+								+ coordFormat.format(request.point.getY()),
+						figure);
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						show(result);
+					}
+				});
+			}
+			scheduled.set(false);
+			// une demande a pu être déposée avant la fin du traitement
+			if ((pending.get() == null) || !scheduled.compareAndSet(false, true))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Recherche (dans le thread de fond) de la figure terminée sous le
+	 * pointeur. Si les figures terminées n'ont pas changé depuis la recherche
+	 * précédente et que le point est toujours dans la figure trouvée alors
+	 * sans être dans une des figures qui la recouvrent, la recherche et le
+	 * calcul des informations de la figure ne sont pas refaits.
+	 * @param drawing la version du dessin dans laquelle chercher
+	 * @param point le point sous lequel chercher une figure
+	 * @return les informations de la figure terminée sous le point ou null
+	 * s'il n'y en a pas
+	 */
+	private FigureInfo findTerminated(DrawingSnapshot drawing, Point2D point)
+	{
+		if ((hitFigure != null)
+				&& (drawing.getGeneration() == hitGeneration)
+				&& (drawing.getTerminatedCount() == hitCount)
+				&& hitInfo.bounds.contains(point)
+				&& hitFigure.contains(point))
+		{
+			boolean occluded = false;
+			for (AbstractFigure occluder : hitOccluders)
+			{
+				if (occluder.contains(point))
+				{
+					occluded = true;
+					break;
+				}
+			}
+			if (!occluded)
+			{
+				return hitInfo;
+			}
+		}
+
+		hitGeneration = drawing.getGeneration();
+		hitCount = drawing.getTerminatedCount();
+		int i = drawing.findTerminatedFigureAt(point);
+		if (i < 0)
+		{
+			hitFigure = null;
+			hitInfo = null;
+			hitOccluders = null;
+			return null;
+		}
+		hitFigure = drawing.get(i);
+		hitInfo = new FigureInfo(hitFigure);
+		int[] overlapping = drawing.findTerminatedFigures(hitInfo.bounds);
+		int n = 0;
+		for (int j : overlapping)
+		{
+			if (j > i)
+			{
+				overlapping[n++] = j;
+			}
+		}
+		hitOccluders = new AbstractFigure[n];
+		for (int k = 0; k < n; k++)
+		{
+			hitOccluders[k] = drawing.get(overlapping[k]);
+		}
+		return hitInfo;
+	}
+
+	/**
+	 * Affichage d'un résultat dans le thread de Swing, s'il est plus récent
+	 * que le dernier affiché et n'a pas été annulé, en ne mettant à jour que
+	 * ce qui a changé
+	 * @param result le résultat à afficher
+	 */
+	private void show(Result result)
+	{
+		if ((result.sequence <= cancelled)
+				|| ((shown != null) && (result.sequence <= shown.sequence)))
+		{
+			return;
+		}
+		if ((coordLabel != null)
+				&& ((shown == null) || !result.coords.equals(shown.coords)))
+		{
+			coordLabel.setText(result.coords);
+		}
+		if ((infoPanel != null)
+				&& ((shown == null) || !result.sameFigure(shown)))
+		{
+			if (result.figure != null)
+			{
+				infoPanel.updateLabels(result.figure.name,
+						result.figure.bounds, result.figure.center);
+			}
+			else
+			{
+				infoPanel.resetLabels();
+			}
+		}
+		shown = result;
+	}
+}
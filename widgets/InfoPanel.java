@@ -286,7 +286,7 @@ public class InfoPanel extends JPanel
 			Rectangle2D bounds,
 			Point2D center)
 	{
-		lblFigure.setText(figureType);
+		setText(lblFigure, figureType);
 
 		double minX = bounds.getMinX();
 		double maxX = bounds.getMaxX();
@@ -295,16 +295,16 @@ public class InfoPanel extends JPanel
 		double width = maxX - minX;
 		double height = maxY - minY;
 
-		lblTopLeftX.setText(coordFormat.format(minX));
-		lblTopLeftY.setText(coordFormat.format(minY));
-		lblBottomRightX.setText(coordFormat.format(maxX));
-		lblBottomRightY.setText(coordFormat.format(maxY));
+		setText(lblTopLeftX, coordFormat.format(minX));
+		setText(lblTopLeftY, coordFormat.format(minY));
+		setText(lblBottomRightX, coordFormat.format(maxX));
+		setText(lblBottomRightY, coordFormat.format(maxY));
 
-		lblDimensionX.setText(coordFormat.format(width));
-		lblDimensionY.setText(coordFormat.format(height));
+		setText(lblDimensionX, coordFormat.format(width));
+		setText(lblDimensionY, coordFormat.format(height));
 
-		lblCenterX.setText(coordFormat.format(center.getX()));
-		lblCenterY.setText(coordFormat.format(center.getY()));
+		setText(lblCenterX, coordFormat.format(center.getX()));
+		setText(lblCenterY, coordFormat.format(center.getY()));
 	}
 
 	/**
@@ -313,15 +313,29 @@ public class InfoPanel extends JPanel
 	 */
 	public void resetLabels()
 	{
-		lblFigure.setText(emptyString);
-
-		lblTopLeftX.setText(emptyString);
-		lblTopLeftY.setText(emptyString);
-		lblBottomRightX.setText(emptyString);
-		lblBottomRightY.setText(emptyString);
-		lblDimensionX.setText(emptyString);
-		lblDimensionY.setText(emptyString);
-		lblCenterX.setText(emptyString);
-		lblCenterY.setText(emptyString);
+		setText(lblFigure, emptyString);
+
+		setText(lblTopLeftX, emptyString);
+		setText(lblTopLeftY, emptyString);
+		setText(lblBottomRightX, emptyString);
+		setText(lblBottomRightY, emptyString);
+		setText(lblDimensionX, emptyString);
+		setText(lblDimensionY, emptyString);
+		setText(lblCenterX, emptyString);
+		setText(lblCenterY, emptyString);
+	}
+
+	/**
+	 * Mise à jour du texte d'un label seulement s'il change
+	 *
+	 * @param label le label à mettre à jour
+	 * @param text le nouveau texte du label
+	 */
+	private static void setText(JLabel label, String text)
+	{
+		if (!text.equals(label.getText()))
+		{
+			label.setText(text);
+		}
 	}
 }
@@ -0,0 +1,211 @@
+package widgets;
+
+import java.util.EnumMap;
+
+import figures.enums.FigureType;
+
+/**
+ * Politique de niveau de détail appliquée par le {@link BatchRenderer}
+ * lorsque le dessin est vu de loin. Pour chaque type de figure
+ * ({@link FigureType}) :
+ * <ul>
+ * <li>la taille (en pixels) en dessous de laquelle une figure est considérée
+ * comme plus petite qu'un pixel et ce que l'on fait alors de cette figure
+ * ({@link SubPixelMode})</li>
+ * <li>la tolérance (en pixels) avec laquelle simplifier la forme de la figure
+ * (seuls les polygones sont simplifiés)</li>
+ * <li>la longueur (en pixels) de pointillé en dessous de laquelle un trait
+ * pointillé est dessiné comme un trait plein</li>
+ * </ul>
+ * Les caches de rendu dépendant de la politique, celle ci doit être remise en
+ * place dans le {@link DrawingPanel} ({@link DrawingPanel#setLodPolicy(LodPolicy)})
+ * après avoir été modifiée.
+ *
+ * @author davidroussel
+ */
+public class LodPolicy
+{
+	/**
+	 * Rendu des figures plus petites qu'un pixel
+	 */
+	public enum SubPixelMode
+	{
+		/**
+		 * La figure est dessinée normalement
+		 */
+		DRAW,
+		/**
+		 * La figure est remplacée par un point d'un pixel de sa couleur
+		 */
+		DOT,
+		/**
+		 * La figure n'est pas dessinée mais comptée dans une couche de densité
+		 * dessinée par dessus les autres figures
+		 */
+		DENSITY,
+		/**
+		 * La figure n'est pas dessinée
+		 */
+		SKIP;
+	}
+
+	/**
+	 * Le rendu des figures plus petites qu'un pixel par type de figure
+	 */
+	private final EnumMap<FigureType, SubPixelMode> subPixelModes;
+
+	/**
+	 * La taille (en pixels) en dessous de laquelle une figure est considérée
+	 * comme plus petite qu'un pixel, par type de figure
+	 */
+	private final EnumMap<FigureType, Double> subPixelSizes;
+
+	/**
+	 * La tolérance (en pixels) de simplification des formes par type de figure
+	 */
+	private final EnumMap<FigureType, Double> simplifications;
+
+	/**
+	 * La longueur de pointillé (en pixels) en dessous de laquelle les traits
+	 * pointillés sont dessinés pleins, par type de figure
+	 */
+	private final EnumMap<FigureType, Double> solidDashLengths;
+
+	/**
+	 * Constructeur de la politique par défaut : les figures plus petites
+	 * qu'un pixel sont remplacées par un point, les polygones sont simplifiés
+	 * au demi pixel et les pointillés de moins de 2 pixels deviennent pleins
+	 */
+	public LodPolicy()
+	{
+		this(SubPixelMode.DOT, 1.0, 0.5, 2.0);
+	}
+
+	/**
+	 * Constructeur d'une politique identique pour tous les types de figures
+	 * @param mode le rendu des figures plus petites qu'un pixel
+	 * @param subPixelSize la taille (en pixels) en dessous de laquelle une
+	 * figure est considérée comme plus petite qu'un pixel
+	 * @param simplification la tolérance (en pixels) de simplification des
+	 * formes (0 pour ne pas simplifier)
+	 * @param solidDashLength la longueur de pointillé (en pixels) en dessous
+	 * de laquelle les traits pointillés sont dessinés pleins (0 pour toujours
+	 * dessiner les pointillés)
+	 */
+	public LodPolicy(SubPixelMode mode,
+			double subPixelSize,
+			double simplification,
+			double solidDashLength)
+	{
+		subPixelModes = new EnumMap<FigureType, SubPixelMode>(FigureType.class);
+		subPixelSizes = new EnumMap<FigureType, Double>(FigureType.class);
+		simplifications = new EnumMap<FigureType, Double>(FigureType.class);
+		solidDashLengths = new EnumMap<FigureType, Double>(FigureType.class);
+		for (FigureType type : FigureType.values())
+		{
+			subPixelModes.put(type, mode);
+			subPixelSizes.put(type, subPixelSize);
+			simplifications.put(type, simplification);
+			solidDashLengths.put(type, solidDashLength);
+		}
+	}
+
+	/**
+	 * Politique sans réduction de détail : toutes les figures sont dessinées
+	 * telles quelles
+	 * @return une nouvelle politique sans réduction de détail
+	 */
+	public static LodPolicy fullDetail()
+	{
+		return new LodPolicy(SubPixelMode.DRAW, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Rendu des figures plus petites qu'un pixel
+	 * @param type le type de figure
+	 * @return le rendu des figures de ce type plus petites qu'un pixel
+	 */
+	public SubPixelMode getSubPixelMode(FigureType type)
+	{
+		return subPixelModes.get(type);
+	}
+
+	/**
+	 * Mise en place du rendu des figures plus petites qu'un pixel
+	 * @param type le type de figure
+	 * @param mode le rendu des figures de ce type plus petites qu'un pixel
+	 */
+	public void setSubPixelMode(FigureType type, SubPixelMode mode)
+	{
+		subPixelModes.put(type, mode);
+	}
+
+	/**
+	 * Taille en dessous de laquelle une figure est plus petite qu'un pixel
+	 * @param type le type de figure
+	 * @return la taille (en pixels) en dessous de laquelle une figure de ce
+	 * type est considérée comme plus petite qu'un pixel
+	 */
+	public double getSubPixelSize(FigureType type)
+	{
+		return subPixelSizes.get(type);
+	}
+
+	/**
+	 * Mise en place de la taille en dessous de laquelle une figure est plus
+	 * petite qu'un pixel
+	 * @param type le type de figure
+	 * @param size la taille (en pixels) en dessous de laquelle une figure de
+	 * ce type est considérée comme plus petite qu'un pixel
+	 */
+	public void setSubPixelSize(FigureType type, double size)
+	{
+		subPixelSizes.put(type, size);
+	}
+
+	/**
+	 * Tolérance de simplification des formes
+	 * @param type le type de figure
+	 * @return la tolérance (en pixels) de simplification des formes des
+	 * figures de ce type
+	 */
+	public double getSimplification(FigureType type)
+	{
+		return simplifications.get(type);
+	}
+
+	/**
+	 * Mise en place de la tolérance de simplification des formes
+	 * @param type le type de figure
+	 * @param tolerance la tolérance (en pixels) de simplification des formes
+	 * des figures de ce type (0 pour ne pas simplifier)
+	 */
+	public void setSimplification(FigureType type, double tolerance)
+	{
+		simplifications.put(type, tolerance);
+	}
+
+	/**
+	 * Longueur de pointillé en dessous de laquelle les traits sont pleins
+	 * @param type le type de figure
+	 * @return la longueur de pointillé (en pixels) en dessous de laquelle les
+	 * traits pointillés des figures de ce type sont dessinés pleins
+	 */
+	public double getSolidDashLength(FigureType type)
+	{
+		return solidDashLengths.get(type);
+	}
+
+	/**
+	 * Mise en place de la longueur de pointillé en dessous de laquelle les
+	 * traits sont pleins
+	 * @param type le type de figure
+	 * @param length la longueur de pointillé (en pixels) en dessous de
+	 * laquelle les traits pointillés des figures de ce type sont dessinés
+	 * pleins (0 pour toujours dessiner les pointillés)
+	 */
+	public void setSolidDashLength(FigureType type, double length)
+	{
+		solidDashLengths.put(type, length);
+	}
+}
@@ -0,0 +1,257 @@
+package widgets;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.DecimalFormat;
+
+import javax.swing.JLabel;
+import javax.swing.Timer;
+
+/**
+ * Contrôle de la qualité du rendu d'un composant en fonction du temps de dessin
+ * de ses images. Pendant une interaction (tracé d'une figure, déplacement de la
+ * vue, zoom) le rendu passe en qualité rapide (sans antialiasing, sans contrôle
+ * fin des traits) dès qu'une image dépasse le budget de temps par image.
+ * Lorsque l'interaction cesse pendant {@link #idleDelay} millisecondes, le
+ * rendu repasse en haute qualité et le composant est entièrement redessiné une
+ * fois. Les indications de rendu du mode courant
+ * ({@link #applyHints(Graphics2D)}) doivent aussi être appliquées aux images
+ * intermédiaires (tampon, tuiles) afin que celles rendues en qualité rapide
+ * puissent être rendues à nouveau en haute qualité. Le mode courant, le budget
+ * et le temps de la dernière image sont affichés dans un label de la barre
+ * d'état (s'il y en a un).
+ * Toutes les méthodes doivent être appelées depuis le thread de Swing.
+ *
+ * @author davidroussel
+ */
+public class QualityController
+{
+	/**
+	 * Budget de temps par image par défaut (en millisecondes)
+	 */
+	public static final double defaultFrameBudget = 16.0;
+
+	/**
+	 * Délai (en millisecondes) sans interaction après lequel le rendu repasse
+	 * en haute qualité
+	 */
+	public static final int idleDelay = 250;
+
+	/**
+	 * Format d'affichage des durées
+	 */
+	private final static DecimalFormat timeFormat = new DecimalFormat("0.0");
+
+	/**
+	 * Indications de rendu en qualité rapide : sans antialiasing, traits
+	 * normalisés
+	 */
+	private final static RenderingHints fastHints = new RenderingHints(null);
+
+	/**
+	 * Indications de rendu en haute qualité : antialiasing, traits dessinés
+	 * sans normalisation (géométrie exacte)
+	 */
+	private final static RenderingHints qualityHints = new RenderingHints(null);
+
+	static
+	{
+		fastHints.put(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_OFF);
+		fastHints.put(RenderingHints.KEY_STROKE_CONTROL,
+				RenderingHints.VALUE_STROKE_NORMALIZE);
+		fastHints.put(RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_SPEED);
+		qualityHints.put(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		qualityHints.put(RenderingHints.KEY_STROKE_CONTROL,
+				RenderingHints.VALUE_STROKE_PURE);
+		qualityHints.put(RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_QUALITY);
+	}
+
+	/**
+	 * Le composant dont on contrôle la qualité du rendu
+	 */
+	private final Component component;
+
+	/**
+	 * Le label dans lequel afficher le mode de rendu (ou null)
+	 */
+	private JLabel statusLabel;
+
+	/**
+	 * Le budget de temps par image (en nanosecondes)
+	 */
+	private long frameBudget;
+
+	/**
+	 * Indique qu'une interaction est en cours
+	 */
+	private boolean interacting;
+
+	/**
+	 * Indique que le rendu est en qualité rapide
+	 */
+	private boolean fast;
+
+	/**
+	 * Le temps de dessin de la dernière image (en nanosecondes)
+	 */
+	private long lastFrameTime;
+
+	/**
+	 * Minuterie de fin d'interaction, relancée à chaque interaction
+	 */
+	private final Timer idleTimer;
+
+	/**
+	 * Constructeur d'un contrôleur de qualité
+	 * @param component le composant dont on contrôle la qualité du rendu
+	 */
+	public QualityController(Component component)
+	{
+		this.component = component;
+		statusLabel = null;
+		frameBudget = (long) (defaultFrameBudget * 1000000);
+		interacting = false;
+		fast = false;
+		lastFrameTime = 0;
+		idleTimer = new Timer(idleDelay, new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				idle();
+			}
+		});
+		idleTimer.setRepeats(false);
+	}
+
+	/**
+	 * Mise en place du label dans lequel afficher le mode de rendu
+	 * @param label le label dans lequel afficher le mode de rendu (ou null)
+	 */
+	public void setStatusLabel(JLabel label)
+	{
+		statusLabel = label;
+		refreshStatusLabel();
+	}
+
+	/**
+	 * Budget de temps par image
+	 * @return le budget de temps par image en millisecondes
+	 */
+	public double getFrameBudget()
+	{
+		return frameBudget / 1000000.0;
+	}
+
+	/**
+	 * Mise en place du budget de temps par image
+	 * @param budget le budget de temps par image en millisecondes
+	 */
+	public void setFrameBudget(double budget)
+	{
+		frameBudget = (long) (budget * 1000000);
+		refreshStatusLabel();
+	}
+
+	/**
+	 * Indique si le rendu est en qualité rapide
+	 * @return true si le rendu est en qualité rapide
+	 */
+	public boolean isFast()
+	{
+		return fast;
+	}
+
+	/**
+	 * Temps de dessin de la dernière image
+	 * @return le temps de dessin de la dernière image en millisecondes
+	 */
+	public double getLastFrameTime()
+	{
+		return lastFrameTime / 1000000.0;
+	}
+
+	/**
+	 * Signalement d'une interaction (glissement de la souris, molette, ...) :
+	 * la fin de l'interaction est repoussée de {@link #idleDelay}
+	 */
+	public void interaction()
+	{
+		interacting = true;
+		idleTimer.restart();
+	}
+
+	/**
+	 * Mise en place des indications de rendu correspondant au mode courant
+	 * (toutes les indications des deux modes sont remplacées, le contexte
+	 * graphique pouvant avoir été préparé dans l'autre mode)
+	 * @param g2D le contexte graphique de l'image à dessiner
+	 */
+	public void applyHints(Graphics2D g2D)
+	{
+		g2D.addRenderingHints(fast ? fastHints : qualityHints);
+	}
+
+	/**
+	 * Mise en place des indications de rendu en haute qualité (pour un rendu
+	 * sans contrôleur de qualité)
+	 * @param g2D le contexte graphique de l'image à dessiner
+	 */
+	public static void applyQualityHints(Graphics2D g2D)
+	{
+		g2D.addRenderingHints(qualityHints);
+	}
+
+	/**
+	 * Fin du dessin d'une image : si une interaction est en cours et que
+	 * l'image a dépassé le budget, le rendu passe en qualité rapide
+	 * jusqu'à la fin de l'interaction
+	 * @param startTime l'instant ({@link System#nanoTime()}) du début du
+	 * dessin de l'image
+	 */
+	public void frameDone(long startTime)
+	{
+		lastFrameTime = System.nanoTime() - startTime;
+		if (interacting && !fast && (lastFrameTime > frameBudget))
+		{
+			fast = true;
+			refreshStatusLabel();
+		}
+	}
+
+	/**
+	 * Fin de l'interaction : retour à la haute qualité et nouveau dessin
+	 * complet du composant si le rendu était en qualité rapide
+	 */
+	private void idle()
+	{
+		interacting = false;
+		if (fast)
+		{
+			fast = false;
+			component.repaint();
+		}
+		refreshStatusLabel();
+	}
+
+	/**
+	 * Rafraichissement du {@link #statusLabel} (s'il est non null) avec le
+	 * mode de rendu, le budget et le temps de la dernière image
+	 */
+	private void refreshStatusLabel()
+	{
+		if (statusLabel != null)
+		{
+			statusLabel.setText((fast ? "Rendu rapide" : "Haute qualité")
+					+ " (" + timeFormat.format(getLastFrameTime()) + " / "
+					+ timeFormat.format(getFrameBudget()) + " ms)");
+		}
+	}
+}
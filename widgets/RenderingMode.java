@@ -0,0 +1,26 @@
+package widgets;
+
+/**
+ * Les différents modes de rendu des figures dans un {@link DrawingPanel}
+ *
+ * @author davidroussel
+ */
+public enum RenderingMode
+{
+	/**
+	 * Toutes les figures visibles sont dessinées à chaque rafraichissement
+	 */
+	DIRECT,
+	/**
+	 * Les figures terminées sont rendues dans un tampon de la taille du panel
+	 * ({@link BackBuffer}), seule la figure en cours de dessin est dessinée à
+	 * chaque rafraichissement
+	 */
+	BUFFERED,
+	/**
+	 * Les figures terminées sont rendues dans des tuiles de taille fixe
+	 * ({@link TileCache}) créées à la demande pour la zone visible, seule la
+	 * figure en cours de dessin est dessinée à chaque rafraichissement
+	 */
+	TILED;
+}
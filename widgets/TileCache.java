@@ -0,0 +1,396 @@
+package widgets;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import figures.Drawing;
+import figures.DrawingSnapshot;
+
+/**
+ * Cache de rendu des figures terminées d'un {@link Drawing} découpé en tuiles
+ * de taille fixe ({@link #tileSize}). Chaque tuile n'est rendue que lorsqu'elle
+ * doit être affichée et qu'elle n'est pas déjà dans le cache, en ne dessinant
+ * que les figures dont les bornes la traversent (grâce à
+ * {@link DrawingSnapshot#findTerminatedFigures(Rectangle2D)}). Une tuile n'est
+ * invalidée que lorsqu'une figure qui la traverse change.
+ * Les tuiles sont rendues pour un niveau de zoom ({@link Viewport#getLevel()})
+ * et découpent le dessin à cette échelle : les tuiles d'un niveau de zoom ne
+ * dépendent pas du décalage de la vue et restent donc valables lorsque la vue
+ * est déplacée, et les tuiles des différents niveaux de zoom cohabitent dans le
+ * cache ce qui évite de tout rendre à nouveau lorsqu'on revient à un niveau de
+ * zoom déjà affiché. La mémoire occupée est bornée par un nombre maximum de
+ * tuiles : lorsque ce nombre est atteint, l'image de la tuile utilisée le moins
+ * récemment est réutilisée.
+ * Les tuiles sont rendues avec les indications de rendu du
+ * {@link QualityController} (s'il y en a un) : les tuiles rendues en qualité
+ * rapide pendant une interaction sont rendues à nouveau dès qu'elles sont
+ * affichées en haute qualité.
+ *
+ * @author davidroussel
+ */
+public class TileCache
+{
+	/**
+	 * Taille (en pixels) du côté d'une tuile
+	 */
+	public static final int tileSize = 256;
+
+	/**
+	 * Nombre maximum de tuiles par défaut (soit 64 Mo en 32 bits par pixel)
+	 */
+	public static final int defaultMaxTiles = 256;
+
+	/**
+	 * Tuile rendue : son image et la qualité avec laquelle elle a été rendue
+	 */
+	private static class Tile
+	{
+		/**
+		 * L'image de la tuile
+		 */
+		final BufferedImage image;
+
+		/**
+		 * Indique que la tuile a été rendue en qualité rapide
+		 */
+		boolean fast;
+
+		/**
+		 * Constructeur d'une tuile
+		 * @param image l'image de la tuile
+		 */
+		Tile(BufferedImage image)
+		{
+			this.image = image;
+			fast = false;
+		}
+	}
+
+	/**
+	 * Les tuiles rendues, indexées par {@link #key(int, int, int)} et rangées
+	 * de la moins récemment utilisée à la plus récemment utilisée
+	 */
+	private LinkedHashMap<Long, Tile> tiles;
+
+	/**
+	 * Nombre maximum de tuiles conservées dans le cache
+	 */
+	private int maxTiles;
+
+	/**
+	 * La couleur de fond des tuiles
+	 */
+	private Color background;
+
+	/**
+	 * Le moteur de rendu des figures dans les tuiles
+	 */
+	private BatchRenderer renderer;
+
+	/**
+	 * Le contrôleur de la qualité du rendu des tuiles (ou null pour un rendu
+	 * toujours en haute qualité)
+	 */
+	private QualityController quality;
+
+	/**
+	 * Le nombre de figures dessinées dans les tuiles rendues lors du dernier
+	 * {@link #paint(Graphics2D, Rectangle, DrawingSnapshot, Viewport, GraphicsConfiguration, Color)}
+	 */
+	private int drawnCount;
+
+	/**
+	 * Le nombre de figures plus petites qu'un pixel dans les tuiles rendues
+	 * lors du dernier affichage
+	 */
+	private int subPixelCount;
+
+	/**
+	 * Constructeur d'un cache de tuiles vide
+	 * @param maxTiles le nombre maximum de tuiles à conserver
+	 */
+	public TileCache(int maxTiles)
+	{
+		tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true);
+		this.maxTiles = Math.max(maxTiles, 1);
+		background = Color.WHITE;
+		renderer = new BatchRenderer();
+		quality = null;
+		drawnCount = 0;
+		subPixelCount = 0;
+	}
+
+	/**
+	 * Mise en place de la politique de niveau de détail avec laquelle dessiner
+	 * les figures (le contenu déjà rendu est oublié)
+	 * @param policy la politique de niveau de détail
+	 */
+	public void setLodPolicy(LodPolicy policy)
+	{
+		renderer.setLodPolicy(policy);
+		invalidate(null);
+	}
+
+	/**
+	 * Mise en place du contrôleur de la qualité du rendu des tuiles
+	 * @param quality le contrôleur dont les indications de rendu sont
+	 * appliquées aux tuiles rendues (ou null pour un rendu toujours en haute
+	 * qualité)
+	 */
+	public void setQualityController(QualityController quality)
+	{
+		this.quality = quality;
+	}
+
+	/**
+	 * Nombre de figures dessinées dans les tuiles rendues lors du dernier
+	 * {@link #paint(Graphics2D, Rectangle, DrawingSnapshot, Viewport, GraphicsConfiguration, Color)}
+	 * (une figure traversant plusieurs tuiles rendues est comptée pour chacune
+	 * d'elles, aucune figure n'est dessinée si toutes les tuiles étaient dans
+	 * le cache)
+	 * @return le nombre de figures dessinées lors du dernier affichage
+	 */
+	public int getDrawnCount()
+	{
+		return drawnCount;
+	}
+
+	/**
+	 * Nombre de figures plus petites qu'un pixel dans les tuiles rendues lors
+	 * du dernier affichage (voir {@link BatchRenderer#getSubPixelCount()})
+	 * @return le nombre de figures remplacées par un point, comptées dans la
+	 * couche de densité ou omises lors du dernier affichage
+	 */
+	public int getSubPixelCount()
+	{
+		return subPixelCount;
+	}
+
+	/**
+	 * Nombre de tuiles actuellement dans le cache
+	 * @return le nombre de tuiles actuellement dans le cache
+	 */
+	public int size()
+	{
+		return tiles.size();
+	}
+
+	/**
+	 * Invalidation des tuiles (de tous les niveaux de zoom) traversées par une
+	 * zone
+	 * @param region la zone modifiée (dans les coordonnées du dessin), ou null
+	 * pour invalider toutes les tuiles
+	 */
+	public void invalidate(Rectangle2D region)
+	{
+		if (region == null)
+		{
+			tiles.clear();
+			return;
+		}
+
+		// Le cache étant borné, on le parcourt plutôt que de parcourir les
+		// tuiles de la zone à chacun des niveaux de zoom
+		for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext();)
+		{
+			long key = it.next();
+			if (tileArea(level(key), column(key), row(key)).intersects(region))
+			{
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Dessin des figures terminées dans une zone à partir des tuiles du cache
+	 * (les tuiles manquantes sont rendues au passage, ainsi que les tuiles
+	 * rendues en qualité rapide lorsque le rendu est en haute qualité)
+	 * @param g2D le contexte graphique (de la vue) dans lequel dessiner
+	 * @param clip la zone de la vue à dessiner
+	 * @param drawing la version du dessin dont on rend les figures terminées
+	 * @param viewport la vue (niveau de zoom et décalage) à dessiner
+	 * @param gc la configuration graphique avec laquelle créer des images
+	 * compatibles (ou null)
+	 * @param background la couleur de fond
+	 */
+	public void paint(Graphics2D g2D,
+			Rectangle clip,
+			DrawingSnapshot drawing,
+			Viewport viewport,
+			GraphicsConfiguration gc,
+			Color background)
+	{
+		if (!background.equals(this.background))
+		{
+			this.background = background;
+			tiles.clear();
+		}
+		drawnCount = 0;
+		subPixelCount = 0;
+
+		// Les tuiles découpent le dessin à l'échelle de la vue, sans décalage
+		int level = viewport.getLevel();
+		int dx = viewport.getDx();
+		int dy = viewport.getDy();
+		int i0 = Math.floorDiv(clip.x - dx, tileSize);
+		int i1 = Math.floorDiv((clip.x - dx) + clip.width - 1, tileSize);
+		int j0 = Math.floorDiv(clip.y - dy, tileSize);
+		int j1 = Math.floorDiv((clip.y - dy) + clip.height - 1, tileSize);
+		boolean fast = (quality != null) && quality.isFast();
+
+		for (int i = i0; i <= i1; i++)
+		{
+			for (int j = j0; j <= j1; j++)
+			{
+				long key = key(level, i, j);
+				Tile tile = tiles.get(key);
+				if (tile == null)
+				{
+					tile = render(level, i, j, drawing, gc, null);
+					tiles.put(key, tile);
+				}
+				else if (tile.fast && !fast)
+				{
+					// rendue pendant une interaction : à nouveau en haute
+					// qualité dans la même image
+					render(level, i, j, drawing, gc, tile);
+				}
+				g2D.drawImage(tile.image, (i * tileSize) + dx,
+						(j * tileSize) + dy, null);
+			}
+		}
+	}
+
+	/**
+	 * Rendu d'une tuile avec les indications de rendu du {@link #quality}.
+	 * Lorsque le cache est plein, l'image de la tuile la moins récemment
+	 * utilisée est retirée du cache et réutilisée.
+	 * @param level le niveau de zoom de la tuile
+	 * @param i la colonne de la tuile
+	 * @param j la ligne de la tuile
+	 * @param drawing la version du dessin dont on rend les figures terminées
+	 * @param gc la configuration graphique (ou null)
+	 * @param tile la tuile du cache à rendre à nouveau, ou null pour une
+	 * nouvelle tuile
+	 * @return la tuile rendue
+	 */
+	private Tile render(int level,
+			int i,
+			int j,
+			DrawingSnapshot drawing,
+			GraphicsConfiguration gc,
+			Tile tile)
+	{
+		if ((tile == null) && (tiles.size() >= maxTiles))
+		{
+			Iterator<Map.Entry<Long, Tile>> eldest =
+					tiles.entrySet().iterator();
+			tile = eldest.next().getValue();
+			eldest.remove();
+		}
+		if (tile == null)
+		{
+			if (gc != null)
+			{
+				tile = new Tile(gc.createCompatibleImage(tileSize, tileSize));
+			}
+			else
+			{
+				tile = new Tile(new BufferedImage(tileSize, tileSize,
+						BufferedImage.TYPE_INT_RGB));
+			}
+		}
+
+		Graphics2D g2D = tile.image.createGraphics();
+		g2D.setColor(background);
+		g2D.fillRect(0, 0, tileSize, tileSize);
+		if (quality != null)
+		{
+			quality.applyHints(g2D);
+			tile.fast = quality.isFast();
+		}
+		else
+		{
+			QualityController.applyQualityHints(g2D);
+			tile.fast = false;
+		}
+		double scale = Viewport.scaleOf(level);
+		g2D.translate(-i * tileSize, -j * tileSize);
+		g2D.scale(scale, scale);
+		renderer.draw(g2D, drawing,
+				drawing.findTerminatedFigures(tileArea(level, i, j)));
+		drawnCount += renderer.getFigureCount();
+		subPixelCount += renderer.getSubPixelCount();
+		g2D.dispose();
+
+		return tile;
+	}
+
+	/**
+	 * Zone du dessin couverte par une tuile, élargie d'un pixel (à l'échelle
+	 * de la tuile) pour l'antialiasing
+	 * @param level le niveau de zoom de la tuile
+	 * @param i la colonne de la tuile
+	 * @param j la ligne de la tuile
+	 * @return la zone du dessin (dans les coordonnées du dessin) couverte par
+	 * la tuile
+	 */
+	private static Rectangle2D tileArea(int level, int i, int j)
+	{
+		double size = tileSize / Viewport.scaleOf(level);
+		double pixel = size / tileSize;
+		return new Rectangle2D.Double((i * size) - pixel, (j * size) - pixel,
+				size + (2 * pixel), size + (2 * pixel));
+	}
+
+	/**
+	 * Clé d'une tuile dans {@link #tiles} : niveau de zoom sur 8 bits, colonne
+	 * et ligne sur 28 bits chacune
+	 * @param level le niveau de zoom de la tuile
+	 * @param i la colonne de la tuile
+	 * @param j la ligne de la tuile
+	 * @return la clé de la tuile
+	 */
+	private static long key(int level, int i, int j)
+	{
+		return ((long) level << 56) | ((i & 0xFFFFFFFL) << 28)
+				| (j & 0xFFFFFFFL);
+	}
+
+	/**
+	 * Niveau de zoom d'une tuile à partir de sa clé
+	 * @param key la clé de la tuile
+	 * @return le niveau de zoom de la tuile
+	 */
+	private static int level(long key)
+	{
+		return (int) (key >> 56);
+	}
+
+	/**
+	 * Colonne d'une tuile à partir de sa clé
+	 * @param key la clé de la tuile
+	 * @return la colonne de la tuile
+	 */
+	private static int column(long key)
+	{
+		return (int) ((key << 8) >> 36);
+	}
+
+	/**
+	 * Ligne d'une tuile à partir de sa clé
+	 * @param key la clé de la tuile
+	 * @return la ligne de la tuile
+	 */
+	private static int row(long key)
+	{
+		return (int) ((key << 36) >> 36);
+	}
+}
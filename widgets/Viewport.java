@@ -0,0 +1,233 @@
+package widgets;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Vue d'un dessin dans un {@link DrawingPanel} : facteur de zoom et décalage
+ * (en pixels) permettant de passer des coordonnées du dessin (le modèle) aux
+ * coordonnées du panel (la vue) : vue = modèle * échelle + décalage.
+ * Le zoom est discret : l'échelle d'un niveau de zoom n est 2^(n / 4) ce qui
+ * permet d'indexer les caches de rendu par niveau de zoom et de retrouver le
+ * contenu déjà rendu lorsqu'on revient à un niveau de zoom précédent. Le
+ * décalage est toujours un nombre entier de pixels afin que le contenu rendu
+ * à un niveau de zoom puisse être réutilisé tel quel lors d'un déplacement de
+ * la vue.
+ *
+ * @author davidroussel
+ */
+public class Viewport
+{
+	/**
+	 * Nombre de niveaux de zoom par doublement de l'échelle
+	 */
+	public static final int levelsPerOctave = 4;
+
+	/**
+	 * Niveau de zoom minimum (échelle 1/32)
+	 */
+	public static final int minLevel = -5 * levelsPerOctave;
+
+	/**
+	 * Niveau de zoom maximum (échelle 32)
+	 */
+	public static final int maxLevel = 5 * levelsPerOctave;
+
+	/**
+	 * Le niveau de zoom courant (0 pour l'échelle 1)
+	 */
+	private int level;
+
+	/**
+	 * L'échelle correspondant au niveau de zoom courant
+	 */
+	private double scale;
+
+	/**
+	 * Le décalage horizontal de la vue (en pixels)
+	 */
+	private int dx;
+
+	/**
+	 * Le décalage vertical de la vue (en pixels)
+	 */
+	private int dy;
+
+	/**
+	 * La transformation du modèle vers la vue, modifiée sur place à chaque
+	 * changement de la vue
+	 */
+	private final AffineTransform transform;
+
+	/**
+	 * Constructeur d'une vue à l'échelle 1 sans décalage
+	 */
+	public Viewport()
+	{
+		transform = new AffineTransform();
+		reset();
+	}
+
+	/**
+	 * Retour à l'échelle 1 sans décalage
+	 */
+	public void reset()
+	{
+		level = 0;
+		scale = 1.0;
+		dx = 0;
+		dy = 0;
+		transform.setToIdentity();
+	}
+
+	/**
+	 * Echelle d'un niveau de zoom
+	 * @param level le niveau de zoom
+	 * @return l'échelle correspondant à ce niveau de zoom
+	 */
+	public static double scaleOf(int level)
+	{
+		return Math.pow(2.0, (double) level / levelsPerOctave);
+	}
+
+	/**
+	 * Niveau de zoom courant
+	 * @return le niveau de zoom courant
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Echelle courante
+	 * @return l'échelle courante
+	 */
+	public double getScale()
+	{
+		return scale;
+	}
+
+	/**
+	 * Décalage horizontal courant
+	 * @return le décalage horizontal de la vue en pixels
+	 */
+	public int getDx()
+	{
+		return dx;
+	}
+
+	/**
+	 * Décalage vertical courant
+	 * @return le décalage vertical de la vue en pixels
+	 */
+	public int getDy()
+	{
+		return dy;
+	}
+
+	/**
+	 * Transformation du modèle vers la vue. La transformation renvoyée est
+	 * modifiée sur place à chaque changement de la vue : elle peut donc être
+	 * conservée (par les créateurs de figures par exemple) pour toujours
+	 * disposer de la transformation courante, mais ne doit pas être modifiée.
+	 * @return la transformation du modèle vers la vue
+	 */
+	public AffineTransform getTransform()
+	{
+		return transform;
+	}
+
+	/**
+	 * Déplacement de la vue
+	 * @param ddx le déplacement horizontal en pixels
+	 * @param ddy le déplacement vertical en pixels
+	 * @return true si la vue a changé
+	 */
+	public boolean pan(int ddx, int ddy)
+	{
+		if ((ddx == 0) && (ddy == 0))
+		{
+			return false;
+		}
+		dx += ddx;
+		dy += ddy;
+		updateTransform();
+		return true;
+	}
+
+	/**
+	 * Changement du niveau de zoom en conservant le point du modèle situé sous
+	 * un point de la vue
+	 * @param steps le nombre de niveaux de zoom à ajouter (négatif pour
+	 * dézoomer)
+	 * @param anchor le point de la vue qui reste fixe
+	 * @return true si la vue a changé
+	 */
+	public boolean zoom(int steps, Point anchor)
+	{
+		int newLevel = Math.max(minLevel, Math.min(maxLevel, level + steps));
+		if (newLevel == level)
+		{
+			return false;
+		}
+		Point2D m = toModel(anchor);
+		level = newLevel;
+		scale = scaleOf(level);
+		dx = (int) Math.round(anchor.getX() - (m.getX() * scale));
+		dy = (int) Math.round(anchor.getY() - (m.getY() * scale));
+		updateTransform();
+		return true;
+	}
+
+	/**
+	 * Mise à jour de la {@link #transform} à partir de l'échelle et du
+	 * décalage
+	 */
+	private void updateTransform()
+	{
+		transform.setTransform(scale, 0.0, 0.0, scale, dx, dy);
+	}
+
+	/**
+	 * Conversion d'un point de la vue en point du modèle
+	 * @param p le point de la vue
+	 * @return le point du modèle correspondant
+	 */
+	public Point2D toModel(Point2D p)
+	{
+		return new Point2D.Double((p.getX() - dx) / scale,
+				(p.getY() - dy) / scale);
+	}
+
+	/**
+	 * Conversion d'une zone de la vue en zone du modèle
+	 * @param r la zone de la vue
+	 * @return la zone du modèle correspondante
+	 */
+	public Rectangle2D toModel(Rectangle2D r)
+	{
+		return new Rectangle2D.Double((r.getX() - dx) / scale,
+				(r.getY() - dy) / scale, r.getWidth() / scale,
+				r.getHeight() / scale);
+	}
+
+	/**
+	 * Conversion d'une zone du modèle en zone (entière) de la vue, élargie
+	 * d'un pixel pour l'antialiasing
+	 * @param r la zone du modèle
+	 * @return la plus petite zone de pixels de la vue couvrant la zone du
+	 * modèle
+	 */
+	public Rectangle toView(Rectangle2D r)
+	{
+		int x0 = (int) Math.floor((r.getMinX() * scale) + dx) - 1;
+		int y0 = (int) Math.floor((r.getMinY() * scale) + dy) - 1;
+		int x1 = (int) Math.ceil((r.getMaxX() * scale) + dx) + 1;
+		int y1 = (int) Math.ceil((r.getMaxY() * scale) + dy) + 1;
+		return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+	}
+}